@@ -0,0 +1,389 @@
+package grammar;
+
+import java.nio.ByteBuffer;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Pair;
+
+/**
+ * A hand-written replacement for the generated ABCMusicLexer, which scans the bytes of a
+ * MappedCharStream directly instead of going through ANTLR's lexer simulator.
+ *
+ * It produces exactly the tokens (types, positions and text) that ABCMusicLexer produces for the
+ * same input, by following the same rules as ABCMusic.g4: the longest match wins, and a tie goes
+ * to the rule defined first (so "b" is a NOTE, not a KEYACCIDENTAL, and "C:x" is a FIELD_COMPOSER,
+ * not a NOTE). COMMENT and SPACE are skipped. Like a lexer set up with reportErrorsAsExceptions(),
+ * it throws a RuntimeException at the first character that starts no token.
+ *
+ * ABCMusicByteLexerTest checks it against the generated lexer over every file in sample_abc.
+ */
+public class ABCMusicByteLexer implements TokenSource {
+
+    /**
+     * The input, which supplies the text of the tokens
+     */
+    private final MappedCharStream input;
+
+    /**
+     * The bytes of the input
+     */
+    private final ByteBuffer bytes;
+
+    /**
+     * The number of bytes in the input
+     */
+    private final int limit;
+
+    /**
+     * The source of every token, as the token factory expects it
+     */
+    private final Pair<TokenSource, CharStream> source;
+
+    /**
+     * Creates the tokens
+     */
+    private TokenFactory<?> factory = CommonTokenFactory.DEFAULT;
+
+    /**
+     * The index of the next byte to be lexed
+     */
+    private int position = 0;
+
+    /**
+     * The line (starting at 1) and column (starting at 0) of the next byte to be lexed
+     */
+    private int line = 1;
+    private int charPositionInLine = 0;
+
+    /**
+     * @param input the input to lex
+     */
+    public ABCMusicByteLexer(MappedCharStream input) {
+        this.input = input;
+        this.bytes = input.getBuffer();
+        this.limit = bytes.limit();
+        this.source = new Pair<TokenSource, CharStream>(this, input);
+    }
+
+    /**
+     * @return the next token of the input, or an EOF token once the input is used up
+     * @throws RuntimeException if the next character does not start any token
+     */
+    @Override
+    public Token nextToken() {
+        while (true) {
+            int start = position;
+            if (start >= limit)
+                return factory.create(source, Token.EOF, null, Token.DEFAULT_CHANNEL, start, start - 1, line, charPositionInLine);
+            int type;
+            int end;
+            int c = at(start);
+            switch (c) {
+            case '%':
+                advance(restOfLine(start + 1));
+                continue;
+            case ' ':
+                advance(spaces(start));
+                continue;
+            case '\t': case '\r': case '\n':
+                type = ABCMusicLexer.LINEFEED;
+                end = start + 1;
+                while (end < limit && (at(end) == '\t' || at(end) == '\r' || at(end) == '\n'))
+                    end++;
+                break;
+            case 'X':
+                type = ABCMusicLexer.FIELD_NUMBER;
+                end = isField(start) ? nonEmpty(spaces(start + 2), digits(spaces(start + 2))) : -1;
+                break;
+            case 'T':
+                type = ABCMusicLexer.FIELD_TITLE;
+                end = isField(start) ? nonEmpty(start + 2, restOfLine(start + 2)) : -1;
+                break;
+            case 'L':
+                type = ABCMusicLexer.FIELD_DEFAULT_LENGTH;
+                end = isField(start) ? fraction(spaces(start + 2)) : -1;
+                break;
+            case 'M':
+                type = ABCMusicLexer.FIELD_METER;
+                end = isField(start) ? meter(spaces(start + 2)) : -1;
+                break;
+            case 'Q':
+                type = ABCMusicLexer.FIELD_TEMPO;
+                end = isField(start) ? tempo(spaces(start + 2)) : -1;
+                break;
+            case 'V':
+                type = ABCMusicLexer.FIELD_VOICE;
+                end = isField(start) ? nonEmpty(start + 2, restOfLine(start + 2)) : -1;
+                break;
+            case 'K':
+                type = ABCMusicLexer.FIELD_KEY;
+                end = isField(start) ? key(spaces(start + 2)) : -1;
+                break;
+            case 'w':
+                type = ABCMusicLexer.LYRIC;
+                end = isField(start) ? restOfLine(start + 2) : -1;
+                break;
+            case 'C':
+                // "C:" followed by anything is a composer, which is always longer than a note
+                if (isField(start) && nonEmpty(start + 2, restOfLine(start + 2)) != -1) {
+                    type = ABCMusicLexer.FIELD_COMPOSER;
+                    end = restOfLine(start + 2);
+                } else {
+                    type = ABCMusicLexer.NOTE;
+                    end = note(start);
+                }
+                break;
+            case '^': case '_': case '=': case 'z':
+            case 'A': case 'B': case 'D': case 'E': case 'F': case 'G':
+            case 'a': case 'b': case 'c': case 'd': case 'e': case 'f': case 'g':
+                type = ABCMusicLexer.NOTE;
+                end = note(start);
+                break;
+            case '0': case '1': case '2': case '3': case '4':
+            case '5': case '6': case '7': case '8': case '9':
+                end = fraction(start);
+                type = (end == -1) ? ABCMusicLexer.DIGIT : ABCMusicLexer.FRACTION;
+                if (end == -1)
+                    end = start + 1;
+                break;
+            case '|':
+                type = ABCMusicLexer.BARLINE;
+                end = (at(start + 1) == '|' || at(start + 1) == ']' || at(start + 1) == ':') ? start + 2 : start + 1;
+                break;
+            case ':':
+                type = ABCMusicLexer.BARLINE;
+                end = (at(start + 1) == '|') ? start + 2 : -1;
+                break;
+            case '[':
+                if (at(start + 1) == '|') {
+                    type = ABCMusicLexer.BARLINE;
+                    end = start + 2;
+                } else if (at(start + 1) == '1' || at(start + 1) == '2') {
+                    type = ABCMusicLexer.NTH_REPEAT;
+                    end = start + 2;
+                } else {
+                    type = ABCMusicLexer.L_BRACKET;
+                    end = start + 1;
+                }
+                break;
+            case ']':
+                type = ABCMusicLexer.R_BRACKET;
+                end = start + 1;
+                break;
+            case '/':
+                type = ABCMusicLexer.SLASH;
+                end = start + 1;
+                break;
+            case '(':
+                type = (at(start + 1) == '2') ? ABCMusicLexer.DUPLET : (at(start + 1) == '3') ? ABCMusicLexer.TRIPLET : ABCMusicLexer.QUADRUPLET;
+                end = (at(start + 1) >= '2' && at(start + 1) <= '4') ? start + 2 : -1;
+                break;
+            case 'm':
+                type = ABCMusicLexer.MODEMINOR;
+                end = start + 1;
+                break;
+            case '#':
+                type = ABCMusicLexer.KEYACCIDENTAL;
+                end = start + 1;
+                break;
+            default:
+                type = Token.INVALID_TYPE;
+                end = -1;
+            }
+            if (end == -1)
+                throw new RuntimeException("token recognition error at: '" + (char) c + "' (line " + line + ":" + charPositionInLine + ")");
+            Token token = factory.create(source, type, null, Token.DEFAULT_CHANNEL, start, end - 1, line, charPositionInLine);
+            advance(end);
+            return token;
+        }
+    }
+
+    /**
+     * @return the byte at index i (as 0-255), or -1 past the end of the input
+     */
+    private int at(int i) {
+        return (i < limit) ? bytes.get(i) & 0xFF : -1;
+    }
+
+    /**
+     * Moves to index end, keeping track of lines and columns (counted in characters, see
+     * MappedCharStream.columns)
+     */
+    private void advance(int end) {
+        for (int i = position; i < end; i++) {
+            int c = bytes.get(i) & 0xFF;
+            if (c == '\n') {
+                line++;
+                charPositionInLine = 0;
+            } else {
+                charPositionInLine += input.columns(c);
+            }
+        }
+        position = end;
+    }
+
+    /**
+     * @return true if the byte after start is ':'
+     */
+    private boolean isField(int start) {
+        return at(start + 1) == ':';
+    }
+
+    /**
+     * @return end if it is past from, -1 otherwise
+     */
+    private int nonEmpty(int from, int end) {
+        return (end > from) ? end : -1;
+    }
+
+    /**
+     * @return the index after the run of spaces starting at i
+     */
+    private int spaces(int i) {
+        while (at(i) == ' ')
+            i++;
+        return i;
+    }
+
+    /**
+     * @return the index after the run of digits starting at i
+     */
+    private int digits(int i) {
+        while (at(i) >= '0' && at(i) <= '9')
+            i++;
+        return i;
+    }
+
+    /**
+     * @return the index of the line feed that ends the line containing i, or the end of the input
+     */
+    private int restOfLine(int i) {
+        while (i < limit && bytes.get(i) != '\n')
+            i++;
+        return i;
+    }
+
+    /**
+     * DIGIT+ '/' DIGIT+
+     * @return the index after the fraction starting at i, or -1 if there is none
+     */
+    private int fraction(int i) {
+        int numeratorEnd = digits(i);
+        if (numeratorEnd == i || at(numeratorEnd) != '/')
+            return -1;
+        return nonEmpty(numeratorEnd + 1, digits(numeratorEnd + 1));
+    }
+
+    /**
+     * 'C' | 'C|' | (DIGIT+ '/' DIGIT+)
+     * @return the index after the meter starting at i, or -1 if there is none
+     */
+    private int meter(int i) {
+        if (at(i) == 'C')
+            return (at(i + 1) == '|') ? i + 2 : i + 1;
+        return fraction(i);
+    }
+
+    /**
+     * ((DIGIT+ '/' DIGIT+) '=')? DIGIT+
+     * @return the index after the tempo starting at i, or -1 if there is none
+     */
+    private int tempo(int i) {
+        int beatEnd = fraction(i);
+        if (beatEnd != -1 && at(beatEnd) == '=' && digits(beatEnd + 1) > beatEnd + 1)
+            return digits(beatEnd + 1);
+        return nonEmpty(i, digits(i));
+    }
+
+    /**
+     * basenote KEYACCIDENTAL? MODEMINOR?
+     * @return the index after the key starting at i, or -1 if there is none
+     */
+    private int key(int i) {
+        if (!isBaseNote(at(i)))
+            return -1;
+        i++;
+        if (at(i) == '#' || at(i) == 'b')
+            i++;
+        if (at(i) == 'm')
+            i++;
+        return i;
+    }
+
+    /**
+     * @return true if c is one of A-G or a-g
+     */
+    private static boolean isBaseNote(int c) {
+        return (c >= 'A' && c <= 'G') || (c >= 'a' && c <= 'g');
+    }
+
+    /**
+     * (PITCH | REST) (SLASH | (DIGIT+ SLASH) | (SLASH? DIGIT+) | (DIGIT+ '/' DIGIT+))?
+     * @return the index after the note starting at start, or -1 if there is none
+     */
+    private int note(int start) {
+        int i = start;
+        // accidental
+        if (at(i) == '^' || at(i) == '_') {
+            int accidental = at(i);
+            i++;
+            if (at(i) == accidental)
+                i++;
+        } else if (at(i) == '=') {
+            i++;
+        }
+        // base note and octave, or rest
+        if (isBaseNote(at(i))) {
+            i++;
+            int octave = at(i);
+            if (octave == '\'' || octave == ',')
+                while (at(i) == octave)
+                    i++;
+        } else if (at(i) == 'z' && i == start) {
+            i++;
+        } else {
+            return -1;
+        }
+        // duration
+        if (at(i) == '/')
+            return digits(i + 1);
+        int numeratorEnd = digits(i);
+        if (numeratorEnd > i && at(numeratorEnd) == '/')
+            return digits(numeratorEnd + 1);
+        return numeratorEnd;
+    }
+
+    @Override
+    public int getLine() {
+        return line;
+    }
+
+    @Override
+    public int getCharPositionInLine() {
+        return charPositionInLine;
+    }
+
+    @Override
+    public CharStream getInputStream() {
+        return input;
+    }
+
+    @Override
+    public String getSourceName() {
+        return input.getSourceName();
+    }
+
+    @Override
+    public void setTokenFactory(TokenFactory<?> factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public TokenFactory<?> getTokenFactory() {
+        return factory;
+    }
+}
@@ -0,0 +1,133 @@
+package grammar;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.junit.Test;
+
+import player.Song;
+
+/**
+ * Differential tests of the hand-written lexer against the generated ABCMusicLexer
+ */
+public class ABCMusicByteLexerTest {
+
+    /*
+     * Partition input space:
+     * - Whole files: every file in sample_abc
+     * - Tokens where the longest match or the rule order matters: "C:" composer or note,
+     *   "b" note or key accidental, fractions and digits, incomplete tempos, barlines and brackets
+     * - Invalid input: characters that start no token
+     * - Random strings over the abc alphabet
+     * - Compiling songs with each lexer
+     */
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static MappedCharStream streamOf(String text) {
+        return new MappedCharStream(ByteBuffer.wrap(text.getBytes(UTF8)), UTF8, "test");
+    }
+
+    /**
+     * @return the tokens of the source, up to EOF or the first error; an error is given as a null
+     */
+    private static List<Token> tokens(TokenSource source) {
+        List<Token> tokens = new ArrayList<Token>();
+        try {
+            for (Token t = source.nextToken(); t.getType() != Token.EOF; t = source.nextToken())
+                tokens.add(t);
+        } catch (RuntimeException e) {
+            tokens.add(null);
+        }
+        return tokens;
+    }
+
+    private static void assertSameTokens(MappedCharStream generatedInput, MappedCharStream handWrittenInput) {
+        ABCMusicLexer generated = new ABCMusicLexer(generatedInput);
+        generated.reportErrorsAsExceptions();
+        List<Token> expected = tokens(generated);
+        List<Token> actual = tokens(new ABCMusicByteLexer(handWrittenInput));
+        String input = generatedInput.toString();
+        assertEquals(input, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Token e = expected.get(i);
+            Token a = actual.get(i);
+            if (e == null) {
+                assertNull(input, a);
+                continue;
+            }
+            assertNotNull(input, a);
+            assertEquals(input, e.getType(), a.getType());
+            assertEquals(input, e.getText(), a.getText());
+            assertEquals(input, e.getStartIndex(), a.getStartIndex());
+            assertEquals(input, e.getStopIndex(), a.getStopIndex());
+            assertEquals(input, e.getLine(), a.getLine());
+            assertEquals(input, e.getCharPositionInLine(), a.getCharPositionInLine());
+        }
+    }
+
+    private static void assertSameTokens(String text) {
+        assertSameTokens(streamOf(text), streamOf(text));
+    }
+
+    @Test
+    public void sampleFilesTest() throws IOException {
+        for (File file : new File("sample_abc").listFiles())
+            assertSameTokens(MappedCharStream.open(file.toPath(), UTF8), MappedCharStream.open(file.toPath(), UTF8));
+    }
+
+    @Test
+    public void longestMatchTest() {
+        assertSameTokens("C:Bach\nC:\nC C:|");
+        assertSameTokens("K:Bbm\nb B, b' _b __B ^^c =C,,, z z/ z3/ c/4 c3/4 c3/ c12");
+        assertSameTokens("3/4 3/ 3 12/ /");
+        assertSameTokens("Q:1/4=\nQ:1/4=120\nQ: 90\nM:C|\nM:C\nM:6/8\nL:1/16\nX: 12\n");
+        assertSameTokens("|: :| || |] [| [1 [2 [ ] (2 (3 (4 # m\r\n\t\n");
+        assertSameTokens("w: Hel-lo ev-'ry-one_ * ~ \\- |\nT:  %not a comment\n% comment\nV: 1");
+    }
+
+    @Test
+    public void invalidInputTest() {
+        assertSameTokens("C D X E");
+        assertSameTokens("C (5 D");
+        assertSameTokens("C : D");
+        assertSameTokens("^ C");
+        assertSameTokens("T:\n");
+        assertSameTokens("K:H");
+        assertSameTokens("z'");
+    }
+
+    @Test
+    public void randomInputTest() {
+        String alphabet = "ABCDEFGabcdefgzXTLMQVKCwm#^_=',/0123456789:|[]()% \n\t";
+        Random random = new Random(6005);
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(20);
+            for (int j = 0; j < length; j++)
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            assertSameTokens(text.toString());
+        }
+    }
+
+    @Test
+    public void compileTest() throws IOException {
+        SongCompiler generated = new SongCompiler();
+        generated.setLexer(LexerEnum.GENERATED);
+        SongCompiler handWritten = new SongCompiler();
+        handWritten.setLexer(LexerEnum.HAND_WRITTEN);
+        for (File file : new File("sample_abc").listFiles()) {
+            Song expected = generated.compile(MappedCharStream.open(file.toPath(), UTF8));
+            assertEquals(file.getName(), expected, handWritten.compile(MappedCharStream.open(file.toPath(), UTF8)));
+        }
+    }
+}
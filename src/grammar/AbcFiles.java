@@ -0,0 +1,91 @@
+package grammar;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Static helpers for the tools that work through many abc files (BatchCompiler, SongLinter,
+ * DecisionProfiler, FlyweightReport): finding the .abc files to work on, and running one
+ * fork-join task per file.
+ */
+public final class AbcFiles {
+
+    private AbcFiles() {
+        // only static helpers
+    }
+
+    /**
+     * @param dir the root of a tree of abc files
+     * @return every regular file whose name ends in .abc under dir, at any depth, in path order
+     * @throws IOException if dir cannot be walked
+     */
+    public static List<Path> list(Path dir) throws IOException {
+        final List<Path> files = new ArrayList<Path>();
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && file.getFileName().toString().endsWith(".abc"))
+                    files.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * @param args files and directories, as given on a command line
+     * @return each argument that is not a directory, as given, and in its place the .abc files
+     *          under each one that is (see list)
+     * @throws IOException if a directory cannot be walked
+     */
+    public static List<Path> expand(List<String> args) throws IOException {
+        List<Path> files = new ArrayList<Path>();
+        for (String arg : args) {
+            Path path = Paths.get(arg);
+            if (Files.isDirectory(path))
+                files.addAll(list(path));
+            else
+                files.add(path);
+        }
+        return files;
+    }
+
+    /**
+     * Runs tasks on a pool, and waits for all of them to finish
+     * @param pool the pool to run them on
+     * @param tasks the tasks, usually one per file
+     */
+    public static void invokeAll(ForkJoinPool pool, final List<? extends ForkJoinTask<?>> tasks) {
+        pool.invoke(new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    /**
+     * @param args the command line of a tool
+     * @param index where the number of threads may be in args
+     * @return a pool with args[index] threads, or one per processor if args has no such argument;
+     *          the caller must shut it down
+     */
+    public static ForkJoinPool newPool(String[] args, int index) {
+        int threads = (args.length > index) ? Integer.parseInt(args[index]) : Runtime.getRuntime().availableProcessors();
+        return new ForkJoinPool(threads);
+    }
+}
@@ -0,0 +1,100 @@
+package grammar;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests finding abc files and running a task per file
+ */
+public class AbcFilesTest {
+
+    /*
+     * Partition input space:
+     * - Files in a tree: none, .abc at the top, .abc nested, not .abc
+     * - Arguments: a file (kept as given, whatever its name), a directory
+     * - Tasks: 0, many
+     */
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null)
+            for (File child : children)
+                delete(child);
+        file.delete();
+    }
+
+    @Test
+    public void listTest() throws IOException {
+        Path dir = Files.createTempDirectory("abcfiles");
+        try {
+            assertEquals(0, AbcFiles.list(dir).size());
+            Files.createDirectories(dir.resolve("b/c"));
+            Files.write(dir.resolve("b/c/two.abc"), new byte[0]);
+            Files.write(dir.resolve("a.abc"), new byte[0]);
+            Files.write(dir.resolve("notes.txt"), new byte[0]);
+            Files.createDirectories(dir.resolve("d.abc"));
+            assertEquals(Arrays.asList(dir.resolve("a.abc"), dir.resolve("b/c/two.abc")), AbcFiles.list(dir));
+        } finally {
+            delete(dir.toFile());
+        }
+    }
+
+    @Test
+    public void expandTest() throws IOException {
+        Path dir = Files.createTempDirectory("abcfiles");
+        try {
+            Files.write(dir.resolve("a.abc"), new byte[0]);
+            Files.write(dir.resolve("b.txt"), new byte[0]);
+            List<Path> files = AbcFiles.expand(Arrays.asList(dir.resolve("b.txt").toString(), dir.toString()));
+            assertEquals(Arrays.asList(dir.resolve("b.txt"), dir.resolve("a.abc")), files);
+        } finally {
+            delete(dir.toFile());
+        }
+    }
+
+    @Test
+    public void invokeAllTest() {
+        final AtomicInteger runs = new AtomicInteger();
+        List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            AbcFiles.invokeAll(pool, tasks);
+            for (int i = 0; i < 10; i++) {
+                tasks.add(new RecursiveAction() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected void compute() {
+                        runs.incrementAndGet();
+                    }
+                });
+            }
+            AbcFiles.invokeAll(pool, tasks);
+            assertEquals(10, runs.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void newPoolTest() {
+        ForkJoinPool pool = AbcFiles.newPool(new String[]{"in", "3"}, 1);
+        assertEquals(3, pool.getParallelism());
+        pool.shutdown();
+        pool = AbcFiles.newPool(new String[]{"in"}, 1);
+        assertEquals(Runtime.getRuntime().availableProcessors(), pool.getParallelism());
+        pool.shutdown();
+    }
+}
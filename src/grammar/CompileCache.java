@@ -0,0 +1,358 @@
+package grammar;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+import player.Fraction;
+import player.Header;
+import player.KeySignature;
+import player.Song;
+import player.SongSequencerVisitor;
+import sound.EventBuffer;
+
+/**
+ * A cache of compiled tunes, keyed by the SHA-256 hash of their source, so that a tune
+ * that has been compiled before is not lexed, parsed or sequenced again. The compiler's version
+ * and the file layout's version are hashed with the source, so a tune compiled by an older
+ * compiler or kept in an older layout is never found, and is compiled again.
+ *
+ * The source is hashed exactly as it is given. Its line breaks are not normalized: the lexer
+ * keeps a '\r' at the end of a title, voice or lyric line in the text of the token, so the same
+ * tune with "\r\n" line breaks compiles to other lyrics than with "\n".
+ *
+ * A MappedCharStream is hashed straight from its bytes, along with the name of its charset, so
+ * a tune in a mapped file is never copied onto the heap as text to find it in the cache. Any
+ * other stream is hashed as its text in UTF-8. A tune is only lexed on a miss, or when the Song
+ * of a tune read from disk is first asked for.
+ *
+ * There are two tiers:
+ *      - memory: the last maxEntries tunes used, with their Songs, dropping the least recently used
+ *        tune when a new one comes in (an eviction);
+ *      - disk (optional): a file per tune in a directory, named after its hash, which outlives the
+ *        process. It keeps the header and the events of the tune, but not its Song.
+ * A tune found on disk is put back in memory with its input stream, from which its Song is compiled
+ * the first time it is asked for (see CompiledTune.getSong), so that playing it costs no parse.
+ *
+ * On disk, a tune takes:
+ *      int magic, int version, the header {int indexNumber, UTF title, UTF composer, UTF key,
+ *      int meter num, int meter den, int bpm, int tempo beat num, int tempo beat den,
+ *      int default length num, int default length den}, then the events {int beatsPerMinute,
+ *      int ticksPerBeat, int count, then count times {int tick, int duration, then int note for a
+ *      note (duration >= 0) or UTF text for a lyric (duration == -1)}}
+ *
+ * The cache counts the tunes found in memory, the tunes found on disk, the tunes compiled, and the
+ * tunes evicted from memory.
+ *
+ * Rep Invariant:
+ *      memory.size() <= maxEntries
+ *      every tune in memory or on disk is the compiled tune of the source whose hash is its key
+ */
+public class CompileCache {
+
+    /**
+     * Identifies a compiled tune file ("ABCC")
+     */
+    private static final int MAGIC = 0x41424343;
+
+    /**
+     * The version of the file layout
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The version of what the compiler makes of a tune. Raise it whenever a change to SongCompiler,
+     * SongListener or the sequencer changes the header or the events of any tune, so that the
+     * tunes kept on disk by the older compiler are not used.
+     *
+     * 2: the meter is kept as written (6/8 instead of 3/4)
+     */
+    static final int COMPILER_VERSION = 2;
+
+    /**
+     * The duration written for a lyric event
+     */
+    private static final int LYRIC = -1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final SongCompiler compiler;
+    private final int maxEntries;
+    private final Path directory;
+
+    /**
+     * The tunes in memory, from the least to the most recently used
+     */
+    private final LinkedHashMap<String, CompiledTune> memory;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param compiler the compiler for tunes that are not in the cache
+     * @param maxEntries the number of tunes kept in memory, at least 1
+     * @param directory the directory of the disk tier, created if needed, or null for none
+     * @throws IOException if the directory cannot be created
+     */
+    public CompileCache(SongCompiler compiler, final int maxEntries, Path directory) throws IOException {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("a cache needs room for at least one tune, not " + maxEntries);
+        this.compiler = compiler;
+        this.maxEntries = maxEntries;
+        this.directory = directory;
+        if (directory != null)
+            Files.createDirectories(directory);
+        this.memory = new LinkedHashMap<String, CompiledTune>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledTune> eldest) {
+                if (size() <= maxEntries)
+                    return false;
+                evictions.incrementAndGet();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Gives the compiled tune for a source, from memory, from disk, or by compiling it
+     * @param input the source of one tune, at its start. A tune read from disk keeps it to
+     *          compile its Song from, so it must not be changed afterwards
+     * @return the header and events of the tune, and its Song (compiled when it is first asked for,
+     *          if the tune was read from disk)
+     * @throws RuntimeException if the tune has to be compiled and is not valid abc
+     */
+    public CompiledTune compile(CharStream input) {
+        String key = key(input);
+        CompiledTune tune;
+        synchronized (memory) {
+            tune = memory.get(key);
+        }
+        if (tune != null) {
+            memoryHits.incrementAndGet();
+            return tune;
+        }
+        tune = readFromDisk(key, input);
+        if (tune != null) {
+            diskHits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            Song song = compiler.compile(input);
+            SongSequencerVisitor visitor = new SongSequencerVisitor();
+            song.accept(visitor);
+            tune = new CompiledTune(song.getHeader(), visitor.sequenceEvents(), song);
+            writeToDisk(key, tune);
+        }
+        synchronized (memory) {
+            memory.put(key, tune);
+        }
+        return tune;
+    }
+
+    /**
+     * @return the key of a source: the hash of the compiler's and the file layout's versions, the
+     *          name of the charset of the source, and its bytes. The bytes of a MappedCharStream
+     *          are read in place; any other stream is encoded in UTF-8
+     */
+    static String key(CharStream input) {
+        MessageDigest digest = sha256();
+        if (input instanceof MappedCharStream) {
+            MappedCharStream mapped = (MappedCharStream) input;
+            digest.update(versions(mapped.getCharset()));
+            digest.update(mapped.getBuffer());
+        } else {
+            digest.update(versions(UTF8));
+            digest.update(input.getText(Interval.of(0, input.size() - 1)).getBytes(UTF8));
+        }
+        return hex(digest.digest());
+    }
+
+    /**
+     * @return the key of a source held as text, as key(CharStream) gives it for a stream over the text
+     */
+    static String key(String source) {
+        MessageDigest digest = sha256();
+        digest.update(versions(UTF8));
+        digest.update(source.getBytes(UTF8));
+        return hex(digest.digest());
+    }
+
+    /**
+     * @return what is hashed before the bytes of a source in charset
+     */
+    private static byte[] versions(Charset charset) {
+        return (COMPILER_VERSION + "." + VERSION + " " + charset.name() + "\n").getBytes(UTF8);
+    }
+
+    /**
+     * @return the SHA-256 hash of the UTF-8 bytes of source, in hexadecimal
+     */
+    static String hash(String source) {
+        return hex(sha256().digest(source.getBytes(UTF8)));
+    }
+
+    /**
+     * @return a new SHA-256 digest
+     */
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has SHA-256
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * @return bytes in hexadecimal
+     */
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes)
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return hex.toString();
+    }
+
+    /**
+     * @param input the source of the tune, to compile its Song from if it is asked for
+     * @return the tune kept on disk under key, or null if there is none (or it cannot be read)
+     */
+    private CompiledTune readFromDisk(String key, CharStream input) {
+        if (directory == null)
+            return null;
+        Path file = directory.resolve(key + ".abcc");
+        if (!Files.exists(file))
+            return null;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                    return null;
+                Header header = new Header(in.readInt(), in.readUTF(), in.readUTF(), new KeySignature(in.readUTF()),
+                        in.readInt(), in.readInt(), in.readInt(), new Fraction(in.readInt(), in.readInt()),
+                        new Fraction(in.readInt(), in.readInt()));
+                EventBuffer events = new EventBuffer(in.readInt(), in.readInt());
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    int tick = in.readInt();
+                    int duration = in.readInt();
+                    if (duration == LYRIC)
+                        events.addLyricEvent(in.readUTF(), tick);
+                    else
+                        events.addNote(in.readInt(), tick, duration);
+                }
+                return new CompiledTune(header, events, input, compiler);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // a file that cannot be read is compiled again, and written over
+            return null;
+        }
+    }
+
+    /**
+     * Keeps a tune on disk under key. The file is written next to its final name and then moved,
+     * so another process never reads half a tune.
+     */
+    private void writeToDisk(String key, CompiledTune tune) {
+        if (directory == null)
+            return;
+        try {
+            Path temporary = Files.createTempFile(directory, key, ".tmp");
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)));
+            try {
+                Header header = tune.getHeader();
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(header.getIndexNumber());
+                out.writeUTF(header.getTitle());
+                out.writeUTF(header.getComposer());
+                out.writeUTF(header.getKeySignature().getKey());
+                out.writeInt(header.getMeterNumerator());
+                out.writeInt(header.getMeterDenominator());
+                out.writeInt(header.getBeatsPerMinute());
+                writeFraction(out, header.getTempoBeat());
+                writeFraction(out, header.getDefaultLength());
+                EventBuffer events = tune.getEvents();
+                out.writeInt(events.getBeatsPerMinute());
+                out.writeInt(events.getTicksPerBeat());
+                out.writeInt(events.size());
+                for (int i = 0; i < events.size(); i++) {
+                    out.writeInt(events.getTick(i));
+                    if (events.isLyric(i)) {
+                        out.writeInt(LYRIC);
+                        out.writeUTF(events.getLyric(i));
+                    } else {
+                        out.writeInt(events.getDuration(i));
+                        out.writeInt(events.getNote(i));
+                    }
+                }
+            } finally {
+                out.close();
+            }
+            Files.move(temporary, directory.resolve(key + ".abcc"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the tune is still compiled; it is just not kept on disk
+        }
+    }
+
+    private static void writeFraction(DataOutputStream out, Fraction fraction) throws IOException {
+        out.writeInt(fraction.getNumerator());
+        out.writeInt(fraction.getDenominator());
+    }
+
+    /**
+     * @return the number of tunes found in memory
+     */
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    /**
+     * @return the number of tunes found on disk
+     */
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    /**
+     * @return the number of tunes that had to be compiled
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of tunes dropped from memory to make room for others
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the number of tunes in memory
+     */
+    public int size() {
+        synchronized (memory) {
+            return memory.size();
+        }
+    }
+}
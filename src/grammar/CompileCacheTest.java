@@ -0,0 +1,205 @@
+package grammar;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.junit.Test;
+
+import player.Song;
+import sound.EventBuffer;
+
+/**
+ * Tests that a CompileCache gives the same tunes as compiling them, and counts where it found them
+ */
+public class CompileCacheTest {
+
+    /*
+     * Partition input space:
+     * - Tier: memory, disk, neither
+     * - Song: compiled with the tune, compiled when asked for after a disk hit
+     * - Source: same text, same text with other line breaks (\r\n, which the lexer keeps in the
+     *          lyrics), different text; sample files
+     * - Memory: room for every tune, room for one tune (evictions)
+     * - Stream: mapped (hashed from its bytes, in UTF-8 or ISO-8859-1), text
+     * - Disk file: written by another cache, not a compiled tune, kept under the key of an older
+     *              compiler
+     */
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String TUNE = "X:1\nT:Cached\nC:Someone\nL:1/8\nQ:1/4=120\nK:D\n[CE] (3ABc z2 |\nw: one two three four\n";
+    private static final String OTHER_TUNE = "X:2\nT:Other\nK:C\nC D E F |]\n";
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null)
+            for (File child : children)
+                delete(child);
+        file.delete();
+    }
+
+    private static void assertSameEvents(EventBuffer expected, EventBuffer actual) {
+        assertEquals(expected.getBeatsPerMinute(), actual.getBeatsPerMinute());
+        assertEquals(expected.getTicksPerBeat(), actual.getTicksPerBeat());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.isLyric(i), actual.isLyric(i));
+            assertEquals(expected.getTick(i), actual.getTick(i));
+            if (expected.isLyric(i)) {
+                assertEquals(expected.getLyric(i), actual.getLyric(i));
+            } else {
+                assertEquals(expected.getNote(i), actual.getNote(i));
+                assertEquals(expected.getDuration(i), actual.getDuration(i));
+            }
+        }
+    }
+
+    @Test
+    public void memoryTest() throws IOException {
+        CompileCache cache = new CompileCache(new SongCompiler(), 8, null);
+        CompiledTune tune = cache.compile(new ANTLRInputStream(TUNE));
+        assertEquals(new SongCompiler().compile(new ANTLRInputStream(TUNE)), tune.getSong());
+        assertEquals(tune.getSong().getHeader(), tune.getHeader());
+        assertSame(tune, cache.compile(new ANTLRInputStream(TUNE)));
+        assertNotSame(tune, cache.compile(new ANTLRInputStream(OTHER_TUNE)));
+        assertEquals(1, cache.getMemoryHits());
+        assertEquals(0, cache.getDiskHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getEvictions());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void evictionTest() throws IOException {
+        CompileCache cache = new CompileCache(new SongCompiler(), 1, null);
+        cache.compile(new ANTLRInputStream(TUNE));
+        cache.compile(new ANTLRInputStream(OTHER_TUNE));
+        // the first tune made room for the second, so it is compiled again
+        cache.compile(new ANTLRInputStream(TUNE));
+        assertEquals(0, cache.getMemoryHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(2, cache.getEvictions());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void diskTest() throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        try {
+            CompileCache first = new CompileCache(new SongCompiler(), 8, directory);
+            File[] files = new File("sample_abc").listFiles();
+            for (File file : files)
+                first.compile(MappedCharStream.open(file.toPath(), UTF8));
+            assertEquals(files.length, first.getMisses());
+
+            // a new cache, as after a restart, finds every tune on disk
+            CompileCache second = new CompileCache(new SongCompiler(), files.length, directory);
+            for (File file : files) {
+                CompiledTune expected = first.compile(MappedCharStream.open(file.toPath(), UTF8));
+                CompiledTune tune = second.compile(MappedCharStream.open(file.toPath(), UTF8));
+                assertEquals(file.getName(), expected.getHeader(), tune.getHeader());
+                assertEquals(file.getName(), expected.getHeader().toString(), tune.getHeader().toString());
+                assertSameEvents(expected.getEvents(), tune.getEvents());
+            }
+            assertEquals(files.length, second.getDiskHits());
+            assertEquals(0, second.getMisses());
+
+            // the Song is compiled when it is asked for, once, and stays with the tune in memory
+            for (File file : files) {
+                CompiledTune tune = second.compile(MappedCharStream.open(file.toPath(), UTF8));
+                Song song = tune.getSong();
+                assertEquals(file.getName(), first.compile(MappedCharStream.open(file.toPath(), UTF8)).getSong(), song);
+                assertSame(song, second.compile(MappedCharStream.open(file.toPath(), UTF8)).getSong());
+            }
+            assertEquals(files.length, second.getDiskHits());
+            assertEquals(0, second.getMisses());
+        } finally {
+            delete(directory.toFile());
+        }
+    }
+
+    @Test
+    public void unreadableFileTest() throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        try {
+            String key = CompileCache.key(TUNE);
+            Files.write(directory.resolve(key + ".abcc"), "not a compiled tune".getBytes(UTF8));
+            CompileCache cache = new CompileCache(new SongCompiler(), 8, directory);
+            // the file is compiled over
+            assertNotNull(cache.compile(new ANTLRInputStream(TUNE)).getSong());
+            assertEquals(1, cache.getMisses());
+            CompileCache restarted = new CompileCache(new SongCompiler(), 8, directory);
+            assertEquals(new SongCompiler().compile(new ANTLRInputStream(TUNE)),
+                    restarted.compile(new ANTLRInputStream(TUNE)).getSong());
+            assertEquals(1, restarted.getDiskHits());
+        } finally {
+            delete(directory.toFile());
+        }
+    }
+
+    @Test
+    public void sequenceEventsTest() throws IOException {
+        // the events kept are the ones that sequencing the Song schedules
+        CompiledTune tune = new CompileCache(new SongCompiler(), 8, null).compile(new ANTLRInputStream(TUNE));
+        assertSameEvents(new SongCompiler().compileEvents(new ANTLRInputStream(TUNE)), tune.getEvents());
+    }
+
+    @Test
+    public void olderCompilerTest() throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        try {
+            new CompileCache(new SongCompiler(), 8, directory).compile(new ANTLRInputStream(TUNE));
+            // the same tune, as a compiler that did not hash its version kept it
+            Files.move(directory.resolve(CompileCache.key(TUNE) + ".abcc"),
+                    directory.resolve(CompileCache.hash(TUNE) + ".abcc"));
+            CompileCache restarted = new CompileCache(new SongCompiler(), 8, directory);
+            assertNotNull(restarted.compile(new ANTLRInputStream(TUNE)).getSong());
+            assertEquals(0, restarted.getDiskHits());
+            assertEquals(1, restarted.getMisses());
+        } finally {
+            delete(directory.toFile());
+        }
+    }
+
+    @Test
+    public void lineBreaksTest() throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        try {
+            String crlf = TUNE.replace("\n", "\r\n");
+            CompileCache cache = new CompileCache(new SongCompiler(), 8, directory);
+            CompiledTune lf = cache.compile(new ANTLRInputStream(TUNE));
+            // the "\r" is kept at the end of the lyric line, so the tune is compiled again
+            CompiledTune windows = cache.compile(new ANTLRInputStream(crlf));
+            assertNotSame(lf, windows);
+            assertEquals(2, cache.getMisses());
+            assertSameEvents(new SongCompiler().compileEvents(new ANTLRInputStream(TUNE)), lf.getEvents());
+            assertSameEvents(new SongCompiler().compileEvents(new ANTLRInputStream(crlf)), windows.getEvents());
+
+            // and each is found on disk under its own key
+            CompileCache restarted = new CompileCache(new SongCompiler(), 8, directory);
+            assertSameEvents(windows.getEvents(), restarted.compile(new ANTLRInputStream(crlf)).getEvents());
+            assertSameEvents(lf.getEvents(), restarted.compile(new ANTLRInputStream(TUNE)).getEvents());
+            assertEquals(2, restarted.getDiskHits());
+        } finally {
+            delete(directory.toFile());
+        }
+    }
+
+    @Test
+    public void mappedKeyTest() {
+        ByteBuffer bytes = ByteBuffer.wrap(TUNE.getBytes(UTF8));
+        // the bytes of a mapped stream are hashed as the text of any other stream is
+        assertEquals(CompileCache.key(TUNE), CompileCache.key(new MappedCharStream(bytes, UTF8, "tune.abc")));
+        assertEquals(CompileCache.key(TUNE), CompileCache.key(new ANTLRInputStream(TUNE)));
+        // but the same bytes in another charset may be another tune
+        assertFalse(CompileCache.key(TUNE).equals(
+                CompileCache.key(new MappedCharStream(bytes, Charset.forName("ISO-8859-1"), "tune.abc"))));
+    }
+}
@@ -0,0 +1,91 @@
+package grammar;
+
+import org.antlr.v4.runtime.CharStream;
+
+import player.Header;
+import player.Song;
+import sound.EventBuffer;
+
+/**
+ * What compiling a tune gives: its header, the events that play it, and the Song itself.
+ *
+ * The disk tier of a CompileCache keeps only what is needed to play a tune again (the header and
+ * the events), so a tune read back from disk keeps its input stream instead, and compiles its
+ * Song from it the first time the Song is asked for. The stream (usually a MappedCharStream) is
+ * kept as it is, so no text of the tune is made unless its Song is.
+ *
+ * This class is immutable, as long as its events are not added to: a Song compiled late is the
+ * Song the tune would have had.
+ *
+ * Rep invariant:
+ *      song != null || (input != null && compiler != null), unless the Song was not kept
+ */
+public class CompiledTune {
+
+    private final Header header;
+    private final EventBuffer events;
+
+    /**
+     * The tune, or null until it is compiled from input; then input is dropped
+     */
+    private Song song;
+    private CharStream input;
+    private final SongCompiler compiler;
+
+    /**
+     * @param header the header of the tune
+     * @param events the timed notes and lyrics of the tune
+     * @param song the tune, or null if it was not kept
+     */
+    public CompiledTune(Header header, EventBuffer events, Song song) {
+        this.header = header;
+        this.events = events;
+        this.song = song;
+        this.input = null;
+        this.compiler = null;
+    }
+
+    /**
+     * Makes a tune whose Song is compiled from its input when it is first asked for
+     * @param header the header of the tune
+     * @param events the timed notes and lyrics of the tune
+     * @param input the source of the tune, which compiles to header and events; it must not be
+     *          changed afterwards
+     * @param compiler the compiler to compile input with
+     */
+    CompiledTune(Header header, EventBuffer events, CharStream input, SongCompiler compiler) {
+        this.header = header;
+        this.events = events;
+        this.song = null;
+        this.input = input;
+        this.compiler = compiler;
+    }
+
+    /**
+     * @return the header of the tune
+     */
+    public Header getHeader() {
+        return header;
+    }
+
+    /**
+     * @return the timed notes and lyrics of the tune, in the order SongSequencerVisitor schedules them
+     */
+    public EventBuffer getEvents() {
+        return events;
+    }
+
+    /**
+     * @return the tune, compiled again from its input if it was read back from disk; or null if
+     *          it was made without a Song, and without an input to compile it from
+     * @throws RuntimeException if the Song has to be compiled and the input is not valid abc
+     */
+    public synchronized Song getSong() {
+        if (song == null && input != null) {
+            input.seek(0);
+            song = compiler.compile(input);
+            input = null;
+        }
+        return song;
+    }
+}
@@ -0,0 +1,313 @@
+package grammar;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.ATNConfigSet;
+import org.antlr.v4.runtime.atn.ParserATNSimulator;
+import org.antlr.v4.runtime.atn.PredictionContextCache;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.dfa.DFAState;
+
+/**
+ * Profiles the decisions that ABCMusicParser makes while parsing a corpus of tunes, to find the
+ * spots of the grammar that cost the most to predict.
+ *
+ * ANTLR 4.0 has no profiler of its own, so the parser is given a ParserATNSimulator that measures
+ * each call to adaptivePredict. For each decision (a point in a rule where the parser chooses
+ * between alternatives, or whether to loop again) it counts:
+ *      - invocations, and the time spent predicting;
+ *      - SLL lookahead: how many tokens the parser looked at, from the token where the decision
+ *        starts, before it chose an alternative (or gave up on SLL);
+ *      - LL fallbacks: how often SLL found a conflict and full-context (LL) prediction had to run,
+ *        and how many tokens LL looked at;
+ *      - ambiguities: how often LL found that more than one alternative matches the input.
+ * In SLL mode there is never an LL fallback. Decisions that the generated parser settles with a
+ * switch on the next token never call adaptivePredict, so they cost nothing to predict and are left
+ * out of the report.
+ *
+ * The profiler has a DFA cache of its own, which starts empty and warms up over the corpus as the
+ * parser's shared cache would, so that a report does not depend on what was parsed before it.
+ *
+ * Rep invariant:
+ *      every array has one entry per decision of the grammar
+ *      maxSllLookahead[d] <= sllLookahead[d], maxLlLookahead[d] <= llLookahead[d]
+ *      llFallbacks[d] <= invocations[d]
+ */
+public class DecisionProfiler {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The grammar's decisions, and the DFA cache the profiled parsers share
+     */
+    private final ATN atn = ABCMusicParser._ATN;
+    private final DFA[] decisionToDFA;
+    private final PredictionContextCache contextCache = new PredictionContextCache();
+
+    /**
+     * The prediction mode of the profiled parsers
+     */
+    private final PredictionMode mode;
+
+    /**
+     * What has been measured for decision d
+     */
+    private final long[] invocations;
+    private final long[] nanos;
+    private final long[] sllLookahead;
+    private final int[] maxSllLookahead;
+    private final long[] llFallbacks;
+    private final long[] llLookahead;
+    private final int[] maxLlLookahead;
+    private final long[] ambiguities;
+
+    /**
+     * The number of tunes profiled
+     */
+    private int tunes = 0;
+
+    /**
+     * @param mode the prediction mode to parse with (PredictionMode.LL, as SongCompiler's LL mode
+     *          does, or PredictionMode.SLL)
+     */
+    public DecisionProfiler(PredictionMode mode) {
+        this.mode = mode;
+        int decisions = atn.getNumberOfDecisions();
+        decisionToDFA = new DFA[decisions];
+        for (int d = 0; d < decisions; d++)
+            decisionToDFA[d] = new DFA(atn.getDecisionState(d), d);
+        invocations = new long[decisions];
+        nanos = new long[decisions];
+        sllLookahead = new long[decisions];
+        maxSllLookahead = new int[decisions];
+        llFallbacks = new long[decisions];
+        llLookahead = new long[decisions];
+        maxLlLookahead = new int[decisions];
+        ambiguities = new long[decisions];
+    }
+
+    /**
+     * A ParserATNSimulator that measures every prediction it makes
+     */
+    private class ProfilingATNSimulator extends ParserATNSimulator {
+
+        /**
+         * The lookahead of the prediction being made, in tokens from its start
+         */
+        private int sllDepth;
+        private int llDepth;
+        private boolean fullContext;
+
+        ProfilingATNSimulator(ABCMusicParser parser, DFA[] decisionToDFA, PredictionContextCache contextCache) {
+            super(parser, parser.getATN(), decisionToDFA, contextCache);
+        }
+
+        @Override
+        public int adaptivePredict(TokenStream input, int decision, ParserRuleContext outerContext) {
+            sllDepth = 0;
+            llDepth = 0;
+            fullContext = false;
+            long start = System.nanoTime();
+            try {
+                return super.adaptivePredict(input, decision, outerContext);
+            } finally {
+                nanos[decision] += System.nanoTime() - start;
+                invocations[decision]++;
+                sllLookahead[decision] += sllDepth;
+                maxSllLookahead[decision] = Math.max(maxSllLookahead[decision], sllDepth);
+                if (fullContext) {
+                    llFallbacks[decision]++;
+                    llLookahead[decision] += llDepth;
+                    maxLlLookahead[decision] = Math.max(maxLlLookahead[decision], llDepth);
+                }
+            }
+        }
+
+        @Override
+        public int execDFA(DFA dfa, DFAState s0, TokenStream input, int startIndex, ParserRuleContext outerContext) {
+            int alt = super.execDFA(dfa, s0, input, startIndex, outerContext);
+            if (!fullContext)
+                sllDepth = Math.max(sllDepth, input.index() - startIndex + 1);
+            return alt;
+        }
+
+        @Override
+        public int execATN(DFA dfa, DFAState s0, TokenStream input, int startIndex, ParserRuleContext outerContext) {
+            int alt = super.execATN(dfa, s0, input, startIndex, outerContext);
+            if (!fullContext)
+                sllDepth = Math.max(sllDepth, input.index() - startIndex + 1);
+            return alt;
+        }
+
+        @Override
+        public void reportAttemptingFullContext(DFA dfa, ATNConfigSet configs, int startIndex, int stopIndex) {
+            // SLL stopped at the conflict; everything after this is LL
+            sllDepth = Math.max(sllDepth, stopIndex - startIndex + 1);
+            fullContext = true;
+            super.reportAttemptingFullContext(dfa, configs, startIndex, stopIndex);
+        }
+
+        @Override
+        public int execATNWithFullContext(DFA dfa, DFAState D, ATNConfigSet s0, TokenStream input, int startIndex,
+                ParserRuleContext outerContext, int SLL_min_alt) {
+            int alt = super.execATNWithFullContext(dfa, D, s0, input, startIndex, outerContext, SLL_min_alt);
+            llDepth = Math.max(llDepth, input.index() - startIndex + 1);
+            return alt;
+        }
+
+        @Override
+        public void reportAmbiguity(DFA dfa, DFAState D, int startIndex, int stopIndex, BitSet ambigAlts, ATNConfigSet configs) {
+            ambiguities[dfa.decision]++;
+            super.reportAmbiguity(dfa, D, startIndex, stopIndex, ambigAlts, configs);
+        }
+    }
+
+    /**
+     * Parses one tune, measuring every decision made
+     * @param input the text of the tune
+     * @throws RuntimeException if the input is not a valid abc tune
+     */
+    public void profile(CharStream input) {
+        ABCMusicParser parser = new ABCMusicParser(new CommonTokenStream(new SongCompiler().newLexer(input)));
+        parser.reportErrorsAsExceptions();
+        parser.setBuildParseTree(false);
+        parser.setInterpreter(new ProfilingATNSimulator(parser, decisionToDFA, contextCache));
+        parser.getInterpreter().setPredictionMode(mode);
+        parser.abc_tune();
+        tunes++;
+    }
+
+    /**
+     * @return the number of decisions in the grammar
+     */
+    public int getNumberOfDecisions() {
+        return invocations.length;
+    }
+
+    /**
+     * @param decision a decision, 0 <= decision < getNumberOfDecisions()
+     * @return the name of the rule the decision is in
+     */
+    public String getRuleName(int decision) {
+        return ABCMusicParser.ruleNames[atn.getDecisionState(decision).ruleIndex];
+    }
+
+    /**
+     * @return the number of times the decision was predicted
+     */
+    public long getInvocations(int decision) {
+        return invocations[decision];
+    }
+
+    /**
+     * @return the time spent predicting the decision, in nanoseconds
+     */
+    public long getNanos(int decision) {
+        return nanos[decision];
+    }
+
+    /**
+     * @return the number of tokens SLL prediction looked at, over every prediction of the decision
+     */
+    public long getSllLookahead(int decision) {
+        return sllLookahead[decision];
+    }
+
+    /**
+     * @return the most tokens SLL prediction looked at in one prediction of the decision
+     */
+    public int getMaxSllLookahead(int decision) {
+        return maxSllLookahead[decision];
+    }
+
+    /**
+     * @return the number of predictions of the decision that fell back on LL
+     */
+    public long getLlFallbacks(int decision) {
+        return llFallbacks[decision];
+    }
+
+    /**
+     * @return the number of tokens LL prediction looked at, over every LL fallback of the decision
+     */
+    public long getLlLookahead(int decision) {
+        return llLookahead[decision];
+    }
+
+    /**
+     * @return the most tokens LL prediction looked at in one prediction of the decision
+     */
+    public int getMaxLlLookahead(int decision) {
+        return maxLlLookahead[decision];
+    }
+
+    /**
+     * @return the number of ambiguities LL prediction found at the decision
+     */
+    public long getAmbiguities(int decision) {
+        return ambiguities[decision];
+    }
+
+    /**
+     * @return a table of every decision that was predicted, from the one that took the most
+     *          time to the one that took the least
+     */
+    public String report() {
+        List<Integer> decisions = new ArrayList<Integer>();
+        for (int d = 0; d < getNumberOfDecisions(); d++)
+            if (invocations[d] > 0)
+                decisions.add(d);
+        Collections.sort(decisions, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                if (nanos[a] != nanos[b])
+                    return (nanos[a] > nanos[b]) ? -1 : 1;
+                return a.compareTo(b);
+            }
+        });
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%d tunes, %s prediction%n", tunes, mode));
+        report.append(String.format("%8s %-16s %10s %10s %8s %8s %9s %8s %8s %6s%n", "decision", "rule", "calls",
+                "time(us)", "SLL avg", "SLL max", "LL calls", "LL avg", "LL max", "ambig"));
+        for (int d : decisions) {
+            report.append(String.format("%8d %-16s %10d %10d %8.2f %8d %9d %8.2f %8d %6d%n", d, getRuleName(d),
+                    invocations[d], nanos[d] / 1000, sllLookahead[d] * 1.0 / invocations[d], maxSllLookahead[d],
+                    llFallbacks[d], (llFallbacks[d] == 0) ? 0.0 : llLookahead[d] * 1.0 / llFallbacks[d],
+                    maxLlLookahead[d], ambiguities[d]));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Profiles the decisions made parsing a corpus, and prints the report.
+     * @param args "-sll" to predict in SLL mode (LL by default), then the .abc files, and
+     *          directory trees of .abc files (see AbcFiles.expand), to parse, in UTF-8
+     */
+    public static void main(String[] args) throws IOException {
+        PredictionMode mode = PredictionMode.LL;
+        List<String> paths = new ArrayList<String>();
+        for (String arg : args) {
+            if (arg.equals("-sll"))
+                mode = PredictionMode.SLL;
+            else
+                paths.add(arg);
+        }
+        DecisionProfiler profiler = new DecisionProfiler(mode);
+        for (Path file : AbcFiles.expand(paths))
+            profiler.profile(MappedCharStream.open(file, UTF8));
+        System.out.print(profiler.report());
+    }
+}
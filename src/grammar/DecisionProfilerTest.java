@@ -0,0 +1,109 @@
+package grammar;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.junit.Test;
+
+/**
+ * Tests that a DecisionProfiler measures every prediction the parser makes, and reports them
+ */
+public class DecisionProfilerTest {
+
+    /*
+     * Partition input space:
+     * - Prediction: LL, SLL
+     * - Corpus: sample files, one generated tune of many lines, a tune with a syntax error
+     * - Decision: never predicted, predicted in SLL only, fell back on LL
+     */
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String LINE = "|: A B c d e f g a :| [ce] (3Bcd z2 [1 e4 :|[2 f4 |\n";
+
+    private static DecisionProfiler profileSampleFiles(PredictionMode mode) throws IOException {
+        DecisionProfiler profiler = new DecisionProfiler(mode);
+        for (File file : new File("sample_abc").listFiles())
+            profiler.profile(MappedCharStream.open(file.toPath(), UTF8));
+        return profiler;
+    }
+
+    private static String generatedTune(int lines) {
+        StringBuilder tune = new StringBuilder("X:1\nT:Generated\nL:1/8\nK:D\n");
+        for (int i = 0; i < lines; i++)
+            tune.append(LINE);
+        return tune.toString();
+    }
+
+    @Test
+    public void sampleFilesTest() throws IOException {
+        for (PredictionMode mode : new PredictionMode[] { PredictionMode.LL, PredictionMode.SLL }) {
+            DecisionProfiler profiler = profileSampleFiles(mode);
+            long invocations = 0;
+            for (int d = 0; d < profiler.getNumberOfDecisions(); d++) {
+                invocations += profiler.getInvocations(d);
+                if (profiler.getInvocations(d) == 0) {
+                    assertEquals(0, profiler.getSllLookahead(d));
+                    assertEquals(0, profiler.getNanos(d));
+                } else {
+                    // every prediction looks at one token at least
+                    assertTrue(profiler.getSllLookahead(d) >= profiler.getInvocations(d));
+                    assertTrue(profiler.getMaxSllLookahead(d) >= 1);
+                    assertTrue(profiler.getMaxSllLookahead(d) * profiler.getInvocations(d) >= profiler.getSllLookahead(d));
+                }
+                assertTrue(profiler.getLlFallbacks(d) <= profiler.getInvocations(d));
+                assertTrue(profiler.getMaxLlLookahead(d) * profiler.getLlFallbacks(d) >= profiler.getLlLookahead(d));
+                if (mode == PredictionMode.SLL)
+                    assertEquals(0, profiler.getLlFallbacks(d));
+            }
+            assertTrue(invocations > 0);
+        }
+    }
+
+    @Test
+    public void sameCountsTest() throws IOException {
+        // both modes make the same predictions, they only differ in how
+        DecisionProfiler ll = profileSampleFiles(PredictionMode.LL);
+        DecisionProfiler sll = profileSampleFiles(PredictionMode.SLL);
+        for (int d = 0; d < ll.getNumberOfDecisions(); d++)
+            assertEquals(ll.getRuleName(d), ll.getInvocations(d), sll.getInvocations(d));
+    }
+
+    @Test
+    public void fallbackTest() {
+        DecisionProfiler profiler = new DecisionProfiler(PredictionMode.LL);
+        profiler.profile(new ANTLRInputStream(generatedTune(100)));
+        long fallbacks = 0;
+        for (int d = 0; d < profiler.getNumberOfDecisions(); d++) {
+            if (profiler.getLlFallbacks(d) > 0)
+                assertEquals("abc_line", profiler.getRuleName(d));
+            fallbacks += profiler.getLlFallbacks(d);
+        }
+        // the lines of music are where LL prediction is needed
+        assertTrue(fallbacks >= 100);
+    }
+
+    @Test
+    public void reportTest() throws IOException {
+        String[] lines = profileSampleFiles(PredictionMode.LL).report().split("\\r?\\n");
+        assertTrue(lines[0].startsWith(new File("sample_abc").listFiles().length + " tunes"));
+        assertTrue(lines.length > 2);
+        long previous = Long.MAX_VALUE;
+        for (int i = 2; i < lines.length; i++) {
+            // sorted by time, most first
+            long time = Long.parseLong(lines[i].trim().split(" +")[3]);
+            assertTrue(lines[i], time <= previous);
+            previous = time;
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void syntaxErrorTest() {
+        new DecisionProfiler(PredictionMode.LL).profile(new ANTLRInputStream("X:1\nK:C\nC D|\n"));
+    }
+}
@@ -0,0 +1,103 @@
+package grammar;
+
+/**
+ * One problem found while linting an abc file: where it is, the text it is about, and what is
+ * wrong with it.
+ *
+ * This class is immutable
+ */
+public class Diagnostic {
+
+    /**
+     * The file the problem is in
+     */
+    private final String sourceName;
+
+    /**
+     * The line (starting at 1) and column (starting at 0) of the problem in the file
+     */
+    private final int line;
+    private final int column;
+
+    /**
+     * The text of the offending token, or "" at the end of the input
+     */
+    private final String token;
+
+    /**
+     * What is wrong, as reported by ANTLR
+     */
+    private final String message;
+
+    /**
+     * @param sourceName the file the problem is in
+     * @param line the line of the problem, starting at 1
+     * @param column the column of the problem, starting at 0
+     * @param token the text of the offending token
+     * @param message what is wrong
+     */
+    public Diagnostic(String sourceName, int line, int column, String token, String message) {
+        this.sourceName = sourceName;
+        this.line = line;
+        this.column = column;
+        this.token = token;
+        this.message = message;
+    }
+
+    /**
+     * @return the file the problem is in
+     */
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    /**
+     * @return the line of the problem, starting at 1
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * @return the column of the problem, starting at 0
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * @return the text of the offending token
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * @return what is wrong
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return the diagnostic as file:line:column: message
+     */
+    @Override
+    public String toString() {
+        return sourceName + ":" + line + ":" + column + ": " + message;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Diagnostic))
+            return false;
+        Diagnostic that = (Diagnostic) obj;
+        return sourceName.equals(that.sourceName) && line == that.line && column == that.column
+                && token.equals(that.token) && message.equals(that.message);
+    }
+
+    @Override
+    public int hashCode() {
+        return ((sourceName.hashCode() * 31 + line) * 31 + column) * 31 + message.hashCode();
+    }
+}
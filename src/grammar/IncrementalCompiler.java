@@ -0,0 +1,212 @@
+package grammar;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+
+import player.Song;
+
+/**
+ * Compiles successive versions of one tune (for example, as it is typed in an editor), lexing
+ * and parsing again only the lines that changed since the previous version.
+ *
+ * The text of a tune is cut into chunks: the header (up to its "K:" line), then one chunk per
+ * line of music or "V:" line. Lines that cannot start an abc_line on their own (lyric lines,
+ * blank lines, comments) stay in the chunk before them. Since no token crosses a line, and every
+ * abc_line ends where a new chunk starts, parsing each chunk on its own gives the same subtrees
+ * as parsing the whole tune. The subtrees of unchanged chunks are kept from the previous version.
+ *
+ * Repeats, lyrics and voices all reach across lines, so the bars of the Song are not patched in
+ * place. Instead the SongListener walks a parse tree stitched together from the kept and the new
+ * subtrees, which is much cheaper than lexing and parsing the whole tune again.
+ *
+ * If a chunk does not parse, the whole tune is compiled the ordinary way, so that errors are
+ * reported exactly as SongCompiler reports them.
+ *
+ * This class is not thread safe: use one instance per tune being edited.
+ */
+public class IncrementalCompiler {
+
+    /**
+     * Compiles the whole tune when a chunk does not parse
+     */
+    private final SongCompiler compiler = new SongCompiler();
+
+    /**
+     * The text and subtree of the previous version's header, or null if there is none
+     */
+    private String headerText = null;
+    private ABCMusicParser.Abc_headerContext header = null;
+
+    /**
+     * The abc_line subtrees of each chunk of music in the previous version, by the chunk's text
+     */
+    private Map<String, List<ABCMusicParser.Abc_lineContext>> lines = new HashMap<String, List<ABCMusicParser.Abc_lineContext>>();
+
+    /**
+     * The number of chunks parsed, and the number kept from the previous version, by the last compile
+     */
+    private int parsedChunks = 0;
+    private int reusedChunks = 0;
+
+    /**
+     * Compiles the next version of the tune
+     * @param text the whole text of the tune - must contain exactly one tune
+     * @return the Song described by the text
+     * @throws RuntimeException if the text is not a valid abc tune
+     */
+    public Song compile(String text) {
+        parsedChunks = 0;
+        reusedChunks = 0;
+        List<String> chunks = chunks(text);
+        if (chunks.size() < 2)
+            return compileWhole(text);
+
+        ABCMusicParser.Abc_tuneContext tune = new ABCMusicParser.Abc_tuneContext(null, -1);
+        ABCMusicParser.Abc_musicContext music = new ABCMusicParser.Abc_musicContext(tune, -1);
+        Map<String, List<ABCMusicParser.Abc_lineContext>> newLines = new HashMap<String, List<ABCMusicParser.Abc_lineContext>>();
+        try {
+            if (!chunks.get(0).equals(headerText)) {
+                ABCMusicParser parser = parserFor(chunks.get(0));
+                header = parser.abc_header();
+                headerText = chunks.get(0);
+                requireEOF(parser);
+                parsedChunks++;
+            } else {
+                reusedChunks++;
+            }
+            for (String chunk : chunks.subList(1, chunks.size())) {
+                List<ABCMusicParser.Abc_lineContext> chunkLines = newLines.get(chunk);
+                if (chunkLines == null)
+                    chunkLines = lines.get(chunk);
+                if (chunkLines == null) {
+                    ABCMusicParser parser = parserFor(chunk);
+                    chunkLines = parser.abc_music().abc_line();
+                    requireEOF(parser);
+                    parsedChunks++;
+                } else {
+                    reusedChunks++;
+                }
+                newLines.put(chunk, chunkLines);
+                for (ABCMusicParser.Abc_lineContext line : chunkLines)
+                    music.addChild(line);
+            }
+        } catch (RuntimeException e) {
+            headerText = null;
+            header = null;
+            lines = new HashMap<String, List<ABCMusicParser.Abc_lineContext>>();
+            return compileWhole(text);
+        }
+        lines = newLines;
+
+        tune.addChild(header);
+        tune.addChild(music);
+        SongListener listener = new SongListener();
+        new ParseTreeWalker().walk(listener, tune);
+        return listener.getSong();
+    }
+
+    /**
+     * @return the number of chunks lexed and parsed by the last compile
+     */
+    public int getParsedChunks() {
+        return parsedChunks;
+    }
+
+    /**
+     * @return the number of chunks kept from the previous version by the last compile
+     */
+    public int getReusedChunks() {
+        return reusedChunks;
+    }
+
+    /**
+     * Compiles the whole text at once
+     */
+    private Song compileWhole(String text) {
+        parsedChunks = 1;
+        return compiler.compile(new ANTLRInputStream(text));
+    }
+
+    /**
+     * @return a parser over the text, set up to throw a RuntimeException on invalid input
+     */
+    private static ABCMusicParser parserFor(String text) {
+        ABCMusicLexer lexer = new ABCMusicLexer(new ANTLRInputStream(text));
+        lexer.reportErrorsAsExceptions();
+        ABCMusicParser parser = new ABCMusicParser(new CommonTokenStream(lexer));
+        parser.reportErrorsAsExceptions();
+        return parser;
+    }
+
+    /**
+     * @throws RuntimeException if the parser stopped before the end of its input
+     */
+    private static void requireEOF(ABCMusicParser parser) {
+        if (parser.getCurrentToken().getType() != Token.EOF)
+            throw new RuntimeException("extraneous input '" + parser.getCurrentToken().getText() + "'");
+    }
+
+    /**
+     * Cuts the text of a tune into chunks
+     * @param text the text of a tune
+     * @return the header (up to the end of its "K:" line), followed by one chunk for each line
+     *          that starts an abc_line, each with the lines that cannot start one attached.
+     *          The chunks put together are the whole text. If there is no "K:" line, the only
+     *          chunk is the whole text.
+     */
+    static List<String> chunks(String text) {
+        List<String> chunks = new ArrayList<String>();
+        int chunkStart = 0;
+        boolean inHeader = true;
+        int lineStart = 0;
+        while (lineStart < text.length()) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            lineEnd = (lineEnd == -1) ? text.length() : lineEnd + 1;
+            String line = text.substring(lineStart, lineEnd);
+            if (inHeader) {
+                if (startsWithField(line, "K:")) {
+                    inHeader = false;
+                    // the header goes on until the first line of music
+                }
+            } else if (startsAbcLine(line) && lineStart > chunkStart) {
+                chunks.add(text.substring(chunkStart, lineStart));
+                chunkStart = lineStart;
+            }
+            lineStart = lineEnd;
+        }
+        chunks.add(text.substring(chunkStart));
+        return chunks;
+    }
+
+    /**
+     * @return true if the first thing on the line, after any spaces, is the given field
+     */
+    private static boolean startsWithField(String line, String field) {
+        int i = 0;
+        while (i < line.length() && line.charAt(i) == ' ')
+            i++;
+        return line.startsWith(field, i);
+    }
+
+    /**
+     * @return true if the line starts with an element or a voice field, so that it starts a new
+     *          abc_line; false if it is blank, a comment or a lyric line
+     */
+    private static boolean startsAbcLine(String line) {
+        int i = 0;
+        while (i < line.length() && line.charAt(i) == ' ')
+            i++;
+        if (i == line.length())
+            return false;
+        char c = line.charAt(i);
+        return c != '\t' && c != '\r' && c != '\n' && c != '%' && !line.startsWith("w:", i);
+    }
+}
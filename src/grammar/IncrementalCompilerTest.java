@@ -0,0 +1,112 @@
+package grammar;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.junit.Test;
+
+import player.Song;
+
+/**
+ * Tests that compiling a tune incrementally builds the same Song as compiling it from scratch
+ */
+public class IncrementalCompilerTest {
+
+    /*
+     * Partition input space:
+     * - Chunks: header only, header and music; lyric, comment and blank lines after a line of music
+     * - Edit: none, in a line of music, in the header, adding a line, removing a line
+     * - Input: valid, invalid after an edit, valid again
+     */
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static Song compileWhole(String text) {
+        return new SongCompiler().compile(new ANTLRInputStream(text));
+    }
+
+    private static String read(String name) throws IOException {
+        return new String(Files.readAllBytes(new File("sample_abc", name).toPath()), UTF8);
+    }
+
+    @Test
+    public void chunksTest() {
+        List<String> chunks = IncrementalCompiler.chunks("X:1\nT:t\nK:C\n\nC D|\nw:a b\n% note\n\nE F|\nV:1\n G|");
+        assertEquals(5, chunks.size());
+        assertEquals("X:1\nT:t\nK:C\n\n", chunks.get(0));
+        assertEquals("C D|\nw:a b\n% note\n\n", chunks.get(1));
+        assertEquals("E F|\n", chunks.get(2));
+        assertEquals("V:1\n", chunks.get(3));
+        assertEquals(" G|", chunks.get(4));
+
+        assertEquals(1, IncrementalCompiler.chunks("X:1\nT:t\nC D|\n").size());
+    }
+
+    @Test
+    public void sampleFilesTest() throws IOException {
+        for (File file : new File("sample_abc").listFiles()) {
+            String text = read(file.getName());
+            IncrementalCompiler compiler = new IncrementalCompiler();
+            assertEquals(file.getName(), compileWhole(text), compiler.compile(text));
+            // nothing changed, so nothing is parsed again
+            assertEquals(file.getName(), compileWhole(text), compiler.compile(text));
+            assertEquals(file.getName(), 0, compiler.getParsedChunks());
+        }
+    }
+
+    @Test
+    public void editNoteTest() throws IOException {
+        String text = read("fur_elise.abc");
+        IncrementalCompiler compiler = new IncrementalCompiler();
+        compiler.compile(text);
+        String edited = text.replaceFirst("e\\^d\\|e\\^deB=dc", "e^d|e^deB=dB");
+        assertFalse(text.equals(edited));
+        assertEquals(compileWhole(edited), compiler.compile(edited));
+        assertEquals(1, compiler.getParsedChunks());
+        assertTrue(compiler.getReusedChunks() > 40);
+    }
+
+    @Test
+    public void editHeaderAndLinesTest() {
+        IncrementalCompiler compiler = new IncrementalCompiler();
+        String text = "X:1\nT:t\nK:C\n|:C D E F|\nw:a b c d\nG A B c:|\n";
+        assertEquals(compileWhole(text), compiler.compile(text));
+
+        String newHeader = text.replace("K:C", "K:G");
+        assertEquals(compileWhole(newHeader), compiler.compile(newHeader));
+        assertEquals(1, compiler.getParsedChunks());
+
+        String newLine = newHeader.replace("G A B c:|\n", "G A B c|\nc B A G:|\n");
+        assertEquals(compileWhole(newLine), compiler.compile(newLine));
+        assertEquals(2, compiler.getParsedChunks());
+
+        String removedLine = newLine.replace("|:C D E F|\nw:a b c d\n", "|:");
+        assertEquals(compileWhole(removedLine), compiler.compile(removedLine));
+    }
+
+    @Test
+    public void invalidEditTest() {
+        IncrementalCompiler compiler = new IncrementalCompiler();
+        String text = "X:1\nT:t\nK:C\nC D E F|\nG A B c|\n";
+        compiler.compile(text);
+        try {
+            compiler.compile(text.replace("G A", "G $ A"));
+            fail("expected a lexical error");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        try {
+            compiler.compile(text.replace("G A B c|\n", "(3 G A\n"));
+            fail("expected a syntax error");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        assertEquals(compileWhole(text), compiler.compile(text));
+    }
+}
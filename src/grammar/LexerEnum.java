@@ -0,0 +1,13 @@
+package grammar;
+
+/**
+ * The lexers that a SongCompiler can turn abc text into tokens with.
+ */
+public enum LexerEnum {
+    
+    /**
+     * GENERATED is the ABCMusicLexer that ANTLR generates from ABCMusic.g4.
+     * HAND_WRITTEN is ABCMusicByteLexer, which produces the same tokens by scanning bytes directly.
+     */
+    GENERATED, HAND_WRITTEN;
+}
@@ -0,0 +1,58 @@
+package grammar;
+
+/**
+ * Walks the syllables of a lyric line along the elements of the bars it is sung to, one element
+ * at a time, so that the bars of a line are visited once and the syllables are never searched.
+ *
+ * For each element of a bar, match gives the syllable sung to it and moves past one syllable per
+ * note or chord in the element; endOfBar then says whether the lyrics reached a "|", in which
+ * case the rest of the bar gets no syllables. As in SongListener before it, the syllable matched
+ * to the element at cursor position p is syllable p+1 of the line: the first syllable is the
+ * empty one that every line starts with (see LyricLine).
+ */
+class LyricCursor {
+
+    /**
+     * The syllables being sung
+     */
+    private final LyricLine lyrics;
+
+    /**
+     * The position of the next element, and of the element matched last
+     */
+    private int next = 0;
+    private int matched = 0;
+
+    /**
+     * @param lyrics the syllables of a lyric line, sung from the first bar of its line
+     */
+    LyricCursor(LyricLine lyrics) {
+        this.lyrics = lyrics;
+    }
+
+    /**
+     * Matches the next element of a bar
+     * @param singables the number of notes and chords in the element that take a syllable:
+     *          1 for a note or a chord, one for each note or chord in a tuplet, 0 for a rest
+     * @return the syllable for each of them, or "" if the lyrics have run out or singables is 0
+     */
+    String match(int singables) {
+        matched = next;
+        next += singables;
+        if (singables == 0 || matched >= lyrics.size() - 1)
+            return "";
+        return lyrics.getSyllable(matched + 1);
+    }
+
+    /**
+     * Skips the bar marker after the element matched last, if there is one
+     * @return true if the lyrics reached the end of a bar, so the rest of the bar takes no syllables
+     */
+    boolean endOfBar() {
+        if (matched < lyrics.size() - 1 && lyrics.isBar(matched + 1)) {
+            next++;
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,115 @@
+package grammar;
+
+import java.util.Arrays;
+
+/**
+ * The syllables of one "w:" line, found in a single pass over the text of its LYRIC token.
+ *
+ * A syllable is kept as the offsets of its first and last characters in the line, and only turned
+ * into a String when it is given to a note (see getSyllable), so tokenizing copies no text.
+ *
+ * The syllables are the ones SongListener always split a lyric line into:
+ *      - the line starts inside an empty syllable, which the first character after "w:" ends or
+ *        continues like any other syllable;
+ *      - a space ends the syllable before it;
+ *      - "-" ends the syllable before it, and belongs to it ("-" on its own is a syllable);
+ *      - "_" ends the syllable before it, and belongs to it, and is a syllable of its own too;
+ *      - "*" ends the syllable before it, and is an empty syllable;
+ *      - "|" ends the syllable before it, and is a syllable marking the end of a bar;
+ *      - "~" joins two words into one syllable, and is sung as a space;
+ *      - any other character is part of a syllable.
+ *
+ * Rep invariant:
+ *      0 <= size <= starts.length == ends.length
+ *      2 <= starts[i] <= ends[i] <= line.length() for every i < size
+ */
+class LyricLine {
+
+    /**
+     * The text of the LYRIC token, starting with "w:"
+     */
+    private final String line;
+
+    /**
+     * Syllable i is line.substring(starts[i], ends[i]), with every "~" sung as a space
+     */
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int size = 0;
+
+    /**
+     * Splits a lyric line into syllables
+     * @param line the text of a LYRIC token, starting with "w:"
+     */
+    LyricLine(String line) {
+        this.line = line;
+        // the start of the syllable being read, or -1 between syllables. A line starts inside
+        // an empty syllable, so "w: a" has the syllables "" and "a", and "w:a" only "a"
+        int start = 2;
+        int length = line.length();
+        for (int i = 2; i < length; i++) {
+            char c = line.charAt(i);
+            if (c == '-') {
+                add(start >= 0 ? start : i, i + 1);
+                start = -1;
+            } else if (c == '_') {
+                if (start >= 0)
+                    add(start, i + 1);
+                add(i, i + 1);
+                start = -1;
+            } else if (c == '*') {
+                if (start >= 0)
+                    add(start, i);
+                add(i, i);
+                start = -1;
+            } else if (c == '|') {
+                if (start >= 0)
+                    add(start, i);
+                add(i, i + 1);
+                start = -1;
+            } else if (c == ' ') {
+                if (start >= 0)
+                    add(start, i);
+                start = -1;
+            } else if (start < 0) {
+                // a letter or a "~" starts a syllable
+                start = i;
+            }
+        }
+        if (start >= 0 && length > 2)
+            add(start, length);
+    }
+
+    private void add(int start, int end) {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    /**
+     * @return the number of syllables in the line, counting the bar markers
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param i the index of a syllable, 0 <= i < size()
+     * @return true if syllable i is a "|" marking the end of a bar
+     */
+    boolean isBar(int i) {
+        return ends[i] - starts[i] == 1 && line.charAt(starts[i]) == '|';
+    }
+
+    /**
+     * @param i the index of a syllable, 0 <= i < size()
+     * @return the text of syllable i, as it is sung
+     */
+    String getSyllable(int i) {
+        return line.substring(starts[i], ends[i]).replace('~', ' ');
+    }
+}
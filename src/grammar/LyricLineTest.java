@@ -0,0 +1,146 @@
+package grammar;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.antlr.v4.runtime.Token;
+import org.junit.Test;
+
+/**
+ * Tests the tokenizing of lyric lines, and the matching of their syllables to notes
+ */
+public class LyricLineTest {
+
+    /*
+     * Partition input space:
+     * - Separators: space, "-", "_", "*", "|", "~", at the start, middle and end of the line
+     * - Syllables: none, one, many; ending the line or followed by a separator
+     * - Source: every lyric line of the sample files, hand-written lines
+     * - Cursor: notes, rests, tuplets; lyrics running out; a "|" ending the bar
+     */
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Splits a lyric line the way SongListener did before LyricLine, by building up each syllable
+     * one character at a time
+     */
+    private static List<String> splitLyric(String context) {
+        List<String> lyric = new ArrayList<String>();
+        StringBuilder syllable = new StringBuilder();
+        for (int i = 2; i < context.length(); i++) {
+            if (context.charAt(i) == '-') {
+                if (syllable != null) {
+                    syllable.append("-");
+                    lyric.add(syllable.toString());
+                } else {
+                    lyric.add("-");
+                }
+                syllable = null;
+            } else if (context.charAt(i) == '_') {
+                if (syllable != null) {
+                    syllable.append("_");
+                    lyric.add(syllable.toString());
+                }
+                lyric.add("_");
+                syllable = null;
+            } else if (context.charAt(i) == '*') {
+                if (syllable != null)
+                    lyric.add(syllable.toString());
+                lyric.add("");
+                syllable = null;
+            } else if (context.charAt(i) == '~') {
+                syllable.append(" ");
+            } else if (context.charAt(i) == '|') {
+                if (syllable != null)
+                    lyric.add(syllable.toString());
+                lyric.add("|");
+                syllable = null;
+            } else if (context.charAt(i) == ' ') {
+                if (syllable != null)
+                    lyric.add(syllable.toString());
+                syllable = null;
+            } else {
+                if (syllable == null)
+                    syllable = new StringBuilder();
+                syllable.append(context.charAt(i) + "");
+            }
+            if (i == context.length() - 1 && syllable != null)
+                lyric.add(syllable.toString());
+        }
+        return lyric;
+    }
+
+    private static List<String> syllables(LyricLine line) {
+        List<String> syllables = new ArrayList<String>();
+        for (int i = 0; i < line.size(); i++) {
+            syllables.add(line.getSyllable(i));
+            assertEquals(line.getSyllable(i).equals("|"), line.isBar(i));
+        }
+        return syllables;
+    }
+
+    private static void assertSameSyllables(String text) {
+        assertEquals(text, splitLyric(text), syllables(new LyricLine(text)));
+    }
+
+    @Test
+    public void sampleFilesTest() throws IOException {
+        int lines = 0;
+        for (File file : new File("sample_abc").listFiles()) {
+            ABCMusicLexer lexer = new ABCMusicLexer(MappedCharStream.open(file.toPath(), UTF8));
+            for (Token token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) {
+                if (token.getType() == ABCMusicLexer.LYRIC) {
+                    assertSameSyllables(token.getText());
+                    lines++;
+                }
+            }
+        }
+        assertTrue(lines > 0);
+    }
+
+    @Test
+    public void separatorsTest() {
+        assertSameSyllables("w:");
+        assertSameSyllables("w: ");
+        assertSameSyllables("w:word");
+        assertSameSyllables("w: a-ma-zing_ grace | how * sweet~the sound");
+        assertSameSyllables("w:- _ * | -- __ ** || end");
+        assertSameSyllables("w:one~two~three-four_five*six|seven");
+        assertSameSyllables("w: trailing space ");
+        assertSameSyllables("w:x|");
+        assertSameSyllables("w:-start");
+        assertSameSyllables("w:_");
+        assertSameSyllables("w:*");
+        assertSameSyllables("w:|");
+        assertSameSyllables("w:~tilde");
+    }
+
+    @Test
+    public void tildeStartsSyllableTest() {
+        // the old splitter threw a NullPointerException here
+        assertEquals("[,  after]", syllables(new LyricLine("w: ~after")).toString());
+    }
+
+    @Test
+    public void cursorTest() {
+        // syllable p+1 goes to the element at position p, after the empty syllable that starts the line
+        LyricCursor cursor = new LyricCursor(new LyricLine("w: one | two three"));
+        assertEquals("one", cursor.match(1));
+        assertFalse(cursor.endOfBar());
+        // a rest takes no syllable, but the lyrics reach the end of the bar
+        assertEquals("", cursor.match(0));
+        assertTrue(cursor.endOfBar());
+        // a tuplet of two notes moves two syllables on
+        assertEquals("two", cursor.match(2));
+        assertFalse(cursor.endOfBar());
+        // the lyrics have run out
+        assertEquals("", cursor.match(1));
+        assertFalse(cursor.endOfBar());
+    }
+}
@@ -0,0 +1,61 @@
+package grammar;
+
+import java.nio.ByteBuffer;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.LexerATNSimulator;
+
+/**
+ * The generated ABCMusicLexer, counting columns in characters over a MappedCharStream, as
+ * ABCMusicByteLexer does, instead of in bytes.
+ *
+ * ANTLR adds one to the column for every character it consumes, and puts EOF just past the last
+ * token by adding its length in stream indexes; a MappedCharStream presents every byte as a
+ * character, so without this a token after a multi-byte UTF-8 character would be reported (and
+ * linted) at the wrong column. Over any other stream it counts as ABCMusicLexer does.
+ */
+class MappedABCMusicLexer extends ABCMusicLexer {
+
+    /**
+     * @param input the text to lex, or null to set it later
+     */
+    MappedABCMusicLexer(CharStream input) {
+        super(input);
+        // shares the DFA cache of the generated lexer, so it predicts as fast
+        setInterpreter(new Simulator(this));
+    }
+
+    /**
+     * ANTLR's simulator, moving the column by MappedCharStream.columns for each byte consumed
+     */
+    private static class Simulator extends LexerATNSimulator {
+
+        Simulator(ABCMusicLexer lexer) {
+            super(lexer, _ATN, _decisionToDFA, _sharedContextCache);
+        }
+
+        @Override
+        public void consume(CharStream input) {
+            int c = input.LA(1);
+            super.consume(input);
+            if (input instanceof MappedCharStream)
+                charPositionInLine += ((MappedCharStream) input).columns(c) - 1;
+        }
+    }
+
+    @Override
+    public Token emitEOF() {
+        if (_token == null || !(_input instanceof MappedCharStream))
+            return super.emitEOF();
+        MappedCharStream input = (MappedCharStream) _input;
+        ByteBuffer bytes = input.getBuffer();
+        int charPositionInLine = _token.getCharPositionInLine();
+        for (int i = _token.getStartIndex(); i <= _token.getStopIndex(); i++)
+            charPositionInLine += input.columns(bytes.get(i) & 0xFF);
+        Token eof = _factory.create(_tokenFactorySourcePair, Token.EOF, null, Token.DEFAULT_CHANNEL, input.index(),
+                input.index() - 1, getLine(), charPositionInLine);
+        emit(eof);
+        return eof;
+    }
+}
@@ -0,0 +1,203 @@
+package grammar;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+/**
+ * A CharStream that reads its characters straight out of a ByteBuffer (usually a memory-mapped
+ * abc file), so the lexer can run over the file without it ever being copied onto the heap.
+ *
+ * Every byte is presented to the lexer as one character (0-255). All the characters that the
+ * grammar cares about are ASCII, and in an ASCII-compatible charset such as UTF-8 the bytes of a
+ * multi-byte character are never ASCII, so those bytes can only be matched by the (~'\n') parts
+ * of the title, composer, voice, lyric and comment rules. Only when the text of a token is
+ * requested are its bytes decoded with the charset of the file.
+ *
+ * Lines and columns are still counted in characters, as they would be over the decoded text (see
+ * columns): a lexer over this stream reports the same positions as one over an ANTLRInputStream.
+ *
+ * Rep Invariant:
+ *      0 <= position <= buffer.limit()
+ *      The buffer is never modified, and its position and limit are never moved
+ */
+public class MappedCharStream implements CharStream {
+
+    /**
+     * The bytes of the input. Index i of the stream is byte i of the buffer
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The charset used to decode the text of a token
+     */
+    private final Charset charset;
+
+    /**
+     * Whether the input is UTF-8, whose multi-byte characters are counted as the UTF-16 chars
+     * they decode to
+     */
+    private final boolean utf8;
+
+    /**
+     * The name of the input, usually the file name
+     */
+    private final String sourceName;
+
+    /**
+     * The index of the next character to be consumed
+     */
+    private int position = 0;
+
+    /**
+     * @param buffer the bytes of the input, from index 0 up to the limit of the buffer. The buffer
+     *          must not be modified while this stream is in use
+     * @param charset the charset of the input - must be ASCII compatible (ex. UTF-8, ISO-8859-1)
+     * @param sourceName the name of the input (ex. the file name)
+     */
+    public MappedCharStream(ByteBuffer buffer, Charset charset, String sourceName) {
+        this.buffer = buffer.duplicate();
+        this.buffer.position(0);
+        this.charset = charset;
+        this.utf8 = charset.name().equals("UTF-8");
+        this.sourceName = sourceName;
+    }
+
+    /**
+     * Maps a whole file into memory (read only) and makes a stream of it
+     * @param file the file to read
+     * @param charset the charset of the file - must be ASCII compatible (ex. UTF-8, ISO-8859-1)
+     * @return a stream over the contents of the file
+     * @throws IOException if the file cannot be read, or is too large to be mapped
+     */
+    public static MappedCharStream open(Path file, Charset charset) throws IOException {
+        return new MappedCharStream(map(file), charset, file.toString());
+    }
+
+    /**
+     * Maps a whole file into memory (read only). The mapping stays valid after the channel is closed
+     * @param file the file to map
+     * @return the bytes of the file
+     * @throws IOException if the file cannot be read, or is too large to be mapped
+     */
+    public static MappedByteBuffer map(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException(file + " is too large to be mapped (" + size + " bytes)");
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * @return the bytes of the input, for lexers that read them directly. The buffer must not be modified
+     */
+    ByteBuffer getBuffer() {
+        return buffer.duplicate();
+    }
+
+    /**
+     * @return the charset the text of a token is decoded with
+     */
+    Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @param c a byte of the input, as a character (0-255)
+     * @return the number of characters c adds to the column it is in. For UTF-8 input, that is 0
+     *          for a continuation byte, 2 for the first byte of a 4-byte character (a surrogate
+     *          pair in Java), and 1 for any other byte; for any other charset, 1 for every byte
+     */
+    int columns(int c) {
+        if (!utf8 || c < 0x80)
+            return 1;
+        if (c < 0xC0)
+            return 0;
+        return (c >= 0xF0) ? 2 : 1;
+    }
+
+    @Override
+    public void consume() {
+        if (position >= buffer.limit())
+            throw new IllegalStateException("cannot consume EOF");
+        position++;
+    }
+
+    @Override
+    public int LA(int i) {
+        if (i == 0)
+            return 0; // undefined
+        if (i < 0)
+            i++; // LA(-1) is the last character consumed, at position-1
+        int index = position + i - 1;
+        if (index < 0 || index >= buffer.limit())
+            return IntStream.EOF;
+        return buffer.get(index) & 0xFF;
+    }
+
+    /**
+     * Marking is not needed, because all of the input is always available
+     */
+    @Override
+    public int mark() {
+        return -1;
+    }
+
+    @Override
+    public void release(int marker) { }
+
+    @Override
+    public int index() {
+        return position;
+    }
+
+    @Override
+    public void seek(int index) {
+        position = Math.max(0, Math.min(index, buffer.limit()));
+    }
+
+    @Override
+    public int size() {
+        return buffer.limit();
+    }
+
+    @Override
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    /**
+     * @return the decoded text between the start and stop indices of the interval (both inclusive)
+     */
+    @Override
+    public String getText(Interval interval) {
+        int start = interval.a;
+        int stop = Math.min(interval.b, buffer.limit() - 1);
+        if (start >= buffer.limit() || stop < start)
+            return "";
+        ByteBuffer text = buffer.duplicate();
+        text.limit(stop + 1);
+        text.position(start);
+        return charset.decode(text).toString();
+    }
+
+    /**
+     * @return the decoded text of the whole stream
+     */
+    @Override
+    public String toString() {
+        return getText(Interval.of(0, buffer.limit() - 1));
+    }
+}
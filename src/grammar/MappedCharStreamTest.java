@@ -0,0 +1,128 @@
+package grammar;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Interval;
+import org.junit.Test;
+
+/**
+ * Tests that the memory-mapped input behaves exactly like an ANTLRInputStream
+ */
+public class MappedCharStreamTest {
+
+    /*
+     * Partition input space:
+     * - Lookahead: before the start, inside, at and past the end of the input
+     * - Seeking: backwards, forwards, past the end
+     * - Token text: ASCII, multi-byte UTF-8 characters
+ * - Token columns: after ASCII only, after 2-byte and 4-byte UTF-8 characters on the same line
+ *   (with the generated lexer, recovering from them, and the hand-written lexer), at EOF
+     * - Whole files: every file in sample_abc
+     */
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static CharStream streamOf(String text) {
+        return new MappedCharStream(ByteBuffer.wrap(text.getBytes(UTF8)), UTF8, "test");
+    }
+
+    @Test
+    public void lookaheadTest() {
+        CharStream stream = streamOf("X:1");
+        assertEquals(3, stream.size());
+        assertEquals(IntStream.EOF, stream.LA(-1));
+        assertEquals('X', stream.LA(1));
+        assertEquals(':', stream.LA(2));
+        stream.consume();
+        assertEquals('X', stream.LA(-1));
+        assertEquals(':', stream.LA(1));
+        assertEquals(IntStream.EOF, stream.LA(3));
+    }
+
+    @Test
+    public void seekTest() {
+        CharStream stream = streamOf("abc");
+        stream.seek(2);
+        assertEquals(2, stream.index());
+        assertEquals('c', stream.LA(1));
+        stream.seek(0);
+        assertEquals('a', stream.LA(1));
+        stream.seek(10);
+        assertEquals(3, stream.index());
+        assertEquals(IntStream.EOF, stream.LA(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void consumeEOFTest() {
+        CharStream stream = streamOf("");
+        stream.consume();
+    }
+
+    @Test
+    public void multiByteTextTest() {
+        CharStream stream = streamOf("T:F\u00fcr Elise");
+        assertEquals("F\u00fcr Elise", stream.getText(Interval.of(2, stream.size() - 1)));
+        assertEquals("T:F\u00fcr Elise", stream.getText(Interval.of(0, 100)));
+    }
+
+    /**
+     * Asserts that lexer, over a MappedCharStream of text, makes the tokens (up to and including
+     * EOF) that the generated lexer makes over an ANTLRInputStream of text, at the same positions
+     */
+    private static void assertSameTokens(String text, TokenSource lexer) {
+        ABCMusicLexer reference = new ABCMusicLexer(new ANTLRInputStream(text));
+        reference.removeErrorListeners();
+        while (true) {
+            Token expected = reference.nextToken();
+            Token actual = lexer.nextToken();
+            assertEquals(expected.getType(), actual.getType());
+            assertEquals(expected.getText(), actual.getText());
+            assertEquals(expected.getLine(), actual.getLine());
+            assertEquals(expected.getText(), expected.getCharPositionInLine(), actual.getCharPositionInLine());
+            if (expected.getType() == Token.EOF)
+                return;
+        }
+    }
+
+    @Test
+    public void nonAsciiColumnsTest() {
+        // the characters that start no token are skipped by both generated lexers
+        String invalid = "X:1\nK:C\nC \u00fc D \ud834\udd1e E|\nT:\u00e9t\u00e9";
+        ABCMusicLexer generated = new MappedABCMusicLexer(streamOf(invalid));
+        generated.removeErrorListeners();
+        assertSameTokens(invalid, generated);
+
+        String valid = "X:1\nT:F\u00fcr \ud834\udd1e\nK:C\nC D|\nw:\u00e9-t\u00e9";
+        assertSameTokens(valid, new MappedABCMusicLexer(streamOf(valid)));
+        assertSameTokens(valid, new ABCMusicByteLexer((MappedCharStream) streamOf(valid)));
+    }
+
+    @Test
+    public void sampleTokensTest() throws IOException {
+        for (File file : new File("sample_abc").listFiles()) {
+            String text = new String(Files.readAllBytes(file.toPath()), UTF8);
+            List<? extends Token> expected = new ABCMusicLexer(new ANTLRInputStream(text)).getAllTokens();
+            List<? extends Token> actual = new MappedABCMusicLexer(MappedCharStream.open(Paths.get(file.getPath()), UTF8)).getAllTokens();
+            assertEquals(file.getName(), expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getType(), actual.get(i).getType());
+                assertEquals(expected.get(i).getText(), actual.get(i).getText());
+                assertEquals(expected.get(i).getLine(), actual.get(i).getLine());
+                assertEquals(expected.get(i).getCharPositionInLine(), actual.get(i).getCharPositionInLine());
+            }
+        }
+    }
+}
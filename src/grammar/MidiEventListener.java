@@ -0,0 +1,448 @@
+package grammar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import player.Fraction;
+import player.Header;
+import player.PackedFraction;
+import sound.EventBuffer;
+
+/**
+ * A parse listener that turns an abc tune straight into timed note and lyric events, without
+ * building the Song, Voice and Note objects that SongListener builds for SongSequencerVisitor.
+ *
+ * It follows SongListener and SongSequencerVisitor step by step, with the same bars, repeats,
+ * lyric matching, key signatures, tuplets and tick arithmetic, so the events it produces are
+ * exactly the ones that sequencing the Song would have produced. Where SongListener would create
+ * a Note, Rest, Chord or Tuplet, this listener adds a row to a table of primitive arrays, and
+ * every container of music is a list of row numbers.
+ *
+ * The header fields are handed to a SongListener, so the Header is built exactly as before.
+ */
+class MidiEventListener extends ABCMusicBaseListener {
+
+    /**
+     * The kinds of music in the element table
+     */
+    private static final int NOTE = 0, REST = 1, CHORD = 2, TUPLET = 3;
+
+    /**
+     * The semitones above C of each letter, indexed from 'A'
+     */
+    private static final int[] SCALE = {9, 11, 0, 2, 4, 5, 7};
+
+    /**
+     * The name given to the voice of a tune that names none
+     */
+    private static final String DEFAULT_VOICE = "THE_DEFAULT_VOICE";
+
+    /**
+     * A growable list of ints
+     */
+    static class IntList {
+        private int[] items = new int[8];
+        private int size = 0;
+
+        void add(int item) {
+            if (size == items.length)
+                items = Arrays.copyOf(items, size * 2);
+            items[size++] = item;
+        }
+
+        int removeLast() {
+            return items[--size];
+        }
+
+        void truncate(int newSize) {
+            size = newSize;
+        }
+
+        int get(int i) {
+            return items[i];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Builds the header
+     */
+    private final SongListener headerListener = new SongListener();
+
+    /**
+     * The events, once the tune has been exited
+     */
+    private EventBuffer events;
+
+    /**
+     * The element table: row i is a piece of music of kind[i], lasting duration[i] (a
+     * PackedFraction, in lowest terms, as getPackedDuration would give it). A note has the MIDI pitch value[i], a tuplet has the
+     * number of notes value[i] (2, 3 or 4), and a chord or a tuplet holds the rows
+     * children[childStart[i]] ... children[childStart[i] + childCount[i] - 1].
+     * syllable[i] is the lyric of a note or chord.
+     */
+    private int rows = 0;
+    private int[] kind = new int[64];
+    private int[] value = new int[64];
+    private long[] duration = new long[64];
+    private int[] childStart = new int[64];
+    private int[] childCount = new int[64];
+    private String[] syllable = new String[64];
+    private final IntList children = new IntList();
+
+    /**
+     * Decodes the text of every note token
+     */
+    private final NoteTokenDecoder noteDecoder = new NoteTokenDecoder();
+
+    /**
+     * Views the characters of every note token for noteDecoder, without making a String of it
+     */
+    private final TokenChars noteChars = new TokenChars();
+
+    /**
+     * The accidentals of the key signature, ordered {A,B,C,D,E,F,G}; looked up at the first note
+     */
+    private int[] keyAccidentals = null;
+
+    /**
+     * As in SongListener, with each piece of music given by its row
+     */
+    private HashMap<String, List<IntList>> barsForVoiceName = new HashMap<String, List<IntList>>();
+    private HashMap<String, Integer> currentBarForVoiceName = new HashMap<String, Integer>();
+    private HashMap<String, List<Integer[]>> repeatsForVoiceName = new HashMap<String, List<Integer[]>>();
+    private String voiceName;
+    private final IntList multinoteRows = new IntList();
+    private final IntList multinoteStarts = new IntList();
+
+    /**
+     * @return the events of the tune, once the listener has exited abc_tune
+     */
+    public EventBuffer getEvents() {
+        return events;
+    }
+
+    /**
+     * @return the header, as soon as the listener has exited abc_header
+     */
+    public Header getHeader() {
+        return headerListener.getHeader();
+    }
+
+    /*
+     * Header
+     */
+
+    @Override public void exitField_number(ABCMusicParser.Field_numberContext ctx) {
+        headerListener.exitField_number(ctx);
+    }
+
+    @Override public void exitField_title(ABCMusicParser.Field_titleContext ctx) {
+        headerListener.exitField_title(ctx);
+    }
+
+    @Override public void exitOther_fields(ABCMusicParser.Other_fieldsContext ctx) {
+        headerListener.exitOther_fields(ctx);
+        if (ctx.FIELD_VOICE() != null)
+            startVoice(ctx.FIELD_VOICE().getText().replace("V:", "").trim());
+    }
+
+    @Override public void exitField_key(ABCMusicParser.Field_keyContext ctx) {
+        headerListener.exitField_key(ctx);
+    }
+
+    @Override public void exitAbc_header(ABCMusicParser.Abc_headerContext ctx) {
+        headerListener.exitAbc_header(ctx);
+    }
+
+    /*
+     * Music
+     */
+
+    /**
+     * Makes name the current voice, creating its bars and repeats if it is new
+     */
+    private void startVoice(String name) {
+        voiceName = name;
+        if (!barsForVoiceName.containsKey(voiceName)) {
+            List<IntList> newVoice = new ArrayList<IntList>();
+            newVoice.add(new IntList());
+            barsForVoiceName.put(voiceName, newVoice);
+            repeatsForVoiceName.put(voiceName, SongListener.newRepeats());
+        }
+    }
+
+    @Override public void enterAbc_music(ABCMusicParser.Abc_musicContext ctx) {
+        if (voiceName == null)
+            startVoice(DEFAULT_VOICE);
+    }
+
+    @Override public void exitField_voice(ABCMusicParser.Field_voiceContext ctx) {
+        startVoice(ctx.getText().replace("V:", "").trim());
+    }
+
+    @Override public void exitBarline(ABCMusicParser.BarlineContext ctx) {
+        List<IntList> bars = barsForVoiceName.get(voiceName);
+        if (SongListener.openBar(SongListener.barlineText(ctx), repeatsForVoiceName.get(voiceName), bars.size()))
+            bars.add(new IntList());
+    }
+
+    @Override public void exitAbc_line(ABCMusicParser.Abc_lineContext ctx) {
+        currentBarForVoiceName.put(voiceName, barsForVoiceName.get(voiceName).size());
+    }
+
+    @Override public void enterTuplet_element(ABCMusicParser.Tuplet_elementContext ctx) {
+        multinoteStarts.add(multinoteRows.size());
+    }
+
+    @Override public void exitTuplet_element(ABCMusicParser.Tuplet_elementContext ctx) {
+        int type = 3;
+        if (ctx.DUPLET() != null)
+            type = 2;
+        else if (ctx.QUADRUPLET() != null)
+            type = 4;
+        int start = multinoteStarts.removeLast();
+        addRow(newTuplet(type, start));
+    }
+
+    @Override public void exitL_bracket(ABCMusicParser.L_bracketContext ctx) {
+        multinoteStarts.add(multinoteRows.size());
+    }
+
+    @Override public void exitR_bracket(ABCMusicParser.R_bracketContext ctx) {
+        int start = multinoteStarts.removeLast();
+        for (int i = start; i < multinoteRows.size(); i++)
+            if (kind[multinoteRows.get(i)] != NOTE)
+                throw new ClassCastException("A chord can only hold notes");
+        addRow(newChord(start));
+    }
+
+    @Override public void exitNote_element(ABCMusicParser.Note_elementContext ctx) {
+        if (ctx.NOTE() == null)
+            return;
+        noteDecoder.decode(noteChars.of(ctx.NOTE().getSymbol()));
+        // in lowest terms, as SongListener's Fraction keeps it
+        long length = PackedFraction.pack(noteDecoder.getNumerator(), noteDecoder.getDenominator());
+
+        if (noteDecoder.isRest()) {
+            addRow(newRow(REST, 0, length));
+            return;
+        }
+        if (keyAccidentals == null)
+            keyAccidentals = getHeader().getKeySignature().getAccidentals();
+        int index = noteDecoder.getLetterIndex();
+        int semitones = (noteDecoder.getAccidental() == null) ? keyAccidental(keyAccidentals[index])
+                : noteDecoder.getAccidental().getSemitoneOffset();
+        int pitch = SCALE[index] + semitones + 12 * noteDecoder.getOctave() + 60;
+        addRow(newRow(NOTE, pitch, length));
+    }
+
+    /**
+     * @return the semitone offset that SongListener gives a note for an entry of the key signature
+     */
+    private static int keyAccidental(int entry) {
+        return (entry >= -2 && entry <= 2) ? entry : 0;
+    }
+
+    @Override public void exitLyric(ABCMusicParser.LyricContext ctx) {
+        LyricCursor cursor = new LyricCursor(new LyricLine(ctx.LYRIC().getText()));
+        List<IntList> bars = barsForVoiceName.get(voiceName);
+        int startBar = 0;
+        if (currentBarForVoiceName.containsKey(voiceName))
+            startBar = currentBarForVoiceName.get(voiceName);
+        for (int i = startBar; i < bars.size(); i++) {
+            IntList bar = bars.get(i);
+            for (int j = 0; j < bar.size(); j++) {
+                int m = bar.get(j);
+                if (kind[m] == NOTE || kind[m] == CHORD) {
+                    syllable[m] = cursor.match(1);
+                } else if (kind[m] == TUPLET) {
+                    int singables = 0;
+                    for (int c = childStart[m]; c < childStart[m] + childCount[m]; c++)
+                        if (kind[children.get(c)] == NOTE || kind[children.get(c)] == CHORD)
+                            singables++;
+                    String lyric = cursor.match(singables);
+                    for (int c = childStart[m]; c < childStart[m] + childCount[m]; c++)
+                        if (kind[children.get(c)] == NOTE || kind[children.get(c)] == CHORD)
+                            syllable[children.get(c)] = lyric;
+                } else {
+                    cursor.match(0);
+                }
+                if (cursor.endOfBar())
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Schedules the music of every voice, bar by bar in the order its repeats play them, as
+     * SongSequencerVisitor does
+     */
+    @Override public void exitAbc_tune(ABCMusicParser.Abc_tuneContext ctx) {
+        HashMap<String, int[]> playOrderForVoiceName = new HashMap<String, int[]>();
+        for (String name : barsForVoiceName.keySet())
+            playOrderForVoiceName.put(name, SongListener.playOrder(barsForVoiceName.get(name).size(), repeatsForVoiceName.get(name)));
+
+        Header header = getHeader();
+        Fraction defaultNoteLength = header.getDefaultLength();
+        Fraction tempoBeat = header.getTempoBeat();
+        // ticks per beat: the largest denominator seen, as in SongSequencerVisitor
+        int lcmDen = defaultNoteLength.getDenominator();
+        int lcm = 0;
+        for (String name : playOrderForVoiceName.keySet()) {
+            List<IntList> bars = barsForVoiceName.get(name);
+            for (int b : playOrderForVoiceName.get(name))
+                for (int i = 0; i < bars.get(b).size(); i++)
+                    lcmDen = Fraction.LCM(tickDenominator(bars.get(b).get(i)), lcmDen);
+            if (lcmDen > lcm)
+                lcm = lcmDen;
+        }
+
+        events = new EventBuffer(header.getBeatsPerMinute(), lcm);
+        long ticksPerLength = PackedFraction.of(defaultNoteLength.divide(tempoBeat).multiply(Fraction.valueOf(lcm, 1)));
+        for (String name : playOrderForVoiceName.keySet()) {
+            String lyricsPrefix = name.equals(DEFAULT_VOICE) ? "" : name;
+            List<IntList> bars = barsForVoiceName.get(name);
+            int startTick = 0;
+            for (int b : playOrderForVoiceName.get(name))
+                startTick = schedule(bars.get(b), lyricsPrefix, startTick, ticksPerLength);
+        }
+    }
+
+    /**
+     * @return the denominator of the length of a row, or for a tuplet of each of its notes, in
+     *          lowest terms
+     */
+    private int tickDenominator(int row) {
+        if (kind[row] != TUPLET)
+            return PackedFraction.denominator(duration[row]);
+        return PackedFraction.denominator(PackedFraction.divide(duration[row], PackedFraction.pack(value[row], 1)));
+    }
+
+    /**
+     * Schedules the music of a bar, as SongSequencerVisitor does
+     * @return the tick after the end of the bar
+     */
+    private int schedule(IntList bar, String lyricsPrefix, int startTick, long ticksPerLength) {
+        for (int i = 0; i < bar.size(); i++) {
+            int m = bar.get(i);
+            int ticks = PackedFraction.intValue(PackedFraction.multiply(duration[m], ticksPerLength));
+            if (kind[m] == TUPLET) {
+                int tupleNoteDur = ticks / value[m];
+                for (int c = childStart[m]; c < childStart[m] + childCount[m]; c++) {
+                    int sub = children.get(c);
+                    if (kind[sub] == TUPLET)
+                        throw new RuntimeException("You cannot build a tuple out of anything but a Note, Chord, or Rest");
+                    if (kind[sub] != REST)
+                        schedule(sub, lyricsPrefix, startTick, tupleNoteDur);
+                    startTick += tupleNoteDur;
+                }
+            } else {
+                if (kind[m] != REST)
+                    schedule(m, lyricsPrefix, startTick, ticks);
+                startTick += ticks;
+            }
+        }
+        return startTick;
+    }
+
+    /**
+     * Schedules the lyric and the notes of a note or chord
+     */
+    private void schedule(int m, String lyricsPrefix, int startTick, int duration) {
+        if (syllable[m] != null && !syllable[m].equals(""))
+            events.addLyricEvent(lyricsPrefix + syllable[m], startTick);
+        if (kind[m] == NOTE) {
+            events.addNote(value[m], startTick, duration);
+        } else {
+            for (int c = childStart[m]; c < childStart[m] + childCount[m]; c++)
+                events.addNote(value[children.get(c)], startTick, duration);
+        }
+    }
+
+    /**
+     * Puts a new row in the innermost open multinote, or in the bar being filled in the current
+     * voice if no multinote is open, as SongListener does with the music it creates
+     */
+    private void addRow(int row) {
+        if (multinoteStarts.size() > 0) {
+            multinoteRows.add(row);
+        } else {
+            List<IntList> bars = barsForVoiceName.get(voiceName);
+            bars.get(bars.size() - 1).add(row);
+        }
+    }
+
+    /**
+     * Adds a row to the element table
+     * @return the new row
+     */
+    private int newRow(int rowKind, int rowValue, long rowDuration) {
+        if (rows == kind.length) {
+            kind = Arrays.copyOf(kind, rows * 2);
+            value = Arrays.copyOf(value, rows * 2);
+            duration = Arrays.copyOf(duration, rows * 2);
+            childStart = Arrays.copyOf(childStart, rows * 2);
+            childCount = Arrays.copyOf(childCount, rows * 2);
+            syllable = Arrays.copyOf(syllable, rows * 2);
+        }
+        kind[rows] = rowKind;
+        value[rows] = rowValue;
+        duration[rows] = rowDuration;
+        childStart[rows] = children.size();
+        childCount[rows] = 0;
+        syllable[rows] = "";
+        return rows++;
+    }
+
+    /**
+     * Moves the rows of the innermost multinote, from start to the end of multinoteRows, to the
+     * children of a new row
+     */
+    private void addChildren(int row, int start) {
+        childStart[row] = children.size();
+        childCount[row] = multinoteRows.size() - start;
+        for (int i = start; i < multinoteRows.size(); i++)
+            children.add(multinoteRows.get(i));
+        multinoteRows.truncate(start);
+    }
+
+    /**
+     * @return a new chord of the notes of the innermost multinote, lasting as long as its longest
+     *          note (the first, if tied)
+     */
+    private int newChord(int start) {
+        long longest = PackedFraction.ZERO;
+        for (int i = start; i < multinoteRows.size(); i++) {
+            int n = multinoteRows.get(i);
+            if (PackedFraction.compare(duration[n], longest) > 0)
+                longest = duration[n];
+        }
+        int row = newRow(CHORD, 0, longest);
+        addChildren(row, start);
+        return row;
+    }
+
+    /**
+     * @return a new tuplet of the music of the innermost multinote, lasting as long as
+     *          Tuplet.getDuration says
+     */
+    private int newTuplet(int type, int start) {
+        long length = PackedFraction.ZERO;
+        for (int i = start; i < multinoteRows.size(); i++)
+            length = PackedFraction.add(length, duration[multinoteRows.get(i)]);
+        switch (type) {
+        case 2: length = PackedFraction.multiply(length, PackedFraction.pack(3, 2)); break;
+        case 3: length = PackedFraction.multiply(length, PackedFraction.pack(2, 3)); break;
+        case 4: length = PackedFraction.multiply(length, PackedFraction.pack(3, 4)); break;
+        }
+        int row = newRow(TUPLET, type, length);
+        addChildren(row, start);
+        return row;
+    }
+}
@@ -0,0 +1,132 @@
+package grammar;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Track;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.junit.Test;
+
+import player.SongSequencerVisitor;
+import sound.EventBuffer;
+
+/**
+ * Tests that scheduling a tune straight from the parser gives the same MIDI sequence as building
+ * the Song and sequencing it
+ */
+public class MidiEventListenerTest {
+
+    /*
+     * Partition input space:
+     * - Input: every sample file, hand-written tunes
+     * - Music: notes, rests, chords, tuplets, chords and rests inside tuplets, accidentals and octaves,
+     *          lengths with coprime denominators
+     * - Lyrics: none, matched across bar lines, with "|" skipping to the next bar
+     * - Structure: one voice, several voices, repeats with and without [1 [2 endings
+     * - Prediction: LL, SLL_THEN_LL
+     * - Validity: valid tunes, a tune missing a token that the listener reads
+     */
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * @return the sequence that building the Song and sequencing it gives
+     */
+    private static Sequence expected(String text) throws MidiUnavailableException, InvalidMidiDataException {
+        SongSequencerVisitor visitor = new SongSequencerVisitor();
+        new SongCompiler().compile(new ANTLRInputStream(text)).accept(visitor);
+        return visitor.sequence(null).getSequence();
+    }
+
+    /**
+     * Asserts that two sequences have the same timing and the same events at the same ticks
+     */
+    private static void assertSameSequence(String message, Sequence expected, Sequence actual) {
+        assertEquals(message, expected.getResolution(), actual.getResolution());
+        Track[] expectedTracks = expected.getTracks();
+        Track[] actualTracks = actual.getTracks();
+        assertEquals(message, expectedTracks.length, actualTracks.length);
+        for (int t = 0; t < expectedTracks.length; t++) {
+            assertEquals(message, expectedTracks[t].size(), actualTracks[t].size());
+            for (int i = 0; i < expectedTracks[t].size(); i++) {
+                MidiEvent expectedEvent = expectedTracks[t].get(i);
+                MidiEvent actualEvent = actualTracks[t].get(i);
+                assertEquals(message + " event " + i, expectedEvent.getTick(), actualEvent.getTick());
+                assertTrue(message + " event " + i,
+                        Arrays.equals(expectedEvent.getMessage().getMessage(), actualEvent.getMessage().getMessage()));
+            }
+        }
+    }
+
+    private static void assertSameSequence(String text) throws MidiUnavailableException, InvalidMidiDataException {
+        EventBuffer events = new SongCompiler().compileEvents(new ANTLRInputStream(text));
+        assertSameSequence(text, expected(text), events.toSequencePlayer(null).getSequence());
+    }
+
+    @Test
+    public void sampleFilesTest() throws IOException, MidiUnavailableException, InvalidMidiDataException {
+        SongCompiler twoStage = new SongCompiler();
+        twoStage.setPrediction(PredictionEnum.SLL_THEN_LL);
+        for (File file : new File("sample_abc").listFiles()) {
+            SongSequencerVisitor visitor = new SongSequencerVisitor();
+            new SongCompiler().compile(MappedCharStream.open(file.toPath(), UTF8)).accept(visitor);
+            Sequence expected = visitor.sequence(null).getSequence();
+            EventBuffer events = new SongCompiler().compileEvents(MappedCharStream.open(file.toPath(), UTF8));
+            assertSameSequence(file.getName(), expected, events.toSequencePlayer(null).getSequence());
+            events = twoStage.compileEvents(MappedCharStream.open(file.toPath(), UTF8));
+            assertSameSequence(file.getName(), expected, events.toSequencePlayer(null).getSequence());
+        }
+        assertEquals(0, twoStage.getLlFallbacks());
+    }
+
+    @Test
+    public void notesAndRestsTest() throws MidiUnavailableException, InvalidMidiDataException {
+        assertSameSequence("X:1\nT:Notes\nK:D\nC ^C __D =F f' G,, z2 A/ B/4 c3/ d3/4 e2 z/ |]\n");
+    }
+
+    @Test
+    public void chordsAndTupletsTest() throws MidiUnavailableException, InvalidMidiDataException {
+        assertSameSequence("X:1\nT:Multinotes\nL:1/4\nK:Bb\n[CEG] [C2E] (3ABc (2[ce]d (4z A B c | (3A z [CE] z |]\n");
+    }
+
+    @Test
+    public void oddLengthsTest() throws MidiUnavailableException, InvalidMidiDataException {
+        assertSameSequence("X:1\nT:Odd lengths\nK:C\n(3A/7B/11c/13 [C/3E/5G3/7] (4z/5A/3B/2c |]\n");
+    }
+
+    @Test
+    public void lyricsTest() throws MidiUnavailableException, InvalidMidiDataException {
+        assertSameSequence("X:1\nT:Lyrics\nK:C\nC D (3EFG | A B c d | [CE] z E|\nw: a-ma-zing_ grace | how * sweet~the\n");
+    }
+
+    @Test
+    public void repeatsAndVoicesTest() throws MidiUnavailableException, InvalidMidiDataException {
+        assertSameSequence("X:1\nT:Voices\nM:3/4\nQ:1/4=120\nV:1\nV:2\nK:Am\n"
+                + "V:1\n|: C D E | F G A :|\nw: one two three | four\n"
+                + "V:2\nA, B, C | [|D E F |[1 G A B :|[2 c d e |]\n");
+    }
+
+    @Test
+    public void syntaxErrorTest() {
+        SongCompiler twoStage = new SongCompiler();
+        twoStage.setPrediction(PredictionEnum.SLL_THEN_LL);
+        try {
+            twoStage.compileEvents(new ANTLRInputStream("X:1\nK:C\nC D E F|\n"));
+            fail("expected the missing title to be reported");
+        } catch (RuntimeException e) {
+            // the parser's error, not the listener's reaction to the missing token
+            assertTrue(e.getMessage(), e.getMessage().contains("expecting FIELD_TITLE"));
+        }
+        assertEquals(0, twoStage.getSllParses());
+        assertEquals(1, twoStage.getLlFallbacks());
+    }
+}
@@ -0,0 +1,179 @@
+package grammar;
+
+import player.AccidentalEnum;
+import player.NoteEnum;
+
+/**
+ * Decodes the text of a NOTE token (ex. "^c'3/2", "__B,,", "z/4") into its accidental, letter,
+ * octave and duration, in a single pass over its characters.
+ *
+ * A decoder is reused for every token: decode overwrites the result of the previous token, and
+ * allocates nothing. The listeners pass it a TokenChars view of each token, so decoding a tune
+ * read through a MappedCharStream costs no garbage per note; from any other stream, each token
+ * costs the String of its text (see TokenChars).
+ *
+ * The result is the same as the regex-based splitting that SongListener used before (which
+ * NoteTokenDecoderTest keeps to check against, and NoteTokenDecoderBenchmark to measure the
+ * speedup):
+ *      - the duration is 1/1 if absent, n/1 for "n", 1/d for "/d", n/d for "n/d", and 1/2 for
+ *        both "/" and "n/";
+ *      - a lowercase letter is one octave up, and every octave mark moves the note one octave in
+ *        the direction of the first mark.
+ *
+ * This class is not thread safe: use one decoder per thread.
+ */
+class NoteTokenDecoder {
+
+    /**
+     * The letters, indexed from 'A'
+     */
+    private static final NoteEnum[] NOTES = {NoteEnum.A, NoteEnum.B, NoteEnum.C, NoteEnum.D, NoteEnum.E, NoteEnum.F, NoteEnum.G};
+
+    /**
+     * The last token decoded: a rest, or a note with the letter NOTES[letterIndex], and the
+     * accidental written before it (null if there was none). The octave counts the case of the
+     * letter as well as the octave marks. The duration is numerator/denominator, unreduced.
+     */
+    private boolean rest;
+    private int letterIndex;
+    private AccidentalEnum accidental;
+    private int octave;
+    private int numerator;
+    private int denominator;
+
+    /**
+     * Decodes a NOTE token
+     * @param token the characters of a NOTE token, as matched by the lexer
+     * @throws NumberFormatException if a number in the duration does not fit an int
+     */
+    void decode(CharSequence token) {
+        int length = token.length();
+        int i = 0;
+
+        accidental = null;
+        char c = token.charAt(i);
+        if (c == '^' || c == '_') {
+            boolean twice = token.charAt(i + 1) == c;
+            if (c == '^')
+                accidental = twice ? AccidentalEnum.DOUBLE_SHARP : AccidentalEnum.SHARP;
+            else
+                accidental = twice ? AccidentalEnum.DOUBLE_FLAT : AccidentalEnum.FLAT;
+            i += twice ? 2 : 1;
+        } else if (c == '=') {
+            accidental = AccidentalEnum.NATURAL;
+            i++;
+        }
+
+        c = token.charAt(i++);
+        rest = (c == 'z');
+        octave = 0;
+        if (rest) {
+            letterIndex = 'C' - 'A';
+        } else if (c >= 'a') {
+            letterIndex = c - 'a';
+            octave++;
+        } else {
+            letterIndex = c - 'A';
+        }
+
+        if (i < length) {
+            char mark = token.charAt(i);
+            if (mark == '\'' || mark == ',') {
+                int step = (mark == '\'') ? 1 : -1;
+                while (i < length && (token.charAt(i) == '\'' || token.charAt(i) == ',')) {
+                    octave += step;
+                    i++;
+                }
+            }
+        }
+
+        numerator = 1;
+        denominator = 1;
+        if (i < length) {
+            int start = i;
+            int first = 0;
+            while (i < length && isDigit(token.charAt(i)))
+                first = appendDigit(first, token.charAt(i++));
+            if (i == length) {
+                // "n"
+                numerator = first;
+            } else {
+                // "/", "n/", "/d" or "n/d"
+                i++;
+                denominator = 2;
+                if (i < length) {
+                    int second = 0;
+                    while (i < length)
+                        second = appendDigit(second, token.charAt(i++));
+                    if (token.charAt(start) != '/')
+                        numerator = first;
+                    denominator = second;
+                }
+            }
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * @return value with the digit c written after it
+     * @throws NumberFormatException if the result does not fit an int
+     */
+    private static int appendDigit(int value, char c) {
+        int digit = c - '0';
+        if (value > (Integer.MAX_VALUE - digit) / 10)
+            throw new NumberFormatException("duration too long for an int");
+        return value * 10 + digit;
+    }
+
+    /**
+     * @return true if the last token decoded was a rest
+     */
+    boolean isRest() {
+        return rest;
+    }
+
+    /**
+     * @return the letter of the last note decoded; C for a rest
+     */
+    NoteEnum getNote() {
+        return NOTES[letterIndex];
+    }
+
+    /**
+     * @return the letter of the last note decoded, counted from A (A is 0, G is 6)
+     */
+    int getLetterIndex() {
+        return letterIndex;
+    }
+
+    /**
+     * @return the accidental written before the last note decoded, or null if there was none
+     */
+    AccidentalEnum getAccidental() {
+        return accidental;
+    }
+
+    /**
+     * @return the octave of the last note decoded, relative to the octave of middle C
+     */
+    int getOctave() {
+        return octave;
+    }
+
+    /**
+     * @return the numerator of the duration of the last token decoded
+     */
+    int getNumerator() {
+        return numerator;
+    }
+
+    /**
+     * @return the denominator of the duration of the last token decoded
+     */
+    int getDenominator() {
+        return denominator;
+    }
+}
@@ -0,0 +1,75 @@
+package grammar;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.antlr.v4.runtime.Token;
+
+/**
+ * Measures how long NoteTokenDecoder.decode takes per note, against the regex-based splitting
+ * that SongListener used before (kept by NoteTokenDecoderTest as its oracle), on every NOTE token
+ * of some abc files. Each is timed on the tokens as its listener gets them: the split on the text
+ * of the token, made by getText, and the decoder on a TokenChars view of the token.
+ *
+ * Like the tests, this is not part of the player: it needs the test classes on the classpath.
+ */
+public class NoteTokenDecoderBenchmark {
+
+    /**
+     * Times both decoders, and prints the time per note of each.
+     * @param args the number of rounds over the tokens, then the .abc files to read them from
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: NoteTokenDecoderBenchmark rounds file.abc...");
+            return;
+        }
+        int rounds = Integer.parseInt(args[0]);
+        List<Token> tokens = new ArrayList<Token>();
+        for (int i = 1; i < args.length; i++) {
+            Path file = Paths.get(args[i]);
+            ABCMusicLexer lexer = new ABCMusicLexer(MappedCharStream.open(file, Charset.defaultCharset()));
+            for (Token token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken())
+                if (token.getType() == ABCMusicLexer.NOTE)
+                    tokens.add(token);
+        }
+        if (tokens.isEmpty()) {
+            System.err.println("no notes found");
+            return;
+        }
+
+        NoteTokenDecoder decoder = new NoteTokenDecoder();
+        TokenChars chars = new TokenChars();
+        // warm up both, so that neither is timed while it is being compiled
+        for (int round = 0; round < Math.max(1, rounds / 10); round++) {
+            for (Token token : tokens) {
+                decoder.decode(chars.of(token));
+                new NoteTokenDecoderTest.SplitDecoding(token.getText());
+            }
+        }
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (Token token : tokens) {
+                NoteTokenDecoderTest.SplitDecoding split = new NoteTokenDecoderTest.SplitDecoding(token.getText());
+                checksum += split.numerator + split.octave;
+            }
+        }
+        long split = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (Token token : tokens) {
+                decoder.decode(chars.of(token));
+                checksum -= decoder.getNumerator() + decoder.getOctave();
+            }
+        }
+        long scan = System.nanoTime() - start;
+        double decodes = (double) rounds * tokens.size();
+        System.out.println(String.format("%d tokens x %d rounds: split %.1f ns/note, scan %.1f ns/note, %.1fx faster (checksum %d)",
+                tokens.size(), rounds, split / decodes, scan / decodes, split / (double) Math.max(scan, 1), checksum));
+    }
+}
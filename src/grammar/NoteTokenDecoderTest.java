@@ -0,0 +1,185 @@
+package grammar;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.antlr.v4.runtime.Token;
+import org.junit.Test;
+
+import player.AccidentalEnum;
+import player.NoteEnum;
+
+/**
+ * Tests that scanning a note token gives the same result as splitting it with regular expressions
+ */
+public class NoteTokenDecoderTest {
+
+    /*
+     * Partition input space:
+     * - Accidental: none, ^, ^^, _, __, =
+     * - Letter: uppercase, lowercase, rest
+     * - Octave marks: none, one or more ', one or more ,
+     * - Duration: none, "n", "/", "/d", "n/", "n/d", with one or more digits
+     * - Source: every note of the sample files, every combination of the above
+     */
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String[] ACCIDENTALS = {"", "^", "^^", "_", "__", "="};
+    private static final String[] LETTERS = {"C", "G", "a", "e", "z"};
+    private static final String[] OCTAVES = {"", "'", "'''", ",", ",,"};
+    private static final String[] DURATIONS = {"", "2", "12", "/", "/4", "/16", "3/", "3/2", "15/16"};
+
+    /**
+     * A NOTE token decoded the way SongListener used to, by splitting it with regular expressions:
+     * the oracle that NoteTokenDecoder is checked against.
+     */
+    static class SplitDecoding {
+        final boolean rest;
+        final NoteEnum note;
+        final AccidentalEnum accidental;
+        final int octave;
+        final int numerator;
+        final int denominator;
+
+        /**
+         * @param token the text of a NOTE token, as matched by the lexer
+         */
+        SplitDecoding(String token) {
+            String[] splitNote = token.split("(?=[\\d+/])", 2);
+            String pitchString = splitNote[0];
+            int num = 1;
+            int den = 1;
+            if (splitNote.length == 2) {
+                String[] splitFraction = splitNote[1].split("(?=/)|(?<=/)");
+                if (splitFraction[0].equals("/"))
+                    splitFraction = prependEmpty(splitFraction);
+                if (splitFraction.length == 3) {
+                    num = 1;
+                    den = 2;
+                    if (splitFraction[0].equals("")) {
+                        den = Integer.parseInt(splitFraction[2]);
+                    } else if (!splitFraction[2].equals("")) {
+                        num = Integer.parseInt(splitFraction[0]);
+                        den = Integer.parseInt(splitFraction[2]);
+                    }
+                } else if (splitFraction.length == 1) {
+                    num = Integer.parseInt(splitFraction[0]);
+                } else if (splitFraction.length == 2) {
+                    den = 2;
+                }
+            }
+            numerator = num;
+            denominator = den;
+
+            String[] splitPitch = pitchString.split("(?=[A-Ga-gz])|(?<=[A-Ga-gz])");
+            if (splitPitch[0].matches("[A-Ga-gz]"))
+                splitPitch = prependEmpty(splitPitch);
+            String basenoteString = splitPitch[1];
+            rest = basenoteString.equals("z");
+            note = rest ? NoteEnum.C : NoteEnum.valueOf(basenoteString.toUpperCase());
+
+            String accidentalString = splitPitch[0];
+            if (accidentalString.equals("_"))
+                accidental = AccidentalEnum.FLAT;
+            else if (accidentalString.equals("__"))
+                accidental = AccidentalEnum.DOUBLE_FLAT;
+            else if (accidentalString.equals("^"))
+                accidental = AccidentalEnum.SHARP;
+            else if (accidentalString.equals("^^"))
+                accidental = AccidentalEnum.DOUBLE_SHARP;
+            else if (accidentalString.equals("="))
+                accidental = AccidentalEnum.NATURAL;
+            else
+                accidental = null;
+
+            int oct = 0;
+            if (basenoteString.equals(basenoteString.toLowerCase()) && !rest)
+                oct++;
+            if (splitPitch.length == 3) {
+                String octaveString = splitPitch[2];
+                String octaveType = octaveString.substring(0, 1);
+                for (int i = 0; i < octaveString.length(); i++) {
+                    if (octaveType.equals("'"))
+                        oct++;
+                    else if (octaveType.equals(","))
+                        oct--;
+                }
+            }
+            octave = oct;
+        }
+
+        /**
+         * @return a copy of parts with an empty string inserted at the front
+         */
+        private static String[] prependEmpty(String[] parts) {
+            String[] shifted = new String[parts.length + 1];
+            shifted[0] = "";
+            System.arraycopy(parts, 0, shifted, 1, parts.length);
+            return shifted;
+        }
+    }
+
+    /**
+     * Asserts that decode and the split decoding agree on a token
+     */
+    private static void assertSameDecoding(String token) {
+        NoteTokenDecoder scan = new NoteTokenDecoder();
+        scan.decode(token);
+        SplitDecoding split = new SplitDecoding(token);
+        assertEquals(token, split.rest, scan.isRest());
+        assertEquals(token, split.numerator, scan.getNumerator());
+        assertEquals(token, split.denominator, scan.getDenominator());
+        if (!split.rest) {
+            assertEquals(token, split.note, scan.getNote());
+            assertEquals(token, split.accidental, scan.getAccidental());
+            assertEquals(token, split.octave, scan.getOctave());
+        }
+    }
+
+    @Test
+    public void sampleFilesTest() throws IOException {
+        int notes = 0;
+        for (File file : new File("sample_abc").listFiles()) {
+            ABCMusicLexer lexer = new ABCMusicLexer(MappedCharStream.open(file.toPath(), UTF8));
+            for (Token token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) {
+                if (token.getType() == ABCMusicLexer.NOTE) {
+                    assertSameDecoding(token.getText());
+                    notes++;
+                }
+            }
+        }
+        assertTrue(notes > 0);
+    }
+
+    @Test
+    public void combinationsTest() {
+        for (String accidental : ACCIDENTALS)
+            for (String letter : LETTERS)
+                for (String octave : OCTAVES)
+                    for (String duration : DURATIONS)
+                        assertSameDecoding(accidental + letter + octave + duration);
+    }
+
+    @Test
+    public void decodeTest() {
+        NoteTokenDecoder decoder = new NoteTokenDecoder();
+        decoder.decode("__b,,3/4");
+        assertFalse(decoder.isRest());
+        assertEquals(NoteEnum.B, decoder.getNote());
+        assertEquals(AccidentalEnum.DOUBLE_FLAT, decoder.getAccidental());
+        assertEquals(-1, decoder.getOctave());
+        assertEquals(3, decoder.getNumerator());
+        assertEquals(4, decoder.getDenominator());
+
+        // the decoder is reused, and nothing is left over from the previous token
+        decoder.decode("z");
+        assertTrue(decoder.isRest());
+        assertNull(decoder.getAccidental());
+        assertEquals(1, decoder.getNumerator());
+        assertEquals(1, decoder.getDenominator());
+    }
+}
@@ -0,0 +1,14 @@
+package grammar;
+
+/**
+ * The ways that a SongCompiler can run the parser's prediction.
+ */
+public enum PredictionEnum {
+    
+    /**
+     * LL parses every tune in full LL mode, reporting the first syntax error as an exception.
+     * SLL_THEN_LL first parses in the faster SLL mode, bailing out at the first syntax error, and
+     * only parses the tune again in full LL mode if that fails.
+     */
+    LL, SLL_THEN_LL;
+}
@@ -0,0 +1,561 @@
+package grammar;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.UnbufferedTokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import grammar.ABCMusicParser.Abc_lineContext;
+import grammar.ABCMusicParser.Abc_tuneContext;
+import grammar.ABCMusicParser.Other_fieldsContext;
+import player.Body;
+import player.Header;
+import player.KeySignature;
+import player.Song;
+import player.Voice;
+import sound.EventBuffer;
+
+/**
+ * Turns the text of a single abc tune into a Song:
+ * the lexer feeds the parser, and the SongListener walks the resulting parse tree.
+ * In streaming mode no parse tree is built at all: the SongListener is attached to the parser and
+ * builds the Song while parsing, so each rule's context can be freed as soon as it is exited.
+ *
+ * Every call to compile uses its own lexer, parser and listener, so one SongCompiler
+ * can be shared by several threads once it has been set up.
+ *
+ * The lexer can be chosen at runtime with setLexer, or with the system property
+ * abc.lexer=GENERATED|HAND_WRITTEN (GENERATED by default). Likewise the prediction mode can be
+ * chosen with setPrediction, or with abc.prediction=LL|SLL_THEN_LL (LL by default). In
+ * SLL_THEN_LL mode, the compiler counts how many tunes needed the LL fallback. Streaming mode is
+ * chosen with setStreaming, or with abc.streaming=true (off by default).
+ *
+ * In parallel voices mode (setParallelVoices, or abc.parallelVoices=true, off by default) the
+ * voices of a tune are built at the same time: a quick pass over the parse tree sorts the
+ * abc_line contexts by the voice they are in, and each voice's bars, repeats and lyrics are then
+ * built by its own SongListener on a fork-join task. The Song is the same as a single SongListener
+ * would build, with its voices in the order they are declared. This mode needs a parse tree, so it
+ * does nothing in streaming mode.
+ *
+ * In unbuffered mode (setUnbuffered, or abc.unbuffered=true, off by default) the parser reads its
+ * tokens from an UnbufferedTokenStream instead of a CommonTokenStream, which keeps every token of
+ * the input, and each token copies its text out of the input. Given an UnbufferedCharStream, the
+ * memory used while parsing is then bounded by the lookahead the parser needs, not by the size of
+ * the input. Nothing but the Song (or events, or header) is kept: compile builds the Song while
+ * parsing, as in streaming mode. An unbuffered stream cannot be rewound, so the tune is parsed only
+ * once, always with the generated lexer: in LL mode, or in SLL mode if the prediction mode is
+ * SLL_THEN_LL. SLL is many times faster on long tunes, and gives the same result as LL whenever it
+ * succeeds, but a tune that it cannot parse is reported as an error instead of being parsed again.
+ */
+public class SongCompiler {
+
+    /**
+     * The charset used when text that is not already bytes has to be given to the hand-written lexer
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Which lexer turns the input into tokens
+     */
+    private LexerEnum lexer;
+
+    /**
+     * How the parser predicts which alternative to take
+     */
+    private PredictionEnum prediction;
+
+    /**
+     * True if the Song is built while parsing, instead of from a parse tree
+     */
+    private boolean streaming;
+
+    /**
+     * True if the voices of a tune are built in parallel, from the parse tree
+     */
+    private boolean parallelVoices;
+
+    /**
+     * True if tokens are read from an unbuffered stream
+     */
+    private boolean unbuffered;
+
+    /**
+     * The threads that build voices in parallel voices mode, shared by every SongCompiler. They
+     * are daemon threads, so they never keep the program running
+     */
+    private static final ForkJoinPool VOICE_POOL = new ForkJoinPool();
+
+    /**
+     * The name SongListener gives the voice of a tune that names none
+     */
+    private static final String DEFAULT_VOICE = "THE_DEFAULT_VOICE";
+
+    /**
+     * In SLL_THEN_LL mode, the number of parses that succeeded in SLL mode,
+     * and the number that had to be parsed again in LL mode
+     */
+    private final AtomicLong sllParses = new AtomicLong();
+    private final AtomicLong llFallbacks = new AtomicLong();
+
+    /**
+     * Creates a compiler using the lexer, prediction mode, streaming mode, parallel voices mode
+     * and unbuffered mode named by the abc.lexer, abc.prediction, abc.streaming,
+     * abc.parallelVoices and abc.unbuffered system properties
+     */
+    public SongCompiler() {
+        this.lexer = LexerEnum.valueOf(System.getProperty("abc.lexer", LexerEnum.GENERATED.name()));
+        this.prediction = PredictionEnum.valueOf(System.getProperty("abc.prediction", PredictionEnum.LL.name()));
+        this.streaming = Boolean.getBoolean("abc.streaming");
+        this.parallelVoices = Boolean.getBoolean("abc.parallelVoices");
+        this.unbuffered = Boolean.getBoolean("abc.unbuffered");
+    }
+
+    /**
+     * @return the lexer that turns the input into tokens
+     */
+    public LexerEnum getLexer() {
+        return lexer;
+    }
+
+    /**
+     * @param lexer the lexer to turn the input into tokens with
+     */
+    public void setLexer(LexerEnum lexer) {
+        this.lexer = lexer;
+    }
+
+    /**
+     * @return how the parser predicts which alternative to take
+     */
+    public PredictionEnum getPrediction() {
+        return prediction;
+    }
+
+    /**
+     * @param prediction how the parser should predict which alternative to take
+     */
+    public void setPrediction(PredictionEnum prediction) {
+        this.prediction = prediction;
+    }
+
+    /**
+     * @return true if the Song is built while parsing, instead of from a parse tree
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * @param streaming true to build the Song while parsing, without keeping a parse tree
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * @return true if the voices of a tune are built in parallel
+     */
+    public boolean isParallelVoices() {
+        return parallelVoices;
+    }
+
+    /**
+     * @param parallelVoices true to build each voice of a tune on its own fork-join task; only
+     *          used when not streaming
+     */
+    public void setParallelVoices(boolean parallelVoices) {
+        this.parallelVoices = parallelVoices;
+    }
+
+    /**
+     * @return true if tokens are read from an unbuffered stream
+     */
+    public boolean isUnbuffered() {
+        return unbuffered;
+    }
+
+    /**
+     * @param unbuffered true to read tokens from an unbuffered stream, and build the Song while
+     *          parsing, so that parsing takes the same memory however long the input is
+     */
+    public void setUnbuffered(boolean unbuffered) {
+        this.unbuffered = unbuffered;
+    }
+
+    /**
+     * @return the number of parses that succeeded in SLL mode
+     */
+    public long getSllParses() {
+        return sllParses.get();
+    }
+
+    /**
+     * @return the number of parses that failed in SLL mode and were parsed again in LL mode
+     */
+    public long getLlFallbacks() {
+        return llFallbacks.get();
+    }
+
+    /**
+     * Lexes, parses and builds the Song for one tune
+     * @param input the text of the tune - must contain exactly one tune
+     * @return the Song described by the input
+     * @throws RuntimeException if the input is not a valid abc tune
+     */
+    public Song compile(CharStream input) {
+        if (streaming || unbuffered) {
+            return parse(input, new Rule<Song>() {
+                @Override
+                public Song parse(ABCMusicParser parser) {
+                    parser.setBuildParseTree(false);
+                    SongListener listener = new SongListener();
+                    ListenerGuard guard = new ListenerGuard(listener);
+                    parser.addParseListener(guard);
+                    parser.abc_tune();
+                    guard.rethrow();
+                    return listener.getSong();
+                }
+            });
+        }
+        // Generate the parse tree using the starter rule.
+        ParseTree tree = parse(input, new Rule<ParseTree>() {
+            @Override
+            public ParseTree parse(ABCMusicParser parser) {
+                return parser.abc_tune();
+            }
+        });
+        if (parallelVoices)
+            return buildVoicesInParallel((Abc_tuneContext) tree);
+        SongListener listener = new SongListener();
+        new ParseTreeWalker().walk(listener, tree);
+        return listener.getSong();
+    }
+
+    /**
+     * Builds the Song of a parse tree with one SongListener per voice, each on its own task
+     * @param tune the parse tree of a tune
+     * @return the Song that walking the whole tree with one SongListener would give
+     */
+    private static Song buildVoicesInParallel(Abc_tuneContext tune) {
+        SongListener headerListener = new SongListener();
+        ParseTreeWalker.DEFAULT.walk(headerListener, tune.abc_header());
+        Header header = headerListener.getHeader();
+
+        // The lines of music of each voice, in the order the voices are declared. As in
+        // SongListener, the music starts in the last voice named in the header (or the default
+        // voice if there is none), and a V: line switches to the voice it names
+        LinkedHashMap<String, List<Abc_lineContext>> linesForVoiceName = new LinkedHashMap<String, List<Abc_lineContext>>();
+        String voiceName = DEFAULT_VOICE;
+        for (Other_fieldsContext field : tune.abc_header().other_fields()) {
+            if (field.FIELD_VOICE() != null) {
+                voiceName = field.FIELD_VOICE().getText().replace("V:", "").trim();
+                if (!linesForVoiceName.containsKey(voiceName))
+                    linesForVoiceName.put(voiceName, new ArrayList<Abc_lineContext>());
+            }
+        }
+        if (!linesForVoiceName.containsKey(voiceName))
+            linesForVoiceName.put(voiceName, new ArrayList<Abc_lineContext>());
+        for (Abc_lineContext line : tune.abc_music().abc_line()) {
+            if (line.field_voice() != null) {
+                voiceName = line.field_voice().getText().replace("V:", "").trim();
+                if (!linesForVoiceName.containsKey(voiceName))
+                    linesForVoiceName.put(voiceName, new ArrayList<Abc_lineContext>());
+            }
+            linesForVoiceName.get(voiceName).add(line);
+        }
+
+        final List<VoiceTask> tasks = new ArrayList<VoiceTask>();
+        for (String name : linesForVoiceName.keySet())
+            tasks.add(new VoiceTask(header.getKeySignature(), name, linesForVoiceName.get(name)));
+        if (tasks.size() == 1) {
+            tasks.get(0).invoke();
+        } else {
+            VOICE_POOL.invoke(new RecursiveTask<Void>() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected Void compute() {
+                    ForkJoinTask.invokeAll(tasks);
+                    return null;
+                }
+            });
+        }
+        List<Voice> voices = new ArrayList<Voice>();
+        for (VoiceTask task : tasks)
+            voices.add(task.join());
+        return new Song(header, new Body(voices));
+    }
+
+    /**
+     * Builds one voice by walking its lines of music with a SongListener of its own
+     */
+    private static class VoiceTask extends RecursiveTask<Voice> {
+        private static final long serialVersionUID = 1L;
+
+        private final KeySignature key;
+        private final String voiceName;
+        private final List<Abc_lineContext> lines;
+
+        VoiceTask(KeySignature key, String voiceName, List<Abc_lineContext> lines) {
+            this.key = key;
+            this.voiceName = voiceName;
+            this.lines = lines;
+        }
+
+        @Override
+        protected Voice compute() {
+            SongListener listener = new SongListener(key, voiceName);
+            for (Abc_lineContext line : lines)
+                ParseTreeWalker.DEFAULT.walk(listener, line);
+            return listener.getVoice(voiceName);
+        }
+    }
+
+    /**
+     * Lexes and parses one tune, and schedules its notes and lyrics while parsing. Neither a parse
+     * tree nor a Song is built, but the events are exactly the ones that sequencing the Song that
+     * compile returns would schedule.
+     * @param input the text of the tune - must contain exactly one tune
+     * @return the timed notes and lyrics of the tune
+     * @throws RuntimeException if the input is not a valid abc tune
+     */
+    public EventBuffer compileEvents(CharStream input) {
+        return parse(input, new Rule<EventBuffer>() {
+            @Override
+            public EventBuffer parse(ABCMusicParser parser) {
+                parser.setBuildParseTree(false);
+                MidiEventListener listener = new MidiEventListener();
+                ListenerGuard guard = new ListenerGuard(listener);
+                parser.addParseListener(guard);
+                parser.abc_tune();
+                guard.rethrow();
+                return listener.getEvents();
+            }
+        });
+    }
+
+    /**
+     * Lexes and parses only the header of a tune, up to and including its "K:" field, and builds
+     * the same Header that compile would. The body is never parsed, and the lexer stops one
+     * token into it.
+     * @param input the text of the tune
+     * @return the Header of the tune
+     * @throws RuntimeException if the header is not valid abc
+     */
+    public Header compileHeader(CharStream input) {
+        return parse(input, new Rule<Header>() {
+            @Override
+            public Header parse(ABCMusicParser parser) {
+                // Build the header while parsing, instead of walking a tree afterwards
+                parser.setBuildParseTree(false);
+                SongListener listener = new SongListener();
+                ListenerGuard guard = new ListenerGuard(listener);
+                parser.addParseListener(guard);
+                parser.abc_header();
+                guard.rethrow();
+                return listener.getHeader();
+            }
+        });
+    }
+
+    /**
+     * Lexes and parses one tune, handing each rule to the listener as soon as it has been parsed,
+     * as streaming mode does with a SongListener. Nothing is kept but what the listener keeps.
+     * In SLL_THEN_LL mode (unless unbuffered), the listener may see part of a failed SLL parse
+     * before the LL parse.
+     * @param input the text of the tune - must contain exactly one tune
+     * @param listener the listener to hand the rules to
+     * @throws RuntimeException if the input is not a valid abc tune, or the listener throws
+     */
+    void listen(CharStream input, final ABCMusicListener listener) {
+        parse(input, new Rule<Void>() {
+            @Override
+            public Void parse(ABCMusicParser parser) {
+                parser.setBuildParseTree(false);
+                ListenerGuard guard = new ListenerGuard(listener);
+                parser.addParseListener(guard);
+                parser.abc_tune();
+                guard.rethrow();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Passes the events of a parser on to a listener attached to it, until the listener throws.
+     *
+     * When the parser fails, the rules it unwinds still fire their exit events, on contexts that
+     * are missing tokens. A listener that throws on one of those would hide the parser's own
+     * exception (and, in SLL_THEN_LL mode, the bail-out that asks for the LL fallback). So the
+     * guard keeps the listener's first exception, stops passing events on, and leaves it to the
+     * caller to rethrow it once the parser has returned normally.
+     */
+    static class ListenerGuard implements ParseTreeListener {
+
+        /**
+         * The listener the events are passed on to
+         */
+        private final ABCMusicListener listener;
+
+        /**
+         * The first exception the listener threw, or null if it has not thrown
+         */
+        private RuntimeException failure = null;
+
+        ListenerGuard(ABCMusicListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void enterEveryRule(ParserRuleContext ctx) {
+            if (failure != null)
+                return;
+            try {
+                listener.enterEveryRule(ctx);
+                ctx.enterRule(listener);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+
+        @Override
+        public void exitEveryRule(ParserRuleContext ctx) {
+            if (failure != null)
+                return;
+            try {
+                ctx.exitRule(listener);
+                listener.exitEveryRule(ctx);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+
+        @Override
+        public void visitTerminal(TerminalNode node) {
+            if (failure != null)
+                return;
+            try {
+                listener.visitTerminal(node);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+
+        @Override
+        public void visitErrorNode(ErrorNode node) {
+            if (failure != null)
+                return;
+            try {
+                listener.visitErrorNode(node);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+
+        /**
+         * @throws RuntimeException the first exception the listener threw, if any
+         */
+        void rethrow() {
+            if (failure != null)
+                throw failure;
+        }
+    }
+
+    /**
+     * A start rule of the parser, and what to make of its result
+     */
+    private interface Rule<T> {
+        /**
+         * @param parser a fresh parser over the input
+         * @return the result of parsing the input with the rule
+         */
+        T parse(ABCMusicParser parser);
+    }
+
+    /**
+     * Lexes and parses the input with the chosen prediction mode. In SLL_THEN_LL mode the rule
+     * is run on a bailing SLL parser first, and again on an LL parser over the same (already
+     * lexed) tokens only if that fails. In unbuffered mode the rule is run once (see above).
+     * @param input the text to parse
+     * @param rule the rule to parse it with
+     * @return the result of the rule
+     * @throws RuntimeException if the input cannot be lexed, or cannot be parsed in LL mode
+     */
+    private <T> T parse(CharStream input, Rule<T> rule) {
+        if (unbuffered) {
+            ABCMusicParser parser = new ABCMusicParser(new UnbufferedTokenStream<Token>(newLexer(input)));
+            parser.reportErrorsAsExceptions();
+            if (prediction == PredictionEnum.SLL_THEN_LL) {
+                parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+                T result = rule.parse(parser);
+                sllParses.incrementAndGet();
+                return result;
+            }
+            return rule.parse(parser);
+        }
+        CommonTokenStream tokens = new CommonTokenStream(newLexer(input));
+        if (prediction == PredictionEnum.SLL_THEN_LL) {
+            ABCMusicParser parser = new ABCMusicParser(tokens);
+            parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+            parser.removeErrorListeners();
+            parser.setErrorHandler(new BailErrorStrategy());
+            try {
+                T result = rule.parse(parser);
+                sllParses.incrementAndGet();
+                return result;
+            } catch (ParseCancellationException e) {
+                llFallbacks.incrementAndGet();
+                tokens.reset();
+            }
+        }
+        ABCMusicParser parser = new ABCMusicParser(tokens);
+        parser.reportErrorsAsExceptions();
+        return rule.parse(parser);
+    }
+
+    /**
+     * @param input the text to lex
+     * @return the chosen lexer over the input, set up to throw a RuntimeException on invalid input
+     *          (in unbuffered mode, the generated lexer, with tokens that copy their text)
+     */
+    TokenSource newLexer(CharStream input) {
+        if (unbuffered) {
+            ABCMusicLexer generated = new MappedABCMusicLexer(input);
+            generated.reportErrorsAsExceptions();
+            // the input forgets the text of a token once it has moved past it
+            generated.setTokenFactory(new CommonTokenFactory(true));
+            return generated;
+        }
+        if (lexer == LexerEnum.HAND_WRITTEN) {
+            if (input instanceof MappedCharStream)
+                return new ABCMusicByteLexer((MappedCharStream) input);
+            byte[] bytes = input.getText(Interval.of(0, input.size() - 1)).getBytes(UTF8);
+            return new ABCMusicByteLexer(new MappedCharStream(ByteBuffer.wrap(bytes), UTF8, input.getSourceName()));
+        }
+        ABCMusicLexer generated = new MappedABCMusicLexer(input);
+        generated.reportErrorsAsExceptions();
+        return generated;
+    }
+}
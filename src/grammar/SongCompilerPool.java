@@ -0,0 +1,225 @@
+package grammar;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+
+import player.Song;
+
+/**
+ * A fixed number of lexer/parser pairs that are shared by any number of threads compiling tunes.
+ *
+ * Instead of creating a new ABCMusicLexer and ABCMusicParser for every tune, a thread borrows a
+ * pair from the pool, points it at its input by resetting their input streams, and gives it back. The
+ * Song is built while parsing (as in SongCompiler's streaming mode), so no parse tree is kept.
+ *
+ * The DFA cache that ANTLR builds while predicting is shared by every lexer and parser, so
+ * warmUp, which parses a corpus of tunes once (usually sample_abc), spares the first real
+ * requests from building it. A pool made by warmedUp has done so before it is handed out; one
+ * made by the constructor starts cold, for callers that would rather not read a corpus.
+ *
+ * The pool counts how often a pair was free straight away (a hit) and how long threads had to
+ * wait for one when it was not.
+ *
+ * Rep Invariant:
+ *      Every pair is either in the free queue, or borrowed by exactly one thread
+ *      hits <= acquisitions
+ */
+public class SongCompilerPool {
+
+    /**
+     * A lexer and a parser reading from it
+     */
+    private static class Slot {
+        private final ABCMusicLexer lexer;
+        private final ABCMusicParser parser;
+
+        Slot() {
+            lexer = new MappedABCMusicLexer(null);
+            lexer.reportErrorsAsExceptions();
+            parser = new ABCMusicParser(null);
+            parser.reportErrorsAsExceptions();
+            parser.setBuildParseTree(false);
+        }
+    }
+
+    /**
+     * The pairs not borrowed by any thread
+     */
+    private final BlockingQueue<Slot> free;
+
+    /**
+     * The number of times a pair was borrowed, the number of those times it was free straight
+     * away, the total time spent waiting for a pair, and the longest wait
+     */
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * @param size the number of lexer/parser pairs, at least 1
+     */
+    public SongCompilerPool(int size) {
+        if (size < 1)
+            throw new IllegalArgumentException("a pool needs at least one parser, not " + size);
+        free = new ArrayBlockingQueue<Slot>(size);
+        for (int i = 0; i < size; i++)
+            free.add(new Slot());
+    }
+
+    /**
+     * Makes a pool, and warms it up on a corpus before returning it (see warmUp).
+     * @param size the number of lexer/parser pairs, at least 1
+     * @param corpus the directory holding the abc files (ex. sample_abc)
+     * @param charset the charset of the abc files - must be ASCII compatible (ex. UTF-8, ISO-8859-1)
+     * @return a pool whose DFA cache has seen every tune of the corpus that compiles
+     * @throws IOException if the directory cannot be listed
+     */
+    public static SongCompilerPool warmedUp(int size, Path corpus, Charset charset) throws IOException {
+        SongCompilerPool pool = new SongCompilerPool(size);
+        pool.warmUp(corpus, charset);
+        return pool;
+    }
+
+    /**
+     * Lexes, parses and builds the Song for one tune, on a borrowed lexer and parser.
+     * Blocks until a pair is free.
+     * @param input the text of the tune - must contain exactly one tune
+     * @return the Song described by the input
+     * @throws RuntimeException if the input is not a valid abc tune, or the thread is
+     *          interrupted while waiting
+     */
+    public Song compile(CharStream input) {
+        Slot slot = acquire();
+        try {
+            slot.lexer.setInputStream(input);
+            // A token stream cannot be rewound onto new input, but it is cheap to make
+            slot.parser.setInputStream(new CommonTokenStream(slot.lexer));
+            SongListener listener = new SongListener();
+            // as in SongCompiler's streaming mode, so the parser's error is not hidden by the
+            // listener's reaction to a missing token
+            SongCompiler.ListenerGuard guard = new SongCompiler.ListenerGuard(listener);
+            slot.parser.addParseListener(guard);
+            slot.parser.abc_tune();
+            guard.rethrow();
+            return listener.getSong();
+        } finally {
+            // Let go of the input, so a pair that sits idle does not keep a large tune alive
+            slot.parser.removeParseListeners();
+            slot.parser.setInputStream(null);
+            slot.lexer.setInputStream(null);
+            free.add(slot);
+        }
+    }
+
+    /**
+     * Warms up the shared DFA cache by compiling every tune of every .abc file in a directory.
+     * Files that fail to compile are skipped.
+     * @param corpus the directory holding the abc files (ex. sample_abc)
+     * @param charset the charset of the abc files - must be ASCII compatible (ex. UTF-8, ISO-8859-1)
+     * @return the number of tunes compiled
+     * @throws IOException if the directory cannot be listed
+     */
+    public int warmUp(Path corpus, Charset charset) throws IOException {
+        int tunes = 0;
+        DirectoryStream<Path> files = Files.newDirectoryStream(corpus, "*.abc");
+        try {
+            for (Path file : files) {
+                try {
+                    Iterator<CharStream> tuneTexts = Songbook.open(file, charset).tunes();
+                    while (tuneTexts.hasNext()) {
+                        compile(tuneTexts.next());
+                        tunes++;
+                    }
+                } catch (IOException e) {
+                    // not worth warming up on
+                } catch (RuntimeException e) {
+                    // not worth warming up on
+                }
+            }
+        } finally {
+            files.close();
+        }
+        return tunes;
+    }
+
+    /**
+     * Takes a free pair, waiting if there is none, and records the wait
+     */
+    private Slot acquire() {
+        acquisitions.incrementAndGet();
+        Slot slot = free.poll();
+        if (slot != null) {
+            hits.incrementAndGet();
+            return slot;
+        }
+        long start = System.nanoTime();
+        try {
+            slot = free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while waiting for a parser", e);
+        }
+        long waited = System.nanoTime() - start;
+        waitNanos.addAndGet(waited);
+        long max = maxWaitNanos.get();
+        while (waited > max && !maxWaitNanos.compareAndSet(max, waited))
+            max = maxWaitNanos.get();
+        return slot;
+    }
+
+    /**
+     * @return the number of times a lexer/parser pair was borrowed
+     */
+    public long getAcquisitions() {
+        return acquisitions.get();
+    }
+
+    /**
+     * @return the number of times a pair was free without waiting
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the fraction of borrows that did not have to wait, or 1 if there were none
+     */
+    public double getHitRate() {
+        long total = acquisitions.get();
+        return (total == 0) ? 1.0 : hits.get() / (double) total;
+    }
+
+    /**
+     * @return the total time that threads spent waiting for a pair, in nanoseconds
+     */
+    public long getWaitNanos() {
+        return waitNanos.get();
+    }
+
+    /**
+     * @return the longest time a thread spent waiting for a pair, in nanoseconds
+     */
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    /**
+     * @return the pool statistics, as a human readable summary
+     */
+    @Override
+    public String toString() {
+        return String.format("%d compiles, %.1f%% without waiting, %.3f ms waited in total, %.3f ms at most",
+                getAcquisitions(), 100 * getHitRate(), getWaitNanos() / 1e6, getMaxWaitNanos() / 1e6);
+    }
+}
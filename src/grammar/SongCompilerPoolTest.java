@@ -0,0 +1,136 @@
+package grammar;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.junit.Test;
+
+import player.Song;
+
+/**
+ * Tests that pooled lexers and parsers build the same Songs as fresh ones
+ */
+public class SongCompilerPoolTest {
+
+    /*
+     * Partition input space:
+     * - Pool size: 1, many
+     * - Threads: 1, more than the pool size
+     * - Input: valid tunes, a tune with an error followed by a valid tune, a tune missing a token
+     *          that the listener reads
+     * - Warm-up: none, by warmUp, by warmedUp
+     */
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Test(expected=IllegalArgumentException.class)
+    public void emptyPoolTest() {
+        new SongCompilerPool(0);
+    }
+
+    @Test
+    public void warmUpTest() throws IOException {
+        SongCompilerPool pool = new SongCompilerPool(1);
+        int sampleCount = new File("sample_abc").list().length;
+        assertEquals(sampleCount, pool.warmUp(Paths.get("sample_abc"), UTF8));
+        assertEquals(sampleCount, pool.getAcquisitions());
+        assertEquals(sampleCount, pool.getHits());
+        assertEquals(1.0, pool.getHitRate(), 0);
+    }
+
+    @Test
+    public void warmedUpTest() throws IOException {
+        SongCompilerPool pool = SongCompilerPool.warmedUp(2, Paths.get("sample_abc"), UTF8);
+        int sampleCount = new File("sample_abc").list().length;
+        assertEquals(sampleCount, pool.getAcquisitions());
+        Song song = pool.compile(new ANTLRInputStream("X:2\nT:Fine\nK:C\nC D|\n"));
+        assertEquals("Fine", song.getHeader().getTitle());
+    }
+
+    @Test
+    public void missingTitleTest() {
+        SongCompilerPool pool = new SongCompilerPool(1);
+        try {
+            pool.compile(new ANTLRInputStream("X:1\nK:C\nC D|\n"));
+            fail("expected the missing title to be reported");
+        } catch (RuntimeException e) {
+            // the parser's error, not the listener's reaction to the missing token
+            assertTrue(e.getMessage(), e.getMessage() != null && e.getMessage().contains("expecting FIELD_TITLE"));
+        }
+    }
+
+    @Test
+    public void sampleFilesTest() throws IOException {
+        SongCompilerPool pool = new SongCompilerPool(1);
+        SongCompiler compiler = new SongCompiler();
+        // the same pair is reused for every file
+        for (File file : new File("sample_abc").listFiles())
+            assertEquals(file.getName(), compiler.compile(MappedCharStream.open(file.toPath(), UTF8)),
+                    pool.compile(MappedCharStream.open(file.toPath(), UTF8)));
+    }
+
+    @Test
+    public void errorTest() {
+        SongCompilerPool pool = new SongCompilerPool(1);
+        try {
+            pool.compile(new ANTLRInputStream("X:1\nT:Broken\nK:C\nC $ D|\n"));
+            fail("expected a lexical error");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        try {
+            pool.compile(new ANTLRInputStream("X:1\nK:C\nC D|\n"));
+            fail("expected a syntax error");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        // the pair was given back, and is not confused by the earlier errors
+        Song song = pool.compile(new ANTLRInputStream("X:2\nT:Fine\nK:C\nC D|\n"));
+        assertEquals("Fine", song.getHeader().getTitle());
+        assertEquals(3, pool.getAcquisitions());
+    }
+
+    @Test
+    public void concurrentTest() throws Exception {
+        final SongCompilerPool pool = new SongCompilerPool(2);
+        final Song[] expected = new Song[8];
+        final String[] texts = new String[expected.length];
+        for (int i = 0; i < expected.length; i++) {
+            texts[i] = "X:" + i + "\nT:Tune " + i + "\nK:C\n" + "C D E F|G A B c|\n";
+            expected[i] = new SongCompiler().compile(new ANTLRInputStream(texts[i]));
+        }
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int t = 0; t < 8; t++) {
+                results.add(threads.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        for (int i = 0; i < 50; i++)
+                            if (!expected[i % expected.length].equals(pool.compile(new ANTLRInputStream(texts[i % texts.length]))))
+                                return false;
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results)
+                assertTrue(result.get());
+        } finally {
+            threads.shutdown();
+        }
+        assertEquals(400, pool.getAcquisitions());
+        assertTrue(pool.getHits() <= 400);
+        assertTrue(pool.getMaxWaitNanos() <= pool.getWaitNanos());
+    }
+}
@@ -0,0 +1,189 @@
+package grammar;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.junit.Test;
+
+import player.Header;
+import player.Song;
+import player.Voice;
+
+/**
+ * Tests that the prediction modes of a SongCompiler build the same Songs
+ */
+public class SongCompilerTest {
+
+    /*
+     * Partition input space:
+     * - Prediction: LL, SLL_THEN_LL
+     * - Input: valid tunes, a tune with a syntax error (parsed from a tree and while streaming),
+     *          a tune with a lexical error
+     * - Rule: whole tune, header only
+     * - Construction: from a parse tree, while parsing (streaming), one task per voice (parallel voices)
+     * - Voices: none named, declared in the header only, declared in the music, switched back and forth
+     * - Meter: reducible (4/4, 6/8), in lowest terms (3/4), C, C|, none
+     */
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static SongCompiler compiler(PredictionEnum prediction) {
+        SongCompiler compiler = new SongCompiler();
+        compiler.setPrediction(prediction);
+        return compiler;
+    }
+
+    @Test
+    public void sampleFilesTest() throws IOException {
+        SongCompiler ll = compiler(PredictionEnum.LL);
+        SongCompiler twoStage = compiler(PredictionEnum.SLL_THEN_LL);
+        File[] files = new File("sample_abc").listFiles();
+        for (File file : files) {
+            Song expected = ll.compile(MappedCharStream.open(file.toPath(), UTF8));
+            assertEquals(file.getName(), expected, twoStage.compile(MappedCharStream.open(file.toPath(), UTF8)));
+            assertEquals(file.getName(), expected.getHeader(), twoStage.compileHeader(MappedCharStream.open(file.toPath(), UTF8)));
+        }
+        assertEquals(2 * files.length, twoStage.getSllParses());
+        assertEquals(0, twoStage.getLlFallbacks());
+        // LL mode does not count anything
+        assertEquals(0, ll.getSllParses());
+    }
+
+    @Test
+    public void meterTest() {
+        String[] meters = { "4/4", "6/8", "3/4", "C", "C|", null };
+        String[] written = { "4/4", "6/8", "3/4", "4/4", "2/2", "4/4" };
+        for (int i = 0; i < meters.length; i++) {
+            String tune = "X:1\nT:Meter\n" + ((meters[i] == null) ? "" : "M:" + meters[i] + "\n") + "K:C\nC D E F |]\n";
+            for (SongCompiler compiler : new SongCompiler[] { compiler(PredictionEnum.LL), compiler(PredictionEnum.SLL_THEN_LL) }) {
+                Header header = compiler.compile(new ANTLRInputStream(tune)).getHeader();
+                // a meter is kept as written, not reduced
+                assertEquals(written[i], header.getMeter());
+                assertTrue(header.toString().contains("Note Length per Beat: " + written[i] + "\n"));
+                assertEquals(header, compiler.compileHeader(new ANTLRInputStream(tune)));
+            }
+        }
+        Header sixEight = new SongCompiler().compileHeader(new ANTLRInputStream("X:1\nT:Meter\nM:6/8\nK:C\n"));
+        Header threeFour = new SongCompiler().compileHeader(new ANTLRInputStream("X:1\nT:Meter\nM:3/4\nK:C\n"));
+        assertEquals(sixEight.getNoteLengthPerBeat(), threeFour.getNoteLengthPerBeat());
+        assertFalse(sixEight.equals(threeFour));
+    }
+
+    @Test
+    public void streamingTest() throws IOException {
+        SongCompiler tree = compiler(PredictionEnum.LL);
+        SongCompiler streaming = compiler(PredictionEnum.LL);
+        streaming.setStreaming(true);
+        SongCompiler streamingTwoStage = compiler(PredictionEnum.SLL_THEN_LL);
+        streamingTwoStage.setStreaming(true);
+        for (File file : new File("sample_abc").listFiles()) {
+            Song expected = tree.compile(MappedCharStream.open(file.toPath(), UTF8));
+            assertEquals(file.getName(), expected, streaming.compile(MappedCharStream.open(file.toPath(), UTF8)));
+            assertEquals(file.getName(), expected, streamingTwoStage.compile(MappedCharStream.open(file.toPath(), UTF8)));
+        }
+    }
+
+    @Test
+    public void streamingLongTuneTest() {
+        StringBuilder text = new StringBuilder("X:1\nT:Long\nK:C\n|:");
+        for (int i = 0; i < 5000; i++)
+            text.append("C D [1E F:|[2 G (3A B c|\n");
+        SongCompiler streaming = compiler(PredictionEnum.SLL_THEN_LL);
+        streaming.setStreaming(true);
+        Song expected = compiler(PredictionEnum.SLL_THEN_LL).compile(new ANTLRInputStream(text.toString()));
+        assertEquals(expected, streaming.compile(new ANTLRInputStream(text.toString())));
+    }
+
+    /**
+     * Asserts that building the voices of a tune in parallel gives the same Song, with its voices
+     * in the same order
+     */
+    private static void assertSameParallelSong(String name, SongCompiler serial, SongCompiler parallel, String text) {
+        Song expected = serial.compile(new ANTLRInputStream(text));
+        Song song = parallel.compile(new ANTLRInputStream(text));
+        assertEquals(name, expected, song);
+        List<Voice> expectedVoices = expected.getBody().getVoices();
+        List<Voice> voices = song.getBody().getVoices();
+        assertEquals(name, expectedVoices.size(), voices.size());
+        for (int i = 0; i < voices.size(); i++) {
+            assertEquals(name, expectedVoices.get(i).getVoiceName(), voices.get(i).getVoiceName());
+            assertEquals(name, expectedVoices.get(i).getSongComponents(), voices.get(i).getSongComponents());
+            assertEquals(name, expectedVoices.get(i).getSongSyllables(), voices.get(i).getSongSyllables());
+        }
+    }
+
+    @Test
+    public void parallelVoicesTest() throws IOException {
+        SongCompiler serial = compiler(PredictionEnum.LL);
+        SongCompiler parallel = compiler(PredictionEnum.LL);
+        parallel.setParallelVoices(true);
+        for (File file : new File("sample_abc").listFiles())
+            assertSameParallelSong(file.getName(), serial, parallel, new String(Files.readAllBytes(file.toPath()), UTF8));
+
+        assertSameParallelSong("no voices", serial, parallel, "X:1\nT:t\nK:D\n|: C D | E F :| G |\nw: a b c d e\n");
+        assertSameParallelSong("switching voices", serial, parallel, "X:1\nT:t\nV:1\nV:2\nV:unused\nK:F\n"
+                + "V:2\n|: [CE] (3B c d :| z4 |\nw: one two three\nV:1\nA B c d |[1 e :|[2 f |]\n"
+                + "V:3\nC4 |\nV:2\n_B2 B2 | c4 |\nw: four five | six\nV:1\ng4 |]\n");
+        List<Voice> voices = parallel.compile(new ANTLRInputStream("X:1\nT:t\nV:b\nV:a\nK:C\nV:c\nC |\nV:a\nD |\n")).getBody().getVoices();
+        // the voices are in the order they are declared
+        assertEquals("b", voices.get(0).getVoiceName());
+        assertEquals("a", voices.get(1).getVoiceName());
+        assertEquals("c", voices.get(2).getVoiceName());
+        assertEquals(0, voices.get(0).getSongComponents().size());
+    }
+
+    @Test
+    public void syntaxErrorTest() {
+        SongCompiler twoStage = compiler(PredictionEnum.SLL_THEN_LL);
+        String message = null;
+        try {
+            compiler(PredictionEnum.LL).compile(new ANTLRInputStream("X:1\nK:C\nC D|\n"));
+            fail("expected a syntax error");
+        } catch (RuntimeException e) {
+            message = e.getMessage();
+        }
+        try {
+            twoStage.compile(new ANTLRInputStream("X:1\nK:C\nC D|\n"));
+            fail("expected a syntax error");
+        } catch (RuntimeException e) {
+            // the error comes from the LL parse, as it would without SLL
+            assertEquals(message, e.getMessage());
+        }
+        assertEquals(0, twoStage.getSllParses());
+        assertEquals(1, twoStage.getLlFallbacks());
+    }
+
+    @Test
+    public void streamingSyntaxErrorTest() {
+        String message = null;
+        try {
+            compiler(PredictionEnum.LL).compile(new ANTLRInputStream("X:1\nK:C\nC D|\n"));
+            fail("expected a syntax error");
+        } catch (RuntimeException e) {
+            message = e.getMessage();
+        }
+        SongCompiler streamingTwoStage = compiler(PredictionEnum.SLL_THEN_LL);
+        streamingTwoStage.setStreaming(true);
+        try {
+            streamingTwoStage.compile(new ANTLRInputStream("X:1\nK:C\nC D|\n"));
+            fail("expected a syntax error");
+        } catch (RuntimeException e) {
+            // the SLL bail-out reaches the compiler, which falls back to LL, and the LL parser's
+            // error is reported rather than the listener's reaction to the missing title
+            assertEquals(message, e.getMessage());
+        }
+        assertEquals(0, streamingTwoStage.getSllParses());
+        assertEquals(1, streamingTwoStage.getLlFallbacks());
+    }
+
+    @Test(expected=RuntimeException.class)
+    public void lexicalErrorTest() {
+        compiler(PredictionEnum.SLL_THEN_LL).compile(new ANTLRInputStream("X:1\nT:t\nK:C\nC $ D|\n"));
+    }
+}
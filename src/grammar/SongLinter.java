@@ -0,0 +1,273 @@
+package grammar;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.LexerNoViableAltException;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.misc.Interval;
+
+/**
+ * Checks abc files for syntax errors without stopping at the first one.
+ *
+ * Unlike SongCompiler, which uses reportErrorsAsExceptions(), the linter lets ANTLR's lexer and
+ * parser recover from every error and records each one as a Diagnostic, so that all the problems
+ * in a tune (and in every tune of a songbook) are found in one pass. No Song is built.
+ *
+ * A whole directory tree is linted in parallel, one fork-join task per .abc file.
+ */
+public class SongLinter {
+
+    /**
+     * The charset of the abc files
+     */
+    private final Charset charset;
+
+    /**
+     * @param charset the charset of the abc files - must be ASCII compatible (ex. UTF-8, ISO-8859-1)
+     */
+    public SongLinter(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * Collects the errors reported by a lexer or parser as Diagnostics
+     */
+    private static class CollectingErrorListener extends BaseErrorListener {
+
+        /**
+         * Where the diagnostics go
+         */
+        private final List<Diagnostic> diagnostics;
+
+        /**
+         * The file being linted
+         */
+        private final String sourceName;
+
+        /**
+         * The number of lines in the file before the tune being linted
+         */
+        private final int lineOffset;
+
+        CollectingErrorListener(List<Diagnostic> diagnostics, String sourceName, int lineOffset) {
+            this.diagnostics = diagnostics;
+            this.sourceName = sourceName;
+            this.lineOffset = lineOffset;
+        }
+
+        @Override
+        public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine,
+                String msg, RecognitionException e) {
+            String token = "";
+            if (offendingSymbol instanceof Token) {
+                Token symbol = (Token) offendingSymbol;
+                if (symbol.getType() != Token.EOF)
+                    token = symbol.getText();
+            } else if (e instanceof LexerNoViableAltException) {
+                // the lexer has no token yet; report the character it could not match
+                int start = ((LexerNoViableAltException) e).getStartIndex();
+                token = ((CharStream) e.getInputStream()).getText(Interval.of(start, start));
+            }
+            diagnostics.add(new Diagnostic(sourceName, line + lineOffset, charPositionInLine, token, msg));
+        }
+    }
+
+    /**
+     * Lints one tune
+     * @param tune the text of the tune
+     * @param lineOffset the number of lines in the file before the tune, added to the line of
+     *          every diagnostic
+     * @return every problem found in the tune, in the order they were found
+     */
+    public List<Diagnostic> lint(CharStream tune, int lineOffset) {
+        List<Diagnostic> diagnostics = new ArrayList<Diagnostic>();
+        CollectingErrorListener listener = new CollectingErrorListener(diagnostics, tune.getSourceName(), lineOffset);
+        ABCMusicLexer lexer = new MappedABCMusicLexer(tune);
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(listener);
+        ABCMusicParser parser = new ABCMusicParser(new CommonTokenStream(lexer));
+        parser.removeErrorListeners();
+        parser.addErrorListener(listener);
+        parser.setBuildParseTree(false);
+        parser.abc_tune();
+        return diagnostics;
+    }
+
+    /**
+     * Lints every tune of an abc file
+     * @param file the file to lint
+     * @return every problem found in the file, in file order; a file without any tune is a problem too
+     * @throws IOException if the file cannot be read
+     */
+    public List<Diagnostic> lint(Path file) throws IOException {
+        ByteBuffer buffer = MappedCharStream.map(file);
+        Songbook songbook = new Songbook(buffer, charset, file.toString(), new SongCompiler());
+        List<Diagnostic> diagnostics = new ArrayList<Diagnostic>();
+        int start = songbook.findTuneStart(0);
+        int lineOffset = countLines(buffer, 0, start);
+        Iterator<CharStream> tunes = songbook.tunes();
+        if (!tunes.hasNext())
+            diagnostics.add(new Diagnostic(file.toString(), 1, 0, "", "no tune found (a tune starts with an X: line)"));
+        while (tunes.hasNext()) {
+            CharStream tune = tunes.next();
+            diagnostics.addAll(lint(tune, lineOffset));
+            lineOffset += countLines(buffer, start, start + tune.size());
+            start += tune.size();
+        }
+        return diagnostics;
+    }
+
+    /**
+     * @return the number of line feeds in buffer between start (inclusive) and end (exclusive)
+     */
+    private static int countLines(ByteBuffer buffer, int start, int end) {
+        int lines = 0;
+        for (int i = start; i < end; i++)
+            if (buffer.get(i) == '\n')
+                lines++;
+        return lines;
+    }
+
+    /**
+     * Lints every .abc file under a directory in parallel
+     * @param sourceDir the root of the tree of abc files
+     * @param pool the pool to lint the files on
+     * @return the diagnostics of every file
+     * @throws IOException if sourceDir cannot be walked
+     */
+    public Report lint(Path sourceDir, ForkJoinPool pool) throws IOException {
+        Report report = new Report();
+        List<FileTask> tasks = new ArrayList<FileTask>();
+        for (Path file : AbcFiles.list(sourceDir))
+            tasks.add(new FileTask(file, report));
+        AbcFiles.invokeAll(pool, tasks);
+        return report;
+    }
+
+    /**
+     * Lints one abc file and adds it to the report
+     */
+    private class FileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The abc file to lint
+         */
+        private final Path file;
+
+        /**
+         * The report to add this file to
+         */
+        private final Report report;
+
+        FileTask(Path file, Report report) {
+            this.file = file;
+            this.report = report;
+        }
+
+        @Override
+        protected void compute() {
+            List<Diagnostic> diagnostics;
+            try {
+                diagnostics = lint(file);
+            } catch (IOException e) {
+                diagnostics = Collections.singletonList(new Diagnostic(file.toString(), 0, 0, "", "cannot be read: " + e));
+            }
+            report.diagnostics.put(file, diagnostics);
+        }
+    }
+
+    /**
+     * The diagnostics of a directory tree of abc files, filled in concurrently by the linting tasks
+     */
+    public static class Report {
+
+        /**
+         * The diagnostics of each file, in path order
+         */
+        private final Map<Path, List<Diagnostic>> diagnostics = new ConcurrentSkipListMap<Path, List<Diagnostic>>();
+
+        /**
+         * @return the files linted, each with its diagnostics in file order, in path order
+         */
+        public Map<Path, List<Diagnostic>> getDiagnostics() {
+            return Collections.unmodifiableMap(diagnostics);
+        }
+
+        /**
+         * @return the number of files linted
+         */
+        public int getFiles() {
+            return diagnostics.size();
+        }
+
+        /**
+         * @return the number of files with at least one diagnostic
+         */
+        public int getFilesWithErrors() {
+            int count = 0;
+            for (List<Diagnostic> fileDiagnostics : diagnostics.values())
+                if (!fileDiagnostics.isEmpty())
+                    count++;
+            return count;
+        }
+
+        /**
+         * @return the total number of diagnostics
+         */
+        public int getErrors() {
+            int count = 0;
+            for (List<Diagnostic> fileDiagnostics : diagnostics.values())
+                count += fileDiagnostics.size();
+            return count;
+        }
+
+        /**
+         * @return a one line summary of the report
+         */
+        @Override
+        public String toString() {
+            return String.format("Linted %d files: %d with errors, %d errors in total", getFiles(), getFilesWithErrors(), getErrors());
+        }
+    }
+
+    /**
+     * Lints a directory tree of abc files, printing every diagnostic and then a summary.
+     * Usage: SongLinter sourceDir [threads]
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: SongLinter sourceDir [threads]");
+            return;
+        }
+        ForkJoinPool pool = AbcFiles.newPool(args, 1);
+        try {
+            Report report = new SongLinter(Charset.defaultCharset()).lint(Paths.get(args[0]), pool);
+            for (List<Diagnostic> fileDiagnostics : report.getDiagnostics().values())
+                for (Diagnostic diagnostic : fileDiagnostics)
+                    System.out.println(diagnostic);
+            System.out.println(report);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
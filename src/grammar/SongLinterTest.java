@@ -0,0 +1,122 @@
+package grammar;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.junit.Test;
+
+/**
+ * Tests that the linter finds every syntax error, where it is
+ */
+public class SongLinterTest {
+
+    /*
+     * Partition input space:
+     * - Errors in a tune: 0, 1, many
+     * - Kind of error: lexical (a character that starts no token), syntactic (a misplaced token)
+     * - Tunes in a file: 0, 1, many (line numbers count from the start of the file)
+     * - Files in a directory: valid, invalid
+ * - Column: after ASCII only, after a multi-byte UTF-8 character in the file (counted as one)
+     */
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static List<Diagnostic> lint(String text) {
+        ANTLRInputStream input = new ANTLRInputStream(text);
+        input.name = "test";
+        return new SongLinter(UTF8).lint(input, 0);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null)
+            for (File child : children)
+                delete(child);
+        file.delete();
+    }
+
+    @Test
+    public void validTest() {
+        assertEquals(0, lint("X:1\nT:Fine\nK:C\nC D E F|\n").size());
+    }
+
+    @Test
+    public void lexicalErrorTest() {
+        List<Diagnostic> diagnostics = lint("X:1\nT:One\nK:C\nC $ D|\n");
+        assertEquals(1, diagnostics.size());
+        Diagnostic diagnostic = diagnostics.get(0);
+        assertEquals("test", diagnostic.getSourceName());
+        assertEquals(4, diagnostic.getLine());
+        assertEquals(2, diagnostic.getColumn());
+        assertEquals("$", diagnostic.getToken());
+    }
+
+    @Test
+    public void manyErrorsTest() {
+        // a stray bracket, and a stray character in the music
+        List<Diagnostic> diagnostics = lint("X:1\nT:Two errors\nK:C\nC D ] E|\nF $ G|\n");
+        assertEquals(2, diagnostics.size());
+        assertEquals(4, diagnostics.get(0).getLine());
+        assertEquals(4, diagnostics.get(0).getColumn());
+        assertEquals("]", diagnostics.get(0).getToken());
+        assertEquals(5, diagnostics.get(1).getLine());
+        assertEquals("$", diagnostics.get(1).getToken());
+    }
+
+    @Test
+    public void nonAsciiColumnTest() throws IOException {
+        Path file = Files.createTempFile("abc", ".abc");
+        try {
+            Files.write(file, "X:1\nT:F\u00fcr Elise\nK:C\nC \u00fc $ D|\n".getBytes(UTF8));
+            List<Diagnostic> diagnostics = new SongLinter(UTF8).lint(file);
+            Diagnostic dollar = diagnostics.get(diagnostics.size() - 1);
+            assertEquals("$", dollar.getToken());
+            assertEquals(4, dollar.getLine());
+            assertEquals(4, dollar.getColumn());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void sampleFilesTest() throws IOException {
+        SongLinter linter = new SongLinter(UTF8);
+        for (File file : new File("sample_abc").listFiles())
+            assertEquals(file.getName(), 0, linter.lint(file.toPath()).size());
+    }
+
+    @Test
+    public void directoryTest() throws IOException {
+        Path source = Files.createTempDirectory("abc");
+        try {
+            Files.createDirectories(source.resolve("book"));
+            Files.write(source.resolve("book/two.abc"),
+                    "% a songbook\n\nX:1\nT:One\nK:C\nC D $ F|\nX:2\nT:Two\nK:G\nG A $ c|\nG A ( c|\n".getBytes(UTF8));
+            Files.write(source.resolve("fine.abc"), "X:1\nT:Fine\nK:C\nC D E F|\n".getBytes(UTF8));
+            Files.write(source.resolve("empty.abc"), "% nothing here\n".getBytes(UTF8));
+            SongLinter.Report report = new SongLinter(UTF8).lint(source, new ForkJoinPool(2));
+            assertEquals(3, report.getFiles());
+            assertEquals(2, report.getFilesWithErrors());
+            assertEquals(4, report.getErrors());
+
+            List<Diagnostic> book = report.getDiagnostics().get(source.resolve("book/two.abc"));
+            assertEquals(3, book.size());
+            assertEquals(6, book.get(0).getLine());
+            assertEquals(10, book.get(1).getLine());
+            assertEquals(11, book.get(2).getLine());
+            assertEquals(0, report.getDiagnostics().get(source.resolve("fine.abc")).size());
+            assertEquals(1, report.getDiagnostics().get(source.resolve("empty.abc")).size());
+        } finally {
+            delete(source.toFile());
+        }
+    }
+}
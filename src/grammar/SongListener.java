@@ -2,7 +2,6 @@ package grammar;
 
 import grammar.ABCMusicParser.Abc_headerContext;
 import grammar.ABCMusicParser.Abc_tuneContext;
-import grammar.ABCMusicParser.BarlineContext;
 import grammar.ABCMusicParser.Field_voiceContext;
 import grammar.ABCMusicParser.L_bracketContext;
 import grammar.ABCMusicParser.LyricContext;
@@ -10,6 +9,7 @@ import grammar.ABCMusicParser.R_bracketContext;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 
 import org.antlr.v4.runtime.ParserRuleContext;
@@ -26,6 +26,7 @@ import player.Music;
 import player.Note;
 import player.NoteEnum;
 import player.Rest;
+import player.Singable;
 import player.Song;
 import player.TupletEnum;
 import player.Tuplet;
@@ -54,7 +55,8 @@ public class SongListener implements ABCMusicListener {
 	private String composer = "DEFAULT";
 	private KeySignature key = null;
 	private Fraction defaultLength = null;
-	private Fraction meter = new Fraction(4,4);
+	private int meterNumerator = 4;
+	private int meterDenominator = 4;
 	private Fraction tempoBeat = null;
 	private int bpm = -1;
 	
@@ -65,16 +67,21 @@ public class SongListener implements ABCMusicListener {
 	private List<Voice> voices = new ArrayList<Voice>();
 	
 	/**
-	 * Returns the bars (List<List<Music>>) for a given voice name
-	 * Each bar is a List<Music>
+	 * The arena of a voice: every note, rest, chord and tuplet written at the top level of the
+	 * voice, in order, each created once. The bars of the voice are ranges of it: bar b starts at
+	 * the arena index barStartsForVoiceName.get(name).get(b), and ends where the next bar starts
+	 * (the last bar ends at the end of the arena), so there are as many bars as bar starts.
+	 * The voices are kept in the order they are declared, which is the order of the Body.
 	 */
-	private HashMap<String, List<List<Music>>> barsForVoiceName = new HashMap<String, List<List<Music>>>();
+	private HashMap<String, List<Music>> musicForVoiceName = new LinkedHashMap<String, List<Music>>();
+	private HashMap<String, List<Integer>> barStartsForVoiceName = new HashMap<String, List<Integer>>();
 	private HashMap<String, Integer> currentBarForVoiceName = new HashMap<String, Integer>();
 	
 	/**
-	 * true if the listener is currently processing a multinote (i.e. tuplet, chord) 
+	 * The syllable sung to each piece of music in the arena of a voice ("" for none), once the
+	 * voice has lyrics: the list is only as long as the last piece of music given a syllable.
 	 */
-	private boolean inMultinote = false;
+	private HashMap<String, List<String>> syllablesForVoiceName = new HashMap<String, List<String>>();
 	
 	/**
 	 * The current voice name being processed
@@ -95,18 +102,40 @@ public class SongListener implements ABCMusicListener {
 	private HashMap<String, List<Integer[]>> repeatsForVoiceName = new HashMap<String, List<Integer[]>>();
 	
 	/**
-	 * Container for things in voice
+	 * Decodes the text of every note token, reused from one note to the next
 	 */
-	private List<Music> tupletNotes = new ArrayList<Music>();
-	private List<Music> chordNotes = new ArrayList<Music>();
+	private final NoteTokenDecoder noteDecoder = new NoteTokenDecoder();
 	
 	/**
-	 * Notes are always put in this container. this will be assigned to the appropriate
-	 * container from above (see below) when necessary
+	 * Views the characters of every note token for noteDecoder, without making a String of it
 	 */
-	private List<Music> chordParentContainer = new ArrayList<Music>();
-	private List<Music> tupletParentContainer = new ArrayList<Music>();
-	private List<Music> noteContainer = new ArrayList<Music>();
+	private final TokenChars noteChars = new TokenChars();
+	
+	/**
+	 * The music of the open multinotes (i.e. tuplets, chords). Each open multinote holds the
+	 * music from its start index in multinoteMusic onwards, and the innermost one is the last;
+	 * when it closes, its music becomes the chord or tuplet and is taken off the end of the list.
+	 * Music is put in the innermost open multinote, or in the arena of the voice if there is none.
+	 */
+	private final List<Music> multinoteMusic = new ArrayList<Music>();
+	private final List<Integer> multinoteStarts = new ArrayList<Integer>();
+	
+	/**
+	 * Creates a listener for a whole tune
+	 */
+	public SongListener() { }
+	
+	/**
+	 * Creates a listener for the music of just one voice, which is built by walking the
+	 * abc_line contexts of that voice one after another (see SongCompiler's parallel voices mode)
+	 * @param key the key signature of the tune
+	 * @param voiceName the voice that the lines walked belong to
+	 */
+	SongListener(KeySignature key, String voiceName) {
+		this.key = key;
+		this.voiceName = voiceName;
+		newVoice(voiceName);
+	}
 	
 	/**
 	 * When we exit the tune, we construct the song object
@@ -123,12 +152,12 @@ public class SongListener implements ABCMusicListener {
 	@Override public void exitAbc_header(ABCMusicParser.Abc_headerContext ctx) {
 	    // If there's no default length, 
 	    if(defaultLength == null)
-	        defaultLength = (meter.getNumerator()*1.0/(1.0*meter.getDenominator()) < 0.75) ? new Fraction(1,16) : new Fraction(1,8);
+	        defaultLength = (meterNumerator*1.0/(1.0*meterDenominator) < 0.75) ? new Fraction(1,16) : new Fraction(1,8);
 	    if(bpm == -1)
 	        bpm = 100;
 	    if(tempoBeat == null)
 	        tempoBeat = defaultLength;
-		header = new Header(index, title, composer, key, meter, bpm, tempoBeat, defaultLength);
+		header = new Header(index, title, composer, key, meterNumerator, meterDenominator, bpm, tempoBeat, defaultLength);
 	}
 	@Override
     public void enterAbc_tune(Abc_tuneContext ctx) {   }
@@ -141,40 +170,135 @@ public class SongListener implements ABCMusicListener {
 		//initialize containers
 		if(this.voiceName == null){
 	        this.voiceName = "THE_DEFAULT_VOICE";
-	        List<List<Music>> newVoice = new ArrayList<List<Music>>();
-	        newVoice.add(new ArrayList<Music>());
-	        this.barsForVoiceName.put(this.voiceName, newVoice);
-	        Integer[] startRepeat = new Integer[]{0,0,0};
-	        List<Integer[]> reps = new ArrayList<Integer[]>();
-	        reps.add(startRepeat);
-	        this.repeatsForVoiceName.put(voiceName, reps);
+	        newVoice(this.voiceName);
 	    }
 	}
+	
+	/**
+	 * Initializes the arena, bars and repeats of a voice that has not been seen yet
+	 */
+	private void newVoice(String name) {
+	    if(this.musicForVoiceName.containsKey(name))
+	        return;
+	    this.musicForVoiceName.put(name, new ArrayList<Music>());
+	    List<Integer> barStarts = new ArrayList<Integer>();
+	    barStarts.add(0);
+	    this.barStartsForVoiceName.put(name, barStarts);
+	    this.repeatsForVoiceName.put(name, newRepeats());
+	}
 	@Override public void exitAbc_music(ABCMusicParser.Abc_musicContext ctx) {
-	    for(String name : this.barsForVoiceName.keySet()){
-	        List<List<Music>> voiceBars = barsForVoiceName.get(name);
-	        List<Integer[]> repeats = repeatsForVoiceName.get(name);
-	        Integer[] lastRepeat = repeats.get(repeats.size()-1);
-	        if(lastRepeat[0] == null || lastRepeat[1] == null || lastRepeat[2] == null)
-	        	repeats.remove(repeats.size()-1);
-	        int indexShift = 0;
-	        for(int i = 0; i < repeats.size(); i++){
-	        	List<List<Music>> barsToRepeat = new ArrayList<List<Music>>();
-	        	for(int j = repeats.get(i)[0]; j < repeats.get(i)[1]; j++) {
-	        		barsToRepeat.add(voiceBars.get(j));
-	        	}
-	        	voiceBars.addAll(repeats.get(i)[2] + indexShift, barsToRepeat);
-	        	indexShift += barsToRepeat.size();
-	        }
-	        List<Music> concatenatedBars = new ArrayList<Music>();
-	        for(List<Music> bar : voiceBars) {
-	        	concatenatedBars.addAll(bar);
-	        }
-	        voices.add(new Voice(name, concatenatedBars));
-	    }
+	    for(String name : this.musicForVoiceName.keySet())
+	        voices.add(getVoice(name));
 		body = new Body(voices);
 	}
 	
+	/**
+	 * Builds a voice from the music walked so far
+	 * @param name the name of a voice that has been declared
+	 * @return the voice, with its bars in the order its repeats play them
+	 */
+	Voice getVoice(String name) {
+	    List<Integer> barStarts = barStartsForVoiceName.get(name);
+	    int[] starts = new int[barStarts.size() + 1];
+	    for(int b = 0; b < barStarts.size(); b++)
+	        starts[b] = barStarts.get(b);
+	    starts[barStarts.size()] = musicForVoiceName.get(name).size();
+	    //the voice takes the arena as it is: the repeated bars are played again from it, and nothing is copied
+	    List<String> syllables = syllablesForVoiceName.get(name);
+	    if(syllables != null)
+	        while(syllables.size() < starts[barStarts.size()])
+	            syllables.add("");
+	    return new Voice(name, musicForVoiceName.get(name), syllables, starts, playOrder(barStarts.size(), repeatsForVoiceName.get(name)));
+	}
+	
+	/**
+	 * @return the repeats of a voice that has not been seen yet: one, [0, 0, 0], which repeats nothing
+	 */
+	static List<Integer[]> newRepeats() {
+		List<Integer[]> repeats = new ArrayList<Integer[]>();
+		repeats.add(new Integer[]{0,0,0});
+		return repeats;
+	}
+	
+	/**
+	 * @return the text of a barline (its BARLINE or NTH_REPEAT token), or "" if it has neither
+	 */
+	static String barlineText(ABCMusicParser.BarlineContext ctx) {
+		if(ctx.BARLINE() != null)
+			return ctx.BARLINE().getText();
+		if(ctx.NTH_REPEAT() != null)
+			return ctx.NTH_REPEAT().getText();
+		return "";
+	}
+	
+	/**
+	 * Records what a barline does to the repeats of a voice. Does not support nested repeats, or
+	 * several end repeats to the same start repeat.
+	 * @param barline the text of the barline (see barlineText)
+	 * @param repeats the repeats of the voice, each [startBar (inclusive), endBar (exclusive), repeatAt];
+	 *          the last one is updated, or started if there is none
+	 * @param barCount the number of bars of the voice so far
+	 * @return true if a new bar starts after the barline, false for the [1 and [2 endings, whose
+	 *          music is part of the bar they start
+	 */
+	static boolean openBar(String barline, List<Integer[]> repeats, int barCount) {
+		boolean addNewBar = true;
+		Integer[] currentRepeat  = null;
+		if(repeats.size() > 0)
+			currentRepeat = repeats.get(repeats.size()-1);
+		else
+			currentRepeat = new Integer[3];
+		
+		if(barline.equals("|:")) {
+			currentRepeat[0] = barCount;
+		} else if(barline.equals(":|")) {
+			if(currentRepeat[1] == null)
+				currentRepeat[1] = barCount;
+			currentRepeat[2] = barCount + 1;
+		} else if(barline.equals("[1")) {
+			addNewBar = false;
+			currentRepeat[1] = barCount;
+		} else if(barline.equals("[2")) {
+			addNewBar = false;
+		} else if(barline.equals("[|")) {
+			if(currentRepeat[0] == null)
+				currentRepeat[0] = barCount;
+		}
+		if(repeats.size() > 0)
+			repeats.set(repeats.size()-1, currentRepeat);
+		else
+			repeats.add(currentRepeat);
+		return addNewBar;
+	}
+	
+	/**
+	 * Works out the order the bars of a voice are played in, once its repeats are taken
+	 * @param barCount the number of bars written in the voice
+	 * @param repeats the repeats of the voice, each [startBar (inclusive), endBar (exclusive), repeatAt];
+	 *          the last one is dropped if it was never completed
+	 * @return the index of each bar played, in the order they are played
+	 */
+	static int[] playOrder(int barCount, List<Integer[]> repeats) {
+		Integer[] lastRepeat = repeats.get(repeats.size()-1);
+		if(lastRepeat[0] == null || lastRepeat[1] == null || lastRepeat[2] == null)
+			repeats.remove(repeats.size()-1);
+		List<Integer> order = new ArrayList<Integer>();
+		for(int i = 0; i < barCount; i++)
+			order.add(i);
+		int indexShift = 0;
+		for(int i = 0; i < repeats.size(); i++) {
+			List<Integer> barsToRepeat = new ArrayList<Integer>();
+			for(int j = repeats.get(i)[0]; j < repeats.get(i)[1]; j++)
+				barsToRepeat.add(order.get(j));
+			order.addAll(repeats.get(i)[2] + indexShift, barsToRepeat);
+			indexShift += barsToRepeat.size();
+		}
+		int[] playOrder = new int[order.size()];
+		for(int i = 0; i < playOrder.length; i++)
+			playOrder[i] = order.get(i);
+		return playOrder;
+	}
+	
 	/**
 	 * Header Elements
 	 */
@@ -201,12 +325,17 @@ public class SongListener implements ABCMusicListener {
 		}
 		if(ctx.FIELD_METER() != null) {
 			String meterString = ctx.FIELD_METER().getText().replace("M:", "").trim();
+			//a meter is kept as written, not reduced: 6/8 is not 3/4
 			if(meterString.equals("C")) {
-				meter = new Fraction(4,4);
+				meterNumerator = 4;
+				meterDenominator = 4;
 			} else if(meterString.equals("C|")) {
-				meter = new Fraction(2,2);
+				meterNumerator = 2;
+				meterDenominator = 2;
 			} else {
-				meter = new Fraction(meterString);
+				String[] meterParts = meterString.split("/");
+				meterNumerator = Integer.parseInt(meterParts[0].trim());
+				meterDenominator = Integer.parseInt(meterParts[1].trim());
 			}
 		}
 		if(ctx.FIELD_TEMPO() != null) {
@@ -217,15 +346,7 @@ public class SongListener implements ABCMusicListener {
 		if(ctx.FIELD_VOICE() != null) {
 			//initialize containers for this voice
 			voiceName = ctx.FIELD_VOICE().getText().replace("V:", "").trim();
-			if(!this.barsForVoiceName.containsKey(voiceName)) {
-				List<List<Music>> newVoice = new ArrayList<List<Music>>();
-				newVoice.add(new ArrayList<Music>());
-			    this.barsForVoiceName.put(voiceName, newVoice);
-			    Integer[] startRepeat = new Integer[]{0,0,0};
-			    List<Integer[]> reps = new ArrayList<Integer[]>();
-			    reps.add(startRepeat);
-			    this.repeatsForVoiceName.put(voiceName, reps);
-			}
+			newVoice(voiceName);
 		}
 	}
 
@@ -240,52 +361,21 @@ public class SongListener implements ABCMusicListener {
 	 * Music Elements
 	 */
 	
-	@Override public void enterBarline(ABCMusicParser.BarlineContext ctx) {
+	@Override public void enterBarline(ABCMusicParser.BarlineContext ctx) { }
+	/**
+	 * Called when the listener exits a barline (not when it enters it, because when the listener
+	 * is attached to the parser, the barline's token has not been matched yet on entry)
+	 */
+	@Override public void exitBarline(ABCMusicParser.BarlineContext ctx) {
 		//parse notes into bars and keep track of repeats
-		String barlineString = "";
-		if(ctx.BARLINE() != null)
-			barlineString = ctx.BARLINE().getText();
-		else if(ctx.NTH_REPEAT() != null)
-			barlineString = ctx.NTH_REPEAT().getText();
-		
-		List<List<Music>> bars = barsForVoiceName.get(voiceName);
-		//does not support nested repeats/multiple end repeats to same start repeat
-		boolean addNewBar = true;
-		
-		List<Integer[]> repeats = repeatsForVoiceName.get(voiceName);
-		Integer[] currentRepeat  = null;
-		if(repeats.size() > 0)
-			currentRepeat = repeats.get(repeats.size()-1);
-		else
-			currentRepeat = new Integer[3];
-		
-		if(barlineString.equals("|:")) {
-			currentRepeat[0] = new Integer(bars.size());
-		} else if(barlineString.equals(":|")) {
-			if(currentRepeat[1] == null)
-				currentRepeat[1] = new Integer(bars.size());
-			currentRepeat[2] = new Integer(bars.size() + 1);
-		} else if(barlineString.equals("[1")) {
-			addNewBar = false;
-			currentRepeat[1] = new Integer(bars.size());
-		} else if(barlineString.equals("[2")) {
-			addNewBar = false;
-		} else if(barlineString.equals("[|")) {
-			if(currentRepeat[0] == null)
-				currentRepeat[0] = new Integer(bars.size());
-		}
-		if(repeats.size() > 0)
-			repeats.set(repeats.size()-1, currentRepeat);
-		else
-			repeats.add(currentRepeat);
-		if(addNewBar)
-			bars.add(new ArrayList<Music>());
+		List<Integer> bars = barStartsForVoiceName.get(voiceName);
+		if(openBar(barlineText(ctx), repeatsForVoiceName.get(voiceName), bars.size()))
+			bars.add(musicForVoiceName.get(voiceName).size());
 	}
 	
 	@Override public void enterAbc_line(ABCMusicParser.Abc_lineContext ctx) { }
 	@Override public void exitAbc_line(ABCMusicParser.Abc_lineContext ctx) {
-		List<List<Music>> bars = barsForVoiceName.get(voiceName);
-		int lineLength = bars.size();
+		int lineLength = barStartsForVoiceName.get(voiceName).size();
 		currentBarForVoiceName.put(voiceName, lineLength);
 	}
 	
@@ -294,17 +384,11 @@ public class SongListener implements ABCMusicListener {
 
 	@Override public void enterMultinote(ABCMusicParser.MultinoteContext ctx) {	
 	}
-	@Override public void exitMultinote(ABCMusicParser.MultinoteContext ctx) {
-	    this.inMultinote = false;
-	}
+	@Override public void exitMultinote(ABCMusicParser.MultinoteContext ctx) { }
 
 	@Override public void enterTuplet_element(ABCMusicParser.Tuplet_elementContext ctx) {
-		tupletParentContainer = noteContainer;
-		//empty the tuplet note container
-		tupletNotes = new ArrayList<Music>();
-		//set the tuplet container as the current destination for all notes
-		noteContainer = tupletNotes;
-		this.inMultinote = true;
+		//the music of the tuplet goes in the tuplet until it is closed
+		openMultinote();
 	}
 	@Override public void exitTuplet_element(ABCMusicParser.Tuplet_elementContext ctx) {
 		int type = 3;
@@ -319,13 +403,11 @@ public class SongListener implements ABCMusicListener {
 		    case 3: tupletType = TupletEnum.TRIPLET; break;
 		    case 4: tupletType = TupletEnum.QUADRUPLET; break;
 		}
-		this.inMultinote = false;
-		//create the tuplet object and append it to the voice
-		tupletParentContainer.add(new Tuplet(tupletType, tupletNotes));		    
-		//set the container back to the main voice
-		noteContainer = tupletParentContainer;
-		List<List<Music>> bars = this.barsForVoiceName.get(voiceName);
-		bars.get(bars.size()-1).add(new Tuplet(tupletType, tupletNotes));
+		//create the tuplet object and append it to the voice (or the enclosing multinote)
+		List<Music> tupletNotes = multinoteMusic.subList(closeMultinote(), multinoteMusic.size());
+		Tuplet tuplet = new Tuplet(tupletType, tupletNotes);
+		tupletNotes.clear();
+		addMusic(tuplet);
 	}
 
 	@Override public void enterNote_element(ABCMusicParser.Note_elementContext ctx) { }
@@ -337,110 +419,20 @@ public class SongListener implements ABCMusicListener {
 	@Override public void exitNote_element(ABCMusicParser.Note_elementContext ctx) {
 		// if this is a base note element, not a multinote (chord)
 		if(ctx.NOTE() != null) {
-			//Split the string into a note and a note_duration part
-			String noteString = ctx.NOTE().getText();
-			String[] splitNote = noteString.split("(?=[\\d+/])",2);
-			String pitchString = splitNote[0];
-			//Parse the not duration
-			Fraction duration = new Fraction(1,1);
-			if(splitNote.length == 2) {
-				String durationString = splitNote[1];
-				String[] splitFraction = durationString.split("(?=/)|(?<=/)");
-				if(splitFraction.length == 3) {
-					int num = 1;
-					int den = 2;
-					if(splitFraction[0].equals("")) {
-						den = Integer.parseInt(splitFraction[2]);
-					} else if(splitFraction[2].equals("")) {
-						//this case should never happen..right?
-					} else {
-						num = Integer.parseInt(splitFraction[0]);
-						den = Integer.parseInt(splitFraction[2]);
-					}
-					duration = new Fraction(num, den);
-				} else if(splitFraction.length == 1) {
-					int num = Integer.parseInt(splitFraction[0]);
-					int den = 1;
-					duration = new Fraction(num, den);
-				} else if (splitFraction.length == 2){
-				    int num = 1;
-				    int den = 2;
-				    duration = new Fraction(num, den);
-				}
-			}
-			//Set arbitrary default values
-			NoteEnum baseNote = NoteEnum.C;
-			AccidentalEnum accidental = AccidentalEnum.NONE;
-			int octave = 0;	
-			
-			//split the pitch into accidental, basenote, octave
-			String[] splitPitch = pitchString.split("(?=[A-Ga-gz])|(?<=[A-Ga-gz])");
-			
-			//parse for basenote
-			String basenoteString = splitPitch[1];
-			if(basenoteString.toLowerCase().equals("a")) {
-				baseNote = NoteEnum.A;
-			} else if(basenoteString.toLowerCase().equals("b")) {
-				baseNote = NoteEnum.B;
-			} else if(basenoteString.toLowerCase().equals("c")) {
-				baseNote = NoteEnum.C;
-			} else if(basenoteString.toLowerCase().equals("d")) {
-				baseNote = NoteEnum.D;
-			} else if(basenoteString.toLowerCase().equals("e")) {
-				baseNote = NoteEnum.E;
-			} else if(basenoteString.toLowerCase().equals("f")) {
-				baseNote = NoteEnum.F;
-			} else if(basenoteString.toLowerCase().equals("g")) {
-				baseNote = NoteEnum.G;
-			}
-			
-			//Apply key signature
-			accidental = setKeySigAccidental(baseNote);			
-			
-			//Apply any inline accidentals
-			String accidentalString = splitPitch[0];
-			if(accidentalString.equals("_")) {
-				accidental = AccidentalEnum.FLAT;
-			} else if(accidentalString.equals("__")) {
-				accidental = AccidentalEnum.DOUBLE_FLAT;
-			} else if(accidentalString.equals("^")) {
-				accidental = AccidentalEnum.SHARP;
-			} else if(accidentalString.equals("^^")) {
-				accidental = AccidentalEnum.DOUBLE_SHARP;
-			} else if(accidentalString.equals("=")) {
-				accidental = AccidentalEnum.NATURAL;
-			}
-			
-			//parse for octave
-			if(basenoteString.equals(basenoteString.toLowerCase()))
-				octave++;
-			if(splitPitch.length == 3) {
-				//if octave is specified
-				String octaveString = splitPitch[2];
-				String octaveType = octaveString.substring(0, 1); 
-				for(int i=0; i<octaveString.length(); i++) {
-					if(octaveType.equals("'"))
-						octave++;
-					else if(octaveType.equals(","))
-						octave--;
-				}
-			}		
+			noteDecoder.decode(noteChars.of(ctx.NOTE().getSymbol()));
+			Fraction duration = Fraction.valueOf(noteDecoder.getNumerator(), noteDecoder.getDenominator());
+			NoteEnum baseNote = noteDecoder.getNote();
+			int octave = noteDecoder.getOctave();
+			//an inline accidental overrides the key signature
+			AccidentalEnum accidental = noteDecoder.getAccidental();
+			if(accidental == null && !noteDecoder.isRest())
+				accidental = setKeySigAccidental(baseNote);
 			
 			//add a rest or a note
-			if(basenoteString.equals("z")) {
-			    for(int i = 0; i < 20; i++)
-				noteContainer.add(new Rest(duration));
-			    if(!this.inMultinote) {
-			        List<List<Music>> bars = this.barsForVoiceName.get(voiceName);
-			    	bars.get(bars.size()-1).add(new Rest(duration));
-			    }
-			} else {
-				noteContainer.add(new Note(baseNote, accidental, octave, duration));
-				if(!this.inMultinote) {
-					List<List<Music>> bars = this.barsForVoiceName.get(voiceName);
-			    	bars.get(bars.size()-1).add(new Note(baseNote, accidental, octave, duration));
-				}
-			}
+			if(noteDecoder.isRest())
+				addMusic(Rest.valueOf(duration));
+			else
+				addMusic(Note.valueOf(baseNote, accidental, octave, duration));
 		}
 	}
 	
@@ -448,72 +440,14 @@ public class SongListener implements ABCMusicListener {
     public void enterLyric(LyricContext ctx) {}
     @Override
     public void exitLyric(LyricContext ctx) {
-    	//parse the lyrics into a list of individual syllables to be matched with notes
-        List<String> lyric = new ArrayList<String>();
-        StringBuilder syllable = new StringBuilder();
-        String context = ctx.LYRIC().getText();
-
-        for (int i=2; i < context.length(); i++) { //start at i = 2 so as to skip the w: at the beginning of lyric
-
-            if (context.charAt(i) == '-') {
-            	if(syllable != null) {
-	            	syllable.append("-");
-	                lyric.add(syllable.toString());
-            	} else {
-            		lyric.add("-");
-            	}
-                syllable = null;
-            } else if (context.charAt(i) == '_') {
-            	if(syllable != null) {
-	            	syllable.append("_");
-	                lyric.add(syllable.toString());
-            	}
-            	lyric.add("_");
-                syllable = null;
-            } else if (context.charAt(i) == '*') {
-            	if(syllable != null)
-            		lyric.add(syllable.toString());
-            	lyric.add("");
-                syllable = null;
-            } else if (context.charAt(i) == '~') {
-                syllable.append(" "); //
-            } else if (String.valueOf(context.charAt(i)).equals("/-")) {
-                syllable.append("-");
-            } else if (context.charAt(i) == '|') {
-                if(syllable != null)
-                	lyric.add(syllable.toString());
-                lyric.add("|");
-                syllable = null;
-            } else if(context.charAt(i) == ' ') {
-            	if(syllable != null)
-            		lyric.add(syllable.toString());
-            	syllable = null;
-            } else { // else context[i] should be a letter
-            	if(syllable == null)
-            		syllable = new StringBuilder();
-                syllable.append(context.charAt(i) + "");
-            } 
-            if(i == context.length()-1 && syllable != null) {
-            	//don't forget to add any leftovers at the end!
-            	lyric.add(syllable.toString());
-            }
-        } 
-        matchLyricsToNotes(lyric, barsForVoiceName.get(voiceName));
+        matchLyricsToNotes(new LyricLine(ctx.LYRIC().getText()), musicForVoiceName.get(voiceName), barStartsForVoiceName.get(voiceName));
     }
     @Override
     public void enterField_voice(Field_voiceContext ctx) {}
     @Override
     public void exitField_voice(Field_voiceContext ctx) {
         voiceName = ctx.getText().replace("V:", "").trim();
-        if(!this.barsForVoiceName.containsKey(voiceName)) {
-        	List<List<Music>> newVoice = new ArrayList<List<Music>>();
-        	newVoice.add(new ArrayList<Music>());
-            this.barsForVoiceName.put(voiceName, newVoice);
-		    Integer[] startRepeat = new Integer[]{0,0,0};
-		    List<Integer[]> reps = new ArrayList<Integer[]>();
-		    reps.add(startRepeat);
-		    this.repeatsForVoiceName.put(voiceName, reps);
-        }
+        newVoice(voiceName);
     }
 
 	@Override public void enterEveryRule(ParserRuleContext ctx) { }
@@ -546,77 +480,108 @@ public class SongListener implements ABCMusicListener {
 		return AccidentalEnum.NONE;
 	}
 	
-	private void matchLyricsToNotes(List<String> lyrics, List<List<Music>> bars) {
-		int noteCount = 0;
+	/**
+	 * Gives each note, chord and tuplet in the bars of the current line its syllable
+	 * @param lyrics the syllables of the line's lyrics
+	 * @param music the arena of the current voice
+	 * @param barStarts the index in music that each bar of the current voice starts at
+	 */
+	private void matchLyricsToNotes(LyricLine lyrics, List<Music> music, List<Integer> barStarts) {
+		LyricCursor cursor = new LyricCursor(lyrics);
+		List<String> syllables = syllablesForVoiceName.get(voiceName);
+		if(syllables == null) {
+			syllables = new ArrayList<String>();
+			syllablesForVoiceName.put(voiceName, syllables);
+		}
 		int startBar = 0;
 		if(currentBarForVoiceName.containsKey(voiceName))
 			startBar = currentBarForVoiceName.get(voiceName);
-		for(int i=startBar; i<bars.size(); i++) {
-			List<Music> bar = bars.get(i);
-			for(int j=0; j<bar.size(); j++) {
-				int index = noteCount;
-				String lyric = "";
-				if(index < lyrics.size()-1 && index >= -1)
-					lyric = lyrics.get(index+1);
-				Music m = bar.get(j);
-				if(m instanceof Note) {
-					noteCount++;
-					((Note)m).setSyllable(lyric);
-				} else if(m instanceof Chord) {
-					noteCount++;
-					((Chord)m).setSyllable(lyric);
+		for(int i=startBar; i<barStarts.size(); i++) {
+			int barEnd = (i+1 < barStarts.size()) ? barStarts.get(i+1) : music.size();
+			for(int j=barStarts.get(i); j<barEnd; j++) {
+				Music m = music.get(j);
+				if(m instanceof Singable) {
+					setSyllable(syllables, j, cursor.match(1));
 				} else if(m instanceof Tuplet) {
-					for(Music subMusic : ((Tuplet)m).getNotes() ) {
-						if(subMusic instanceof Note) {
-							noteCount++;
-							((Note)subMusic).setSyllable(lyric);
-						} else if(subMusic instanceof Chord) {
-							noteCount++;
-							((Chord)subMusic).setSyllable(lyric);
-						}
-					}
-				} else if(m instanceof Rest) {
-					//Do nothing, because rests cannot have lyrics
-				}
-				//if the lyric is a new bar character
-				if(index < lyrics.size()-1) {
-					String nextLyric = lyrics.get(index + 1);
-					if(nextLyric.equals("|")) {
-						noteCount++;
-						break;
-					}
+					List<Music> notes = ((Tuplet)m).getNotes();
+					int singables = 0;
+					for(Music subMusic : notes)
+						if(subMusic instanceof Singable)
+							singables++;
+					//every note of a tuplet is sung to the same syllable
+					setSyllable(syllables, j, cursor.match(singables));
+				} else {
+					//rests cannot have lyrics
+					cursor.match(0);
 				}
+				if(cursor.endOfBar())
+					break;
 			}
 		}
 	}
 
+	/**
+	 * Sets the syllable sung to the music at index in the arena, padding the syllables with ""
+	 */
+	private static void setSyllable(List<String> syllables, int index, String syllable) {
+		while(syllables.size() <= index)
+			syllables.add("");
+		syllables.set(index, syllable);
+	}
+
 	public Song getSong() {
 		return song;
 	}
+	
+	/**
+	 * @return the header, as soon as the listener has exited abc_header
+	 */
+	public Header getHeader() {
+		return header;
+	}
     @Override
     public void enterL_bracket(L_bracketContext ctx) {}
     @Override
     public void exitL_bracket(L_bracketContext ctx) {
-        chordParentContainer = noteContainer;
-        chordNotes = new ArrayList<Music>();
-        noteContainer = chordNotes;
-        this.inMultinote = true;
+        //the notes of the chord go in the chord until it is closed
+        openMultinote();
     }
     @Override
     public void enterR_bracket(R_bracketContext ctx) {}
     @Override
     public void exitR_bracket(R_bracketContext ctx) {
+        List<Music> chordNotes = multinoteMusic.subList(closeMultinote(), multinoteMusic.size());
         ArrayList<Note> notes = new ArrayList<Note>();
         for(Music m : chordNotes) {
             notes.add((Note)m);
         }
-        chordParentContainer.add(new Chord(notes));
-        noteContainer = chordParentContainer;
-        this.inMultinote = false;
-        List<List<Music>> bars = this.barsForVoiceName.get(voiceName);
-        bars.get(bars.size()-1).add(new Chord(notes));
-        
+        chordNotes.clear();
+        addMusic(new Chord(notes));
+    }
+    
+    /**
+     * Opens a multinote (i.e. tuplet, chord): the music that follows goes in it until it is closed
+     */
+    private void openMultinote() {
+        multinoteStarts.add(multinoteMusic.size());
+    }
+    
+    /**
+     * Closes the innermost open multinote
+     * @return the index in multinoteMusic that its music starts at
+     */
+    private int closeMultinote() {
+        return multinoteStarts.remove(multinoteStarts.size()-1);
+    }
+    
+    /**
+     * Puts a newly created piece of music in the innermost open multinote, or at the end of the
+     * current voice's arena (and so of its last bar) if no multinote is open
+     */
+    private void addMusic(Music music) {
+        if(multinoteStarts.isEmpty())
+            musicForVoiceName.get(voiceName).add(music);
+        else
+            multinoteMusic.add(music);
     }
-	@Override
-	public void exitBarline(BarlineContext ctx) {}    
 }
@@ -0,0 +1,178 @@
+package grammar;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.Token;
+import org.junit.Test;
+
+import player.Chord;
+import player.Music;
+import player.Note;
+import player.Rest;
+import player.Song;
+import player.Tuplet;
+import player.Voice;
+
+/**
+ * Tests that SongListener creates each chord and tuplet written in a tune once, and only once, and
+ * asks for each note and rest written once, sharing equal ones
+ */
+public class SongListenerTest {
+
+    /*
+     * Partition input space:
+     * - Music: notes, rests, chords, tuplets; at the top level of a bar, in a tuplet
+     * - Repeats: none, |: :|, [1 [2
+     * - Source: every sample file, hand-written tunes
+     *
+     * Java cannot count the allocations of a piece of code portably, so these tests count the
+     * distinct Music objects that the Song holds, reachable from its voices, chords and tuplets.
+     * The chords and tuplets are compared to the number written in the tune: any that SongListener
+     * created twice, or copied, shows up as an extra object. Notes and rests are shared (see
+     * Note.valueOf), so no two distinct ones may be equal; instead, the notes and rests asked of
+     * Note.valueOf and Rest.valueOf while compiling are compared to the notes and rests written.
+     */
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * @return the number of chords and tuplets written in a tune
+     */
+    private static int writtenMultinotes(CharStream input) {
+        ABCMusicLexer lexer = new ABCMusicLexer(input);
+        int elements = 0;
+        for (Token token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) {
+            switch (token.getType()) {
+            case ABCMusicLexer.L_BRACKET:
+            case ABCMusicLexer.DUPLET:
+            case ABCMusicLexer.TRIPLET:
+            case ABCMusicLexer.QUADRUPLET:
+                elements++;
+                break;
+            }
+        }
+        return elements;
+    }
+
+    /**
+     * @return the number of notes and rests written in a tune (each a NOTE token)
+     */
+    private static int writtenNotes(CharStream input) {
+        ABCMusicLexer lexer = new ABCMusicLexer(input);
+        int notes = 0;
+        for (Token token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken())
+            if (token.getType() == ABCMusicLexer.NOTE)
+                notes++;
+        return notes;
+    }
+
+    /**
+     * @return the number of notes and rests asked of Note.valueOf and Rest.valueOf so far
+     */
+    private static long internRequests() {
+        return Note.getInternRequests() + Rest.getInternRequests();
+    }
+
+    /**
+     * Adds a piece of music, and the music in it, to the distinct music seen
+     */
+    private static void reach(Music music, IdentityHashMap<Music, Music> seen) {
+        if (seen.put(music, music) != null)
+            return;
+        if (music instanceof Chord) {
+            for (Note note : ((Chord) music).getNotes())
+                reach(note, seen);
+        } else if (music instanceof Tuplet) {
+            for (Music subMusic : ((Tuplet) music).getNotes())
+                reach(subMusic, seen);
+        }
+    }
+
+    /**
+     * @return the distinct Music objects held by a song
+     */
+    private static IdentityHashMap<Music, Music> held(Song song) {
+        IdentityHashMap<Music, Music> seen = new IdentityHashMap<Music, Music>();
+        for (Voice voice : song.getBody().getVoices())
+            for (Music music : voice.getSongComponents())
+                reach(music, seen);
+        return seen;
+    }
+
+    /**
+     * Asserts that a song holds one chord or tuplet for each written in the tune, and one note
+     * or rest for each distinct one written, and that compiling it asked for each note or rest
+     * written once
+     * @param requests the number of notes and rests asked for while compiling the song
+     * @param text the tune, which is lexed again for each count
+     */
+    private static void assertCreatedOnce(String name, Song song, long requests, String text) {
+        int multinotes = 0;
+        HashSet<Music> leaves = new HashSet<Music>();
+        int leafObjects = 0;
+        for (Music music : held(song).keySet()) {
+            if (music instanceof Chord || music instanceof Tuplet) {
+                multinotes++;
+            } else {
+                leaves.add(music);
+                leafObjects++;
+            }
+        }
+        assertEquals(name, writtenMultinotes(new ANTLRInputStream(text)), multinotes);
+        assertEquals(name, leaves.size(), leafObjects);
+        assertEquals(name, writtenNotes(new ANTLRInputStream(text)), requests);
+    }
+
+    @Test
+    public void sampleFilesTest() throws IOException {
+        SongCompiler compiler = new SongCompiler();
+        for (File file : new File("sample_abc").listFiles()) {
+            long before = internRequests();
+            Song song = compiler.compile(MappedCharStream.open(file.toPath(), UTF8));
+            assertCreatedOnce(file.getName(), song, internRequests() - before,
+                    new String(Files.readAllBytes(file.toPath()), UTF8));
+        }
+    }
+
+    @Test
+    public void multinotesTest() {
+        String tune = "X:1\nT:Multinotes\nK:C\n[CEG] (3z [CE] D (3A B c | (2(3C D E F G |]\n";
+        long before = internRequests();
+        Song song = new SongCompiler().compile(new ANTLRInputStream(tune));
+        assertCreatedOnce(tune, song, internRequests() - before, tune);
+
+        List<Music> played = song.getBody().getVoices().get(0).getSongComponents();
+        // a chord, two triplets, a duplet and a note; nothing in a tuplet is in the bar as well
+        assertEquals(5, played.size());
+        List<Music> triplet = ((Tuplet) played.get(1)).getNotes();
+        assertEquals(3, triplet.size());
+        assertTrue(triplet.get(0) instanceof Rest);
+        assertTrue(triplet.get(1) instanceof Chord);
+        // a tuplet in a tuplet belongs to the outer one
+        List<Music> duplet = ((Tuplet) played.get(3)).getNotes();
+        assertEquals(2, duplet.size());
+        assertTrue(duplet.get(0) instanceof Tuplet);
+        // equal notes are one note, wherever they are written
+        assertSame(triplet.get(2), ((Tuplet) duplet.get(0)).getNotes().get(1));
+    }
+
+    @Test
+    public void repeatsTest() {
+        String tune = "X:1\nT:Repeats\nK:C\n|: C [DF] | (3E F G :| A |[1 z :|[2 B |]\n";
+        long before = internRequests();
+        Song song = new SongCompiler().compile(new ANTLRInputStream(tune));
+        // the repeated bars are played again, not created again
+        assertCreatedOnce(tune, song, internRequests() - before, tune);
+        assertTrue(song.getBody().getVoices().get(0).getSongComponents().size() > 7);
+    }
+}
@@ -0,0 +1,266 @@
+package grammar;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.antlr.v4.runtime.CharStream;
+
+import player.Header;
+import player.Song;
+
+/**
+ * A songbook is an abc file holding any number of tunes, each of which starts with an
+ * "X:" field at the beginning of a line. Anything before the first "X:" line is ignored.
+ *
+ * The tunes are found while iterating, by scanning the bytes of the file for the next "X:" line,
+ * and each tune is compiled only when it is reached. The file itself is memory-mapped, so the heap
+ * only ever holds the tune currently being compiled, never the whole songbook.
+ *
+ * Iterating over a Songbook gives its Songs, in the order they appear in the file.
+ * Since the tunes are independent of each other, they can also be compiled in parallel with compileAll.
+ */
+public class Songbook implements Iterable<Song> {
+
+    /**
+     * The bytes of the whole songbook
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The charset of the songbook
+     */
+    private final Charset charset;
+
+    /**
+     * The name of the songbook, usually the file name
+     */
+    private final String sourceName;
+
+    /**
+     * Compiles each tune into a Song
+     */
+    private final SongCompiler compiler;
+
+    /**
+     * @param buffer the bytes of the songbook, from index 0 up to the limit of the buffer. The buffer
+     *          must not be modified while this songbook is in use
+     * @param charset the charset of the songbook - must be ASCII compatible (ex. UTF-8, ISO-8859-1)
+     * @param sourceName the name of the songbook (ex. the file name)
+     * @param compiler used to compile each tune
+     */
+    public Songbook(ByteBuffer buffer, Charset charset, String sourceName, SongCompiler compiler) {
+        this.buffer = buffer.duplicate();
+        this.buffer.position(0);
+        this.charset = charset;
+        this.sourceName = sourceName;
+        this.compiler = compiler;
+    }
+
+    /**
+     * Maps a songbook file into memory
+     * @param file the songbook to read
+     * @param charset the charset of the file - must be ASCII compatible (ex. UTF-8, ISO-8859-1)
+     * @return the songbook held in the file
+     * @throws IOException if the file cannot be read, or is too large to be mapped
+     */
+    public static Songbook open(Path file, Charset charset) throws IOException {
+        return new Songbook(MappedCharStream.map(file), charset, file.toString(), new SongCompiler());
+    }
+
+    /**
+     * @return the compiler used for each tune
+     */
+    public SongCompiler getCompiler() {
+        return compiler;
+    }
+
+    /**
+     * @return the name of the songbook
+     */
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    /**
+     * @return an iterator over the text of each tune, in file order. Each tune is a view of the
+     *          songbook's bytes, so nothing is copied
+     */
+    public Iterator<CharStream> tunes() {
+        return new TuneIterator();
+    }
+
+    /**
+     * @return an iterator which compiles each tune into a Song as it is reached, in file order
+     * @throws RuntimeException from next() if a tune is not valid abc
+     */
+    @Override
+    public Iterator<Song> iterator() {
+        final Iterator<CharStream> tunes = tunes();
+        return new Iterator<Song>() {
+            @Override
+            public boolean hasNext() {
+                return tunes.hasNext();
+            }
+
+            @Override
+            public Song next() {
+                return compiler.compile(tunes.next());
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Cannot remove a tune from a songbook");
+            }
+        };
+    }
+
+    /**
+     * @return an iterator over the Header of each tune, in file order. Only the headers are parsed,
+     *          so this is much faster than compiling the tunes
+     * @throws RuntimeException from next() if a header is not valid abc
+     */
+    public Iterator<Header> headers() {
+        final Iterator<CharStream> tunes = tunes();
+        return new Iterator<Header>() {
+            @Override
+            public boolean hasNext() {
+                return tunes.hasNext();
+            }
+
+            @Override
+            public Header next() {
+                return compiler.compileHeader(tunes.next());
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Cannot remove a tune from a songbook");
+            }
+        };
+    }
+
+    /**
+     * Compiles every tune in parallel, one fork-join task per tune. Each task uses its own lexer,
+     * parser and listener; only the parser's prediction cache is shared between them.
+     * @param pool the pool to run the tasks on
+     * @return the Songs of the songbook, in file order
+     * @throws RuntimeException if any tune is not valid abc
+     */
+    public List<Song> compileAll(ForkJoinPool pool) {
+        final List<CompileTask> tasks = new ArrayList<CompileTask>();
+        Iterator<CharStream> tunes = tunes();
+        while (tunes.hasNext())
+            tasks.add(new CompileTask(tunes.next()));
+        return pool.invoke(new RecursiveTask<List<Song>>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected List<Song> compute() {
+                invokeAll(tasks);
+                List<Song> songs = new ArrayList<Song>();
+                for (CompileTask task : tasks)
+                    songs.add(task.join());
+                return songs;
+            }
+        });
+    }
+
+    /**
+     * Compiles every tune in parallel, using one thread per available processor
+     * @return the Songs of the songbook, in file order
+     * @throws RuntimeException if any tune is not valid abc
+     */
+    public List<Song> compileAll() {
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            return compileAll(pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @param from the index to start searching at
+     * @return the index of the first "X:" at the beginning of a line, at or after from,
+     *          or the limit of the buffer if there is none
+     */
+    int findTuneStart(int from) {
+        int limit = buffer.limit();
+        for (int i = from; i + 1 < limit; i++) {
+            if (buffer.get(i) == 'X' && buffer.get(i + 1) == ':' && (i == 0 || buffer.get(i - 1) == '\n'))
+                return i;
+        }
+        return limit;
+    }
+
+    /**
+     * @param start the index of a tune's "X:" line
+     * @return a stream over the tune starting at start, up to the next tune or the end of the songbook
+     */
+    CharStream tuneAt(int start) {
+        int end = findTuneStart(start + 2);
+        ByteBuffer tune = buffer.duplicate();
+        tune.limit(end);
+        tune.position(start);
+        return new MappedCharStream(tune.slice(), charset, sourceName);
+    }
+
+    /**
+     * Compiles a single tune
+     */
+    private class CompileTask extends RecursiveTask<Song> {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The text of the tune to compile
+         */
+        private final CharStream tune;
+
+        CompileTask(CharStream tune) {
+            this.tune = tune;
+        }
+
+        @Override
+        protected Song compute() {
+            return compiler.compile(tune);
+        }
+    }
+
+    /**
+     * Walks from one "X:" line to the next
+     */
+    private class TuneIterator implements Iterator<CharStream> {
+
+        /**
+         * The index of the next tune's "X:" line, or the limit of the buffer if there are no more tunes
+         */
+        private int nextStart = findTuneStart(0);
+
+        @Override
+        public boolean hasNext() {
+            return nextStart < buffer.limit();
+        }
+
+        @Override
+        public CharStream next() {
+            if (!hasNext())
+                throw new NoSuchElementException("No more tunes in " + sourceName);
+            CharStream tune = tuneAt(nextStart);
+            nextStart += tune.size();
+            return tune;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Cannot remove a tune from a songbook");
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package grammar;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.antlr.v4.runtime.CharStream;
+
+import player.Header;
+
+/**
+ * An index of where each tune of a songbook starts and ends, so that any one tune can later be
+ * mapped and compiled on its own, without scanning the rest of the songbook.
+ *
+ * The index is built with a header-only scan, which stops parsing each tune at its "K:" field.
+ * On disk, it takes 16 bytes per tune:
+ *      int magic, int version, int count, then count times {long offset, int length, int indexNumber}
+ *
+ * This class is immutable
+ */
+public class SongbookIndex {
+
+    /**
+     * Identifies an index file ("ABCI")
+     */
+    private static final int MAGIC = 0x41424349;
+
+    /**
+     * The version of the file layout
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * offsets[i] is the byte offset of tune i's "X:" line in the songbook
+     */
+    private final long[] offsets;
+
+    /**
+     * lengths[i] is the number of bytes in tune i
+     */
+    private final int[] lengths;
+
+    /**
+     * indexNumbers[i] is the "X:" number of tune i
+     */
+    private final int[] indexNumbers;
+
+    private SongbookIndex(long[] offsets, int[] lengths, int[] indexNumbers) {
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.indexNumbers = indexNumbers;
+    }
+
+    /**
+     * Scans the headers of every tune in a songbook
+     * @param songbook the songbook to index
+     * @return the index of the songbook
+     * @throws RuntimeException if a header is not valid abc
+     */
+    public static SongbookIndex build(Songbook songbook) {
+        return build(songbook, null);
+    }
+
+    /**
+     * Scans the headers of every tune in a songbook, and hands them back as well
+     * @param songbook the songbook to index
+     * @param headers the list to add the header of each tune to, in order, or null to drop them
+     * @return the index of the songbook
+     * @throws RuntimeException if a header is not valid abc
+     */
+    public static SongbookIndex build(Songbook songbook, List<Header> headers) {
+        int count = 0;
+        long[] offsets = new long[16];
+        int[] lengths = new int[16];
+        int[] indexNumbers = new int[16];
+        int start = songbook.findTuneStart(0);
+        Iterator<CharStream> tunes = songbook.tunes();
+        while (tunes.hasNext()) {
+            CharStream tune = tunes.next();
+            Header header = songbook.getCompiler().compileHeader(tune);
+            if (headers != null)
+                headers.add(header);
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+                indexNumbers = Arrays.copyOf(indexNumbers, count * 2);
+            }
+            offsets[count] = start;
+            lengths[count] = tune.size();
+            indexNumbers[count] = header.getIndexNumber();
+            start += tune.size();
+            count++;
+        }
+        return new SongbookIndex(Arrays.copyOf(offsets, count), Arrays.copyOf(lengths, count), Arrays.copyOf(indexNumbers, count));
+    }
+
+    /**
+     * Reads an index written by write
+     * @param file the index file
+     * @return the index held in the file
+     * @throws IOException if the file cannot be read or is not an index file
+     */
+    public static SongbookIndex read(Path file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException(file + " is not a songbook index");
+            int count = in.readInt();
+            long[] offsets = new long[count];
+            int[] lengths = new int[count];
+            int[] indexNumbers = new int[count];
+            for (int i = 0; i < count; i++) {
+                offsets[i] = in.readLong();
+                lengths[i] = in.readInt();
+                indexNumbers[i] = in.readInt();
+            }
+            return new SongbookIndex(offsets, lengths, indexNumbers);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes this index to a file
+     * @param file the file to write to
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size());
+            for (int i = 0; i < size(); i++) {
+                out.writeLong(offsets[i]);
+                out.writeInt(lengths[i]);
+                out.writeInt(indexNumbers[i]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return the number of tunes in the songbook
+     */
+    public int size() {
+        return offsets.length;
+    }
+
+    /**
+     * @param tune the position of a tune in the songbook, 0 <= tune < size()
+     * @return the byte offset of the tune's "X:" line
+     */
+    public long getOffset(int tune) {
+        return offsets[tune];
+    }
+
+    /**
+     * @param tune the position of a tune in the songbook, 0 <= tune < size()
+     * @return the number of bytes in the tune
+     */
+    public int getLength(int tune) {
+        return lengths[tune];
+    }
+
+    /**
+     * @param tune the position of a tune in the songbook, 0 <= tune < size()
+     * @return the "X:" number of the tune
+     */
+    public int getIndexNumber(int tune) {
+        return indexNumbers[tune];
+    }
+
+    /**
+     * @param indexNumber an "X:" number
+     * @return the position of the first tune with that number, or -1 if there is none
+     */
+    public int find(int indexNumber) {
+        for (int i = 0; i < size(); i++)
+            if (indexNumbers[i] == indexNumber)
+                return i;
+        return -1;
+    }
+
+    /**
+     * Maps just one tune of the songbook into memory
+     * @param songbookFile the songbook this index was built from
+     * @param tune the position of the tune in the songbook, 0 <= tune < size()
+     * @param charset the charset of the songbook - must be ASCII compatible (ex. UTF-8, ISO-8859-1)
+     * @return the text of the tune, ready to be compiled
+     * @throws IOException if the songbook cannot be read
+     */
+    public CharStream openTune(Path songbookFile, int tune, Charset charset) throws IOException {
+        FileChannel channel = FileChannel.open(songbookFile, StandardOpenOption.READ);
+        try {
+            return new MappedCharStream(channel.map(FileChannel.MapMode.READ_ONLY, offsets[tune], lengths[tune]), charset, songbookFile.toString());
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Prints the catalog of a songbook (index number, title, composer, key, meter and tempo of
+     * every tune) and writes its index next to it, as songbook.abc.idx
+     * Usage: SongbookIndex songbook.abc
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: SongbookIndex songbook.abc");
+            return;
+        }
+        try {
+            Path file = Paths.get(args[0]);
+            Songbook songbook = Songbook.open(file, Charset.defaultCharset());
+            // one scan gives both the index and the catalog
+            List<Header> headers = new ArrayList<Header>();
+            SongbookIndex index = build(songbook, headers);
+            for (Header header : headers)
+                System.out.println(String.format("%d\t%s\t%s\t%s\t%s\t%s=%d", header.getIndexNumber(), header.getTitle(), header.getComposer(),
+                        header.getKeySignature(), header.getMeter(), header.getTempoBeat(), header.getBeatsPerMinute()));
+            index.write(Paths.get(args[0] + ".idx"));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
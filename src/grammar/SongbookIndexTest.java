@@ -0,0 +1,94 @@
+package grammar;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.junit.Test;
+
+import player.Header;
+import player.Song;
+
+/**
+ * Tests the header-only scan and the on-disk index of a songbook
+ */
+public class SongbookIndexTest {
+
+    /*
+     * Partition input space:
+     * - Header scan: valid body, invalid body
+     * - Index: built from a songbook, read back from disk
+     * - Tunes: the first, a middle one, the last
+     */
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Test
+    public void headerOnlyTest() {
+        String tune = "X:7\nT:Header only\nC:Someone\nM:3/4\nQ:1/4=90\nK:D\n] ] ] this body is not valid\n";
+        Header header = new SongCompiler().compileHeader(new ANTLRInputStream(tune));
+        assertEquals(7, header.getIndexNumber());
+        assertEquals("Header only", header.getTitle());
+        assertEquals("Someone", header.getComposer());
+        assertEquals("D", header.getKeySignature().getKey());
+        assertEquals(90, header.getBeatsPerMinute());
+    }
+
+    @Test
+    public void sampleIndexTest() throws IOException {
+        StringBuilder text = new StringBuilder("% a songbook of every sample\n");
+        List<Song> expected = new ArrayList<Song>();
+        for (File file : new File("sample_abc").listFiles()) {
+            expected.add(new SongCompiler().compile(MappedCharStream.open(file.toPath(), UTF8)));
+            text.append(new String(Files.readAllBytes(file.toPath()), UTF8)).append("\n");
+        }
+        Path songbookFile = Files.createTempFile("songbook", ".abc");
+        Path indexFile = Files.createTempFile("songbook", ".idx");
+        try {
+            Files.write(songbookFile, text.toString().getBytes(UTF8));
+            Songbook songbook = Songbook.open(songbookFile, UTF8);
+            Iterator<Header> headers = songbook.headers();
+            for (Song song : expected)
+                assertEquals(song.getHeader(), headers.next());
+            assertFalse(headers.hasNext());
+
+            // the scan that builds the index hands back the same headers
+            List<Header> scanned = new ArrayList<Header>();
+            SongbookIndex.build(songbook, scanned).write(indexFile);
+            assertEquals(expected.size(), scanned.size());
+            for (int tune = 0; tune < expected.size(); tune++)
+                assertEquals(expected.get(tune).getHeader(), scanned.get(tune));
+            SongbookIndex index = SongbookIndex.read(indexFile);
+            assertEquals(expected.size(), index.size());
+            for (int tune : new int[] {0, expected.size() / 2, expected.size() - 1}) {
+                Song song = new SongCompiler().compile(index.openTune(songbookFile, tune, UTF8));
+                assertEquals(expected.get(tune), song);
+                assertEquals(expected.get(tune).getHeader().getIndexNumber(), index.getIndexNumber(tune));
+            }
+            assertEquals(0, index.find(expected.get(0).getHeader().getIndexNumber()));
+            assertEquals(-1, index.find(-5));
+        } finally {
+            Files.delete(songbookFile);
+            Files.delete(indexFile);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void notAnIndexTest() throws IOException {
+        Path file = Files.createTempFile("songbook", ".idx");
+        try {
+            Files.write(file, "X:1\nT:Not an index\n".getBytes(UTF8));
+            SongbookIndex.read(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package grammar;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.antlr.v4.runtime.CharStream;
+import org.junit.Test;
+
+import player.Song;
+
+/**
+ * Tests that a songbook is split into its tunes, and that each tune compiles to the same Song
+ * as it does on its own
+ */
+public class SongbookTest {
+
+    /*
+     * Partition input space:
+     * - Number of tunes: 0, 1, many
+     * - Text before the first tune: none, comments and blank lines
+     * - "X:" not at the start of a line
+     * - Input: a buffer, a memory-mapped file
+     * - Compilation: one tune at a time, all tunes in parallel
+     */
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static Songbook songbookOf(String text) {
+        return new Songbook(ByteBuffer.wrap(text.getBytes(UTF8)), UTF8, "test", new SongCompiler());
+    }
+
+    private static List<String> tuneTexts(Songbook songbook) {
+        List<String> texts = new ArrayList<String>();
+        Iterator<CharStream> tunes = songbook.tunes();
+        while (tunes.hasNext())
+            texts.add(tunes.next().toString());
+        return texts;
+    }
+
+    @Test
+    public void emptyTest() {
+        assertFalse(songbookOf("").iterator().hasNext());
+        assertFalse(songbookOf("% no tunes here\n").iterator().hasNext());
+    }
+
+    @Test
+    public void splitTest() {
+        String first = "X:1\nT:One\nK:C\nC D E F|\n";
+        String second = "X:2\nT:Two, not X:3\nK:G\nG A B c|\n\n";
+        List<String> texts = tuneTexts(songbookOf("% songbook\n\n" + first + second));
+        assertEquals(2, texts.size());
+        assertEquals(first, texts.get(0));
+        assertEquals(second, texts.get(1));
+    }
+
+    @Test
+    public void songsTest() {
+        Iterator<Song> songs = songbookOf("X:1\nT:One\nK:C\nC D E F|\nX:2\nT:Two\nK:G\nG A B c|\n").iterator();
+        assertEquals("One", songs.next().getHeader().getTitle());
+        assertEquals("Two", songs.next().getHeader().getTitle());
+        assertFalse(songs.hasNext());
+    }
+
+    @Test
+    public void parallelOrderTest() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 1; i <= 200; i++)
+            text.append("X:" + i + "\nT:Tune " + i + "\nK:C\nC D E F|G A B c|\n");
+        List<Song> songs = songbookOf(text.toString()).compileAll(new ForkJoinPool(4));
+        assertEquals(200, songs.size());
+        for (int i = 1; i <= 200; i++)
+            assertEquals(i, songs.get(i - 1).getHeader().getIndexNumber());
+    }
+
+    @Test
+    public void sampleSongbookTest() throws IOException {
+        StringBuilder text = new StringBuilder();
+        List<Song> expected = new ArrayList<Song>();
+        File[] files = new File("sample_abc").listFiles();
+        for (File file : files) {
+            expected.add(new SongCompiler().compile(MappedCharStream.open(file.toPath(), UTF8)));
+            text.append(new String(Files.readAllBytes(file.toPath()), UTF8)).append("\n");
+        }
+        Path songbookFile = Files.createTempFile("songbook", ".abc");
+        try {
+            Files.write(songbookFile, text.toString().getBytes(UTF8));
+            int i = 0;
+            for (Song song : Songbook.open(songbookFile, UTF8)) {
+                assertEquals(files[i].getName(), expected.get(i), song);
+                i++;
+            }
+            assertEquals(files.length, i);
+            assertEquals(expected, Songbook.open(songbookFile, UTF8).compileAll());
+        } finally {
+            Files.delete(songbookFile);
+        }
+    }
+}
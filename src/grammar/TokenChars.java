@@ -0,0 +1,82 @@
+package grammar;
+
+import java.nio.ByteBuffer;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.Token;
+
+/**
+ * A reusable view of the characters of a token, so that the listeners can decode every NOTE
+ * token without a String being made for each one.
+ *
+ * For a token lexed from a MappedCharStream (by either lexer), the view reads the bytes of the
+ * token straight out of the stream's buffer, one byte per character, just as the lexer saw them.
+ * That is exact for tokens made only of ASCII characters, as NOTE tokens are, and skips decoding
+ * the charset. For any other input, of() falls back to the token's text: that costs the String
+ * that getText makes from an ANTLRInputStream, and nothing for an unbuffered compile, whose tokens
+ * already hold their text.
+ *
+ * Rep Invariant:
+ *      bytes is a view of the buffer of input, when input is not null
+ *      0 <= start, start + length <= bytes.limit()
+ *
+ * This class is not thread safe: use one view per listener.
+ */
+final class TokenChars implements CharSequence {
+
+    /**
+     * The stream the last token viewed came from, and its bytes; kept from one token to the next
+     * so that the buffer is looked up once per stream, not once per token
+     */
+    private CharStream input;
+    private ByteBuffer bytes;
+
+    /**
+     * The token viewed is bytes [start, start + length)
+     */
+    private int start;
+    private int length;
+
+    /**
+     * @param token a token made only of ASCII characters
+     * @return the characters of token: this view, moved onto it, if it was lexed from a
+     *          MappedCharStream, or else its text. Only valid until the next call
+     */
+    CharSequence of(Token token) {
+        CharStream stream = token.getInputStream();
+        if (!(stream instanceof MappedCharStream))
+            return token.getText();
+        if (stream != input) {
+            input = stream;
+            bytes = ((MappedCharStream) stream).getBuffer();
+        }
+        start = token.getStartIndex();
+        length = token.getStopIndex() - start + 1;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        return (char) (bytes.get(start + index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        return toString().substring(from, to);
+    }
+
+    @Override
+    public String toString() {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++)
+            chars[i] = charAt(i);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,80 @@
+package grammar;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.junit.Test;
+
+/**
+ * Tests that a view of a token has the characters of its text
+ */
+public class TokenCharsTest {
+
+    /*
+     * Partition input space:
+     * - Input: MappedCharStream (generated lexer, hand-written lexer), another CharStream
+     * - Tokens viewed: first, later (the view is reused), from a second stream
+     * - Index: in range, out of range
+     */
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Asserts that the view of every NOTE token of a lexer has the characters of its text
+     * @return the number of notes viewed
+     */
+    private static int assertNotesViewed(TokenChars chars, TokenSource lexer) {
+        int notes = 0;
+        for (Token token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) {
+            if (token.getType() == ABCMusicLexer.NOTE) {
+                CharSequence view = chars.of(token);
+                assertSame(chars, view);
+                assertEquals(token.getText(), view.toString());
+                assertEquals(token.getText().length(), view.length());
+                assertEquals(token.getText().charAt(0), view.charAt(0));
+                notes++;
+            }
+        }
+        return notes;
+    }
+
+    @Test
+    public void sampleFilesTest() throws IOException {
+        TokenChars chars = new TokenChars();
+        int notes = 0;
+        for (File file : new File("sample_abc").listFiles()) {
+            notes += assertNotesViewed(chars, new ABCMusicLexer(MappedCharStream.open(file.toPath(), UTF8)));
+            notes += assertNotesViewed(chars, new ABCMusicByteLexer(MappedCharStream.open(file.toPath(), UTF8)));
+        }
+        assertTrue(notes > 0);
+    }
+
+    @Test
+    public void otherStreamTest() {
+        ABCMusicLexer lexer = new ABCMusicLexer(new ANTLRInputStream("X:1\nT:T\nK:C\n^c'3/2|\n"));
+        Token token = lexer.nextToken();
+        while (token.getType() != ABCMusicLexer.NOTE)
+            token = lexer.nextToken();
+        CharSequence view = new TokenChars().of(token);
+        assertEquals("^c'3/2", view);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void outOfRangeTest() {
+        byte[] bytes = "X:1\nT:T\nK:C\nC2|\n".getBytes(UTF8);
+        ABCMusicByteLexer lexer = new ABCMusicByteLexer(new MappedCharStream(ByteBuffer.wrap(bytes), UTF8, "test"));
+        Token token = lexer.nextToken();
+        while (token.getType() != ABCMusicLexer.NOTE)
+            token = lexer.nextToken();
+        CharSequence view = new TokenChars().of(token);
+        assertEquals("C2", view.toString());
+        view.charAt(2);
+    }
+}
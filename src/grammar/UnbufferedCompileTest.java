@@ -0,0 +1,185 @@
+package grammar;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.UnbufferedCharStream;
+import org.junit.Assume;
+import org.junit.Test;
+
+import player.Song;
+
+/**
+ * Tests that an unbuffered SongCompiler builds the same tunes as a buffered one, in memory that
+ * does not grow with the input
+ */
+public class UnbufferedCompileTest {
+
+    /*
+     * Partition input space:
+     * - Input: sample files, a tune with a syntax error, generated tunes of 8 MB and (only with
+     *          -Dabc.largeTests=true, as it takes minutes) 500 MB
+     * - Prediction: LL, SLL_THEN_LL (SLL only, when unbuffered)
+     * - Result: Song, events, header, nothing kept (counting listener)
+     * - Heap: default, 16 MB and 32 MB (a separate JVM)
+     */
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The header of the generated tune, and the line of music it repeats
+     */
+    private static final String HEADER = "X:1\nT:Generated\nL:1/8\nK:D\n";
+    private static final String LINE = "|: A B c d e f g a :| [ce] (3Bcd z2 [1 e4 :|[2 f4 |\n";
+    private static final int NOTES_PER_LINE = 16;
+
+    /**
+     * A tune of the given size, written as it is read so it is never held in memory
+     */
+    private static class GeneratedTuneReader extends Reader {
+        private final long lines;
+        private long line = 0;
+        private String text = HEADER;
+        private int position = 0;
+
+        GeneratedTuneReader(long lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            int read = 0;
+            while (read < length) {
+                if (position == text.length()) {
+                    if (line == lines)
+                        break;
+                    line++;
+                    text = LINE;
+                    position = 0;
+                }
+                int n = Math.min(length - read, text.length() - position);
+                text.getChars(position, position + n, buffer, offset + read);
+                position += n;
+                read += n;
+            }
+            return (read == 0) ? -1 : read;
+        }
+
+        @Override
+        public void close() { }
+    }
+
+    /**
+     * Counts the notes of a tune, and keeps nothing else
+     */
+    private static class NoteCounter extends ABCMusicBaseListener {
+        private long notes = 0;
+
+        @Override
+        public void exitNote_element(ABCMusicParser.Note_elementContext ctx) {
+            if (ctx.NOTE() != null)
+                notes++;
+        }
+    }
+
+    private static SongCompiler unbufferedCompiler(PredictionEnum prediction) {
+        SongCompiler compiler = new SongCompiler();
+        compiler.setPrediction(prediction);
+        compiler.setUnbuffered(true);
+        return compiler;
+    }
+
+    /**
+     * Parses a generated tune of about args[0] megabytes with an unbuffered SLL compiler, and prints
+     * the number of notes in it. Run in a JVM of its own, with a small heap, by boundedHeapTest
+     * and largeTuneTest.
+     */
+    public static void main(String[] args) {
+        long lines = Long.parseLong(args[0]) * 1024 * 1024 / LINE.length();
+        NoteCounter counter = new NoteCounter();
+        unbufferedCompiler(PredictionEnum.SLL_THEN_LL).listen(new UnbufferedCharStream(new GeneratedTuneReader(lines)), counter);
+        System.out.println(lines + " " + counter.notes);
+    }
+
+    @Test
+    public void sampleFilesTest() throws IOException {
+        SongCompiler buffered = new SongCompiler();
+        for (PredictionEnum prediction : PredictionEnum.values()) {
+            SongCompiler unbuffered = unbufferedCompiler(prediction);
+            for (File file : new File("sample_abc").listFiles()) {
+                String text = new String(Files.readAllBytes(file.toPath()), UTF8);
+                Song expected = buffered.compile(new ANTLRInputStream(text));
+                assertEquals(file.getName(), expected, unbuffered.compile(new UnbufferedCharStream(new StringReader(text))));
+                assertEquals(file.getName(), expected.getHeader(), unbuffered.compileHeader(new UnbufferedCharStream(new StringReader(text))));
+                assertEquals(file.getName(), buffered.compileEvents(new ANTLRInputStream(text)).size(),
+                        unbuffered.compileEvents(new UnbufferedCharStream(new StringReader(text))).size());
+            }
+        }
+    }
+
+    @Test
+    public void generatedTuneTest() {
+        Song expected = new SongCompiler().compile(new ANTLRInputStream(HEADER + LINE + LINE + LINE));
+        assertEquals(expected, unbufferedCompiler(PredictionEnum.LL).compile(new UnbufferedCharStream(new GeneratedTuneReader(3))));
+        assertEquals(expected, unbufferedCompiler(PredictionEnum.SLL_THEN_LL).compile(new UnbufferedCharStream(new GeneratedTuneReader(3))));
+    }
+
+    @Test
+    public void syntaxErrorTest() {
+        String message = null;
+        try {
+            new SongCompiler().compile(new ANTLRInputStream("X:1\nK:C\nC D|\n"));
+            fail("expected a syntax error");
+        } catch (RuntimeException e) {
+            message = e.getMessage();
+        }
+        try {
+            unbufferedCompiler(PredictionEnum.LL).compile(new UnbufferedCharStream(new StringReader("X:1\nK:C\nC D|\n")));
+            fail("expected a syntax error");
+        } catch (RuntimeException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    /**
+     * Parses a generated tune of about megabytes MB in a JVM of its own, with a heap of heap
+     * (ex. "32m"), and asserts that it ran to the end and counted every note
+     */
+    private static void assertParsedInHeap(int megabytes, String heap) throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(java, "-Xmx" + heap, "-cp", System.getProperty("java.class.path"),
+                UnbufferedCompileTest.class.getName(), Integer.toString(megabytes));
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
+        BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), UTF8));
+        StringBuilder printed = new StringBuilder();
+        for (String line = output.readLine(); line != null; line = output.readLine())
+            printed.append(line).append("\n");
+        assertEquals(printed.toString(), 0, process.waitFor());
+        String[] counts = printed.toString().trim().split(" ");
+        assertEquals(Long.parseLong(counts[0]) * NOTES_PER_LINE, Long.parseLong(counts[1]));
+    }
+
+    @Test
+    public void boundedHeapTest() throws IOException, InterruptedException {
+        // 8 MB of text alone would take the whole heap as chars, let alone as tokens
+        assertParsedInHeap(8, "16m");
+    }
+
+    @Test
+    public void largeTuneTest() throws IOException, InterruptedException {
+        // takes minutes, so it is run only when asked for, with -Dabc.largeTests=true
+        Assume.assumeTrue(Boolean.getBoolean("abc.largeTests"));
+        // 500 MB would take well over ten times the heap to hold as tokens
+        assertParsedInHeap(500, "32m");
+    }
+}
@@ -3,6 +3,7 @@ package player;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.Test;
@@ -25,6 +26,8 @@ public class ADTEqualsTest {
      * - Song
      * - Fraction
      * - KeySignature
+     * - Note and Rest shared by valueOf: equal, not equal
+     * - Voice: same syllables, different syllables
      * 
      */
     
@@ -72,6 +75,30 @@ public class ADTEqualsTest {
         assertTrue(rest1.equals(rest2));
     }
    
+    @Test
+    public void noteValueOf() {
+        Note note = Note.valueOf(NoteEnum.G, AccidentalEnum.NATURAL, 1, new Fraction(2,4));
+        Note equal = new Note(NoteEnum.G, AccidentalEnum.NATURAL, 1, new Fraction(1,2));
+        assertEquals(equal, note);
+        assertEquals(equal.hashCode(), note.hashCode());
+        assertSame(note, Note.valueOf(NoteEnum.G, AccidentalEnum.NATURAL, 1, new Fraction(1,2)));
+        assertSame(note, note.copy());
+        assertNotSame(note, Note.valueOf(NoteEnum.G, AccidentalEnum.NATURAL, 0, new Fraction(1,2)));
+        assertNotSame(note, Note.valueOf(NoteEnum.G, AccidentalEnum.SHARP, 1, new Fraction(1,2)));
+        assertNotSame(note, Note.valueOf(NoteEnum.G, AccidentalEnum.NATURAL, 1, new Fraction(1,4)));
+        assertTrue(Note.getInternedCount() <= Note.getInternRequests());
+    }
+
+    @Test
+    public void restValueOf() {
+        Rest rest = Rest.valueOf(new Fraction(3,8));
+        assertEquals(new Rest(new Fraction(3,8)), rest);
+        assertSame(rest, Rest.valueOf(new Fraction(6,16)));
+        assertSame(rest, rest.copy());
+        assertNotSame(rest, Rest.valueOf(new Fraction(3,4)));
+        assertTrue(Rest.getInternedCount() <= Rest.getInternRequests());
+    }
+
     @Test
     public void voiceEquals() {
         List<Music> array1 = new ArrayList<Music>();
@@ -81,6 +108,11 @@ public class ADTEqualsTest {
         Voice voice1 = new Voice("test", array1);
         Voice voice2 = new Voice("test", array2);
         assertTrue(voice1.equals(voice2));
+        array1.add(new Note(NoteEnum.C, AccidentalEnum.NONE, 0, new Fraction(1,1)));
+        Voice sung = new Voice("test", array1, Arrays.asList("", "la"));
+        assertFalse(sung.equals(new Voice("test", array1)));
+        assertFalse(sung.equals(new Voice("test", array1, Arrays.asList("", "di"))));
+        assertTrue(sung.equals(new Voice("test", array1, Arrays.asList("", "la"))));
     }
     
     // This tests for header, body, and song equality. 
@@ -3,6 +3,7 @@ package player;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import javax.sound.midi.InvalidMidiDataException;
@@ -100,7 +101,7 @@ public class ADTSequencingTest {
         music.add(new Rest(new Fraction(1,1)));
         
         Note test = new Note(NoteEnum.G, AccidentalEnum.NATURAL,0, new Fraction(1,1));
-        test.setSyllable("Super Mario!");
+        int sung = music.size();
         music.add(test);
         
         music.add(new Rest(new Fraction(1,1)));
@@ -127,7 +128,9 @@ public class ADTSequencingTest {
         music.add(new Note(NoteEnum.B, AccidentalEnum.NATURAL,0, new Fraction(6,4)));
         music.add(new Rest(new Fraction(3,4)));
         
-        Voice voice = new Voice("Test Voice", music);
+        List<String> syllables = new ArrayList<String>(Collections.nCopies(music.size(), ""));
+        syllables.set(sung, "Super Mario!");
+        Voice voice = new Voice("Test Voice", music, syllables);
         List<Voice> voices = new ArrayList<Voice>();
         voices.add(voice);
         Body body = new Body(voices);
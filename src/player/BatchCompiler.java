@@ -0,0 +1,323 @@
+package player;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiUnavailableException;
+
+import org.antlr.v4.runtime.CharStream;
+
+import grammar.AbcFiles;
+import grammar.MappedCharStream;
+import grammar.PredictionEnum;
+import grammar.SongCompiler;
+import grammar.Songbook;
+import sound.EventBuffer;
+
+/**
+ * Compiles a whole directory tree of abc files into Standard MIDI Files, without playing anything.
+ *
+ * Every .abc file under the source directory is compiled on its own fork-join task, and its tunes
+ * are written under the same relative path in the output directory: a file holding one tune
+ * becomes name.mid, and a songbook holding several becomes name-1.mid, name-2.mid, ...
+ * A file that fails to compile is recorded in the report, with its cause, and the other files
+ * carry on. Nothing is left behind for a file that fails: the .mid files already written for its
+ * earlier tunes are deleted, and none of its tunes or notes are counted.
+ *
+ * Since almost every file is expected to be valid, tunes are parsed in SLL mode first, and only
+ * parsed again in full LL mode when that fails. The notes are scheduled straight from the parser
+ * (see SongCompiler.compileEvents), without building a Song for each tune.
+ */
+public class BatchCompiler {
+
+    /**
+     * The charset of the abc files
+     */
+    private final Charset charset;
+
+    /**
+     * The pool that the files are compiled on
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Compiles every tune; shared by all the tasks
+     */
+    private final SongCompiler compiler = new SongCompiler();
+
+    /**
+     * @param charset the charset of the abc files - must be ASCII compatible (ex. UTF-8, ISO-8859-1)
+     * @param pool the pool to compile the files on
+     */
+    public BatchCompiler(Charset charset, ForkJoinPool pool) {
+        this.charset = charset;
+        this.pool = pool;
+        this.compiler.setPrediction(PredictionEnum.SLL_THEN_LL);
+    }
+
+    /**
+     * Compiles every .abc file under sourceDir into .mid files under outputDir
+     * @param sourceDir the root of the tree of abc files
+     * @param outputDir the root of the tree to write MIDI files to; created if needed
+     * @return the totals for the whole run
+     * @throws IOException if sourceDir cannot be walked
+     */
+    public Report compile(Path sourceDir, Path outputDir) throws IOException {
+        Report report = new Report();
+        List<FileTask> tasks = new ArrayList<FileTask>();
+        for (Path file : AbcFiles.list(sourceDir))
+            tasks.add(new FileTask(file, outputDir.resolve(sourceDir.relativize(file)), report));
+        long start = System.nanoTime();
+        AbcFiles.invokeAll(pool, tasks);
+        report.elapsedNanos = System.nanoTime() - start;
+        report.sllParses = compiler.getSllParses();
+        report.llFallbacks = compiler.getLlFallbacks();
+        return report;
+    }
+
+    /**
+     * Compiles one abc file and writes its tunes out
+     */
+    private class FileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The abc file to compile
+         */
+        private final Path file;
+
+        /**
+         * Where the abc file would be in the output tree; the .mid files are named after it
+         */
+        private final Path target;
+
+        /**
+         * The totals to add this file to
+         */
+        private final Report report;
+
+        /**
+         * The .mid files written (or being written) for this file so far
+         */
+        private final List<Path> written = new ArrayList<Path>();
+
+        FileTask(Path file, Path target, Report report) {
+            this.file = file;
+            this.target = target;
+            this.report = report;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                Songbook songbook = new Songbook(MappedCharStream.map(file), charset, file.toString(), compiler);
+                int tuneCount = 0;
+                Iterator<CharStream> tunes = songbook.tunes();
+                while (tunes.hasNext()) {
+                    tunes.next();
+                    tuneCount++;
+                }
+
+                Files.createDirectories(target.getParent());
+                String baseName = target.getFileName().toString().replaceAll("\\.abc$", "");
+                int tuneNumber = 1;
+                long notes = 0;
+                tunes = songbook.tunes();
+                while (tunes.hasNext()) {
+                    EventBuffer events = compiler.compileEvents(tunes.next());
+                    String name = (tuneCount == 1) ? baseName + ".mid" : baseName + "-" + tuneNumber + ".mid";
+                    Path midi = target.resolveSibling(name);
+                    written.add(midi);
+                    events.toSequencePlayer(null).write(midi.toFile());
+                    notes += events.getNoteCount();
+                    tuneNumber++;
+                }
+                report.files.incrementAndGet();
+                report.tunes.addAndGet(tuneCount);
+                report.notes.addAndGet(notes);
+            } catch (IOException e) {
+                fail(e);
+            } catch (MidiUnavailableException e) {
+                fail(e);
+            } catch (InvalidMidiDataException e) {
+                fail(e);
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Records the failure of this file, and deletes the .mid files written for its earlier tunes
+         */
+        private void fail(Exception e) {
+            for (Path midi : written) {
+                try {
+                    Files.deleteIfExists(midi);
+                } catch (IOException deleteFailure) {
+                    // the file is reported as failed all the same
+                }
+            }
+            report.failures.add(new Failure(file, e));
+        }
+    }
+
+    /**
+     * An abc file that failed to compile, and why. This class is immutable
+     */
+    public static class Failure {
+        private final Path file;
+        private final Exception cause;
+
+        Failure(Path file, Exception cause) {
+            this.file = file;
+            this.cause = cause;
+        }
+
+        /**
+         * @return the abc file that failed
+         */
+        public Path getFile() {
+            return file;
+        }
+
+        /**
+         * @return the exception it failed with
+         */
+        public Exception getCause() {
+            return cause;
+        }
+
+        /**
+         * @return the file and the exception, as a human readable line
+         */
+        @Override
+        public String toString() {
+            return file + ": " + cause;
+        }
+    }
+
+    /**
+     * The totals of a batch run. The counters are updated concurrently by the compiling tasks
+     */
+    public static class Report {
+        private final AtomicInteger files = new AtomicInteger();
+        private final Queue<Failure> failures = new ConcurrentLinkedQueue<Failure>();
+        private final AtomicInteger tunes = new AtomicInteger();
+        private final AtomicLong notes = new AtomicLong();
+        private long elapsedNanos;
+        private long sllParses;
+        private long llFallbacks;
+
+        /**
+         * @return the number of abc files compiled successfully
+         */
+        public int getFiles() {
+            return files.get();
+        }
+
+        /**
+         * @return the number of abc files that failed to compile
+         */
+        public int getFailures() {
+            return failures.size();
+        }
+
+        /**
+         * @return the abc files that failed to compile, each with its cause, in order of their paths
+         */
+        public List<Failure> getFailedFiles() {
+            List<Failure> failed = new ArrayList<Failure>(failures);
+            Collections.sort(failed, new Comparator<Failure>() {
+                @Override
+                public int compare(Failure a, Failure b) {
+                    return a.getFile().compareTo(b.getFile());
+                }
+            });
+            return Collections.unmodifiableList(failed);
+        }
+
+        /**
+         * @return the number of tunes written out as MIDI files, from the files that compiled
+         */
+        public int getTunes() {
+            return tunes.get();
+        }
+
+        /**
+         * @return the number of notes in all the MIDI files written
+         */
+        public long getNotes() {
+            return notes.get();
+        }
+
+        /**
+         * @return the wall clock time of the whole run, in seconds
+         */
+        public double getSeconds() {
+            return elapsedNanos / 1e9;
+        }
+
+        /**
+         * @return the number of tunes parsed in SLL mode alone
+         */
+        public long getSllParses() {
+            return sllParses;
+        }
+
+        /**
+         * @return the number of tunes that failed in SLL mode and were parsed again in LL mode
+         */
+        public long getLlFallbacks() {
+            return llFallbacks;
+        }
+
+        /**
+         * @return the throughput of the run, as a human readable summary
+         */
+        @Override
+        public String toString() {
+            double seconds = Math.max(getSeconds(), 1e-9);
+            return String.format("Compiled %d tunes (%d notes) from %d files in %.3f s: %.1f tunes/sec, %.1f notes/sec, %d files failed, %d of %d parses fell back from SLL to LL",
+                    getTunes(), getNotes(), getFiles(), getSeconds(), getTunes() / seconds, getNotes() / seconds, getFailures(),
+                    getLlFallbacks(), getSllParses() + getLlFallbacks());
+        }
+    }
+
+    /**
+     * Compiles a directory tree of abc files into MIDI files, and prints the files that failed and
+     * the throughput.
+     * Usage: BatchCompiler sourceDir outputDir [threads]
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: BatchCompiler sourceDir outputDir [threads]");
+            return;
+        }
+        ForkJoinPool pool = AbcFiles.newPool(args, 2);
+        try {
+            Report report = new BatchCompiler(Charset.defaultCharset(), pool).compile(Paths.get(args[0]), Paths.get(args[1]));
+            for (Failure failure : report.getFailedFiles())
+                System.err.println(failure);
+            System.out.println(report);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package player;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+
+import org.junit.Test;
+
+/**
+ * Tests that a directory of abc files is compiled to MIDI files without a sequencer
+ */
+public class BatchCompilerTest {
+
+    /*
+     * Partition input space:
+     * - Files holding one tune, files holding several tunes
+     * - Files that fail to compile: at their first tune, after writing earlier tunes
+     * - Files that are not abc files
+     */
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null)
+            for (File child : children)
+                delete(child);
+        file.delete();
+    }
+
+    @Test
+    public void sampleDirectoryTest() throws IOException, InvalidMidiDataException {
+        Path output = Files.createTempDirectory("midi");
+        try {
+            BatchCompiler.Report report = new BatchCompiler(UTF8, new ForkJoinPool(4)).compile(Paths.get("sample_abc"), output);
+            int sampleCount = new File("sample_abc").list().length;
+            assertEquals(sampleCount, report.getFiles());
+            assertEquals(sampleCount, report.getTunes());
+            assertEquals(0, report.getFailures());
+            assertTrue(report.getNotes() > 0);
+            assertEquals(sampleCount, report.getSllParses());
+            assertEquals(0, report.getLlFallbacks());
+
+            Sequence scale = MidiSystem.getSequence(output.resolve("scale.mid").toFile());
+            // the tempo, 16 notes on and 16 notes off, and the end of the track
+            assertEquals(34, scale.getTracks()[0].size());
+        } finally {
+            delete(output.toFile());
+        }
+    }
+
+    @Test
+    public void songbookAndFailureTest() throws IOException {
+        Path source = Files.createTempDirectory("abc");
+        Path output = Files.createTempDirectory("midi");
+        try {
+            Files.createDirectories(source.resolve("book"));
+            Files.write(source.resolve("book/two.abc"), "X:1\nT:One\nK:C\nC D E F|\nX:2\nT:Two\nK:G\nG A B c|\n".getBytes(UTF8));
+            Files.write(source.resolve("broken.abc"), "X:1\nK:C\n".getBytes(UTF8));
+            Files.write(source.resolve("notes.txt"), "not abc".getBytes(UTF8));
+            BatchCompiler.Report report = new BatchCompiler(UTF8, new ForkJoinPool(2)).compile(source, output);
+            assertEquals(1, report.getFiles());
+            assertEquals(1, report.getFailures());
+            assertEquals(2, report.getTunes());
+            assertEquals(8, report.getNotes());
+            // the broken file fails in SLL mode, and again in LL mode
+            assertEquals(2, report.getSllParses());
+            assertEquals(1, report.getLlFallbacks());
+            assertTrue(Files.exists(output.resolve("book/two-1.mid")));
+            assertTrue(Files.exists(output.resolve("book/two-2.mid")));
+            assertEquals(1, report.getFailedFiles().size());
+            assertEquals(source.resolve("broken.abc"), report.getFailedFiles().get(0).getFile());
+            assertTrue(report.getFailedFiles().get(0).getCause().getMessage().contains("expecting FIELD_TITLE"));
+        } finally {
+            delete(source.toFile());
+            delete(output.toFile());
+        }
+    }
+
+    @Test
+    public void partialSongbookTest() throws IOException {
+        Path source = Files.createTempDirectory("abc");
+        Path output = Files.createTempDirectory("midi");
+        try {
+            // the first tune compiles, the second does not
+            Files.write(source.resolve("half.abc"), "X:1\nT:One\nK:C\nC D E F|\nX:2\nK:G\nG A B c|\n".getBytes(UTF8));
+            BatchCompiler.Report report = new BatchCompiler(UTF8, new ForkJoinPool(1)).compile(source, output);
+            assertEquals(0, report.getFiles());
+            assertEquals(1, report.getFailures());
+            assertEquals(source.resolve("half.abc"), report.getFailedFiles().get(0).getFile());
+            // the first tune's file is not left behind, nor counted
+            assertFalse(Files.exists(output.resolve("half-1.mid")));
+            assertEquals(0, report.getTunes());
+            assertEquals(0, report.getNotes());
+        } finally {
+            delete(source.toFile());
+            delete(output.toFile());
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package player;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -9,8 +10,9 @@ import java.util.List;
  * 
  * Rep Invariant: This class is immutable
  *      We are assured that a Voice is immutable, and we ensure that our list of voices is immutable
- *      We copy the voices that are passed to the constructor, to ensure that the client cannot modify the voices
- *      We can safely return the voices list as is because it is immutable
+ *      We copy the list of voices that is passed to the constructor, to ensure that the client cannot
+ *      modify it; the voices themselves are shared, not copied
+ *      We can safely return the voices list as is because it is unmodifiable
  *      Since the class is immutable, we can safely pass it to the visitor
  *      There is no rep exposure
  *      
@@ -29,22 +31,31 @@ public class Body implements ISongSequencerVisitable{
      * @param voices the voices in the body
      */
     public Body(List<Voice> voices) {
-        this.voices = new ArrayList<Voice>();
-        for (Voice v : voices)
-            this.voices.add(v);
+        this.voices = Collections.unmodifiableList(new ArrayList<Voice>(voices));
     }
     
     /**
-     * Create a new body as a copy of an existing Body object
+     * Create a new body as a copy of an existing Body object, which shares its voices
      * @param body the body to be copied
      */
     public Body(Body body){
-        this(body.getVoices());
+        this.voices = body.voices;
+    }
+
+    /**
+     * @param index the index of a voice of this body
+     * @param voice the voice to put in its place
+     * @return a Body of the voices of this one, with voice at index
+     */
+    public Body withVoice(int index, Voice voice) {
+        List<Voice> newVoices = new ArrayList<Voice>(this.voices);
+        newVoices.set(index, voice);
+        return new Body(newVoices);
     }
     
     /**
      * Get all the voices that make up this Body
-     * @return a List of the voices in the body
+     * @return an unmodifiable List of the voices in the body
      */
     public List<Voice> getVoices() {
         return voices;
@@ -1,6 +1,7 @@
 package player;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -8,8 +9,8 @@ import java.util.List;
  * notes played simultaneously within the same voice.
  * 
  * Rep Invariant: This class is immutable
- *      We copy the notes in the constructor to ensure that the client cannot modify them
- *      The list of notes is final
+ *      We copy the list of notes in the constructor to ensure that the client cannot modify it
+ *      The list of notes is final and unmodifiable, and the notes are immutable
  *      We do not modify the fields in other methods
  *      There is no rep exposure
  *      
@@ -24,52 +25,27 @@ public class Chord implements Singable {
     private final List<Note> notes;
     
     /**
-     * The syllable (associated with Chord)
-     */
-    private String syllable;
-    
-    /**
-     * @return the notes in the chord
+     * @return the notes in the chord, an unmodifiable list
      */
     public List<Note> getNotes() {
         return notes;
     }
     
-    /**
-     * Sets the syllable associated with this Chord
-     */
-    public void setSyllable(String syllable) {
-    	this.syllable = syllable;
-    }
-    
-    /**
-     * Returns the syllable associated with this Chord
-     */
-    public String getSyllable() {
-        return syllable;
-    }
-
     /**
      * Construct a new Chord from the notes that compose it
      * @param notes the notes that are to be in the Chord
      */
     public Chord(List<Note> notes){
         assert notes.size() > 1;
-        this.notes = new ArrayList<Note>();
-        this.syllable = "";
-        for (Note n : notes)
-            this.notes.add(n);
+        this.notes = Collections.unmodifiableList(new ArrayList<Note>(notes));
     }
 
     /**
-     * Create a new chord with the same notes
+     * @return this Chord: its notes cannot change, so it is its own copy
      */
     @Override
     public Music copy() {
-        Chord copiedChord = new Chord(this.notes);
-        copiedChord.setSyllable(this.getSyllable());
-        return copiedChord;
-        
+        return this;
     }
 
     /**
@@ -78,12 +54,24 @@ public class Chord implements Singable {
      */
     @Override
     public Fraction getDuration() {
-        Fraction maxDuration = new Fraction(0,1);
+        Fraction maxDuration = Fraction.valueOf(0, 1);
         for (Note n : this.notes)
             if (n.getDuration().compareTo(maxDuration) > 0)
                 maxDuration = n.getDuration();
         return maxDuration;
     }
+
+    /**
+     * @return the duration of the longest note, packed
+     */
+    @Override
+    public long getPackedDuration() {
+        long maxDuration = PackedFraction.ZERO;
+        for (Note n : this.notes)
+            if (PackedFraction.compare(n.getPackedDuration(), maxDuration) > 0)
+                maxDuration = n.getPackedDuration();
+        return maxDuration;
+    }
     
     /**
      * @return the string representation of the Chord
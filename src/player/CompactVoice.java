@@ -0,0 +1,563 @@
+package player;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import sound.EventBuffer;
+import sound.Pitch;
+
+/**
+ * The music of a voice kept in parallel arrays of primitives, one entry per note or rest (a leaf),
+ * rather than as an object for each Music. The notes of a chord, and the notes, chords and rests
+ * of a tuplet, are leaves one after another, marked as belonging together.
+ *
+ * For each leaf it keeps:
+ *      kind      byte   REST or a note, and whether the leaf is in a chord (and starts it) or in
+ *                       a tuplet (its type, and whether the leaf starts it)
+ *      pitch     short  the MIDI note, as SongSequencerVisitor plays it
+ *      spelling  byte   the letter and accidental of the note, as written
+ *      octave    byte   the octave of the note, as written
+ *      duration  char   the index of its duration in the table of durations
+ *      syllable  int    the index of its syllable in the table of syllables, or -1 for none
+ * which is 11 bytes a leaf; the tables hold each distinct duration and syllable of the voice once.
+ * Like Voice, it keeps the bars as written with the order they are played in, so a repeated bar
+ * is kept once.
+ *
+ * The syllable sung to a note or chord is kept on its first leaf, as Voice keeps it beside the
+ * Music; the syllable of a tuplet is sung to each of its notes and chords, so it is kept on the
+ * first leaf of each. A syllable of "" is kept as none.
+ *
+ * A CompactVoice can be read as the Musics it was made from (iterating gives equal ones, the notes
+ * and rests shared as Note.valueOf and Rest.valueOf share them), or worked over directly, leaf by
+ * leaf.
+ *
+ * Rep invariant:
+ *      every array of leaves has size entries
+ *      0 <= duration[i] < durations.length, -1 <= syllable[i] < syllables.length
+ *      a leaf with CHORD set and CHORD_START clear follows a leaf of the same chord
+ *      a leaf with a tuplet type and TUPLET_START clear follows a leaf of the same tuplet
+ *      barStarts[0] == 0, barStarts is non-decreasing, barStarts[barStarts.length-1] == size,
+ *      and no chord or tuplet crosses a bar start
+ *      0 <= playOrder[k] < barStarts.length-1 for every k
+ *
+ * This class is immutable
+ */
+public class CompactVoice implements Iterable<Music> {
+
+    /**
+     * The bits of kind[i]
+     */
+    private static final int REST = 1;
+    private static final int CHORD = 2;
+    private static final int CHORD_START = 4;
+    private static final int TUPLET_SHIFT = 3;
+    private static final int TUPLET_MASK = 3 << TUPLET_SHIFT;
+    private static final int TUPLET_START = 32;
+
+    /**
+     * The tuplet types by their code in kind (code + 1 is the number of notes in the tuplet), and
+     * what each scales the length of its music by, packed
+     */
+    private static final TupletEnum[] TUPLETS = { null, TupletEnum.DUPLET, TupletEnum.TRIPLET, TupletEnum.QUADRUPLET };
+    private static final long[] TUPLET_SCALE = { PackedFraction.ONE, PackedFraction.pack(3, 2), PackedFraction.pack(2, 3), PackedFraction.pack(3, 4) };
+
+    private static final NoteEnum[] LETTERS = NoteEnum.values();
+    private static final AccidentalEnum[] ACCIDENTALS = AccidentalEnum.values();
+
+    private final String voiceName;
+
+    /**
+     * The leaves
+     */
+    private final int size;
+    private final byte[] kind;
+    private final short[] pitch;
+    private final byte[] spelling;
+    private final byte[] octave;
+    private final char[] duration;
+    private final int[] syllable;
+
+    /**
+     * The distinct durations (packed) and syllables of the voice
+     */
+    private final long[] durations;
+    private final String[] syllables;
+
+    /**
+     * The leaf each bar starts at, followed by size; and the bars in the order they are played
+     */
+    private final int[] barStarts;
+    private final int[] playOrder;
+
+    /**
+     * Makes a CompactVoice of a Voice
+     * @param voice a voice whose music holds only Notes, Rests, Chords of at least one note, and
+     *          Tuplets of those
+     * @return the voice, in arrays
+     */
+    public static CompactVoice of(Voice voice) {
+        return new CompactVoice(voice.getVoiceName(), voice.getWrittenMusic(), voice.getWrittenSyllables(), voice.getBarStarts(), voice.getPlayOrder());
+    }
+
+    /**
+     * Makes a CompactVoice of written music with no lyrics, as Voice(voiceName, written,
+     * barStarts, playOrder) would hold it
+     * @throws IllegalArgumentException as CompactVoice(voiceName, written, null, barStarts, playOrder)
+     */
+    public CompactVoice(String voiceName, List<Music> written, int[] barStarts, int[] playOrder) {
+        this(voiceName, written, null, barStarts, playOrder);
+    }
+
+    /**
+     * Makes a CompactVoice of written music, as Voice(voiceName, written, syllables, barStarts,
+     * playOrder) would hold it
+     * @param voiceName the name of the voice
+     * @param written the music of the voice as written, bar after bar: Notes, Rests, Chords of at
+     *          least one note, and Tuplets of those
+     * @param sung the syllable sung to each of written ("" for none), or null if the voice has no
+     *          lyrics
+     * @param barStarts the index in written that each bar starts at, followed by written.size()
+     * @param playOrder the index of each bar played, in the order they are played
+     * @throws IllegalArgumentException if the music cannot be kept in arrays: an empty chord or
+     *          tuplet, a tuplet in a tuplet, an octave outside a byte, or more than 65536 distinct
+     *          durations
+     */
+    public CompactVoice(String voiceName, List<Music> written, List<String> sung, int[] barStarts, int[] playOrder) {
+        this.voiceName = voiceName;
+        int[] leafStarts = new int[written.size() + 1];
+        for (int e = 0; e < written.size(); e++)
+            leafStarts[e + 1] = leafStarts[e] + leafCount(written.get(e));
+        size = leafStarts[written.size()];
+        kind = new byte[size];
+        pitch = new short[size];
+        spelling = new byte[size];
+        octave = new byte[size];
+        duration = new char[size];
+        syllable = new int[size];
+
+        Map<Long, Integer> durationIndex = new HashMap<Long, Integer>();
+        Map<String, Integer> syllableIndex = new HashMap<String, Integer>();
+        for (int e = 0; e < written.size(); e++)
+            add(written.get(e), leafStarts[e], 0, (sung == null) ? "" : sung.get(e), durationIndex, syllableIndex);
+        durations = new long[durationIndex.size()];
+        for (Map.Entry<Long, Integer> entry : durationIndex.entrySet())
+            durations[entry.getValue()] = entry.getKey();
+        syllables = new String[syllableIndex.size()];
+        for (Map.Entry<String, Integer> entry : syllableIndex.entrySet())
+            syllables[entry.getValue()] = entry.getKey();
+
+        this.barStarts = new int[barStarts.length];
+        for (int b = 0; b < barStarts.length; b++)
+            this.barStarts[b] = leafStarts[barStarts[b]];
+        this.playOrder = playOrder.clone();
+    }
+
+    /**
+     * @return the number of leaves of a Music
+     */
+    private static int leafCount(Music m) {
+        if (m instanceof Chord)
+            return ((Chord) m).getNotes().size();
+        if (m instanceof Tuplet) {
+            int count = 0;
+            for (Music element : ((Tuplet) m).getNotes())
+                count += leafCount(element);
+            return count;
+        }
+        return 1;
+    }
+
+    /**
+     * Keeps the leaves of m, starting at leaf n
+     * @param tuplet the tuplet bits of the first leaf of m, or 0 if m is not in a tuplet
+     * @param sung the syllable sung to m, or to each note and chord of m if it is a tuplet
+     * @return the leaf after the last leaf of m
+     */
+    private int add(Music m, int n, int tuplet, String sung, Map<Long, Integer> durationIndex, Map<String, Integer> syllableIndex) {
+        if (m instanceof Note) {
+            setNote(n, (Note) m, tuplet, durationIndex);
+            syllable[n] = indexOf(sung, syllableIndex);
+            return n + 1;
+        }
+        if (m instanceof Rest) {
+            kind[n] = (byte) (REST | tuplet);
+            duration[n] = indexOf(m.getPackedDuration(), durationIndex);
+            syllable[n] = -1;
+            return n + 1;
+        }
+        if (m instanceof Chord) {
+            Chord chord = (Chord) m;
+            if (chord.getNotes().isEmpty())
+                throw new IllegalArgumentException("A chord must hold at least one note");
+            int first = n;
+            int flags = tuplet | CHORD | CHORD_START;
+            for (Note note : chord.getNotes()) {
+                setNote(n, note, flags, durationIndex);
+                syllable[n] = -1;
+                flags &= ~(CHORD_START | TUPLET_START);
+                n++;
+            }
+            syllable[first] = indexOf(sung, syllableIndex);
+            return n;
+        }
+        if (m instanceof Tuplet && tuplet == 0) {
+            Tuplet t = (Tuplet) m;
+            if (t.getNotes().isEmpty())
+                throw new IllegalArgumentException("A tuplet must hold music");
+            int flags = ((t.getType().ordinal() + 1) << TUPLET_SHIFT) | TUPLET_START;
+            for (Music element : t.getNotes()) {
+                n = add(element, n, flags, sung, durationIndex, syllableIndex);
+                flags &= ~TUPLET_START;
+            }
+            return n;
+        }
+        throw new IllegalArgumentException("You cannot build a tuple out of anything but a Note, Chord, or Rest");
+    }
+
+    private void setNote(int n, Note note, int flags, Map<Long, Integer> durationIndex) {
+        if (note.getOctave() != (byte) note.getOctave())
+            throw new IllegalArgumentException("Octave " + note.getOctave() + " is out of range");
+        int semitones = (note.getAccidental() == null) ? 0 : note.getAccidental().getSemitoneOffset();
+        kind[n] = (byte) flags;
+        pitch[n] = (short) new Pitch(note.getNote().toString().charAt(0)).transpose(semitones + 12 * note.getOctave()).toMidiNote();
+        spelling[n] = (byte) (note.getNote().ordinal() | ((note.getAccidental() == null) ? 0 : note.getAccidental().ordinal() + 1) << 3);
+        octave[n] = (byte) note.getOctave();
+        duration[n] = indexOf(note.getPackedDuration(), durationIndex);
+    }
+
+    private static char indexOf(long packedDuration, Map<Long, Integer> durationIndex) {
+        Integer index = durationIndex.get(packedDuration);
+        if (index == null) {
+            if (durationIndex.size() > Character.MAX_VALUE)
+                throw new IllegalArgumentException("A voice can have at most " + (Character.MAX_VALUE + 1) + " distinct durations");
+            index = durationIndex.size();
+            durationIndex.put(packedDuration, index);
+        }
+        return (char) index.intValue();
+    }
+
+    private static int indexOf(String text, Map<String, Integer> syllableIndex) {
+        if (text == null || text.isEmpty())
+            return -1;
+        Integer index = syllableIndex.get(text);
+        if (index == null) {
+            index = syllableIndex.size();
+            syllableIndex.put(text, index);
+        }
+        return index;
+    }
+
+    /**
+     * @return the name of the voice
+     */
+    public String getVoiceName() {
+        return voiceName;
+    }
+
+    /**
+     * @return the number of leaves (notes and rests) written in the voice
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return whether leaf i is a rest
+     */
+    public boolean isRest(int i) {
+        return (kind[i] & REST) != 0;
+    }
+
+    /**
+     * @return the MIDI note of leaf i, a note
+     */
+    public int getPitch(int i) {
+        return pitch[i];
+    }
+
+    /**
+     * @return the letter of leaf i, a note
+     */
+    public NoteEnum getNote(int i) {
+        return LETTERS[spelling[i] & 7];
+    }
+
+    /**
+     * @return the accidental of leaf i, a note
+     */
+    public AccidentalEnum getAccidental(int i) {
+        int code = spelling[i] >> 3;
+        return (code == 0) ? null : ACCIDENTALS[code - 1];
+    }
+
+    /**
+     * @return the octave of leaf i, a note
+     */
+    public int getOctave(int i) {
+        return octave[i];
+    }
+
+    /**
+     * @return the duration of leaf i, packed
+     */
+    public long getPackedDuration(int i) {
+        return durations[duration[i]];
+    }
+
+    /**
+     * @return the numerator of the duration of leaf i
+     */
+    public int getDurationNumerator(int i) {
+        return PackedFraction.numerator(durations[duration[i]]);
+    }
+
+    /**
+     * @return the denominator of the duration of leaf i
+     */
+    public int getDurationDenominator(int i) {
+        return PackedFraction.denominator(durations[duration[i]]);
+    }
+
+    /**
+     * @return the first leaf of the chord leaf i is in, or -1 if it is not in a chord
+     */
+    public int getChordStart(int i) {
+        if ((kind[i] & CHORD) == 0)
+            return -1;
+        while ((kind[i] & CHORD_START) == 0)
+            i--;
+        return i;
+    }
+
+    /**
+     * @return the first leaf of the tuplet leaf i is in, or -1 if it is not in a tuplet
+     */
+    public int getTupletStart(int i) {
+        if ((kind[i] & TUPLET_MASK) == 0)
+            return -1;
+        while ((kind[i] & TUPLET_START) == 0)
+            i--;
+        return i;
+    }
+
+    /**
+     * @return the type of the tuplet leaf i is in, or null if it is not in a tuplet
+     */
+    public TupletEnum getTupletType(int i) {
+        return TUPLETS[(kind[i] & TUPLET_MASK) >> TUPLET_SHIFT];
+    }
+
+    /**
+     * @return the syllable of leaf i (for a chord, of its first leaf), or null if it has none
+     */
+    public String getSyllable(int i) {
+        return (syllable[i] < 0) ? null : syllables[syllable[i]];
+    }
+
+    /**
+     * @return the number of bars written in the voice
+     */
+    public int getBarCount() {
+        return barStarts.length - 1;
+    }
+
+    /**
+     * @return the leaf bar b starts at; getBarStart(getBarCount()) is size()
+     */
+    public int getBarStart(int b) {
+        return barStarts[b];
+    }
+
+    /**
+     * @return the index of each bar played, in the order they are played
+     */
+    public int[] getPlayOrder() {
+        return playOrder.clone();
+    }
+
+    /**
+     * @return the bytes held in the arrays of the voice (not counting the text of its syllables)
+     */
+    long getArrayBytes() {
+        return size * 11L + durations.length * 8L + syllables.length * 4L + (barStarts.length + playOrder.length) * 4L;
+    }
+
+    /**
+     * @return the leaf after the last leaf of the note, rest or chord that starts at leaf i
+     */
+    private int chordEnd(int i) {
+        int end = i + 1;
+        if ((kind[i] & CHORD) != 0)
+            while (end < size && (kind[end] & (CHORD | CHORD_START)) == CHORD)
+                end++;
+        return end;
+    }
+
+    /**
+     * @return the leaf after the last leaf of the Music (note, rest, chord or tuplet) that starts at leaf i
+     */
+    private int elementEnd(int i) {
+        if ((kind[i] & TUPLET_MASK) == 0)
+            return chordEnd(i);
+        int end = i + 1;
+        while (end < size && (kind[end] & TUPLET_MASK) != 0 && (kind[end] & TUPLET_START) == 0)
+            end++;
+        return end;
+    }
+
+    /**
+     * @return the duration, packed, of the note, rest or chord of leaves [i, end): the longest of them
+     */
+    private long chordDuration(int i, int end) {
+        long longest = durations[duration[i]];
+        for (int j = i + 1; j < end; j++)
+            if (PackedFraction.compare(durations[duration[j]], longest) > 0)
+                longest = durations[duration[j]];
+        return longest;
+    }
+
+    /**
+     * @return the duration, packed, of the Music of leaves [i, end), as its getPackedDuration gives
+     */
+    private long elementDuration(int i, int end) {
+        int code = (kind[i] & TUPLET_MASK) >> TUPLET_SHIFT;
+        if (code == 0)
+            return chordDuration(i, end);
+        long length = PackedFraction.ZERO;
+        for (int j = i; j < end; j = chordEnd(j))
+            length = PackedFraction.add(length, chordDuration(j, chordEnd(j)));
+        return PackedFraction.multiply(length, TUPLET_SCALE[code]);
+    }
+
+    /**
+     * @return the Music of leaves [i, end)
+     */
+    private Music music(int i, int end) {
+        int code = (kind[i] & TUPLET_MASK) >> TUPLET_SHIFT;
+        if (code == 0)
+            return chord(i, end);
+        List<Music> elements = new ArrayList<Music>();
+        for (int j = i; j < end; j = chordEnd(j))
+            elements.add(chord(j, chordEnd(j)));
+        return new Tuplet(TUPLETS[code], elements);
+    }
+
+    /**
+     * @return the note, rest or chord of leaves [i, end)
+     */
+    private Music chord(int i, int end) {
+        if ((kind[i] & REST) != 0)
+            return Rest.valueOf(PackedFraction.toFraction(durations[duration[i]]));
+        if ((kind[i] & CHORD) == 0)
+            return note(i);
+        List<Note> notes = new ArrayList<Note>(end - i);
+        for (int j = i; j < end; j++)
+            notes.add(note(j));
+        return new Chord(notes);
+    }
+
+    private Note note(int i) {
+        return Note.valueOf(getNote(i), getAccidental(i), octave[i], PackedFraction.toFraction(durations[duration[i]]));
+    }
+
+    /**
+     * @return the Musics of the voice in the order they are played, made as they are iterated
+     */
+    @Override
+    public Iterator<Music> iterator() {
+        return new Iterator<Music>() {
+            private int k = 0;
+            private int next = (playOrder.length > 0) ? barStarts[playOrder[0]] : 0;
+
+            @Override
+            public boolean hasNext() {
+                while (k < playOrder.length && next == barStarts[playOrder[k] + 1]) {
+                    k++;
+                    if (k < playOrder.length)
+                        next = barStarts[playOrder[k]];
+                }
+                return k < playOrder.length;
+            }
+
+            @Override
+            public Music next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                int end = elementEnd(next);
+                Music m = music(next, end);
+                next = end;
+                return m;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("the music of a voice cannot be changed");
+            }
+        };
+    }
+
+    /**
+     * @param lcm the ticks per beat needed by the voices before this one
+     * @return the least common multiple of lcm and the denominator of each Music played (for a
+     *          tuplet, of each of its notes), as SongSequencerVisitor figures ticks per beat
+     */
+    int tickDenominatorLcm(int lcm) {
+        boolean[] counted = new boolean[getBarCount()];
+        for (int b : playOrder) {
+            if (counted[b])
+                continue;
+            counted[b] = true;
+            for (int i = barStarts[b]; i < barStarts[b + 1]; i = elementEnd(i)) {
+                long length = elementDuration(i, elementEnd(i));
+                int code = (kind[i] & TUPLET_MASK) >> TUPLET_SHIFT;
+                if (code != 0)
+                    length = PackedFraction.divide(length, PackedFraction.pack(code + 1, 1));
+                lcm = Fraction.LCM(PackedFraction.denominator(length), lcm);
+            }
+        }
+        return lcm;
+    }
+
+    /**
+     * Schedules every note and syllable of the voice, as SongSequencerVisitor does for a Voice
+     * @param lyricsPrefix the text put before each syllable
+     * @param ticksPerLength the ticks in a duration of 1, packed
+     */
+    void schedule(EventBuffer events, String lyricsPrefix, long ticksPerLength) {
+        int startTick = 0;
+        for (int b : playOrder) {
+            for (int i = barStarts[b]; i < barStarts[b + 1]; ) {
+                int end = elementEnd(i);
+                int ticks = PackedFraction.intValue(PackedFraction.multiply(elementDuration(i, end), ticksPerLength));
+                int code = (kind[i] & TUPLET_MASK) >> TUPLET_SHIFT;
+                if (code == 0) {
+                    if ((kind[i] & REST) == 0)
+                        scheduleChord(events, lyricsPrefix, i, end, startTick, ticks);
+                    startTick += ticks;
+                } else {
+                    int noteTicks = ticks / (code + 1);
+                    for (int j = i; j < end; j = chordEnd(j)) {
+                        if ((kind[j] & REST) == 0)
+                            scheduleChord(events, lyricsPrefix, j, chordEnd(j), startTick, noteTicks);
+                        startTick += noteTicks;
+                    }
+                }
+                i = end;
+            }
+        }
+    }
+
+    /**
+     * Schedules the syllable and the notes of the note or chord of leaves [i, end)
+     */
+    private void scheduleChord(EventBuffer events, String lyricsPrefix, int i, int end, int startTick, int ticks) {
+        if (syllable[i] >= 0)
+            events.addLyricEvent(lyricsPrefix + syllables[syllable[i]], startTick);
+        for (int j = i; j < end; j++)
+            events.addNote(pitch[j], startTick, ticks);
+    }
+}
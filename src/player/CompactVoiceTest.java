@@ -0,0 +1,180 @@
+package player;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.junit.Test;
+
+import grammar.SongCompiler;
+import sound.EventBuffer;
+
+public class CompactVoiceTest {
+
+    /*
+     * Testing Strategy:
+     * We want to make sure that a CompactVoice reads back as the music it was made from, and that
+     * sequencing it over its arrays gives the events that sequencing the Voice gives.
+     *
+     * Partitioning the input space:
+     *
+     * - Music: notes, rests, chords, tuplets of notes, chords and rests; syllables on notes, chords and tuplets
+     * - Play order: every bar once, bars repeated, no bars
+     * - Voices: one, several
+     * - Size: sample files, a voice of many notes
+     * - Music that cannot be kept: a tuplet in a tuplet
+     */
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static Note note(NoteEnum letter, AccidentalEnum accidental, int octave, int num, int den) {
+        return new Note(letter, accidental, octave, new Fraction(num, den));
+    }
+
+    private static void assertSameEvents(EventBuffer expected, EventBuffer actual) {
+        assertEquals(expected.getBeatsPerMinute(), actual.getBeatsPerMinute());
+        assertEquals(expected.getTicksPerBeat(), actual.getTicksPerBeat());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.isLyric(i), actual.isLyric(i));
+            assertEquals(expected.getTick(i), actual.getTick(i));
+            if (expected.isLyric(i)) {
+                assertEquals(expected.getLyric(i), actual.getLyric(i));
+            } else {
+                assertEquals(expected.getNote(i), actual.getNote(i));
+                assertEquals(expected.getDuration(i), actual.getDuration(i));
+            }
+        }
+    }
+
+    private static void assertSameMusic(Iterable<Music> expected, Iterable<Music> actual) {
+        Iterator<Music> actualMusic = actual.iterator();
+        for (Music m : expected) {
+            assertTrue(actualMusic.hasNext());
+            Music a = actualMusic.next();
+            assertEquals(m, a);
+            assertEquals(m.getPackedDuration(), a.getPackedDuration());
+        }
+        assertFalse(actualMusic.hasNext());
+    }
+
+    @Test
+    public void sampleFilesTest() throws IOException {
+        SongCompiler compiler = new SongCompiler();
+        for (File file : new File("sample_abc").listFiles()) {
+            Song song = compiler.compile(new ANTLRInputStream(new String(Files.readAllBytes(file.toPath()), UTF8)));
+            List<CompactVoice> voices = new ArrayList<CompactVoice>();
+            for (Voice voice : song.getBody().getVoices()) {
+                CompactVoice compact = CompactVoice.of(voice);
+                assertEquals(voice.getVoiceName(), compact.getVoiceName());
+                assertSameMusic(voice.getSongComponents(), compact);
+                voices.add(compact);
+            }
+            SongSequencerVisitor visitor = new SongSequencerVisitor();
+            song.accept(visitor);
+            assertSameEvents(visitor.sequenceEvents(), SongSequencerVisitor.sequenceEvents(song.getHeader(), voices));
+        }
+    }
+
+    @Test
+    public void leavesTest() {
+        Note c = note(NoteEnum.C, AccidentalEnum.NONE, 0, 1, 2);
+        Chord chord = new Chord(Arrays.asList(note(NoteEnum.E, AccidentalEnum.FLAT, 0, 1, 1), note(NoteEnum.G, AccidentalEnum.NATURAL, 1, 1, 2)));
+        Tuplet tuplet = new Tuplet(TupletEnum.TRIPLET, Arrays.<Music>asList(note(NoteEnum.A, AccidentalEnum.SHARP, -1, 1, 1),
+                new Rest(new Fraction(1, 1)), new Chord(Arrays.asList(note(NoteEnum.B, AccidentalEnum.NONE, 0, 1, 1), note(NoteEnum.D, AccidentalEnum.NONE, 1, 1, 1)))));
+        List<Music> written = Arrays.<Music>asList(c, chord, tuplet, new Rest(new Fraction(2, 1)));
+        // bar 0 is played twice, bar 1 once
+        List<String> syllables = Arrays.asList("la", "di", "da", "");
+        CompactVoice voice = new CompactVoice("V", written, syllables, new int[] { 0, 2, 4 }, new int[] { 0, 0, 1 });
+        assertEquals(8, voice.size());
+        assertEquals(2, voice.getBarCount());
+        assertEquals(3, voice.getBarStart(1));
+        assertEquals(8, voice.getBarStart(2));
+
+        assertEquals(60, voice.getPitch(0));
+        assertEquals("la", voice.getSyllable(0));
+        assertEquals(-1, voice.getChordStart(0));
+        assertEquals(-1, voice.getTupletStart(0));
+        assertEquals(1, voice.getDurationNumerator(0));
+        assertEquals(2, voice.getDurationDenominator(0));
+
+        // the chord
+        assertEquals(63, voice.getPitch(1));
+        assertEquals(AccidentalEnum.FLAT, voice.getAccidental(1));
+        assertEquals("di", voice.getSyllable(1));
+        assertEquals(1, voice.getChordStart(2));
+        assertEquals(NoteEnum.G, voice.getNote(2));
+        assertEquals(AccidentalEnum.NATURAL, voice.getAccidental(2));
+        assertEquals(1, voice.getOctave(2));
+        assertNull(voice.getSyllable(2));
+
+        // the tuplet, and the rest after it
+        assertEquals(TupletEnum.TRIPLET, voice.getTupletType(3));
+        assertEquals(58, voice.getPitch(3));
+        assertEquals("da", voice.getSyllable(3));
+        assertTrue(voice.isRest(4));
+        assertNull(voice.getSyllable(4));
+        // each note and chord of the tuplet is sung to its syllable
+        assertEquals("da", voice.getSyllable(5));
+        assertNull(voice.getSyllable(6));
+        assertEquals(3, voice.getTupletStart(6));
+        assertEquals(5, voice.getChordStart(6));
+        assertTrue(voice.isRest(7));
+        assertNull(voice.getSyllable(7));
+        assertNull(voice.getTupletType(7));
+        assertEquals(PackedFraction.pack(2, 1), voice.getPackedDuration(7));
+
+        List<Music> played = new ArrayList<Music>(written.subList(0, 2));
+        played.addAll(written);
+        assertSameMusic(played, voice);
+        assertArrayEquals(new int[] { 0, 0, 1 }, voice.getPlayOrder());
+    }
+
+    @Test
+    public void noBarsTest() {
+        CompactVoice voice = new CompactVoice("V", new ArrayList<Music>(), new int[] { 0 }, new int[0]);
+        assertEquals(0, voice.size());
+        assertFalse(voice.iterator().hasNext());
+        assertEquals(0, voice.tickDenominatorLcm(0));
+    }
+
+    @Test
+    public void sizeTest() {
+        // a long voice of eighth notes, in bars of eight, with a few syllables
+        List<Music> written = new ArrayList<Music>();
+        List<String> syllables = new ArrayList<String>();
+        NoteEnum[] letters = NoteEnum.values();
+        int bars = 5000;
+        int[] barStarts = new int[bars + 1];
+        int[] playOrder = new int[bars];
+        for (int b = 0; b < bars; b++) {
+            for (int i = 0; i < 8; i++) {
+                written.add(note(letters[i % letters.length], AccidentalEnum.NONE, b % 3, 1, 2));
+                syllables.add((i == 0) ? "la" : "");
+            }
+            barStarts[b + 1] = written.size();
+            playOrder[b] = b;
+        }
+        CompactVoice voice = new CompactVoice("V", written, syllables, barStarts, playOrder);
+        assertEquals(bars * 8, voice.size());
+        assertEquals("la", voice.getSyllable(8));
+        assertNull(voice.getSyllable(9));
+        assertTrue(voice.getArrayBytes() < 16L * voice.size());
+        assertSameMusic(written, voice);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nestedTupletTest() {
+        Tuplet inner = new Tuplet(TupletEnum.DUPLET, Arrays.<Music>asList(note(NoteEnum.C, AccidentalEnum.NONE, 0, 1, 1), note(NoteEnum.D, AccidentalEnum.NONE, 0, 1, 1)));
+        Tuplet outer = new Tuplet(TupletEnum.TRIPLET, Arrays.<Music>asList(inner, inner, inner));
+        new CompactVoice("V", Arrays.<Music>asList(outer), new int[] { 0, 1 }, new int[] { 0 });
+    }
+}
@@ -0,0 +1,192 @@
+package player;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import grammar.AbcFiles;
+import grammar.MappedCharStream;
+import grammar.SongCompiler;
+
+/**
+ * Reports the heap that sharing notes and rests (see Note.valueOf and Rest.valueOf) saves over a
+ * corpus of tunes.
+ *
+ * Before notes were shared, SongListener made one Note or Rest for each written in a tune, and
+ * each Note held its syllable. Now each distinct one is made once, and held by an entry of the
+ * cache that shares it; the syllables of a voice with lyrics take one reference for each piece of
+ * music written in it. The sizes are estimates for a 64-bit JVM with compressed references
+ * (a 12-byte header, 4-byte references, objects padded to 8 bytes):
+ *      Note   40 bytes: header, letter, accidental, octave, duration, packed duration (and, before,
+ *                       the syllable, which fit in the padding)
+ *      Rest   24 bytes: header, duration, packed duration
+ *      cache  32 bytes for each entry of a ConcurrentHashMap, not counting its table, and for a
+ *             note, 24 bytes for its key (header, letter, accidental, octave, duration)
+ * The durations are shared Fractions either way, so they are left out.
+ *
+ * Rep invariant:
+ *      distinctNotes <= notesWritten, distinctRests <= restsWritten
+ */
+public class FlyweightReport {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The estimated size in bytes of a Note, a Rest, an entry of the cache, the key of a note in
+     * the cache, and a reference
+     */
+    static final int NOTE_BYTES = 40;
+    static final int REST_BYTES = 24;
+    static final int CACHE_ENTRY_BYTES = 32;
+    static final int NOTE_KEY_BYTES = 24;
+    static final int REFERENCE_BYTES = 4;
+
+    /**
+     * The notes and rests held by the tunes reported, each once
+     */
+    private final IdentityHashMap<Music, Music> held = new IdentityHashMap<Music, Music>();
+
+    /**
+     * The number of tunes reported, of notes and rests written in them, of distinct notes and
+     * rests held, and of syllables kept for voices with lyrics
+     */
+    private int tunes = 0;
+    private long notesWritten = 0;
+    private long restsWritten = 0;
+    private int distinctNotes = 0;
+    private int distinctRests = 0;
+    private long syllables = 0;
+
+    /**
+     * Counts the notes, rests and syllables of a tune
+     * @param song a tune, as SongCompiler builds it
+     */
+    public void add(Song song) {
+        tunes++;
+        for (Voice voice : song.getBody().getVoices()) {
+            for (Music music : voice.getWrittenMusic())
+                count(music);
+            for (String syllable : voice.getWrittenSyllables()) {
+                if (!syllable.isEmpty()) {
+                    syllables += voice.getWrittenSyllables().size();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts the notes and rests written in a piece of music
+     */
+    private void count(Music music) {
+        if (music instanceof Note || music instanceof Rest) {
+            boolean note = music instanceof Note;
+            if (note)
+                notesWritten++;
+            else
+                restsWritten++;
+            if (held.put(music, music) == null) {
+                if (note)
+                    distinctNotes++;
+                else
+                    distinctRests++;
+            }
+        } else if (music instanceof Chord) {
+            for (Note n : ((Chord) music).getNotes())
+                count(n);
+        } else if (music instanceof Tuplet) {
+            for (Music m : ((Tuplet) music).getNotes())
+                count(m);
+        }
+    }
+
+    /**
+     * @return the number of tunes reported
+     */
+    public int getTunes() {
+        return tunes;
+    }
+
+    /**
+     * @return the number of notes written in the tunes, each of which used to be a Note of its own
+     */
+    public long getNotesWritten() {
+        return notesWritten;
+    }
+
+    /**
+     * @return the number of rests written in the tunes
+     */
+    public long getRestsWritten() {
+        return restsWritten;
+    }
+
+    /**
+     * @return the number of distinct Notes the tunes hold
+     */
+    public int getDistinctNotes() {
+        return distinctNotes;
+    }
+
+    /**
+     * @return the number of distinct Rests the tunes hold
+     */
+    public int getDistinctRests() {
+        return distinctRests;
+    }
+
+    /**
+     * @return the estimated bytes of the notes and rests of the tunes, one object for each written
+     */
+    public long getBytesUnshared() {
+        return notesWritten * NOTE_BYTES + restsWritten * REST_BYTES;
+    }
+
+    /**
+     * @return the estimated bytes of the notes and rests of the tunes as they are held now: each
+     *          distinct one, its entry in the cache, and the syllables kept beside the music
+     */
+    public long getBytesShared() {
+        return (long) distinctNotes * NOTE_BYTES + (long) distinctRests * REST_BYTES
+                + (long) (distinctNotes + distinctRests) * CACHE_ENTRY_BYTES + (long) distinctNotes * NOTE_KEY_BYTES
+                + syllables * REFERENCE_BYTES;
+    }
+
+    /**
+     * @return the counts, and the bytes saved, labelled as an estimate along with the sizes it
+     *          assumes; nothing is measured on the heap
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%d tunes%n", tunes));
+        report.append(String.format("%-8s %10s %10s%n", "", "written", "distinct"));
+        report.append(String.format("%-8s %10d %10d%n", "notes", notesWritten, distinctNotes));
+        report.append(String.format("%-8s %10d %10d%n", "rests", restsWritten, distinctRests));
+        report.append(String.format("syllables kept beside the music: %d%n", syllables));
+        long saved = getBytesUnshared() - getBytesShared();
+        report.append(String.format("estimated bytes, not measured: %d unshared, %d shared, %d saved (%.1f%%)%n",
+                getBytesUnshared(), getBytesShared(), saved,
+                (getBytesUnshared() == 0) ? 0.0 : saved * 100.0 / getBytesUnshared()));
+        report.append(String.format("  assuming a 64-bit JVM with compressed references: Note %d, Rest %d, "
+                + "cache entry %d, note key %d, reference %d bytes%n", NOTE_BYTES, REST_BYTES, CACHE_ENTRY_BYTES,
+                NOTE_KEY_BYTES, REFERENCE_BYTES));
+        report.append(String.format("cache: %d notes and %d rests asked for, %d and %d held%n",
+                Note.getInternRequests(), Rest.getInternRequests(), Note.getInternedCount(), Rest.getInternedCount()));
+        return report.toString();
+    }
+
+    /**
+     * Compiles a corpus, and prints the report.
+     * @param args the .abc files, and directory trees of .abc files (see AbcFiles.expand), to compile, in UTF-8
+     */
+    public static void main(String[] args) throws IOException {
+        SongCompiler compiler = new SongCompiler();
+        FlyweightReport report = new FlyweightReport();
+        for (Path file : AbcFiles.expand(Arrays.asList(args)))
+            report.add(compiler.compile(MappedCharStream.open(file, UTF8)));
+        System.out.print(report.report());
+    }
+}
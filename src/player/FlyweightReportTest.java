@@ -0,0 +1,75 @@
+package player;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.junit.Test;
+
+import grammar.MappedCharStream;
+import grammar.SongCompiler;
+
+public class FlyweightReportTest {
+
+    /**
+     * Testing Strategy:
+     * We want to make sure that a FlyweightReport counts each note and rest written in a tune,
+     * counts each shared one once, and estimates the bytes saved from those counts, saying in
+     * its report that they are estimated.
+     *
+     * Partitioning the input space:
+     *
+     * - Music: notes and rests at the top level, in chords, in tuplets
+     * - Lyrics: none, some
+     * - Tunes: none, one, the sample files
+     */
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Test
+    public void emptyTest() {
+        FlyweightReport report = new FlyweightReport();
+        assertEquals(0, report.getTunes());
+        assertEquals(0, report.getBytesUnshared());
+        assertEquals(0, report.getBytesShared());
+        assertTrue(report.report().startsWith("0 tunes"));
+    }
+
+    @Test
+    public void tuneTest() {
+        FlyweightReport report = new FlyweightReport();
+        report.add(new SongCompiler().compile(new ANTLRInputStream("X:1\nT:Shared\nK:C\nC C z [CE] | (3C z E z C |]\n")));
+        assertEquals(1, report.getTunes());
+        assertEquals(7, report.getNotesWritten());
+        assertEquals(2, report.getDistinctNotes());
+        assertEquals(3, report.getRestsWritten());
+        assertEquals(1, report.getDistinctRests());
+        assertEquals(7 * FlyweightReport.NOTE_BYTES + 3 * FlyweightReport.REST_BYTES, report.getBytesUnshared());
+        assertEquals(2 * FlyweightReport.NOTE_BYTES + FlyweightReport.REST_BYTES + 3 * FlyweightReport.CACHE_ENTRY_BYTES
+                + 2 * FlyweightReport.NOTE_KEY_BYTES, report.getBytesShared());
+
+        // the syllables of a voice with lyrics take a reference for each piece of music written
+        FlyweightReport sung = new FlyweightReport();
+        sung.add(new SongCompiler().compile(new ANTLRInputStream("X:1\nT:Sung\nK:C\nC C z [CE] |]\nw: la la\n")));
+        assertEquals(2 * FlyweightReport.NOTE_BYTES + FlyweightReport.REST_BYTES + 3 * FlyweightReport.CACHE_ENTRY_BYTES
+                + 2 * FlyweightReport.NOTE_KEY_BYTES + 4 * FlyweightReport.REFERENCE_BYTES, sung.getBytesShared());
+    }
+
+    @Test
+    public void sampleFilesTest() throws IOException {
+        SongCompiler compiler = new SongCompiler();
+        FlyweightReport report = new FlyweightReport();
+        for (File file : new File("sample_abc").listFiles())
+            report.add(compiler.compile(MappedCharStream.open(file.toPath(), UTF8)));
+        assertEquals(new File("sample_abc").listFiles().length, report.getTunes());
+        assertTrue(report.getDistinctNotes() < report.getNotesWritten());
+        assertTrue(report.getDistinctRests() < report.getRestsWritten());
+        assertTrue(report.getBytesShared() < report.getBytesUnshared());
+        // the sizes are assumed, and the report says so
+        assertTrue(report.report().contains("estimated bytes, not measured"));
+        assertTrue(report.report().contains("Note " + FlyweightReport.NOTE_BYTES + ", Rest " + FlyweightReport.REST_BYTES));
+    }
+}
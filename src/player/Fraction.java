@@ -2,36 +2,79 @@ package player;
 
 /**
  * Class for representing a rational number of the form numerator/denominator
- * 
+ *
  * This class is immutable
  *      The fields are both ints, which are immutable
  *      We do not modify the fields in methods other than the constructor
  *      Both fields are declared final
- * 
+ *
  * Abstraction Function: The Fraction with numerator=n, denominator=d maps to the fraction n/d
- * 
+ *
  * Datatype definition
  * Fraction = {int: numerator, int: denominator} denominator != 0
  *
+ * Rep invariant:
+ *      denominator > 0
+ *      the fraction is in lowest terms: GCD(|numerator|, denominator) == 1, so zero is 0/1
+ * Since every fraction is kept in lowest terms, two Fractions are equal exactly when their
+ * numerators and denominators are.
+ *
+ * Arithmetic is done in longs and the result reduced before it is stored, so an intermediate
+ * product may overflow an int as long as the reduced result does not. A result that does not fit
+ * throws an ArithmeticException rather than wrapping around.
+ *
+ * Note lengths are made in great numbers, so valueOf gives shared instances for the common ones:
+ * every multiple of 1/64 from 1/64 to 8/1.
  */
 public class Fraction implements Comparable<Object>{
-   /**
-    * The numerator of the fraction
-    */
+    /**
+     * The numerator of the fraction
+     */
     private final int numerator;
-    
+
     /**
-     * The denominator of the fraction - cannot be 0
+     * The denominator of the fraction - always positive
      */
     private final int denominator;
 
     /**
-     * Constructs the fraction numerator/denominator
+     * The finest and the longest note lengths that valueOf shares
+     */
+    private static final int CACHE_DENOMINATOR = 64;
+    private static final int CACHE_MAX = 8;
+
+    /**
+     * CACHE[k] is the fraction k/64, for 1 <= k <= 8*64
+     */
+    private static final Fraction[] CACHE = new Fraction[CACHE_MAX * CACHE_DENOMINATOR + 1];
+    static {
+        for (int k = 1; k < CACHE.length; k++)
+            CACHE[k] = new Fraction(k, CACHE_DENOMINATOR);
+    }
+
+    /**
+     * Constructs the fraction numerator/denominator, in lowest terms
      * @param numerator - the numerator of the fraction
      * @param denominator the denominator of the fraction - must be nonzero
+     * @throws ArithmeticException if the fraction in lowest terms does not fit in ints
+     *          (only Integer.MIN_VALUE over a negative denominator)
      */
     public Fraction(int numerator, int denominator) {
-        
+        this((long) numerator, (long) denominator);
+    }
+
+    /**
+     * Creates a fraction from a string
+     * @param fractionAsString a string of the form "x/y", where y cannot be 0
+     */
+    public Fraction(String fractionAsString){
+        this(parseNumerator(fractionAsString), parseDenominator(fractionAsString));
+    }
+
+    /**
+     * Constructs the fraction numerator/denominator in lowest terms, if it fits in ints
+     */
+    private Fraction(long numerator, long denominator) {
         /*
          * Although we require a nonzero denominator in our precondition, we will double check
          * that it is indeed nonzero
@@ -39,46 +82,127 @@ public class Fraction implements Comparable<Object>{
         if (denominator == 0) {
             throw new IllegalArgumentException("Cannot have a denominator of 0");
         }
-        this.numerator = numerator;
-        this.denominator = denominator;
+        if (denominator < 0) {
+            numerator = -numerator;
+            denominator = -denominator;
+        }
+        long gcd = gcd(Math.abs(numerator), denominator);
+        numerator /= gcd;
+        denominator /= gcd;
+        if (numerator != (int) numerator || denominator != (int) denominator) {
+            throw new ArithmeticException(numerator + "/" + denominator + " does not fit in an int fraction");
+        }
+        this.numerator = (int) numerator;
+        this.denominator = (int) denominator;
+    }
+
+    private static int parseNumerator(String fractionAsString) {
+        return Integer.parseInt(fractionAsString.split("/")[0]);
+    }
+
+    private static int parseDenominator(String fractionAsString) {
+        return Integer.parseInt(fractionAsString.split("/")[1]);
     }
-    
+
     /**
-     * Creates a fraction from a string
-     * @param fractionAsString a string of the form "x/y", where y cannot be 0
+     * Gives the fraction numerator/denominator, in lowest terms. The common note lengths (the
+     * multiples of 1/64 from 1/64 to 8/1) are shared instances; any other is a new Fraction.
+     * @param numerator the numerator of the fraction
+     * @param denominator the denominator of the fraction - must be nonzero
+     * @return the fraction numerator/denominator
      */
-    public Fraction(String fractionAsString){
-        String[] fracArray = fractionAsString.split("/");
-        int num = Integer.parseInt(fracArray[0]);
-        int den = Integer.parseInt(fracArray[1]);
-        if(den == 0){
-            throw new IllegalArgumentException("Cannot have a denominator of 0");
+    public static Fraction valueOf(int numerator, int denominator) {
+        if (numerator > 0 && denominator > 0 && CACHE_DENOMINATOR % denominator == 0) {
+            long k = (long) numerator * (CACHE_DENOMINATOR / denominator);
+            if (k < CACHE.length)
+                return CACHE[(int) k];
         }
-        this.numerator = num;
-        this.denominator = den;
+        return new Fraction(numerator, denominator);
     }
-    
+
+    /**
+     * @return the fraction numerator/denominator in lowest terms, shared if it is a common note length
+     * @throws ArithmeticException if it does not fit in ints
+     */
+    private static Fraction valueOf(long numerator, long denominator) {
+        if (numerator == (int) numerator && denominator == (int) denominator)
+            return valueOf((int) numerator, (int) denominator);
+        return new Fraction(numerator, denominator);
+    }
+
     /**
      * @return the numerator of the fraction
      */
     public int getNumerator() {
         return numerator;
     }
-    
+
     /**
-     * @return the denominator of the fraction
+     * @return the denominator of the fraction, which is positive
      */
     public int getDenominator() {
         return denominator;
     }
-    
+
     /**
      * Returns a double representing the fraction
      */
     public double getFraction() {
         return ( (double) numerator) / ( (double) denominator);
     }
-    
+
+    /**
+     * @param other the fraction to add, not null
+     * @return this + other
+     * @throws ArithmeticException if the result does not fit in ints
+     */
+    public Fraction add(Fraction other) {
+        if (denominator == other.denominator)
+            return valueOf((long) numerator + other.numerator, denominator);
+        return valueOf((long) numerator * other.denominator + (long) other.numerator * denominator,
+                (long) denominator * other.denominator);
+    }
+
+    /**
+     * @param other the fraction to subtract, not null
+     * @return this - other
+     * @throws ArithmeticException if the result does not fit in ints
+     */
+    public Fraction subtract(Fraction other) {
+        if (denominator == other.denominator)
+            return valueOf((long) numerator - other.numerator, denominator);
+        return valueOf((long) numerator * other.denominator - (long) other.numerator * denominator,
+                (long) denominator * other.denominator);
+    }
+
+    /**
+     * @param other the fraction to multiply by, not null
+     * @return this * other
+     * @throws ArithmeticException if the result does not fit in ints
+     */
+    public Fraction multiply(Fraction other) {
+        return valueOf((long) numerator * other.numerator, (long) denominator * other.denominator);
+    }
+
+    /**
+     * @param other the fraction to divide by, not null and not zero
+     * @return this / other
+     * @throws ArithmeticException if the result does not fit in ints
+     */
+    public Fraction divide(Fraction other) {
+        if (other.numerator == 0) {
+            throw new IllegalArgumentException("Cannot divide by 0");
+        }
+        return valueOf((long) numerator * other.denominator, (long) denominator * other.numerator);
+    }
+
+    /**
+     * @return the fraction rounded toward zero, as (int) toDouble() would be without rounding error
+     */
+    public int intValue() {
+        return numerator / denominator;
+    }
+
     /**
      * Using Euclid's algorithm, this calculates the greatest common denominator of two integers.
      * @param a  Must be a positive integer.
@@ -96,7 +220,21 @@ public class Fraction implements Comparable<Object>{
         }
         return GCD(b, a % b);
     }
-    
+
+    /**
+     * @param a nonnegative
+     * @param b positive
+     * @return the greatest common divisor of a and b
+     */
+    private static long gcd(long a, long b) {
+        while (a != 0) {
+            long r = b % a;
+            b = a;
+            a = r;
+        }
+        return b;
+    }
+
     /**
      * This calculates the least common multiple of two integers.
      * Note: this method does not handle large numbers so inputs must be within a reasonable range.
@@ -124,31 +262,32 @@ public class Fraction implements Comparable<Object>{
          */
         if(!(other instanceof Fraction))
             throw new IllegalArgumentException("Can only compare this to a Fraction object");
-        
+
         /*
-         * If we are comparing fractions a/b and c/d, we consider the quantity:
+         * If we are comparing fractions a/b and c/d, we consider the sign of the quantity:
          * ad - bc
-         * which is:
+         * which is (since b and d are positive):
          * 0 if a/b = c/d
          * >0 if a/b > c/d
          * <0 if a/b < c/d
-         * 
+         *
          *  We apply this rule to the case where
          *  a/b is this
          *  c/d is other
+         *  The products are taken in longs, where they cannot overflow.
          */
-        
+
         Fraction otherFrac = (Fraction)other;
-        return (this.getNumerator()*otherFrac.getDenominator() - otherFrac.getNumerator()*this.getDenominator());
-    } 
-    
+        return Long.signum((long) this.getNumerator()*otherFrac.getDenominator() - (long) otherFrac.getNumerator()*this.getDenominator());
+    }
+
     /**
      * @return the double representation of this fraction
      */
     public double toDouble(){
         return this.getNumerator()*1.0/this.getDenominator();
     }
-    
+
     /**
      * @return a string representation of the fraction (of the form numerator/denominator)
      */
@@ -156,7 +295,7 @@ public class Fraction implements Comparable<Object>{
     public String toString(){
         return String.format("%d/%d", this.getNumerator(), this.getDenominator());
     }
-    
+
     @Override
     public boolean equals(Object other) {
         if(!(other instanceof Fraction))
@@ -166,4 +305,9 @@ public class Fraction implements Comparable<Object>{
             return true;
         } else {return false;}
     }
-}
\ No newline at end of file
+
+    @Override
+    public int hashCode() {
+        return 31 * numerator + denominator;
+    }
+}
@@ -42,4 +42,71 @@ public class FractionTests {
         assertEquals(0, Fraction.LCM(0, 0));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void normalizeTest() {
+        // lowest terms, with the sign on the numerator
+        assertEquals(new Fraction(1,2), new Fraction(2,4));
+        assertEquals(new Fraction(2,4).hashCode(), new Fraction(1,2).hashCode());
+        assertEquals("-3/4", new Fraction(3,-4).toString());
+        assertEquals("3/4", new Fraction(-6,-8).toString());
+        assertEquals("0/1", new Fraction(0,-5).toString());
+        assertEquals("1/3", new Fraction("3/9").toString());
+        assertEquals(new Fraction(Integer.MAX_VALUE, 1), new Fraction(Integer.MAX_VALUE, 1));
+        try {
+            new Fraction(Integer.MIN_VALUE, -1);
+            fail("expected an ArithmeticException");
+        } catch (ArithmeticException e) { }
+    }
+
+    @Test
+    public void arithmeticTest() {
+        Fraction half = new Fraction(1,2);
+        Fraction third = new Fraction(1,3);
+        assertEquals(new Fraction(5,6), half.add(third));
+        assertEquals(new Fraction(1,6), half.subtract(third));
+        assertEquals(new Fraction(-1,6), third.subtract(half));
+        assertEquals(new Fraction(1,6), half.multiply(third));
+        assertEquals(new Fraction(3,2), half.divide(third));
+        assertEquals(new Fraction(1,1), half.add(half));
+        assertEquals(1, new Fraction(7,4).intValue());
+        assertEquals(-1, new Fraction(-7,4).intValue());
+        // the products overflow an int, but the reduced results do not
+        Fraction big = new Fraction(Integer.MAX_VALUE - 1, Integer.MAX_VALUE);
+        assertEquals(new Fraction(1,1), big.divide(big));
+        assertEquals(new Fraction(Integer.MAX_VALUE - 1, 1), big.multiply(new Fraction(Integer.MAX_VALUE, 1)));
+        try {
+            big.add(new Fraction(1, Integer.MAX_VALUE - 1));
+            fail("expected an ArithmeticException");
+        } catch (ArithmeticException e) { }
+        try {
+            half.divide(new Fraction(0,1));
+            fail("expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) { }
+    }
+
+    @Test
+    public void compareToOverflowTest() {
+        // the cross products overflow an int
+        Fraction a = new Fraction(Integer.MAX_VALUE, 2);
+        Fraction b = new Fraction(Integer.MAX_VALUE - 2, 3);
+        assertTrue(a.compareTo(b) > 0);
+        assertTrue(b.compareTo(a) < 0);
+        assertTrue(new Fraction(-Integer.MAX_VALUE, 1).compareTo(new Fraction(Integer.MAX_VALUE, 1)) < 0);
+    }
+
+    @Test
+    public void valueOfTest() {
+        // common note lengths are shared, in lowest terms
+        assertSame(Fraction.valueOf(1,2), Fraction.valueOf(2,4));
+        assertSame(Fraction.valueOf(1,64), Fraction.valueOf(1,64));
+        assertSame(Fraction.valueOf(8,1), Fraction.valueOf(64,8));
+        assertSame(Fraction.valueOf(3,8), new Fraction(1,8).add(new Fraction(1,4)));
+        assertEquals(new Fraction(3,4), Fraction.valueOf(3,4));
+        // others are not, but are still equal
+        assertEquals(new Fraction(1,3), Fraction.valueOf(1,3));
+        assertEquals(new Fraction(9,1), Fraction.valueOf(9,1));
+        assertEquals(new Fraction(1,128), Fraction.valueOf(1,128));
+        assertEquals(new Fraction(0,1), Fraction.valueOf(0,7));
+        assertEquals(new Fraction(-1,2), Fraction.valueOf(-1,2));
+    }
+}
@@ -3,6 +3,9 @@ package player;
 /**
  * Represents the header of an ABC music file
  * 
+ * Rep Invariant: This class is immutable
+ *      Every field is final, and is an int, a String, or an immutable KeySignature or Fraction
+ *      A header with a different field is derived with a withX method, which gives a new Header
  */
 public class Header implements ISongSequencerVisitable{
     
@@ -27,9 +30,11 @@ public class Header implements ISongSequencerVisitable{
     private final KeySignature keySignature;
     
     /**
-     * The meter of the song (field M in header)
+     * The meter of the song (field M in header), as written: a meter is not reduced like a
+     * Fraction, since 6/8 and 3/4 are different meters
      */
-    private final Fraction meter;
+    private final int meterNumerator;
+    private final int meterDenominator;
     
     /**
      * The beats per minute of the song (field Q in header)
@@ -44,11 +49,7 @@ public class Header implements ISongSequencerVisitable{
     /**
      * The duration of a note which counts as one beat (field Q in header)
      */
-    private Fraction tempoBeat;
-
-    public void setTempoBeat(Fraction tempoBeat) {
-        this.tempoBeat = tempoBeat;
-    }
+    private final Fraction tempoBeat;
 
     /**
      * Initializes a new Header.
@@ -56,28 +57,58 @@ public class Header implements ISongSequencerVisitable{
      * @param title is the title of the header
      * @param composer is the composer of the header
      * @param keySignature is the key signature of the header
-     * @param meter is the meter of the header
+     * @param meterNumerator is the numerator of the meter of the header, as written
+     * @param meterDenominator is the denominator of the meter of the header, as written - must be positive
      * @param beatsPerMinute is the beats per minute of the header
      * @param defaultLength is the default length of a note
      * @param tempoBeat is the duration of a note which is associated with one beat
      */
-    public Header(int indexNumber, String title, String composer, KeySignature keySignature, Fraction noteLengthPerBeat, int beatsPerMinute, Fraction tempoBeat, Fraction defaultLength) {
+    public Header(int indexNumber, String title, String composer, KeySignature keySignature, int meterNumerator, int meterDenominator, int beatsPerMinute, Fraction tempoBeat, Fraction defaultLength) {
+        if (meterDenominator <= 0)
+            throw new IllegalArgumentException("A meter must have a positive denominator");
         this.indexNumber = indexNumber;
         this.title = title;
         this.composer = composer;
         this.keySignature = keySignature;
-        this.meter = noteLengthPerBeat;
+        this.meterNumerator = meterNumerator;
+        this.meterDenominator = meterDenominator;
         this.beatsPerMinute = beatsPerMinute;
         this.defaultLength = defaultLength;
         this.tempoBeat = tempoBeat;
     }
+
+    /**
+     * Initializes a new Header whose meter is given as a Fraction, and so is kept in lowest terms
+     * (4/4 is kept as 1/1); use the constructor that takes the meter's numerator and denominator
+     * to keep a meter as written.
+     * @param noteLengthPerBeat is the meter of the header
+     */
+    public Header(int indexNumber, String title, String composer, KeySignature keySignature, Fraction noteLengthPerBeat, int beatsPerMinute, Fraction tempoBeat, Fraction defaultLength) {
+        this(indexNumber, title, composer, keySignature, noteLengthPerBeat.getNumerator(), noteLengthPerBeat.getDenominator(), beatsPerMinute, tempoBeat, defaultLength);
+    }
     
     /**
      * Constructor which creates a new Header from an existing header, copying the fields over
      * @param header the header to copy
      */
     public Header(Header header) {
-        this(header.getIndexNumber(), header.getTitle(), header.getComposer(), header.getKeySignature(), header.getNoteLengthPerBeat(), header.getBeatsPerMinute(), header.getTempoBeat(), header.getDefaultLength());
+        this(header.getIndexNumber(), header.getTitle(), header.getComposer(), header.getKeySignature(), header.getMeterNumerator(), header.getMeterDenominator(), header.getBeatsPerMinute(), header.getTempoBeat(), header.getDefaultLength());
+    }
+
+    /**
+     * @param beatsPerMinute the beats per minute of the new header
+     * @return a Header with the fields of this one, but beatsPerMinute
+     */
+    public Header withBeatsPerMinute(int beatsPerMinute) {
+        return new Header(indexNumber, title, composer, keySignature, meterNumerator, meterDenominator, beatsPerMinute, tempoBeat, defaultLength);
+    }
+
+    /**
+     * @param tempoBeat the duration of a note which counts as one beat in the new header
+     * @return a Header with the fields of this one, but tempoBeat
+     */
+    public Header withTempoBeat(Fraction tempoBeat) {
+        return new Header(indexNumber, title, composer, keySignature, meterNumerator, meterDenominator, beatsPerMinute, tempoBeat, defaultLength);
     }
 
     /**
@@ -110,10 +141,32 @@ public class Header implements ISongSequencerVisitable{
     }
     
     /**
-     * @return Returns the note length per beat associated with the header.
+     * @return Returns the note length per beat associated with the header: the value of the
+     * meter, in lowest terms.
      */
     public Fraction getNoteLengthPerBeat() {
-        return meter;
+        return new Fraction(meterNumerator, meterDenominator);
+    }
+
+    /**
+     * @return Returns the numerator of the meter, as written (6 for 6/8).
+     */
+    public int getMeterNumerator() {
+        return meterNumerator;
+    }
+
+    /**
+     * @return Returns the denominator of the meter, as written (8 for 6/8).
+     */
+    public int getMeterDenominator() {
+        return meterDenominator;
+    }
+
+    /**
+     * @return Returns the meter as written, of the form numerator/denominator.
+     */
+    public String getMeter() {
+        return meterNumerator + "/" + meterDenominator;
     }
     
     /**
@@ -148,7 +201,7 @@ public class Header implements ISongSequencerVisitable{
         output.append("\n - Composer: " + this.getComposer());
         output.append("\n - Title: " + this.getTitle());
         output.append("\n - Key: " + this.getKeySignature().toString());
-        output.append("\n - Note Length per Beat: " + this.getNoteLengthPerBeat());
+        output.append("\n - Note Length per Beat: " + this.getMeter());
         output.append("\n - Beats per Measure (meter): " + this.getBeatsPerMinute());
         output.append("\n - Default note length: " + this.getDefaultLength());
         output.append("\n - Tempo beat: " + this.getTempoBeat());
@@ -167,6 +220,8 @@ public class Header implements ISongSequencerVisitable{
                 compareHeader.title.equals(this.title) &&
                 compareHeader.composer.equals(this.composer) &&
                 compareHeader.keySignature.equals(this.keySignature) &&
+                compareHeader.meterNumerator == this.meterNumerator &&
+                compareHeader.meterDenominator == this.meterDenominator &&
                 compareHeader.beatsPerMinute == this.beatsPerMinute &&
                 compareHeader.defaultLength.equals(this.defaultLength) &&
                 compareHeader.tempoBeat.equals(this.tempoBeat)) {
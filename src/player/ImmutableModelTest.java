@@ -0,0 +1,139 @@
+package player;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.junit.Test;
+
+import grammar.SongCompiler;
+
+public class ImmutableModelTest {
+
+    /**
+     * Testing Strategy:
+     * We want to make sure that no part of a Song can be changed once it is built, so that a Song
+     * built from parts, or derived from another, shares those parts rather than copying them.
+     *
+     * Partitioning the input space:
+     *
+     * - Part: Song, Header, Body, Voice, Chord, Tuplet
+     * - Change: through a list the constructor was given, through a list a getter gives
+     * - Derivation: new tempo, new voice, renamed voice
+     */
+
+    private static final String TUNE = "X:1\nT:Shared\nV:1\nV:2\nM:3/4\nL:1/4\nQ:1/4=120\nK:G\n"
+            + "V:1\nG [GB] (3ABc | d3 |]\nw: la di da\nV:2\nG,3 | D,3 |]\n";
+
+    private static Note note(NoteEnum letter) {
+        return new Note(letter, AccidentalEnum.NONE, 0, new Fraction(1, 1));
+    }
+
+    @Test
+    public void constructorsShareTest() {
+        Song song = new SongCompiler().compile(new ANTLRInputStream(TUNE));
+        Song rebuilt = new Song(song.getHeader(), song.getBody());
+        assertSame(song.getHeader(), rebuilt.getHeader());
+        assertSame(song.getBody(), rebuilt.getBody());
+
+        Voice voice = song.getBody().getVoices().get(0);
+        Voice copy = new Voice("1", voice.getSongComponents(), voice.getSongSyllables());
+        assertEquals(voice, copy);
+        for (int i = 0; i < voice.getSongComponents().size(); i++)
+            assertSame(voice.getSongComponents().get(i), copy.getSongComponents().get(i));
+        Chord chord = (Chord) voice.getSongComponents().get(1);
+        assertSame(chord, chord.copy());
+        Tuplet tuplet = (Tuplet) voice.getSongComponents().get(2);
+        assertSame(tuplet, tuplet.copy());
+        assertSame(chord.getNotes().get(0), new Chord(chord.getNotes()).getNotes().get(0));
+    }
+
+    @Test
+    public void givenListsTest() {
+        List<Note> notes = new ArrayList<Note>(Arrays.asList(note(NoteEnum.C), note(NoteEnum.E)));
+        Chord chord = new Chord(notes);
+        List<Music> music = new ArrayList<Music>(Arrays.<Music>asList(chord, note(NoteEnum.G)));
+        Tuplet tuplet = new Tuplet(TupletEnum.DUPLET, music);
+        List<String> syllables = new ArrayList<String>(Arrays.asList("la", "di"));
+        Voice voice = new Voice("v", music, syllables);
+        List<Voice> voices = new ArrayList<Voice>(Arrays.asList(voice));
+        Body body = new Body(voices);
+
+        notes.clear();
+        music.clear();
+        syllables.set(0, "do");
+        voices.clear();
+        assertEquals(2, chord.getNotes().size());
+        assertEquals(2, tuplet.getNotes().size());
+        assertEquals(2, voice.getSongComponents().size());
+        assertEquals(Arrays.asList("la", "di"), voice.getSongSyllables());
+        assertSame(voice, body.getVoices().get(0));
+    }
+
+    @Test
+    public void gettersTest() {
+        Song song = new SongCompiler().compile(new ANTLRInputStream(TUNE));
+        Voice voice = song.getBody().getVoices().get(0);
+        Chord chord = (Chord) voice.getSongComponents().get(1);
+        Tuplet tuplet = (Tuplet) voice.getSongComponents().get(2);
+        assertUnmodifiable(song.getBody().getVoices(), voice);
+        assertUnmodifiable(voice.getSongComponents(), chord);
+        assertUnmodifiable(voice.getSongSyllables(), "");
+        assertUnmodifiable(chord.getNotes(), chord.getNotes().get(0));
+        assertUnmodifiable(tuplet.getNotes(), chord);
+        Voice built = new Voice("v", Arrays.<Music>asList(chord));
+        assertUnmodifiable(built.getSongComponents(), chord);
+        assertUnmodifiable(built.getSongSyllables(), "la");
+    }
+
+    /**
+     * Asserts that a list cannot be added to or set
+     */
+    private static <T> void assertUnmodifiable(List<T> list, T element) {
+        try {
+            list.add(element);
+            fail("added to " + list);
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            list.set(0, element);
+            fail("set in " + list);
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void deriveTest() {
+        Song song = new SongCompiler().compile(new ANTLRInputStream(TUNE));
+        Song faster = song.withHeader(song.getHeader().withBeatsPerMinute(180));
+        assertEquals(180, faster.getHeader().getBeatsPerMinute());
+        assertEquals(120, song.getHeader().getBeatsPerMinute());
+        assertEquals(song.getHeader().getTitle(), faster.getHeader().getTitle());
+        assertSame(song.getBody(), faster.getBody());
+        Song slower = song.withHeader(song.getHeader().withTempoBeat(new Fraction(1, 2)));
+        assertEquals(new Fraction(1, 2), slower.getHeader().getTempoBeat());
+        assertEquals(new Fraction(1, 4), song.getHeader().getTempoBeat());
+
+        // a new second voice: the first voice is the one the song holds
+        Voice second = song.getBody().getVoices().get(1);
+        Song renamed = song.withBody(song.getBody().withVoice(1, second.withVoiceName("bass")));
+        assertSame(song.getHeader(), renamed.getHeader());
+        assertSame(song.getBody().getVoices().get(0), renamed.getBody().getVoices().get(0));
+        assertEquals("bass", renamed.getBody().getVoices().get(1).getVoiceName());
+        assertEquals("2", second.getVoiceName());
+        assertSame(second.getSongComponents(), renamed.getBody().getVoices().get(1).getSongComponents());
+
+        // the derived songs play as the original does, at their own tempo
+        SongSequencerVisitor original = new SongSequencerVisitor();
+        song.accept(original);
+        SongSequencerVisitor derived = new SongSequencerVisitor();
+        faster.accept(derived);
+        assertEquals(original.sequenceEvents().size(), derived.sequenceEvents().size());
+        assertEquals(180, derived.sequenceEvents().getBeatsPerMinute());
+    }
+}
@@ -1,7 +1,7 @@
 package player;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.io.Reader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -9,23 +9,38 @@ import java.nio.file.Paths;
 import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MidiUnavailableException;
 
-import org.antlr.v4.runtime.ANTLRInputStream;
 import org.antlr.v4.runtime.CharStream;
-import org.antlr.v4.runtime.CommonTokenStream;
-import org.antlr.v4.runtime.TokenStream;
-import org.antlr.v4.runtime.tree.ParseTree;
-import org.antlr.v4.runtime.tree.ParseTreeListener;
-import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.UnbufferedCharStream;
 
-import grammar.ABCMusicLexer;
-import grammar.ABCMusicParser;
-import grammar.SongListener;
+import grammar.CompileCache;
+import grammar.CompiledTune;
+import grammar.MappedCharStream;
+import grammar.SongCompiler;
+import sound.LyricListener;
 
 /**
  * Main entry point of your application.
  */
 public class Main {
 
+    /**
+     * The tunes played so far, so that a tune played again is not compiled again. It keeps
+     * abc.cache.size tunes in memory (64 by default) and, if abc.cache.dir names a directory,
+     * every tune on disk there as well
+     */
+    private static CompileCache cache;
+
+    private static synchronized CompileCache getCache() throws IOException {
+        if (cache == null) {
+            // Build the song while parsing, without keeping the whole parse tree in memory
+            SongCompiler compiler = new SongCompiler();
+            compiler.setStreaming(true);
+            String directory = System.getProperty("abc.cache.dir");
+            cache = new CompileCache(compiler, Integer.getInteger("abc.cache.size", 64), directory == null ? null : Paths.get(directory));
+        }
+        return cache;
+    }
+
     /**
      * Plays the input file using Java MIDI API and displays
      * header information to the standard output stream.
@@ -37,29 +52,34 @@ public class Main {
      */
     public static void play(String file) {
         try {
-            byte[] encoded;
-            encoded = Files.readAllBytes(Paths.get(file));
-            String fileAsString = Charset.defaultCharset().decode(ByteBuffer.wrap(encoded)).toString();
-            CharStream fileAsStream = new ANTLRInputStream(fileAsString);
-            ABCMusicLexer lexer = new ABCMusicLexer(fileAsStream);
-            lexer.reportErrorsAsExceptions();
-            
-            TokenStream tokens = new CommonTokenStream(lexer);
-            
-            // Feed the tokens into the parser
-            ABCMusicParser parser = new ABCMusicParser(tokens);
-            parser.reportErrorsAsExceptions();
-            // Generate the parse tree using the starter rule.
-            ParseTree tree;
-            tree = parser.abc_tune(); // "abc_music" is the starter rule.
-            ParseTreeWalker walker = new ParseTreeWalker();
-            ParseTreeListener listener = new SongListener();
-            walker.walk(listener, tree);
+            CompiledTune tune;
+            if (Boolean.getBoolean("abc.unbuffered")) {
+                // Read the file through a window, for tunes too big to keep in memory as text or
+                // tokens (and too big to hash for the cache)
+                Reader reader = Files.newBufferedReader(Paths.get(file), Charset.defaultCharset());
+                try {
+                    Song song = new SongCompiler().compile(new UnbufferedCharStream(reader));
+                    SongSequencerVisitor visitor = new SongSequencerVisitor();
+                    song.accept(visitor);
+                    tune = new CompiledTune(song.getHeader(), visitor.sequenceEvents(), song);
+                } finally {
+                    reader.close();
+                }
+            } else {
+                // Lex straight out of the memory-mapped file, without copying it onto the heap
+                CharStream fileAsStream = MappedCharStream.open(Paths.get(file), Charset.defaultCharset());
+                // Compile the tune, unless it has been compiled before
+                tune = getCache().compile(fileAsStream);
+            }
+            System.out.println(tune.getHeader());
             
-            SongSequencerVisitor visitor = new SongSequencerVisitor();
-            ((SongListener)listener).getSong().accept(visitor);
+            LyricListener listener = new LyricListener() {
+                public void processLyricEvent(String text) {
+                    System.out.println(text);
+                }
+            };
             try {
-                visitor.play();
+                tune.getEvents().toSequencePlayer(listener).play();
             } catch (MidiUnavailableException e) {
                 e.printStackTrace();
             } catch (InvalidMidiDataException e) {
@@ -2,11 +2,12 @@ package player;
 
 /**
  * This is an abstract class that represents the non-lyric parts of the song (notes, chords, rests, tuplets)
+ * Every Music is immutable, so it can be shared by any number of chords, tuplets and voices.
  */
 public interface Music{
     
     /**
-     * @return a copy of this Music object
+     * @return a copy of this Music object, which may be the object itself, since it is immutable
      */
     public Music copy();
     
@@ -14,4 +15,9 @@ public interface Music{
      * @return the duration of this Music
      */
     public Fraction getDuration();
+
+    /**
+     * @return the duration of this Music, as a PackedFraction
+     */
+    public long getPackedDuration();
 }
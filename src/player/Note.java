@@ -1,9 +1,19 @@
 package player;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Note is an immutable class that inherits from Music and implements Voice.
  * This is the basis for the music in the song.
+ *
+ * A tune plays the same few notes over and over, so valueOf gives one shared Note (a flyweight)
+ * for each distinct note, from a cache of the notes asked for. The syllable a note is sung to
+ * is kept by its Voice, since a shared note is sung to many.
+ *
+ * The cache is one for the whole process, and never lets go of a note. Tunes are written with few
+ * letters, accidentals, octaves and lengths, so it stays small; but tunes with strange lengths could
+ * fill it without end, so once it holds MAX_INTERNED notes, valueOf gives new notes unshared.
  */
 public class Note implements Singable {
     
@@ -26,12 +36,70 @@ public class Note implements Singable {
      * The duration of the note
      */
     private final Fraction duration;
-    
+
     /**
-     * The syllable of the lyrics associated with this note
+     * The duration of the note, as a PackedFraction
      */
-    private String syllable;
+    private final long packedDuration;
     
+    /**
+     * The shared Notes, keyed by what they are made of, and the number of Notes asked of valueOf
+     */
+    private static final ConcurrentHashMap<Key, Note> INTERNED = new ConcurrentHashMap<Key, Note>();
+    private static final AtomicLong REQUESTS = new AtomicLong();
+
+    /**
+     * The most Notes the cache holds
+     */
+    static final int MAX_INTERNED = 1 << 16;
+
+    /**
+     * A key of each thread's own, set to the note it looks up, so a note already shared is found
+     * without making anything
+     */
+    private static final ThreadLocal<Key> LOOKUP = new ThreadLocal<Key>() {
+        @Override
+        protected Key initialValue() {
+            return new Key();
+        }
+    };
+
+    /**
+     * What a Note is made of, as a key of the cache. A key in the cache is never changed; only the
+     * LOOKUP keys are set again.
+     */
+    private static final class Key {
+        private NoteEnum note;
+        private AccidentalEnum accidental;
+        private int octave;
+        private Fraction duration;
+
+        Key set(NoteEnum note, AccidentalEnum accidental, int octave, Fraction duration) {
+            this.note = note;
+            this.accidental = accidental;
+            this.octave = octave;
+            this.duration = duration;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key))
+                return false;
+            Key key = (Key) other;
+            return key.note == note && key.accidental == accidental && key.octave == octave
+                    && key.duration.equals(duration);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = note.hashCode();
+            hash = 31 * hash + ((accidental == null) ? 0 : accidental.hashCode());
+            hash = 31 * hash + octave;
+            return 31 * hash + duration.hashCode();
+        }
+    }
+
     /**
      * @param note The letter of this note (i.e. A, B, C, D, E, F, or G)
      * @param accidental The accidental applied to this note (sharp, flat, natural, double flat, double sharp)
@@ -43,21 +111,42 @@ public class Note implements Singable {
         this.accidental = accidental;
         this.octave = octave;
         this.duration = duration;
-        this.syllable = ""; // begin with an empty syllable
+        this.packedDuration = PackedFraction.of(duration);
     }
-    
+
     /**
-     * @param the syllable associated with this note
+     * Gives the shared Note equal to new Note(note, accidental, octave, duration)
+     * @param note The letter of this note (i.e. A, B, C, D, E, F, or G)
+     * @param accidental The accidental applied to this note, not null
+     * @param octave The octave of this note above (or below, if the value is negative) middle C
+     * @param duration The duration of the note
+     * @return the one Note for these, made the first time it is asked for; or, once the cache
+     *          is full, a new Note if these were not asked for before it filled
      */
-    public void setSyllable(String syllable) {
-    	this.syllable = syllable;
+    public static Note valueOf(NoteEnum note, AccidentalEnum accidental, int octave, Fraction duration) {
+        REQUESTS.incrementAndGet();
+        Note shared = INTERNED.get(LOOKUP.get().set(note, accidental, octave, duration));
+        if (shared != null)
+            return shared;
+        Note made = new Note(note, accidental, octave, duration);
+        if (INTERNED.size() >= MAX_INTERNED)
+            return made;
+        shared = INTERNED.putIfAbsent(new Key().set(note, accidental, octave, duration), made);
+        return (shared == null) ? made : shared;
     }
-    
+
+    /**
+     * @return the number of Notes valueOf has been asked for
+     */
+    public static long getInternRequests() {
+        return REQUESTS.get();
+    }
+
     /**
-     * @return the syllable associated with this note 
+     * @return the number of distinct Notes valueOf has given
      */
-    public String getSyllable() {
-        return syllable;
+    public static int getInternedCount() {
+        return INTERNED.size();
     }
 
     /**
@@ -70,7 +159,7 @@ public class Note implements Singable {
             octaveBuilder.append("'");
         for(int i = 0; i < this.octave*-1; i++)
             octaveBuilder.append(",");
-        return String.format("%s%s%s%s with %s", (this.accidental == null) ? "" : this.accidental.toString(), (this.note == null) ? "" : this.note.toString(), (octaveBuilder == null) ? "" : octaveBuilder.toString(), (this.duration == null) ? "" : this.duration.toString(), this.getSyllable());
+        return String.format("%s%s%s%s", (this.accidental == null) ? "" : this.accidental.toString(), (this.note == null) ? "" : this.note.toString(), (octaveBuilder == null) ? "" : octaveBuilder.toString(), (this.duration == null) ? "" : this.duration.toString());
     }
    
     /**
@@ -78,6 +167,12 @@ public class Note implements Singable {
      */
     @Override
     public Fraction getDuration() {return this.duration;}
+
+    /**
+     * @return Returns the set duration of the note, packed.
+     */
+    @Override
+    public long getPackedDuration() {return this.packedDuration;}
     
     /**
      * @return Returns the pure note, without accidentals (A,B,C,D,E,F,G)
@@ -102,13 +197,11 @@ public class Note implements Singable {
     }
     
     /**
-     * @return Gives an new Note with the same specifications as the current note.
+     * @return this Note, which is immutable, so it can stand for its copy
      */
     @Override
     public Music copy() {
-        Note copiedNote = new Note(this.note, this.accidental, this.octave, this.duration);
-        copiedNote.setSyllable(this.getSyllable());
-        return copiedNote;
+        return this;
     }
     
     @Override
@@ -119,9 +212,16 @@ public class Note implements Singable {
         if (compareNote.note.equals(this.note) &&
                 compareNote.accidental.equals(this.accidental) &&
                 compareNote.octave == this.octave &&
-                compareNote.duration.equals(this.duration) &&
-                compareNote.syllable.equals(this.syllable)) {
+                compareNote.duration.equals(this.duration)) {
             return true;
         } else {return false;}
     }
+
+    @Override
+    public int hashCode() {
+        int hash = note.hashCode();
+        hash = 31 * hash + ((accidental == null) ? 0 : accidental.hashCode());
+        hash = 31 * hash + octave;
+        return 31 * hash + duration.hashCode();
+    }
 }
@@ -0,0 +1,167 @@
+package player;
+
+/**
+ * Static helpers for rational numbers packed into a single long, for code that works through many
+ * durations and should not allocate or follow a pointer for each of them.
+ *
+ * A packed fraction holds the numerator in its high 32 bits and the denominator in its low 32
+ * bits. It is kept as a Fraction is:
+ *      denominator > 0
+ *      the fraction is in lowest terms, so zero is 0/1
+ * so two packed fractions are equal exactly when they are == as longs, and converting to and
+ * from Fraction loses nothing.
+ *
+ * Arithmetic is done in longs and reduced, as Fraction's is; a result that does not fit in ints
+ * throws an ArithmeticException.
+ */
+public final class PackedFraction {
+
+    /**
+     * The packed fraction 0/1
+     */
+    public static final long ZERO = 1L;
+
+    /**
+     * The packed fraction 1/1
+     */
+    public static final long ONE = (1L << 32) | 1L;
+
+    private PackedFraction() {
+        // only static helpers
+    }
+
+    /**
+     * @param numerator the numerator of the fraction
+     * @param denominator the denominator of the fraction - must be nonzero
+     * @return the packed fraction numerator/denominator, in lowest terms
+     * @throws ArithmeticException if the fraction in lowest terms does not fit in ints
+     */
+    public static long pack(int numerator, int denominator) {
+        return reduce(numerator, denominator);
+    }
+
+    /**
+     * @param fraction a fraction, not null
+     * @return fraction, packed
+     */
+    public static long of(Fraction fraction) {
+        // a Fraction is in lowest terms already
+        return ((long) fraction.getNumerator() << 32) | fraction.getDenominator();
+    }
+
+    /**
+     * @param packed a packed fraction
+     * @return packed as a Fraction, shared if it is a common note length
+     */
+    public static Fraction toFraction(long packed) {
+        return Fraction.valueOf(numerator(packed), denominator(packed));
+    }
+
+    /**
+     * @return the numerator of a packed fraction
+     */
+    public static int numerator(long packed) {
+        return (int) (packed >> 32);
+    }
+
+    /**
+     * @return the denominator of a packed fraction, which is positive
+     */
+    public static int denominator(long packed) {
+        return (int) packed;
+    }
+
+    /**
+     * @return a + b
+     * @throws ArithmeticException if the result does not fit in ints
+     */
+    public static long add(long a, long b) {
+        if (denominator(a) == denominator(b))
+            return reduce((long) numerator(a) + numerator(b), denominator(a));
+        return reduce((long) numerator(a) * denominator(b) + (long) numerator(b) * denominator(a),
+                (long) denominator(a) * denominator(b));
+    }
+
+    /**
+     * @return a - b
+     * @throws ArithmeticException if the result does not fit in ints
+     */
+    public static long subtract(long a, long b) {
+        if (denominator(a) == denominator(b))
+            return reduce((long) numerator(a) - numerator(b), denominator(a));
+        return reduce((long) numerator(a) * denominator(b) - (long) numerator(b) * denominator(a),
+                (long) denominator(a) * denominator(b));
+    }
+
+    /**
+     * @return a * b
+     * @throws ArithmeticException if the result does not fit in ints
+     */
+    public static long multiply(long a, long b) {
+        return reduce((long) numerator(a) * numerator(b), (long) denominator(a) * denominator(b));
+    }
+
+    /**
+     * @param b must not be zero
+     * @return a / b
+     * @throws ArithmeticException if the result does not fit in ints
+     */
+    public static long divide(long a, long b) {
+        if (numerator(b) == 0)
+            throw new IllegalArgumentException("Cannot divide by 0");
+        return reduce((long) numerator(a) * denominator(b), (long) denominator(a) * numerator(b));
+    }
+
+    /**
+     * @return 0 if a == b, positive if a > b, negative if a < b
+     */
+    public static int compare(long a, long b) {
+        return Long.signum((long) numerator(a) * denominator(b) - (long) numerator(b) * denominator(a));
+    }
+
+    /**
+     * @return the packed fraction rounded toward zero
+     */
+    public static int intValue(long packed) {
+        return numerator(packed) / denominator(packed);
+    }
+
+    /**
+     * @return the packed fraction as a double
+     */
+    public static double toDouble(long packed) {
+        return numerator(packed) * 1.0 / denominator(packed);
+    }
+
+    /**
+     * @return a string of the form numerator/denominator, as Fraction.toString gives
+     */
+    public static String toString(long packed) {
+        return String.format("%d/%d", numerator(packed), denominator(packed));
+    }
+
+    /**
+     * @return numerator/denominator in lowest terms, packed
+     * @throws ArithmeticException if it does not fit in ints
+     */
+    private static long reduce(long numerator, long denominator) {
+        if (denominator == 0)
+            throw new IllegalArgumentException("Cannot have a denominator of 0");
+        if (denominator < 0) {
+            numerator = -numerator;
+            denominator = -denominator;
+        }
+        long a = Math.abs(numerator);
+        long b = denominator;
+        while (a != 0) {
+            long r = b % a;
+            b = a;
+            a = r;
+        }
+        numerator /= b;
+        denominator /= b;
+        if (numerator != (int) numerator || denominator != (int) denominator)
+            throw new ArithmeticException(numerator + "/" + denominator + " does not fit in a packed fraction");
+        return (numerator << 32) | denominator;
+    }
+}
@@ -0,0 +1,108 @@
+package player;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PackedFractionTest {
+
+    /*
+     * Testing Strategy:
+     * A packed fraction must hold the same value as the Fraction it stands for, and its arithmetic
+     * must give what Fraction's gives.
+     *
+     * Partitioning the input space:
+     *
+     * - Sign: negative, zero, positive numerator; negative denominator
+     * - Terms: lowest, not lowest
+     * - Size: small, products that overflow an int, results that overflow an int
+     * - Music: note, rest, chord of different lengths, each tuplet type
+     */
+
+    private static final Fraction[] FRACTIONS = {
+        new Fraction(0, 1), new Fraction(1, 64), new Fraction(1, 3), new Fraction(-1, 2), new Fraction(3, 4),
+        new Fraction(6, 8), new Fraction(5, -7), new Fraction(8, 1), new Fraction(Integer.MAX_VALUE, 2),
+        new Fraction(1, Integer.MAX_VALUE)
+    };
+
+    @Test
+    public void packTest() {
+        for (Fraction f : FRACTIONS) {
+            long packed = PackedFraction.of(f);
+            assertEquals(f.getNumerator(), PackedFraction.numerator(packed));
+            assertEquals(f.getDenominator(), PackedFraction.denominator(packed));
+            assertEquals(packed, PackedFraction.pack(f.getNumerator(), f.getDenominator()));
+            assertEquals(f, PackedFraction.toFraction(packed));
+            assertEquals(f.toString(), PackedFraction.toString(packed));
+            assertEquals(f.intValue(), PackedFraction.intValue(packed));
+        }
+        // lowest terms, with the sign on the numerator
+        assertEquals(PackedFraction.pack(1, 2), PackedFraction.pack(2, 4));
+        assertEquals(PackedFraction.pack(-3, 4), PackedFraction.pack(6, -8));
+        assertEquals(PackedFraction.ZERO, PackedFraction.pack(0, -5));
+        assertEquals(PackedFraction.ONE, PackedFraction.pack(7, 7));
+        assertSame(Fraction.valueOf(1, 8), PackedFraction.toFraction(PackedFraction.pack(2, 16)));
+    }
+
+    @Test
+    public void arithmeticTest() {
+        for (Fraction a : FRACTIONS) {
+            for (Fraction b : FRACTIONS) {
+                long pa = PackedFraction.of(a);
+                long pb = PackedFraction.of(b);
+                assertEquals(Integer.signum(a.compareTo(b)), PackedFraction.compare(pa, pb));
+                assertSameResult(a, b, "add");
+                assertSameResult(a, b, "subtract");
+                assertSameResult(a, b, "multiply");
+                if (b.getNumerator() != 0)
+                    assertSameResult(a, b, "divide");
+            }
+        }
+    }
+
+    /**
+     * Asserts that a packed operation gives what the Fraction one does, or throws as it does
+     */
+    private static void assertSameResult(Fraction a, Fraction b, String operation) {
+        Fraction expected;
+        try {
+            expected = operation.equals("add") ? a.add(b) : operation.equals("subtract") ? a.subtract(b)
+                    : operation.equals("multiply") ? a.multiply(b) : a.divide(b);
+        } catch (ArithmeticException e) {
+            expected = null;
+        }
+        long pa = PackedFraction.of(a);
+        long pb = PackedFraction.of(b);
+        try {
+            long actual = operation.equals("add") ? PackedFraction.add(pa, pb) : operation.equals("subtract")
+                    ? PackedFraction.subtract(pa, pb) : operation.equals("multiply") ? PackedFraction.multiply(pa, pb)
+                    : PackedFraction.divide(pa, pb);
+            assertNotNull(a + " " + operation + " " + b + " should overflow", expected);
+            assertEquals(a + " " + operation + " " + b, PackedFraction.of(expected), actual);
+        } catch (ArithmeticException e) {
+            assertNull(a + " " + operation + " " + b + " should not overflow", expected);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void divideByZeroTest() {
+        PackedFraction.divide(PackedFraction.ONE, PackedFraction.ZERO);
+    }
+
+    @Test
+    public void musicTest() {
+        Note quarter = new Note(NoteEnum.C, AccidentalEnum.NONE, 0, new Fraction(1, 4));
+        Note half = new Note(NoteEnum.E, AccidentalEnum.NONE, 0, new Fraction(1, 2));
+        Rest rest = new Rest(new Fraction(3, 8));
+        Chord chord = new Chord(Arrays.asList(quarter, half));
+        List<Music> music = new ArrayList<Music>(Arrays.<Music>asList(quarter, half, rest, chord));
+        for (TupletEnum type : TupletEnum.values())
+            music.add(new Tuplet(type, Arrays.<Music>asList(quarter, rest, chord, quarter)));
+        for (Music m : music)
+            assertEquals(m.toString(), PackedFraction.of(m.getDuration()), m.getPackedDuration());
+    }
+}
@@ -1,9 +1,15 @@
 package player;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * This is an immutable class that inherits from Music and implements Voice.
  * It is a type representing a Rest, which is a pause in the music being 
  * played for a specified duration of time.
+ *
+ * valueOf gives one shared Rest (a flyweight) for each duration, as Note.valueOf does for notes,
+ * from a cache that is likewise one for the whole process and holds at most MAX_INTERNED rests.
  * @author daniman
  */
 public class Rest implements Music {
@@ -12,6 +18,22 @@ public class Rest implements Music {
      * The duration of the rest
      */
     private final Fraction duration;
+
+    /**
+     * The duration of the rest, as a PackedFraction
+     */
+    private final long packedDuration;
+
+    /**
+     * The shared Rests, keyed by their durations, and the number of Rests asked of valueOf
+     */
+    private static final ConcurrentHashMap<Fraction, Rest> INTERNED = new ConcurrentHashMap<Fraction, Rest>();
+    private static final AtomicLong REQUESTS = new AtomicLong();
+
+    /**
+     * The most Rests the cache holds
+     */
+    static final int MAX_INTERNED = 1 << 12;
     
     /**
      * Construct a new Rest from the duration that is specified.
@@ -19,6 +41,39 @@ public class Rest implements Music {
      */
     public Rest(Fraction duration){
         this.duration = duration;
+        this.packedDuration = PackedFraction.of(duration);
+    }
+
+    /**
+     * Gives the shared Rest equal to new Rest(duration)
+     * @param duration specifies how long you want to hold the rest for.
+     * @return the one Rest of this duration, made the first time it is asked for; or, once the
+     *          cache is full, a new Rest if it was not asked for before it filled
+     */
+    public static Rest valueOf(Fraction duration) {
+        REQUESTS.incrementAndGet();
+        Rest shared = INTERNED.get(duration);
+        if (shared != null)
+            return shared;
+        Rest made = new Rest(duration);
+        if (INTERNED.size() >= MAX_INTERNED)
+            return made;
+        shared = INTERNED.putIfAbsent(duration, made);
+        return (shared == null) ? made : shared;
+    }
+
+    /**
+     * @return the number of Rests valueOf has been asked for
+     */
+    public static long getInternRequests() {
+        return REQUESTS.get();
+    }
+
+    /**
+     * @return the number of distinct Rests valueOf has given
+     */
+    public static int getInternedCount() {
+        return INTERNED.size();
     }
     
     /**
@@ -28,6 +83,14 @@ public class Rest implements Music {
     public Fraction getDuration() {
         return this.duration;
     }
+
+    /**
+     * Returns the set duration of the Rest, packed.
+     */
+    @Override
+    public long getPackedDuration() {
+        return this.packedDuration;
+    }
     
     /**
      * Returns a string representation of the Rest.
@@ -47,11 +110,16 @@ public class Rest implements Music {
         } else {return false;}
     }
 
+    @Override
+    public int hashCode() {
+        return duration.hashCode();
+    }
+
     /**
-     * Returns a copy of the current Rest.
+     * Returns this Rest, which is immutable, so it can stand for its copy.
      */
     @Override
     public Music copy() {
-        return new Rest(this.duration);
+        return this;
     }
-}
\ No newline at end of file
+}
@@ -1,9 +1,9 @@
 package player;
 
 /**
- * An interface for associating lyrics with a Music object
+ * A Music that can be sung to a syllable of the lyrics (a note or a chord). The syllables are not
+ * kept by the Music itself, so that equal notes can be shared: a Voice keeps them, beside its
+ * music (see Voice.getSongSyllables).
  */
 public interface Singable extends Music {
-	public void setSyllable(String syllable);
-	public String getSyllable();
 }
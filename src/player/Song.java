@@ -8,6 +8,8 @@ package player;
  *  The rep invariant is that the object is immutable
  *      The fields of the class are set by the constructor, 
  *      and they are recursively immutable
+ *  so the header and body are shared, not copied: a song derived with withHeader or withBody
+ *  holds every part of this one that it does not replace.
  */
 public class Song implements ISongSequencerVisitable{
     
@@ -27,9 +29,25 @@ public class Song implements ISongSequencerVisitable{
      * @param body refers to the Body datatype that specifies notes, chords, etc.
      */
     public Song(Header header, Body body){
-        this.header = new Header(header);
-        this.body = new Body(body);
+        this.header = header;
+        this.body = body;
     }    
+
+    /**
+     * @param header the header of the new song
+     * @return a Song of header and the body of this song
+     */
+    public Song withHeader(Header header) {
+        return new Song(header, this.body);
+    }
+
+    /**
+     * @param body the body of the new song
+     * @return a Song of the header of this song and body
+     */
+    public Song withBody(Body body) {
+        return new Song(this.header, body);
+    }
     
     /**
      * @return Returns the header associated with the song.
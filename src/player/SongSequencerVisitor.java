@@ -1,11 +1,13 @@
 package player;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 
 import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MidiUnavailableException;
 
+import sound.EventBuffer;
 import sound.LyricListener;
 import sound.Pitch;
 import sound.SequencePlayer;
@@ -31,9 +33,15 @@ public class SongSequencerVisitor implements ISongSequencerVisitor{
     private Fraction tempoBeat;
     
     private HashMap<String, List<Music>> musicForVoiceName;
+
+    /**
+     * The syllables sung to the music of each voice, one for each Music
+     */
+    private HashMap<String, List<String>> syllablesForVoiceName;
     
     public SongSequencerVisitor(){
         this.musicForVoiceName = new HashMap<String, List<Music>>();
+        this.syllablesForVoiceName = new HashMap<String, List<String>>();
     }
     
     @Override
@@ -47,7 +55,6 @@ public class SongSequencerVisitor implements ISongSequencerVisitor{
         this.defaultNoteLength = header.getDefaultLength();
         this.beatsPerMinute = header.getBeatsPerMinute();
         this.tempoBeat = header.getTempoBeat();
-        System.out.println(header);
     }
 
     @Override
@@ -59,28 +66,82 @@ public class SongSequencerVisitor implements ISongSequencerVisitor{
     @Override
     public void visit(Voice voice) {
         this.musicForVoiceName.put(voice.getVoiceName(), voice.getSongComponents());
+        this.syllablesForVoiceName.put(voice.getVoiceName(), voice.getSongSyllables());
     }
     
-    // Transforms a Song in to language that can be fed to the MIDI Sequencer
+    /**
+     * Plays the visited Song, printing each lyric as it is sung
+     */
     public void play() throws MidiUnavailableException, InvalidMidiDataException{
+        LyricListener listener = new LyricListener() {
+             public void processLyricEvent(String text) {
+                 System.out.println(text);
+             }
+        };
+        sequence(listener).play();
+    }
+    
+    /**
+     * Transforms the visited Song in to language that can be fed to the MIDI Sequencer,
+     * without opening the sequencer
+     * @param listener the listener that responds to lyric events when the result is played, or null
+     * @return a SequencePlayer with every note and lyric of the Song scheduled
+     */
+    public SequencePlayer sequence(LyricListener listener) throws MidiUnavailableException, InvalidMidiDataException{
+        return sequenceEvents().toSequencePlayer(listener);
+    }
+    
+    /**
+     * Sequences voices kept as CompactVoices, giving the events that sequenceEvents gives for a
+     * Song of the Voices they were made from. It works over the arrays of the voices, without
+     * making a Music for each note.
+     * @param header the header of the song
+     * @param voices the voices of the song
+     * @return every note and lyric of the voices, in the order sequence schedules them
+     */
+    public static EventBuffer sequenceEvents(Header header, List<CompactVoice> voices) {
+        // the voices in the order a visitor keeps them
+        HashMap<String, CompactVoice> voiceForVoiceName = new HashMap<String, CompactVoice>();
+        for (CompactVoice voice : voices)
+            voiceForVoiceName.put(voice.getVoiceName(), voice);
+        int lcm = 0;
+        if (!voiceForVoiceName.isEmpty()) {
+            lcm = header.getDefaultLength().getDenominator();
+            for (CompactVoice voice : voiceForVoiceName.values())
+                lcm = voice.tickDenominatorLcm(lcm);
+        }
+        EventBuffer events = new EventBuffer(header.getBeatsPerMinute(), lcm);
+        long ticksPerLength = PackedFraction.of(header.getDefaultLength().divide(header.getTempoBeat()).multiply(Fraction.valueOf(lcm, 1)));
+        for (String voiceName : voiceForVoiceName.keySet())
+            voiceForVoiceName.get(voiceName).schedule(events, voiceName.equals("THE_DEFAULT_VOICE") ? "" : voiceName, ticksPerLength);
+        return events;
+    }
+
+    /**
+     * Transforms the visited Song in to the timed note and lyric events that sequence schedules,
+     * without building a SequencePlayer, so they can be kept and played later
+     * @return every note and lyric of the Song, in the order sequence schedules them
+     */
+    public EventBuffer sequenceEvents() {
         // LCM calculations that ultimately give us how many ticks per beat we should have
         Fraction lcmCalc = defaultNoteLength;
         int lcm = 0;
         for (String voiceName : this.musicForVoiceName.keySet()){
             for(Music m : this.musicForVoiceName.get(voiceName)){
-                lcmCalc = new Fraction(1, Fraction.LCM(m.getDuration().getDenominator(), lcmCalc.getDenominator()));
+                // each note of a tuplet lasts its share of the tuplet, which needs ticks of its own
+                long length = m.getPackedDuration();
+                if (m instanceof Tuplet)
+                    length = PackedFraction.divide(length, PackedFraction.pack(getTupleNoteCount(((Tuplet) m).getType()), 1));
+                lcmCalc = Fraction.valueOf(1, Fraction.LCM(PackedFraction.denominator(length), lcmCalc.getDenominator()));
             }
             if(lcmCalc.getDenominator() > lcm){
                 lcm = lcmCalc.getDenominator();
             }
         }
-        LyricListener listener = new LyricListener() {
-             public void processLyricEvent(String text) {
-                 System.out.println(text);
-             }
-        };
-        // Initializes a new SequencePlayer that will make our notes audible
-        SequencePlayer seqPlayer = new SequencePlayer(this.beatsPerMinute, lcm, listener);
+        // Collects the events that a SequencePlayer will make audible
+        EventBuffer events = new EventBuffer(this.beatsPerMinute, lcm);
+        // the ticks in one default note length
+        long ticksPerLength = PackedFraction.of(defaultNoteLength.divide(tempoBeat).multiply(Fraction.valueOf(lcm, 1)));
         int startTick = 0;
         int duration;
         // Considers every Voice in our Song
@@ -89,21 +150,24 @@ public class SongSequencerVisitor implements ISongSequencerVisitor{
         	if(!voiceName.equals("THE_DEFAULT_VOICE"))
         		lyricsPrefix = voiceName;
             startTick = 0;
+            Iterator<String> syllables = this.syllablesForVoiceName.get(voiceName).iterator();
             // Considers every Music element in our Voice
             for(Music m : this.musicForVoiceName.get(voiceName)){
-                duration = (int) (m.getDuration().toDouble() * defaultNoteLength.toDouble() / tempoBeat.toDouble() * lcm);
+                String syllable = syllables.next();
+                boolean sung = !syllable.equals("");
+                duration = PackedFraction.intValue(PackedFraction.multiply(m.getPackedDuration(), ticksPerLength));
                 if (m instanceof Note){
                     Note mNote = (Note)m;
                     Pitch pitch = new Pitch(mNote.getNote().toString().charAt(0)).transpose(mNote.getAccidental().getSemitoneOffset() + 12*mNote.getOctave());
-                    if (mNote.getSyllable() != null && !mNote.getSyllable().equals("")) {seqPlayer.addLyricEvent(lyricsPrefix + mNote.getSyllable(), startTick);}
-                    seqPlayer.addNote(pitch.toMidiNote(), startTick, duration);
+                    if (sung) {events.addLyricEvent(lyricsPrefix + syllable, startTick);}
+                    events.addNote(pitch.toMidiNote(), startTick, duration);
                     startTick += duration;
                 } else if (m instanceof Chord){
                     Chord mChord = (Chord)m;
-                    if (mChord.getSyllable() != null && !mChord.getSyllable().equals("")) {seqPlayer.addLyricEvent(lyricsPrefix + mChord.getSyllable(), startTick);}
+                    if (sung) {events.addLyricEvent(lyricsPrefix + syllable, startTick);}
                     for (Note n : mChord.getNotes()){
                         Pitch pitch = new Pitch(n.getNote().toString().charAt(0)).transpose(n.getAccidental().getSemitoneOffset() + 12*n.getOctave());
-                        seqPlayer.addNote(pitch.toMidiNote(), startTick, duration);
+                        events.addNote(pitch.toMidiNote(), startTick, duration);
                     }
                     startTick += duration;
                 } else if (m instanceof Tuplet) {
@@ -115,16 +179,16 @@ public class SongSequencerVisitor implements ISongSequencerVisitor{
                             Pitch pitch1 = null;
                         	Note n = (Note)tupletElem;
                         	pitch1 = new Pitch(n.getNote().toString().charAt(0)).transpose(n.getAccidental().getSemitoneOffset() + 12*n.getOctave());
-                        	if (n.getSyllable() != null && !n.getSyllable().equals("")) {seqPlayer.addLyricEvent(lyricsPrefix + n.getSyllable(), startTick);}
-                        	seqPlayer.addNote(pitch1.toMidiNote(), startTick, tupleNoteDur); 
+                        	if (sung) {events.addLyricEvent(lyricsPrefix + syllable, startTick);}
+                        	events.addNote(pitch1.toMidiNote(), startTick, tupleNoteDur); 
                         	startTick += tupleNoteDur;
                         } else if (tupletElem instanceof Chord) {
                             Chord c = (Chord)tupletElem;
-                            if (c.getSyllable() != null && !c.getSyllable().equals("")) {seqPlayer.addLyricEvent(lyricsPrefix + c.getSyllable(), startTick);}
+                            if (sung) {events.addLyricEvent(lyricsPrefix + syllable, startTick);}
                             for (Note note : c.getNotes()){
                                 Pitch pitch2 = null;
                                 pitch2 = new Pitch(note.getNote().toString().charAt(0)).transpose(note.getAccidental().getSemitoneOffset() + 12*note.getOctave());
-                                seqPlayer.addNote(pitch2.toMidiNote(), startTick, tupleNoteDur);
+                                events.addNote(pitch2.toMidiNote(), startTick, tupleNoteDur);
                             }
                             startTick += tupleNoteDur;
                         } else if (tupletElem instanceof Rest) {
@@ -138,22 +202,25 @@ public class SongSequencerVisitor implements ISongSequencerVisitor{
                 }
             }
         }
-        seqPlayer.play();
+        return events;
     }
     
     public static int getTupleNoteDur(TupletEnum type, int duration) {
+        return duration / getTupleNoteCount(type);
+    }
+
+    /**
+     * @return the number of notes a tuplet of the given type shares its duration between
+     */
+    public static int getTupleNoteCount(TupletEnum type) {
         switch (type) {
         case DUPLET:
-            duration /= 2;
-            break;
-        case TRIPLET:
-            duration /= 3;
-            break;
+            return 2;
         case QUADRUPLET:
-            duration /= 4;
-            break;
+            return 4;
+        default:
+            return 3;
         }
-        return duration;
     }
     
 }
@@ -1,6 +1,7 @@
 package player;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -8,8 +9,8 @@ import java.util.List;
  * notes played successively, with spacing dependent on the type of tuplet
  * 
  * Rep Invariant: This class is immutable
- *      We copy the notes in the constructor to ensure that the client cannot modify them
- *      The list of notes is final
+ *      We copy the list of notes in the constructor to ensure that the client cannot modify it
+ *      The list of notes is final and unmodifiable, and the music in it is immutable
  *      We do not modify the fields in other methods
  *      There is no rep exposure
  *      
@@ -30,7 +31,7 @@ public class Tuplet implements Music {
 	private final List<Music> notes;
 	
 	/**
-	 * @return the notes that constitute this tuplet (IMPORTANT: the "notes" can include Chords)
+	 * @return the notes that constitute this tuplet, an unmodifiable list (IMPORTANT: the "notes" can include Chords)
 	 */
 	public List<Music> getNotes() {
         return notes;
@@ -49,7 +50,7 @@ public class Tuplet implements Music {
 	 */
     public Tuplet(TupletEnum type, List<Music> notes) {
 		this.type = type;
-		this.notes = new ArrayList<Music>(notes);
+		this.notes = Collections.unmodifiableList(new ArrayList<Music>(notes));
 	}
 	
     /**
@@ -80,11 +81,11 @@ public class Tuplet implements Music {
 
 	
 	/**
-	 * @return returns a copy of this tuplet
+	 * @return this tuplet, since a tuplet cannot change
 	 */
 	@Override
 	public Music copy() {
-		return new Tuplet(this.type, new ArrayList<Music>(this.notes));
+		return this;
 	}
 
 	/**
@@ -92,31 +93,36 @@ public class Tuplet implements Music {
 	 */
 	@Override
 	public Fraction getDuration() {
-		int durationNum = 0;
-		int durationDen = 1;
-		for(Music n : notes) {
-			int noteNum = n.getDuration().getNumerator();
-			int noteDen = n.getDuration().getDenominator();
-			durationNum = noteNum*durationDen + durationNum*noteDen;
-			durationDen = noteDen * durationDen;
+		Fraction duration = Fraction.valueOf(0, 1);
+		for(Music n : notes)
+			duration = duration.add(n.getDuration());
+		switch(type) {
+		case DUPLET:
+			return duration.multiply(Fraction.valueOf(3, 2));
+		case TRIPLET:
+			return duration.multiply(Fraction.valueOf(2, 3));
+		case QUADRUPLET:
+			return duration.multiply(Fraction.valueOf(3, 4));
 		}
-		int gcd = Fraction.GCD(durationNum, durationDen);
-		durationNum /= gcd;
-		durationDen /= gcd;
+		return duration;
+	}
+
+	/**
+	 * @return Computes the duration of the tuplet as getDuration does, packed
+	 */
+	@Override
+	public long getPackedDuration() {
+		long duration = PackedFraction.ZERO;
+		for(Music n : notes)
+			duration = PackedFraction.add(duration, n.getPackedDuration());
 		switch(type) {
 		case DUPLET:
-			durationNum *= 3;
-			durationDen *= 2;
-			break;
+			return PackedFraction.multiply(duration, PackedFraction.pack(3, 2));
 		case TRIPLET:
-			durationNum *= 2;
-			durationDen *= 3;
-			break;
+			return PackedFraction.multiply(duration, PackedFraction.pack(2, 3));
 		case QUADRUPLET:
-			durationNum *= 3;
-			durationDen *= 4;
-			break;
+			return PackedFraction.multiply(duration, PackedFraction.pack(3, 4));
 		}
-		return new Fraction(durationNum, durationDen);
+		return duration;
 	}
 }
@@ -1,24 +1,44 @@
 package player;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * This defines the basic functionality of all the constituents of the song (music + lyric).
  * Voice provides methods for the Visitor to use to transform notes, chords, lyrics, etc. to something that
  * can be used and played by the SequencePlayer. 
+ *
+ * The syllables of the lyrics are kept here, beside the music, rather than in the notes, so that
+ * equal notes can be one shared Note (see Note.valueOf). Syllable i of the voice is sung to Music i:
+ * to a note or chord, or to every note and chord of a tuplet; "" is no syllable.
+ *
+ * Rep Invariant: This class is immutable
+ *      The fields are final, and the lists of music and syllables cannot be modified through them
+ *      Every Music is immutable, so the music is shared with the caller rather than copied
+ *      songSyllables.size() == songComponents.size()
  */
 public class Voice implements ISongSequencerVisitable{
 
     /**
      * The name of this voice
      */
-    private String voiceName;
+    private final String voiceName;
     
     /**
-     * The list of music (ex. notes (with lyrics), chords, tuplets) in this voice
+     * The list of music (ex. notes (with lyrics), chords, tuplets) in this voice, in the order it
+     * is played
      */
-    private List<Music> songComponents;
+    private final List<Music> songComponents;
+
+    /**
+     * The syllable sung to each Music in songComponents, in the same order
+     */
+    private final List<String> songSyllables;
 
     /**
      * Getter function for returning the voice name.
@@ -29,41 +49,282 @@ public class Voice implements ISongSequencerVisitable{
     }
 
     /**
-     * Setter method for setting the voice name.
-     * @param voiceName is inputed as a string.
+     * @param voiceName the name of the new voice
+     * @return a Voice named voiceName, which shares the music and syllables of this one
      */
-    public void setVoiceName(String voiceName) {
-        this.voiceName = voiceName;
+    public Voice withVoiceName(String voiceName) {
+        return new Voice(voiceName, this);
     }
     
     /**
      * Returns a list of the Musics in the current Song.
-     * @return the song components
+     * @return the song components, an unmodifiable list
      */
     public List<Music> getSongComponents() {
         return this.songComponents;
     }
 
     /**
-     * Setter method for setting the components of the song.
+     * Returns the syllable sung to each Music in the current Song, in the same order as
+     * getSongComponents; "" is no syllable.
+     * @return the song syllables, an unmodifiable list
+     */
+    public List<String> getSongSyllables() {
+        return this.songSyllables;
+    }
+
+    /**
+     * Initializes the new Voice object, with no lyrics.
+     * @param voiceName is a String.
      * @param songComponents is a list of Musics.
      */
-    public void setSongComponents(List<Music> songComponents) {
-        this.songComponents = songComponents;
+    public Voice(String voiceName, List<Music> songComponents){
+        this(voiceName, songComponents, null);
     }
 
     /**
      * Initializes the new Voice object.
      * @param voiceName is a String.
      * @param songComponents is a list of Musics.
+     * @param syllables the syllable sung to each of songComponents ("" for none), or null if
+     *          the voice has no lyrics.
      */
-    public Voice(String voiceName, List<Music> songComponents){
+    public Voice(String voiceName, List<Music> songComponents, List<String> syllables){
+        this.voiceName = voiceName;
+        this.songComponents = Collections.unmodifiableList(new ArrayList<Music>(songComponents));
+        if (syllables != null)
+            syllables = Collections.unmodifiableList(new ArrayList<String>(syllables));
+        this.songSyllables = syllablesOrNone(syllables, songComponents.size());
+    }
+
+    /**
+     * Initializes a Voice named voiceName, with the music and syllables of voice
+     */
+    private Voice(String voiceName, Voice voice){
         this.voiceName = voiceName;
-        this.songComponents = new ArrayList<Music>();
-        for (Music s : songComponents)
-            this.songComponents.add(s.copy());
+        this.songComponents = voice.songComponents;
+        this.songSyllables = voice.songSyllables;
     }
     
+    /**
+     * Initializes a Voice whose bars are played in the given order, so a bar that is repeated is
+     * held once, however many times it is played. For the tests, which build a voice bar by bar.
+     * @param voiceName is a String.
+     * @param bars the bars of the voice, as written; each is a list of Musics.
+     * @param playOrder the index in bars of each bar played, in the order they are played.
+     * @throws IllegalArgumentException if playOrder names a bar that is not in bars
+     */
+    Voice(String voiceName, List<List<Music>> bars, int[] playOrder){
+        this.voiceName = voiceName;
+        List<Music> written = new ArrayList<Music>();
+        int[] barStarts = new int[bars.size() + 1];
+        for (int b = 0; b < bars.size(); b++) {
+            written.addAll(bars.get(b));
+            barStarts[b + 1] = written.size();
+        }
+        int[] order = playOrder.clone();
+        checkBars(written.size(), barStarts, order);
+        written = Collections.unmodifiableList(written);
+        this.songComponents = new PlayedList<Music>(written, barStarts, order);
+        this.songSyllables = new PlayedList<String>(syllablesOrNone(null, written.size()), barStarts, order);
+    }
+
+    /**
+     * Initializes a Voice from its written music. The music is copied once, as written, however
+     * many times its bars are played. For the tests, whose voices have no lyrics.
+     * @param voiceName is a String.
+     * @param written the music of the voice as written, bar after bar.
+     * @param barStarts the index in written that each bar starts at, followed by written.size();
+     *          bar b is written[barStarts[b] .. barStarts[b+1]-1].
+     * @param playOrder the index of each bar played, in the order they are played.
+     * @throws IllegalArgumentException if barStarts does not start at 0, go up, and end at
+     *          written.size(), or playOrder names a bar that is not in barStarts
+     */
+    Voice(String voiceName, List<Music> written, int[] barStarts, int[] playOrder){
+        this(voiceName, written, null, barStarts, playOrder);
+    }
+
+    /**
+     * Initializes a Voice from its written music and lyrics. They are copied once, as written,
+     * however many times their bars are played.
+     * @param voiceName is a String.
+     * @param written the music of the voice as written, bar after bar.
+     * @param syllables the syllable sung to each of written ("" for none), or null if the voice
+     *          has no lyrics.
+     * @param barStarts the index in written that each bar starts at, followed by written.size();
+     *          bar b is written[barStarts[b] .. barStarts[b+1]-1].
+     * @param playOrder the index of each bar played, in the order they are played.
+     * @throws IllegalArgumentException if syllables is not null and not the size of written,
+     *          barStarts does not start at 0, go up, and end at written.size(), or playOrder
+     *          names a bar that is not in barStarts
+     */
+    public Voice(String voiceName, List<Music> written, List<String> syllables, int[] barStarts, int[] playOrder){
+        this.voiceName = voiceName;
+        int[] starts = barStarts.clone();
+        int[] order = playOrder.clone();
+        checkBars(written.size(), starts, order);
+        written = Collections.unmodifiableList(new ArrayList<Music>(written));
+        if (syllables != null)
+            syllables = Collections.unmodifiableList(new ArrayList<String>(syllables));
+        this.songComponents = new PlayedList<Music>(written, starts, order);
+        this.songSyllables = new PlayedList<String>(syllablesOrNone(syllables, written.size()), starts, order);
+    }
+
+    /**
+     * @throws IllegalArgumentException unless barStarts starts at 0, never goes down, and ends at
+     *          size, and every bar in playOrder is one of the barStarts.length-1 bars
+     */
+    private static void checkBars(int size, int[] barStarts, int[] playOrder) {
+        if (barStarts.length == 0 || barStarts[0] != 0 || barStarts[barStarts.length - 1] != size)
+            throw new IllegalArgumentException("bars must start at 0 and end at " + size + ": "
+                    + Arrays.toString(barStarts));
+        for (int b = 1; b < barStarts.length; b++)
+            if (barStarts[b] < barStarts[b - 1])
+                throw new IllegalArgumentException("bar " + b + " starts before bar " + (b - 1) + ": "
+                        + Arrays.toString(barStarts));
+        for (int bar : playOrder)
+            if (bar < 0 || bar >= barStarts.length - 1)
+                throw new IllegalArgumentException("no bar " + bar + " to play, of " + (barStarts.length - 1));
+    }
+
+    /**
+     * @return syllables, or size syllables of "" if it is null
+     */
+    private static List<String> syllablesOrNone(List<String> syllables, int size) {
+        if (syllables == null)
+            return Collections.nCopies(size, "");
+        if (syllables.size() != size)
+            throw new IllegalArgumentException("expected " + size + " syllables, got " + syllables.size());
+        return syllables;
+    }
+
+    /**
+     * @return the music of this voice as written, bar after bar; the music as played, if the
+     *          voice was not built from bars
+     */
+    List<Music> getWrittenMusic() {
+        if (songComponents instanceof PlayedList)
+            return ((PlayedList<Music>) songComponents).written;
+        return songComponents;
+    }
+
+    /**
+     * @return the syllable sung to each Music of getWrittenMusic(), in the same order
+     */
+    List<String> getWrittenSyllables() {
+        if (songSyllables instanceof PlayedList)
+            return ((PlayedList<String>) songSyllables).written;
+        return songSyllables;
+    }
+
+    /**
+     * @return the index in getWrittenMusic() that each bar starts at, followed by its size
+     */
+    int[] getBarStarts() {
+        if (songComponents instanceof PlayedList)
+            return ((PlayedList<Music>) songComponents).barStarts.clone();
+        return new int[] { 0, songComponents.size() };
+    }
+
+    /**
+     * @return the index of each bar played, in the order they are played
+     */
+    int[] getPlayOrder() {
+        if (songComponents instanceof PlayedList)
+            return ((PlayedList<Music>) songComponents).order.clone();
+        return new int[] { 0 };
+    }
+
+    /**
+     * The music (or syllables) of a voice in the order it is played, read from its written bars as
+     * it is iterated: the played music is never copied, so its size in memory is that of the
+     * written bars, plus an int or two for each bar played. A Music that is repeated is the same
+     * object at each place it is played.
+     *
+     * Rep invariant:
+     *      barStarts[0] == 0, barStarts is non-decreasing, barStarts[barStarts.length-1] == written.size()
+     *      0 <= order[k] < barStarts.length-1 for every k
+     *      playedStarts[0] == 0, and playedStarts[k+1] == playedStarts[k] + the size of bar order[k]
+     */
+    private static class PlayedList<T> extends AbstractList<T> {
+
+        /**
+         * The written music, bar after bar; bar b is written[barStarts[b] .. barStarts[b+1]-1]
+         */
+        private final List<T> written;
+        private final int[] barStarts;
+
+        /**
+         * The bars played, in order, and the index in the played music that each one starts at
+         */
+        private final int[] order;
+        private final int[] playedStarts;
+
+        PlayedList(List<T> written, int[] barStarts, int[] playOrder) {
+            this.written = written;
+            this.barStarts = barStarts;
+            order = playOrder;
+            playedStarts = new int[order.length + 1];
+            for (int k = 0; k < order.length; k++)
+                playedStarts[k + 1] = playedStarts[k] + barStarts[order[k] + 1] - barStarts[order[k]];
+        }
+
+        @Override
+        public T get(int index) {
+            if (index < 0 || index >= size())
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            // the last bar played that starts at or before index (skipping any empty bars)
+            int low = 0;
+            int high = order.length - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (playedStarts[middle] <= index)
+                    low = middle;
+                else
+                    high = middle - 1;
+            }
+            return written.get(barStarts[order[low]] + index - playedStarts[low]);
+        }
+
+        @Override
+        public int size() {
+            return playedStarts[order.length];
+        }
+
+        /**
+         * @return an iterator that walks the played bars one after another, without searching
+         */
+        @Override
+        public Iterator<T> iterator() {
+            return new Iterator<T>() {
+                private int k = 0;
+                private int next = (order.length > 0) ? barStarts[order[0]] : 0;
+
+                @Override
+                public boolean hasNext() {
+                    while (k < order.length && next == barStarts[order[k] + 1]) {
+                        k++;
+                        if (k < order.length)
+                            next = barStarts[order[k]];
+                    }
+                    return k < order.length;
+                }
+
+                @Override
+                public T next() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    return written.get(next++);
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("the music of a voice cannot be changed");
+                }
+            };
+        }
+    }
+
     /**
      * Throws an exception because you cannot find the total duration of the song as it is not something that is tracked.
      * You can only know the duration of one Music at a time. (Tuplet, Note, Chord, Rest)
@@ -86,8 +347,11 @@ public class Voice implements ISongSequencerVisitable{
     @Override
     public String toString(){
         StringBuilder builder = new StringBuilder(this.voiceName +": ");
-        for (Music m : this.songComponents)
-            builder.append("\n - " + m.toString() + " ");
+        Iterator<String> syllables = this.songSyllables.iterator();
+        for (Music m : this.songComponents) {
+            String syllable = syllables.next();
+            builder.append("\n - " + m.toString() + (syllable.isEmpty() ? "" : " with " + syllable) + " ");
+        }
         return builder.toString();
     }
     
@@ -99,6 +363,8 @@ public class Voice implements ISongSequencerVisitable{
         for (int i = 0; i < compareVoice.songComponents.size(); i ++) {
            if (!(compareVoice.songComponents.get(i).equals(this.songComponents.get(i))))
                return false;
+           if (!(compareVoice.songSyllables.get(i).equals(this.songSyllables.get(i))))
+               return false;
         }
         return true;
     }
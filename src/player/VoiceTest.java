@@ -0,0 +1,153 @@
+package player;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.junit.Test;
+
+import grammar.SongCompiler;
+
+public class VoiceTest {
+
+    /**
+     * Testing Strategy:
+     * We want to make sure that a Voice built from bars and a play order holds the same music as
+     * a Voice built from the bars copied out in that order, without copying the repeated bars.
+     *
+     * Partitioning the input space:
+     *
+     * - Play order: every bar once, bars repeated, no bars
+     * - Bars: empty bars at the start, middle and end, bars of one or more Musics
+     * - Access: get, iterator, size, equals
+     * - Syllables: none, on notes, chords and tuplets, repeated with their bars
+     * - Source: hand-built bars, a tune with |: :| and [1 [2 repeats
+     * - Written lists: changed by the caller afterwards; bar starts and play orders that do not fit them
+     */
+
+    private static Note note(NoteEnum letter) {
+        return new Note(letter, AccidentalEnum.NONE, 0, new Fraction(1, 1));
+    }
+
+    private static List<Music> bar(Music... music) {
+        return new ArrayList<Music>(Arrays.asList(music));
+    }
+
+    /**
+     * Asserts that a voice played from bars holds the bars copied out in play order
+     */
+    private static void assertPlayedInOrder(List<List<Music>> bars, int[] playOrder) {
+        List<Music> expected = new ArrayList<Music>();
+        for (int b : playOrder)
+            expected.addAll(bars.get(b));
+        Voice voice = new Voice("v", bars, playOrder);
+        List<Music> played = voice.getSongComponents();
+        assertEquals(expected.size(), played.size());
+        Iterator<Music> iterator = played.iterator();
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), played.get(i));
+            assertTrue(iterator.hasNext());
+            assertSame(played.get(i), iterator.next());
+        }
+        assertFalse(iterator.hasNext());
+        assertEquals(new Voice("v", expected), voice);
+    }
+
+    @Test
+    public void playOrderTest() {
+        List<List<Music>> bars = new ArrayList<List<Music>>();
+        bars.add(bar());
+        bars.add(bar(note(NoteEnum.C), note(NoteEnum.D)));
+        bars.add(bar());
+        bars.add(bar(new Rest(new Fraction(1, 2))));
+        bars.add(bar(note(NoteEnum.E)));
+        bars.add(bar());
+        assertPlayedInOrder(bars, new int[]{0, 1, 2, 3, 4, 5});
+        assertPlayedInOrder(bars, new int[]{0, 1, 2, 1, 2, 3, 4, 3, 4, 5});
+        assertPlayedInOrder(bars, new int[]{5, 0, 2});
+        assertPlayedInOrder(bars, new int[]{});
+    }
+
+    @Test
+    public void repeatsShareMusicTest() {
+        Song song = new SongCompiler().compile(new ANTLRInputStream("X:1\nT:Repeats\nK:C\n|: C D | E F :| G |[1 A :|[2 B |]\n"));
+        List<Music> played = song.getBody().getVoices().get(0).getSongComponents();
+        // C D E F G A B, then C D E F G A again
+        assertEquals(13, played.size());
+        assertEquals(NoteEnum.B, ((Note) played.get(6)).getNote());
+        // the repeated bars are played from the written ones, not copied
+        for (int i = 0; i < 6; i++)
+            assertSame(played.get(i), played.get(i + 7));
+    }
+
+    @Test
+    public void syllablesTest() {
+        Song song = new SongCompiler().compile(new ANTLRInputStream("X:1\nT:Lyrics\nK:C\n|: C [EG] | (3D E F z :| G |[1 A :|[2 B |]\nw: la di da - - so ti ta\n"));
+        Voice voice = song.getBody().getVoices().get(0);
+        List<Music> played = voice.getSongComponents();
+        List<String> syllables = voice.getSongSyllables();
+        assertEquals(played.size(), syllables.size());
+        // each syllable is sung to its Music (a tuplet is sung to one), and again when its bar is repeated
+        assertEquals(Arrays.asList("la", "di", "da", "", "so", "ti", "ta", "la", "di", "da", "", "so", "ti"), syllables);
+        assertTrue(played.get(2) instanceof Tuplet);
+
+        Voice unsung = new Voice("v", Arrays.<Music>asList(note(NoteEnum.C)));
+        assertEquals(Arrays.asList(""), unsung.getSongSyllables());
+        Voice renamed = voice.withVoiceName("v");
+        assertEquals("v", renamed.getVoiceName());
+        assertSame(played, renamed.getSongComponents());
+        assertSame(syllables, renamed.getSongSyllables());
+    }
+
+    @Test
+    public void writtenCopiedTest() {
+        List<Music> written = bar(note(NoteEnum.C), note(NoteEnum.D), note(NoteEnum.E));
+        List<String> syllables = new ArrayList<String>(Arrays.asList("do", "re", "mi"));
+        Voice voice = new Voice("v", written, syllables, new int[] { 0, 2, 3 }, new int[] { 0, 1, 0 });
+        written.set(0, note(NoteEnum.G));
+        written.add(note(NoteEnum.A));
+        syllables.set(0, "so");
+        assertEquals(Arrays.asList(note(NoteEnum.C), note(NoteEnum.D), note(NoteEnum.E), note(NoteEnum.C),
+                note(NoteEnum.D)), voice.getSongComponents());
+        assertEquals(Arrays.asList("do", "re", "mi", "do", "re"), voice.getSongSyllables());
+        try {
+            voice.getWrittenMusic().add(note(NoteEnum.B));
+            fail("expected the written music to be unmodifiable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void badBarsTest() {
+        List<Music> written = bar(note(NoteEnum.C), note(NoteEnum.D));
+        int[][] badStarts = { {}, { 1, 2 }, { 0, 1 }, { 0, 3 }, { 0, 2, 1, 2 } };
+        for (int[] starts : badStarts) {
+            try {
+                new Voice("v", written, starts, new int[] { 0 });
+                fail("expected bar starts " + Arrays.toString(starts) + " to be refused");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        int[][] badOrders = { { 2 }, { -1 }, { 0, 1, 2 } };
+        for (int[] order : badOrders) {
+            try {
+                new Voice("v", written, new int[] { 0, 1, 2 }, order);
+                fail("expected play order " + Arrays.toString(order) + " to be refused");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        try {
+            new Voice("v", Arrays.asList(bar(note(NoteEnum.C))), new int[] { 0, 1 });
+            fail("expected a play order past the bars to be refused");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package sound;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiUnavailableException;
+
+/**
+ * The timed note and lyric events of a song, kept in flat arrays in the order they were added,
+ * so that a song can be rendered without building any objects per note.
+ *
+ * toSequencePlayer replays the events, in order, into a SequencePlayer, which gives exactly the
+ * track that adding them to the SequencePlayer directly would have given.
+ *
+ * Rep invariant:
+ *      0 <= size <= ticks.length == durations.length == values.length
+ *      for every event i < size, durations[i] >= 0 for a note, durations[i] == LYRIC for a lyric
+ *      beatsPerMinute and ticksPerBeat are positive
+ */
+public class EventBuffer {
+
+    /**
+     * The duration stored for a lyric event, which has none
+     */
+    private static final int LYRIC = -1;
+
+    private final int beatsPerMinute;
+    private final int ticksPerBeat;
+
+    /**
+     * Event i starts at ticks[i]. A note lasts durations[i] ticks and has the MIDI pitch values[i];
+     * a lyric has the text lyrics.get(values[i])
+     */
+    private int[] ticks = new int[64];
+    private int[] durations = new int[64];
+    private int[] values = new int[64];
+    private final List<String> lyrics = new ArrayList<String>();
+    private int size = 0;
+    private int noteCount = 0;
+
+    /**
+     * @param beatsPerMinute the number of beats per minute
+     * @param ticksPerBeat the number of ticks per beat
+     */
+    public EventBuffer(int beatsPerMinute, int ticksPerBeat) {
+        this.beatsPerMinute = beatsPerMinute;
+        this.ticksPerBeat = ticksPerBeat;
+    }
+
+    /**
+     * Schedules the note to be played starting at startTick for the duration of numTicks.
+     *
+     * @param note the pitch value for the note to be played; must be a valid note
+     * @param startTick the starting tick; must be >= 0
+     * @param numTicks the number of ticks for which this note should be played; must be >= 0
+     */
+    public void addNote(int note, int startTick, int numTicks) {
+        add(startTick, numTicks, note);
+        noteCount++;
+    }
+
+    /**
+     * Schedules a lyric event at tick.
+     *
+     * @param text a string containing the lyric text
+     * @param tick the starting tick; must be >= 0
+     */
+    public void addLyricEvent(String text, int tick) {
+        add(tick, LYRIC, lyrics.size());
+        lyrics.add(text);
+    }
+
+    private void add(int tick, int duration, int value) {
+        if (size == ticks.length) {
+            ticks = Arrays.copyOf(ticks, size * 2);
+            durations = Arrays.copyOf(durations, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        ticks[size] = tick;
+        durations[size] = duration;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * @return the number of beats per minute
+     */
+    public int getBeatsPerMinute() {
+        return beatsPerMinute;
+    }
+
+    /**
+     * @return the number of ticks per beat
+     */
+    public int getTicksPerBeat() {
+        return ticksPerBeat;
+    }
+
+    /**
+     * @return the number of notes and lyrics scheduled so far
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of notes scheduled so far
+     */
+    public int getNoteCount() {
+        return noteCount;
+    }
+
+    /**
+     * @param i the index of an event, 0 <= i < size()
+     * @return true if event i is a lyric, false if it is a note
+     */
+    public boolean isLyric(int i) {
+        return durations[i] == LYRIC;
+    }
+
+    /**
+     * @param i the index of an event, 0 <= i < size()
+     * @return the tick that event i starts at
+     */
+    public int getTick(int i) {
+        return ticks[i];
+    }
+
+    /**
+     * @param i the index of a note, 0 <= i < size()
+     * @return the number of ticks the note lasts
+     */
+    public int getDuration(int i) {
+        return durations[i];
+    }
+
+    /**
+     * @param i the index of a note, 0 <= i < size()
+     * @return the MIDI pitch value of the note
+     */
+    public int getNote(int i) {
+        return values[i];
+    }
+
+    /**
+     * @param i the index of a lyric, 0 <= i < size()
+     * @return the text of the lyric
+     */
+    public String getLyric(int i) {
+        return lyrics.get(values[i]);
+    }
+
+    /**
+     * Schedules every event, in the order they were added, on a new SequencePlayer
+     * @param listener the listener that responds to lyric events when the result is played, or null
+     * @return the SequencePlayer holding every event
+     */
+    public SequencePlayer toSequencePlayer(LyricListener listener) throws MidiUnavailableException, InvalidMidiDataException {
+        SequencePlayer player = new SequencePlayer(beatsPerMinute, ticksPerBeat, listener);
+        for (int i = 0; i < size; i++) {
+            if (isLyric(i))
+                player.addLyricEvent(getLyric(i), ticks[i]);
+            else
+                player.addNote(values[i], ticks[i], durations[i]);
+        }
+        return player;
+    }
+}
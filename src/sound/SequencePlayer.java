@@ -1,5 +1,7 @@
 package sound;
 
+import java.io.File;
+import java.io.IOException;
 import java.text.MessageFormat;
 
 import javax.sound.midi.InvalidMidiDataException;
@@ -16,12 +18,17 @@ import javax.sound.midi.Track;
 
 /**
  * Schedules and plays a sequence of notes at given time steps (or "ticks").
+ * The scheduled sequence can also be written out as a Standard MIDI File, in which case
+ * no sequencer is ever opened.
  */
 public class SequencePlayer {
 
-    private Sequencer sequencer;
+    private Sequence sequence;
     private Track track;
     private int beatsPerMinute;
+    private LyricListener listener;
+    // the number of notes scheduled so far
+    private int noteCount = 0;
 
     // midi channel - for our purpose always 0
     private static int DEFAULT_CHANNEL = 0;
@@ -30,10 +37,12 @@ public class SequencePlayer {
     // the meta-message type for lyrics
     // (The Standard MIDI Files 1.0 specification says it should be 5.)
     private static int LYRIC_EVENT_TYPE = 5; 
+    // the meta-message type for tempo changes
+    private static int TEMPO_EVENT_TYPE = 0x51;
 
     /*
      * Rep invariant:
-     *   sequencer is non-null,
+     *   sequence is non-null,
      *   track is non-null,
      *   beatsPerMinute is positive
      */
@@ -41,30 +50,29 @@ public class SequencePlayer {
     /**
      * @param beatsPerMinute the number of beats per minute
      * @param ticksPerBeat the number of ticks per beat
-     * @param listener the listener that responds to lyric events
+     * @param listener the listener that responds to lyric events while playing, or null
+     *          if lyric events should be ignored
      * @throws MidiUnavailableException
      * @throws InvalidMidiDataException
      */
-    public SequencePlayer(int beatsPerMinute, int ticksPerBeat, final LyricListener listener)
+    public SequencePlayer(int beatsPerMinute, int ticksPerBeat, LyricListener listener)
             throws MidiUnavailableException, InvalidMidiDataException {
-        this.sequencer = MidiSystem.getSequencer();
-        MetaEventListener metaListener = new MetaEventListener() {
-            @Override
-            public void meta(MetaMessage msg) {
-                listener.processLyricEvent(new String(msg.getData()));
-            }
-        };
-        sequencer.addMetaEventListener(metaListener);
+        this.listener = listener;
 
         // Create a sequence object with with tempo-based timing, where
         // the resolution of the time step is based on ticks per beat.
-        Sequence sequence = new Sequence(Sequence.PPQ, ticksPerBeat);
+        this.sequence = new Sequence(Sequence.PPQ, ticksPerBeat);
         this.beatsPerMinute = beatsPerMinute;
 
         // Create an empty track. Notes will be added to this track.
         this.track = sequence.createTrack();
 
-        sequencer.setSequence(sequence);
+        // Record the tempo in the track itself, so that it survives being written to a file
+        int microsecondsPerBeat = 60000000 / beatsPerMinute;
+        byte[] tempo = new byte[] {(byte) (microsecondsPerBeat >> 16), (byte) (microsecondsPerBeat >> 8), (byte) microsecondsPerBeat};
+        MetaMessage tempoMsg = new MetaMessage();
+        tempoMsg.setMessage(TEMPO_EVENT_TYPE, tempo, tempo.length);
+        this.track.add(new MidiEvent(tempoMsg, 0));
 
         checkRep();
     }
@@ -115,6 +123,7 @@ public class SequencePlayer {
             // the other for ending the note.
             addMidiEvent(ShortMessage.NOTE_ON, note, startTick);
             addMidiEvent(ShortMessage.NOTE_OFF, note, startTick + numTicks);
+            noteCount++;
         } catch (InvalidMidiDataException e) {
             String msg = MessageFormat.format("Cannot add note with the pitch {0} at tick {1} " +
                     "for duration of {2}", note, startTick, numTicks);
@@ -122,10 +131,53 @@ public class SequencePlayer {
         }
     }
 
+    /**
+     * @return the number of notes scheduled so far
+     */
+    public int getNoteCount() {
+        return noteCount;
+    }
+
+    /**
+     * @return the sequence of everything scheduled so far
+     */
+    public Sequence getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Writes everything scheduled so far to a Standard MIDI File. No sequencer is needed for this.
+     *
+     * @param file the file to write to
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File file) throws IOException {
+        int[] fileTypes = MidiSystem.getMidiFileTypes(sequence);
+        if (fileTypes.length == 0)
+            throw new IOException("No MIDI file type can hold this sequence");
+        MidiSystem.write(sequence, fileTypes[0], file);
+    }
+
     /**
      * The sequencer is opened to begin playing its track.
      */
     public void play() throws MidiUnavailableException {
+        Sequencer sequencer = MidiSystem.getSequencer();
+        if (listener != null) {
+            MetaEventListener metaListener = new MetaEventListener() {
+                @Override
+                public void meta(MetaMessage msg) {
+                    if (msg.getType() == LYRIC_EVENT_TYPE)
+                        listener.processLyricEvent(new String(msg.getData()));
+                }
+            };
+            sequencer.addMetaEventListener(metaListener);
+        }
+        try {
+            sequencer.setSequence(sequence);
+        } catch (InvalidMidiDataException e) {
+            throw new RuntimeException("Cannot play the sequence", e);
+        }
         sequencer.open();
         sequencer.setTempoInBPM(this.beatsPerMinute);
 
@@ -179,7 +231,7 @@ public class SequencePlayer {
     }
 
     private void checkRep() {
-        assert sequencer != null : "sequencer should be non-null";
+        assert sequence != null : "sequence should be non-null";
         assert track != null : "track should be non-null";
         assert beatsPerMinute >= 0 : "should be positive number of beats per minute";
     }